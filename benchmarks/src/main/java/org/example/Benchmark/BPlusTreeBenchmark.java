@@ -0,0 +1,118 @@
+package org.example.Benchmark;
+
+import com.sun.jdi.InvalidTypeException;
+import org.example.BPlusTree.BPlusTree;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert, search, delete and scan throughput of {@link BPlusTree} across tree orders and key types.
+ * Insert and delete work on a fresh tree per invocation and report the cost of a single operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class BPlusTreeBenchmark {
+    private static final int MEMORY_MB = 4; // Room for the largest size at order 3
+    private static final int SIZE = 1000; // Keys per tree
+
+    @Param({"3", "8", "32"})
+    public int order;
+
+    @Param({"Integer", "String"})
+    public String keyType;
+
+    private Comparable[] keys;
+    private BPlusTree filledTree;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws InvalidTypeException {
+        // Distinct random keys, String keys are fixed-width hex
+        Random random = new Random(42);
+        Set<Comparable> unique = new LinkedHashSet<>();
+        while (unique.size() < SIZE) {
+            int value = random.nextInt();
+            unique.add(keyType.equals("Integer") ? (Comparable) value : String.format("%08x", value));
+        }
+        keys = unique.toArray(new Comparable[0]);
+        filledTree = filledTree();
+    }
+
+    BPlusTree newTree() throws InvalidTypeException {
+        return keyType.equals("Integer")
+                ? new BPlusTree<>(MEMORY_MB, order, Integer.class)
+                : new BPlusTree<>(MEMORY_MB, order, String.class);
+    }
+
+    BPlusTree filledTree() throws InvalidTypeException {
+        BPlusTree tree = newTree();
+        for (Comparable key : keys) {
+            tree.insert(key, "value");
+        }
+        return tree;
+    }
+
+    @State(Scope.Thread)
+    public static class EmptyTree {
+        BPlusTree tree;
+
+        @Setup(Level.Invocation)
+        public void setup(BPlusTreeBenchmark benchmark) throws InvalidTypeException {
+            tree = benchmark.newTree();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class FilledTree {
+        BPlusTree tree;
+
+        @Setup(Level.Invocation)
+        public void setup(BPlusTreeBenchmark benchmark) throws InvalidTypeException {
+            tree = benchmark.filledTree();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public BPlusTree insert(EmptyTree state) throws InvalidTypeException {
+        for (Comparable key : keys) {
+            state.tree.insert(key, "value");
+        }
+        return state.tree;
+    }
+
+    @Benchmark
+    public String search() throws InvalidTypeException {
+        Comparable key = keys[next];
+        next = next + 1 == keys.length ? 0 : next + 1;
+        return filledTree.search(key);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public BPlusTree delete(FilledTree state) throws InvalidTypeException {
+        for (Comparable key : keys) {
+            state.tree.delete(key);
+        }
+        return state.tree;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void scan(Blackhole blackhole) {
+        for (Object entry : filledTree) {
+            blackhole.consume(((Map.Entry) entry).getKey());
+        }
+    }
+}
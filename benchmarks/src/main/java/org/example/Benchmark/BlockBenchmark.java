@@ -0,0 +1,90 @@
+package org.example.Benchmark;
+
+import com.sun.jdi.InvalidTypeException;
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockCodec;
+import org.example.BlockChain.BlockHeader;
+import org.example.BlockChain.BlockView;
+import org.example.Util.HashUtil;
+import org.example.Util.Sha256Midstate;
+import org.example.Transaction.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of hashing a block: from the block itself (building the header), from a ready header,
+ * and a single mining attempt against a cached midstate; plus encoding and decoding a block.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BlockBenchmark {
+    @Param({"10", "100"})
+    public int transactionCount;
+
+    private Block block;
+    private BlockHeader header;
+    private Sha256Midstate midstate;
+    private byte[] tail;
+    private final byte[] digest = new byte[HashUtil.SHA256_LENGTH];
+    private long nonce;
+    private ByteBuffer encoded;
+    private final BlockView view = new BlockView();
+
+    @Setup(Level.Trial)
+    public void setup() throws InvalidTypeException, NoSuchAlgorithmException {
+        block = newBlock(transactionCount);
+        header = block.getHeader();
+        midstate = header.midstate();
+        tail = header.tail();
+        encoded = ByteBuffer.wrap(BlockCodec.encode(block));
+    }
+
+    static Block newBlock(int transactionCount) throws InvalidTypeException, NoSuchAlgorithmException {
+        Block block = new Block("0".repeat(64));
+        for (int i = 0; i < transactionCount; i++) {
+            block.addTransaction(new Transaction("sender" + i, "recipient" + i, i + 1, System.currentTimeMillis()));
+        }
+        return block;
+    }
+
+    @Benchmark
+    public String calculateBlockHash() {
+        return block.calculateBlockHash();
+    }
+
+    @Benchmark
+    public byte[] headerHash() {
+        header.hash(digest, 0);
+        return digest;
+    }
+
+    @Benchmark
+    public byte[] midstateAttempt() {
+        BlockHeader.writeNonce(tail, nonce++);
+        midstate.finish(tail, 0, BlockHeader.TAIL_SIZE, digest, 0);
+        return digest;
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return BlockCodec.encode(block);
+    }
+
+    @Benchmark
+    public Block decode() throws InvalidTypeException {
+        encoded.rewind();
+        return BlockCodec.decode(encoded);
+    }
+
+    @Benchmark
+    public int viewScan() {
+        return view.wrap(encoded, 0).length();
+    }
+}
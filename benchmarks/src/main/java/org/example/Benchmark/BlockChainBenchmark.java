@@ -0,0 +1,50 @@
+package org.example.Benchmark;
+
+import com.sun.jdi.InvalidTypeException;
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockChain;
+import org.example.Transaction.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingest cost of filling a candidate block from {@link BlockChain#createBlock}, measured over a
+ * batch of transactions and reported per transaction.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BlockChainBenchmark {
+    private static final int BATCH = 1000;
+
+    private Transaction[] transactions;
+    private BlockChain chain;
+
+    @Setup(Level.Trial)
+    public void setupTransactions() throws NoSuchAlgorithmException {
+        transactions = new Transaction[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            transactions[i] = new Transaction("sender" + i, "recipient" + i, i + 1, System.currentTimeMillis());
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setupChain() throws InvalidTypeException, NoSuchAlgorithmException {
+        chain = new BlockChain();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Block fillBlock() throws InvalidTypeException, NoSuchAlgorithmException {
+        Block block = chain.createBlock();
+        for (Transaction transaction : transactions) {
+            block.addTransaction(transaction);
+        }
+        return block;
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.Benchmark;
+
+import com.sun.jdi.InvalidTypeException;
+import org.example.BlockChain.Block;
+import org.example.State.BlockExecutor;
+import org.example.State.WorldState;
+import org.example.Transaction.Transaction;
+import org.example.Transaction.TransactionValidator;
+import org.example.Util.Ed25519;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optimistic block execution, reported per transaction, with cold signature verification. A
+ * block from distinct senders runs entirely in parallel; one from a single sender conflicts
+ * throughout, so all but the first transaction are re-executed in order.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BlockExecutorBenchmark {
+    private static final int BATCH = 64;
+
+    @Param({"1", "0"}) // 0 uses every core
+    public int threads;
+
+    @Param({"64", "1"})
+    public int senders;
+
+    private KeyPair[] keys;
+    private Block block;
+    private WorldState state;
+    private BlockExecutor executor;
+
+    @Setup(Level.Trial)
+    public void setup() throws InvalidTypeException, NoSuchAlgorithmException {
+        keys = new KeyPair[senders];
+        for (int i = 0; i < senders; i++) {
+            keys[i] = Ed25519.generateKeyPair();
+        }
+        block = new Block(null);
+        for (int i = 0; i < BATCH; i++) {
+            KeyPair sender = keys[i % senders];
+            Transaction transaction = new Transaction(Transaction.addressOf(sender.getPublic()), "recipient" + i, 1, i, i / senders);
+            transaction.sign(sender);
+            block.addTransaction(transaction);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setupState() throws InvalidTypeException {
+        state = new WorldState(1);
+        for (KeyPair key : keys) {
+            state.credit(Transaction.addressOf(key.getPublic()), BATCH);
+        }
+        state.commit();
+        TransactionValidator.verifiedSignatures().clear();
+        executor = new BlockExecutor(state, threads == 0 ? Runtime.getRuntime().availableProcessors() : threads);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public BlockExecutor.Result execute() throws InvalidTypeException {
+        return executor.execute(block);
+    }
+}
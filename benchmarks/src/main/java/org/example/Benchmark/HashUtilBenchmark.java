@@ -0,0 +1,63 @@
+package org.example.Benchmark;
+
+import org.example.Util.HashUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SHA-256 hashing through {@link HashUtil} for transaction-sized up to block-sized inputs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HashUtilBenchmark {
+    private static final int BATCH = 4096;
+
+    @Param({"32", "256", "4096"})
+    public int inputLength;
+
+    private String input;
+    private byte[] inputBytes;
+    private byte[][] batch;
+    private final byte[] digest = new byte[HashUtil.SHA256_LENGTH];
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(inputLength);
+        for (int i = 0; i < inputLength; i++) {
+            sb.append((char) ('a' + random.nextInt(26)));
+        }
+        input = sb.toString();
+        inputBytes = input.getBytes(StandardCharsets.UTF_8);
+        batch = new byte[BATCH][];
+        for (int i = 0; i < BATCH; i++) {
+            batch[i] = inputBytes.clone();
+            batch[i][0] = (byte) i;
+        }
+    }
+
+    @Benchmark
+    public String computeSha256() throws NoSuchAlgorithmException {
+        return HashUtil.computeSha256(input);
+    }
+
+    @Benchmark
+    public byte[] sha256Into() {
+        HashUtil.sha256(inputBytes, 0, inputBytes.length, digest, 0);
+        return digest;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[] sha256Batch() {
+        return HashUtil.sha256Batch(batch);
+    }
+}
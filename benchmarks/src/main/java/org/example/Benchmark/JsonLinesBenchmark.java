@@ -0,0 +1,100 @@
+package org.example.Benchmark;
+
+import com.sun.jdi.InvalidTypeException;
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockChain;
+import org.example.JsonLines.JsonLinesReader;
+import org.example.JsonLines.JsonLinesWriter;
+import org.example.JsonLines.TransactionImporter;
+import org.example.Mempool.Mempool;
+import org.example.Miner;
+import org.example.Transaction.Transaction;
+import org.example.Util.Ed25519;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON-lines bulk export and import, reported per transaction: streaming the chain out,
+ * parsing the lines back sequentially, and the parallel import pipeline into a fresh mempool.
+ * Signatures verified in the first import are cached, so later imports measure the cached path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonLinesBenchmark {
+    private static final int BATCH = 2_000;
+
+    @Param({"1", "0"}) // 0 uses every core
+    public int threads;
+
+    private BlockChain source;
+    private byte[] lines;
+    private Mempool target;
+
+    @Setup(Level.Trial)
+    public void setup() throws InvalidTypeException, NoSuchAlgorithmException, IOException, InterruptedException {
+        KeyPair keys = Ed25519.generateKeyPair();
+        String sender = Transaction.addressOf(keys.getPublic());
+        source = new BlockChain(4);
+        Block block = source.createBlock();
+        for (int i = 0; i < BATCH; i++) {
+            Transaction transaction = new Transaction(sender, "recipient" + i, i + 1, 1, System.currentTimeMillis(), i);
+            transaction.sign(keys);
+            block.addTransaction(transaction);
+        }
+        Miner miner = new Miner(1, 4);
+        try {
+            miner.mine(block);
+        } finally {
+            miner.shutdown();
+        }
+        source.addBlock(block);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonLinesWriter writer = new JsonLinesWriter(out)) {
+            writer.writeTransactions(source);
+        }
+        lines = out.toByteArray();
+    }
+
+    @Setup(Level.Invocation)
+    public void setupTarget() {
+        target = new Mempool();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long export() throws IOException {
+        try (JsonLinesWriter writer = new JsonLinesWriter(OutputStream.nullOutputStream())) {
+            return writer.writeTransactions(source);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long read() throws IOException {
+        long count = 0;
+        try (JsonLinesReader reader = new JsonLinesReader(new ByteArrayInputStream(lines))) {
+            while (reader.nextTransaction() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public TransactionImporter.Result importPipeline() throws IOException, InterruptedException {
+        int threadCount = threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+        return new TransactionImporter(target, threadCount, 1024).importFrom(new ByteArrayInputStream(lines));
+    }
+}
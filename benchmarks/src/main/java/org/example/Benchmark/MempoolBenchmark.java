@@ -0,0 +1,60 @@
+package org.example.Benchmark;
+
+import org.example.Mempool.Mempool;
+import org.example.Transaction.Transaction;
+import org.example.Util.Ed25519;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPair;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mempool cost on a pool of 2000 transactions from 200 senders: rejecting duplicate gossip and
+ * selecting the best transactions for a block.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MempoolBenchmark {
+    private static final int SENDERS = 200;
+    private static final int NONCES = 10;
+
+    @Param({"100", "1000"})
+    public int selected;
+
+    private Mempool mempool;
+    private Transaction[] transactions;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(1);
+        mempool = new Mempool();
+        transactions = new Transaction[SENDERS * NONCES];
+        for (int s = 0; s < SENDERS; s++) {
+            KeyPair keys = Ed25519.generateKeyPair();
+            for (int n = 0; n < NONCES; n++) {
+                Transaction transaction = new Transaction(Transaction.addressOf(keys.getPublic()), "bob", 1, random.nextInt(100), n, n);
+                transaction.sign(keys);
+                mempool.add(transaction);
+                transactions[s * NONCES + n] = transaction;
+            }
+        }
+    }
+
+    @Benchmark
+    public Mempool.AddResult addDuplicate() {
+        next = (next + 1) % transactions.length;
+        return mempool.add(transactions[next]);
+    }
+
+    @Benchmark
+    public List<Transaction> select() {
+        return mempool.select(selected);
+    }
+}
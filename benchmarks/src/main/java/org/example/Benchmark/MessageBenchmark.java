@@ -0,0 +1,52 @@
+package org.example.Benchmark;
+
+import org.example.MessageProtocol.Message;
+import org.example.MessageProtocol.MessageCodec;
+import org.example.Transaction.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of framing a batch of transactions for the wire and decoding it again, with the payload
+ * compressed (the default for large batches) and stored.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageBenchmark {
+    @Param({"1", "100"})
+    public int batchSize;
+
+    private List<Transaction> transactions;
+    private Message batch;
+    private ByteBuffer frame;
+
+    @Setup(Level.Trial)
+    public void setup() throws NoSuchAlgorithmException {
+        transactions = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            transactions.add(new Transaction("sender" + i, "recipient" + i, i + 1, System.currentTimeMillis()));
+        }
+        batch = Message.transactions(transactions);
+        frame = ByteBuffer.wrap(MessageCodec.encode(batch));
+    }
+
+    @Benchmark
+    public byte[] encodeBatch() {
+        return MessageCodec.encode(Message.transactions(transactions));
+    }
+
+    @Benchmark
+    public List<Transaction> decodeBatch() {
+        frame.rewind();
+        return MessageCodec.decode(frame).getTransactions();
+    }
+}
@@ -0,0 +1,53 @@
+package org.example.Benchmark;
+
+import com.sun.jdi.InvalidTypeException;
+import org.example.BlockChain.Block;
+import org.example.Miner;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to mine a small block at low difficulties, so a run finishes in seconds
+ * while still exercising the whole nonce search, with one and with all cores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MinerBenchmark {
+    private static final int TRANSACTION_COUNT = 10;
+
+    @Param({"8", "16"})
+    public int difficultyBits;
+
+    @Param({"1", "0"}) // 0 means one thread per core
+    public int threads;
+
+    private Block block;
+    private Miner miner;
+
+    @Setup(Level.Trial)
+    public void setupMiner() {
+        miner = new Miner(threads == 0 ? Runtime.getRuntime().availableProcessors() : threads, difficultyBits);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupBlock() throws InvalidTypeException, NoSuchAlgorithmException {
+        // A fresh header, so every invocation searches for a new nonce
+        block = BlockBenchmark.newBlock(TRANSACTION_COUNT);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        miner.shutdown();
+    }
+
+    @Benchmark
+    public String mine() throws NoSuchAlgorithmException, InterruptedException {
+        return miner.mine(block);
+    }
+}
@@ -0,0 +1,70 @@
+package org.example.Benchmark;
+
+import org.example.Transaction.Transaction;
+import org.example.Transaction.TransactionValidator;
+import org.example.Util.Ed25519;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ed25519 transaction signing and validation: a single signature, a cold verification, a
+ * validation answered by the verified-signature cache, and a cold batch verified on all cores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SignatureBenchmark {
+    private static final int BATCH = 64;
+
+    private KeyPair keys;
+    private Transaction transaction;
+    private List<Transaction> batch;
+
+    @Setup(Level.Trial)
+    public void setup() throws NoSuchAlgorithmException {
+        keys = Ed25519.generateKeyPair();
+        transaction = newTransaction(0);
+        batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(newTransaction(i + 1));
+        }
+    }
+
+    private Transaction newTransaction(long timestamp) throws NoSuchAlgorithmException {
+        Transaction transaction = new Transaction(Transaction.addressOf(keys.getPublic()), "Bob", 10, timestamp);
+        transaction.sign(keys);
+        return transaction;
+    }
+
+    @Benchmark
+    public Transaction sign() {
+        transaction.sign(keys);
+        return transaction;
+    }
+
+    @Benchmark
+    public boolean validateCold() {
+        TransactionValidator.verifiedSignatures().clear();
+        return TransactionValidator.validateTransaction(transaction);
+    }
+
+    @Benchmark
+    public boolean validateCached() {
+        return TransactionValidator.validateTransaction(transaction);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public boolean[] validateBatchCold() {
+        TransactionValidator.verifiedSignatures().clear();
+        return TransactionValidator.validateBatch(batch);
+    }
+}
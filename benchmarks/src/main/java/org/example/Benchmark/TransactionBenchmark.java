@@ -0,0 +1,52 @@
+package org.example.Benchmark;
+
+import org.example.Transaction.Transaction;
+import org.example.Transaction.TransactionCodec;
+import org.example.Transaction.TransactionView;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transaction serialization cost, JSON against the canonical binary encoding.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransactionBenchmark {
+    private Transaction transaction;
+    private ByteBuffer encoded;
+    private final TransactionView view = new TransactionView();
+
+    @Setup(Level.Trial)
+    public void setup() throws NoSuchAlgorithmException {
+        transaction = new Transaction("Alice", "Bob", 10, System.currentTimeMillis());
+        encoded = ByteBuffer.wrap(TransactionCodec.encode(transaction));
+    }
+
+    @Benchmark
+    public String toJson() {
+        return transaction.toJson();
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return TransactionCodec.encode(transaction);
+    }
+
+    @Benchmark
+    public Transaction decodeBinary() {
+        encoded.rewind();
+        return TransactionCodec.decode(encoded);
+    }
+
+    @Benchmark
+    public double viewAmount() {
+        return view.wrap(encoded, 0).amount();
+    }
+}
@@ -0,0 +1,63 @@
+package org.example.Benchmark;
+
+import com.sun.jdi.InvalidTypeException;
+import org.example.State.AccountState;
+import org.example.State.WorldState;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * World-state cost: account lookups answered by the cache or the tree, and a block's worth of
+ * random account updates buffered and flushed in sorted order at commit.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WorldStateBenchmark {
+    private static final int ACCOUNTS = 10_000;
+    private static final int BATCH = 1000;
+
+    private WorldState cached;
+    private WorldState uncached;
+    private String[] addresses;
+    private final Random random = new Random(42);
+
+    @Setup(Level.Trial)
+    public void setup() throws InvalidTypeException {
+        addresses = new String[ACCOUNTS];
+        cached = new WorldState(16);
+        uncached = new WorldState(16, 1);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            addresses[i] = String.format("%040x", i * 2654435761L);
+            cached.credit(addresses[i], 1000);
+            uncached.credit(addresses[i], 1000);
+        }
+        cached.commit();
+        uncached.commit();
+    }
+
+    @Benchmark
+    public AccountState lookupCached() throws InvalidTypeException {
+        return cached.getAccount(addresses[random.nextInt(ACCOUNTS)]);
+    }
+
+    @Benchmark
+    public AccountState lookupTree() throws InvalidTypeException {
+        return uncached.getAccount(addresses[random.nextInt(ACCOUNTS)]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public WorldState creditAndCommit() throws InvalidTypeException {
+        for (int i = 0; i < BATCH; i++) {
+            cached.credit(addresses[random.nextInt(ACCOUNTS)], 1);
+        }
+        cached.commit();
+        return cached;
+    }
+}
@@ -2,10 +2,13 @@ package org.example.BPlusTree;
 
 import com.sun.jdi.InvalidTypeException;
 import org.example.Config.Config;
+import org.example.Metrics.Counter;
+import org.example.Metrics.Metrics;
 import org.example.Util.HashUtil;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
@@ -16,10 +19,20 @@ import java.util.*;
 public class BPlusTree<T extends Comparable<T>> implements Iterable<Map.Entry<T, String>> {
     private static final int DEFAULT_ORDER = 3; // Default order (maximum number of children per node)
     private static final int DEFAULT_MB = 1; // Default memory size (in megabytes) for the tree
+    private static final Counter INSERTS = Metrics.counter("tree.inserts"); // Counted, not timed, as a lookup takes about as long as two clock reads
+    private static final Counter SEARCHES = Metrics.counter("tree.searches");
+    private static final Counter DELETES = Metrics.counter("tree.deletes");
+    private static final int MAGIC = 0x42505431; // "BPT1", starts the header of a tree kept in a caller's buffer
+    public static final int HEADER_SIZE = 32; // magic, order, key size, value size, root offset, height, allocation end
     private ByteBuffer buffer; // Byte buffer to store the serialized nodes
     private BPlusTreeNode<T> root; // Root node of the B+ Tree
     private int order; // Order of the B+ Tree
+    private final int keySize; // Maximum encoded key size in bytes
+    private final int valueSize; // Maximum encoded value size in bytes
     public int lastAllocatedEndOffset = -1;
+    private int height = 1; // Number of levels, a lone root leaf is 1
+    private final boolean persistent; // Whether the buffer starts with a header describing the tree
+    private final int dataStart; // Where the first node is allocated
     private Set<Integer> printedOffsets = new HashSet<>();
     private Class<T> type;
     /**
@@ -36,44 +49,105 @@ public class BPlusTree<T extends Comparable<T>> implements Iterable<Map.Entry<T,
      * @param order The order of the B+ Tree.
      */
     public BPlusTree(int MB, int order,Class<T> type) throws InvalidTypeException {
-        if (MB < 1) {
-            throw new IllegalArgumentException("Memory must be 1 MB or more");
-        }
+        this(MB, order, type, Config.keySize, Config.valueSize);
+    }
+
+    /**
+     * Constructor to initialize the B+ Tree with specified memory size, order and entry sizes.
+     *
+     * @param MB The memory size in megabytes.
+     * @param order The order of the B+ Tree.
+     * @param keySize The maximum size of a key in bytes (String keys only).
+     * @param valueSize The maximum size of a value in bytes.
+     */
+    public BPlusTree(int MB, int order, Class<T> type, int keySize, int valueSize) throws InvalidTypeException {
+        this(allocate(MB), false, order, type, keySize, valueSize);
+    }
+
+    /**
+     * Constructor to keep the B+ Tree in a caller-provided buffer, e.g. a memory-mapped file.
+     * The buffer starts with a small header holding the root offset, height and allocation end,
+     * rewritten whenever they change, so a buffer that already holds a tree is reopened as is.
+     *
+     * @param buffer The buffer holding the tree; a buffer not starting with a tree header gets an empty tree.
+     * @param order The order of the B+ Tree.
+     * @param keySize The maximum size of a key in bytes (String keys only).
+     * @param valueSize The maximum size of a value in bytes.
+     * @throws IllegalArgumentException If the buffer holds a tree with a different order or entry sizes.
+     */
+    public BPlusTree(ByteBuffer buffer, int order, Class<T> type, int keySize, int valueSize) throws InvalidTypeException {
+        this(buffer, true, order, type, keySize, valueSize);
+    }
+
+    private BPlusTree(ByteBuffer buffer, boolean persistent, int order, Class<T> type, int keySize, int valueSize) throws InvalidTypeException {
         if (order < 3) {
             throw new IllegalArgumentException("Order must be 3 or more");
         }
+        if (keySize < 1 || valueSize < 0) {
+            throw new IllegalArgumentException("Key size must be positive and value size non-negative");
+        }
         if(!type.equals(Integer.class) && !type.equals(String.class))
         {
             throw new InvalidTypeException("Unsupported key Type");
         }
-        // Allocate buffer with the given memory size and set byte order
-        this.buffer = ByteBuffer.allocate((1024 * 1024) * MB);
+        this.buffer = buffer;
         this.buffer.order(ByteOrder.BIG_ENDIAN);
         this.order = order;
         this.type = type;
+        this.keySize = type.equals(Integer.class) ? Integer.BYTES : keySize;
+        this.valueSize = valueSize;
+        this.persistent = persistent;
+        this.dataStart = persistent ? HEADER_SIZE : 0;
+        if (persistent && buffer.getInt(0) == MAGIC) {
+            readHeader();
+            return;
+        }
         // Initialize the root as a leaf node and serialize it
-        this.root = new BPlusTreeNode<>(true, allocateNode(true),order);
+        this.root = newNode(true);
         serializeNode(root);
+        writeHeader();
+    }
+
+    private static ByteBuffer allocate(int MB) {
+        if (MB < 1) {
+            throw new IllegalArgumentException("Memory must be 1 MB or more");
+        }
+        return ByteBuffer.allocate((1024 * 1024) * MB);
+    }
+
+    private void readHeader() {
+        if (buffer.getInt(4) != order || buffer.getInt(8) != keySize || buffer.getInt(12) != valueSize) {
+            throw new IllegalArgumentException("Buffer holds a tree with a different order or entry sizes");
+        }
+        height = buffer.getInt(20);
+        lastAllocatedEndOffset = buffer.getInt(24);
+        root = readNode(buffer.getInt(16));
     }
+
+    // Record the root, height and allocation end; only trees kept in a caller's buffer have a header
+    private void writeHeader() {
+        if (!persistent) {
+            return;
+        }
+        buffer.putInt(0, MAGIC)
+                .putInt(4, order)
+                .putInt(8, keySize)
+                .putInt(12, valueSize)
+                .putInt(16, root.offset)
+                .putInt(20, height)
+                .putInt(24, lastAllocatedEndOffset);
+    }
+
     @Override
     public Iterator<Map.Entry<T, String>> iterator(){
         return new Iterator<Map.Entry<T, String>>() {
-            private BPlusTreeNode<T> currentLeaf;  // Start at the leftmost leaf
-
-            {
-                try {
-                    currentLeaf = findLeftmostLeaf(root);
-                } catch (InvalidTypeException e) {
-                    throw new RuntimeException(e);
-                }
-            }
-
+            private BPlusTreeNode<T> currentLeaf = skipEmptyLeaves(findLeftmostLeaf(root));  // Start at the leftmost leaf
             private int currentIndex = 0;  // Current index in the leaf node
 
             @Override
             public boolean hasNext() {
-                // Check if there are more elements to iterate over.
-                return currentLeaf != null && (currentIndex < currentLeaf.keys.size() || currentLeaf.nextLeaf != null);
+                // Empty leaves are skipped eagerly, so any current leaf has a next element
+                return currentLeaf != null;
             }
 
             @Override
@@ -90,7 +164,7 @@ public class BPlusTree<T extends Comparable<T>> implements Iterable<Map.Entry<T,
                 // Move to the next index, or to the next leaf if necessary
                 currentIndex++;
                 if (currentIndex >= currentLeaf.keys.size()) {
-                    currentLeaf = currentLeaf.nextLeaf;  // Move to the next leaf
+                    currentLeaf = skipEmptyLeaves(nextLeaf(currentLeaf));  // Move to the next leaf
                     currentIndex = 0;
                 }
 
@@ -98,13 +172,25 @@ public class BPlusTree<T extends Comparable<T>> implements Iterable<Map.Entry<T,
             }
 
             // Find the leftmost leaf node starting from the root
-            private BPlusTreeNode<T> findLeftmostLeaf(BPlusTreeNode<T> node) throws InvalidTypeException {
+            private BPlusTreeNode<T> findLeftmostLeaf(BPlusTreeNode<T> node) {
                 while (!node.isLeaf) {
                     // Traverse down to the leftmost child
-                    node = BPlusTreeNode.deserialize(buffer,  node.childrenOffsets.get(0),order,type);
+                    node = readNode(node.childrenOffsets.get(0));
                 }
                 return node;
             }
+
+            // Only the root leaf can be empty, but stay safe against empty leaves in the chain
+            private BPlusTreeNode<T> skipEmptyLeaves(BPlusTreeNode<T> leaf) {
+                while (leaf != null && leaf.keys.isEmpty()) {
+                    leaf = nextLeaf(leaf);
+                }
+                return leaf;
+            }
+
+            private BPlusTreeNode<T> nextLeaf(BPlusTreeNode<T> leaf) {
+                return leaf.nextLeafOffset != -1 ? readNode(leaf.nextLeafOffset) : null;
+            }
         };
     }
 
@@ -126,32 +212,53 @@ public class BPlusTree<T extends Comparable<T>> implements Iterable<Map.Entry<T,
      *
      * @return The position where the node is allocated.
      */
-    private int allocateNode(boolean isLeaf) throws InvalidTypeException {
-        // Calculate the size of a node based on the order
-        int maxKeys = order - 1; // Maximum number of keys in the node
-        int keySize = Config.keySize; // Size of each key (assuming integer keys)
-        int offsetSize = Config.offsetSize; // Size of each offset (assuming integer offsets)
-        int valueSize = Config.valueSize; // Maximum size of each value (adjust as needed)
-        int nextLeaf = Config.nextLeaf;
-
-        int nodeSize;
-        if (isLeaf) {
-            // Size calculation for leaf nodes
-            nodeSize = (maxKeys * keySize) + (maxKeys * valueSize) + nextLeaf;
-        } else {
-            // Size calculation for internal nodes
-            nodeSize = (maxKeys * keySize) + ((order * offsetSize) + (offsetSize * (maxKeys + 1)));
-        }
+    private int allocateNode(boolean isLeaf) {
+        // Every node gets a fixed-size slot large enough to hold it when full
+        int nodeSize = BPlusTreeNode.getSize(isLeaf, order, keySize, valueSize);
 
-        // Allocate space for the node
-        BPlusTreeNode<T> node = BPlusTreeNode.deserialize(buffer,root!=null?lastAllocatedEndOffset:0,order,type);
-        int position = node.getEndOffset();
+        // Allocate space for the node right after the last allocated one
+        int position = lastAllocatedEndOffset == -1 ? dataStart : lastAllocatedEndOffset;
         if (position + nodeSize > buffer.capacity()) {
             throw new RuntimeException("Buffer capacity exceeded during node allocation");
         }
-        buffer.position(position + nodeSize); // Allocate space for the node
-        lastAllocatedEndOffset = buffer.position();
-        return node.offset;
+        lastAllocatedEndOffset = position + nodeSize;
+        if (root != null) {
+            writeHeader();
+        }
+        return position;
+    }
+
+    /**
+     * Check that the next insertion cannot run out of buffer space. In the worst case it splits
+     * one node on every level and adds a new root.
+     *
+     * @return True if the next insertion is guaranteed to fit.
+     */
+    public boolean hasRoomForInsert() {
+        int position = lastAllocatedEndOffset == -1 ? dataStart : lastAllocatedEndOffset;
+        int nodeSize = Math.max(BPlusTreeNode.getSize(true, order, keySize, valueSize),
+                BPlusTreeNode.getSize(false, order, keySize, valueSize));
+        return position + (height + 1) * nodeSize <= buffer.capacity();
+    }
+
+    /**
+     * @return The size of the buffer holding the tree, in bytes.
+     */
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    private BPlusTreeNode<T> newNode(boolean isLeaf) {
+        return new BPlusTreeNode<>(isLeaf, allocateNode(isLeaf), order, keySize, valueSize);
+    }
+
+    private BPlusTreeNode<T> readNode(int offset) {
+        return readNode(buffer, offset);
+    }
+
+    // Reads through the given view of the buffer, whose position deserializing moves
+    private BPlusTreeNode<T> readNode(ByteBuffer view, int offset) {
+        return BPlusTreeNode.deserialize(view, offset, order, type, keySize, valueSize);
     }
 
     /**
@@ -172,7 +279,10 @@ public class BPlusTree<T extends Comparable<T>> implements Iterable<Map.Entry<T,
      * @param value The value associated with the key.
      */
     public void insert(T key, String value) throws InvalidTypeException {
-        BPlusTreeNode<T> leaf = findLeaf(root, key,type);
+        INSERTS.increment();
+        checkEntrySize(key, value);
+        Deque<BPlusTreeNode<T>> path = new ArrayDeque<>();
+        BPlusTreeNode<T> leaf = findLeaf(root, key, path);
         int index = leaf.keys.indexOf(key);
         if (index != -1) {
             // Update the value if key already exists
@@ -183,7 +293,20 @@ public class BPlusTree<T extends Comparable<T>> implements Iterable<Map.Entry<T,
             insertInLeaf(leaf, key, value,type);
         } else {
             // Split the leaf node if it is full
-            splitLeaf(leaf, key, value,type);
+            splitLeaf(leaf, key, value, type, path);
+        }
+    }
+
+    /**
+     * Reject keys and values that do not fit in a node slot, since writing them would
+     * overwrite the neighbouring node in the buffer.
+     */
+    private void checkEntrySize(T key, String value) {
+        if (key instanceof String && ((String) key).getBytes(StandardCharsets.UTF_8).length > keySize) {
+            throw new IllegalArgumentException("Key exceeds the maximum size of " + keySize + " bytes");
+        }
+        if (value.getBytes(StandardCharsets.UTF_8).length > valueSize) {
+            throw new IllegalArgumentException("Value exceeds the maximum size of " + valueSize + " bytes");
         }
     }
 
@@ -192,37 +315,31 @@ public class BPlusTree<T extends Comparable<T>> implements Iterable<Map.Entry<T,
      *
      * @param node The current node.
      * @param key The key to find.
+     * @param path Collects the internal nodes visited on the way down (nearest parent on top), may be null.
      * @return The leaf node containing the key.
      */
-    private <K extends Comparable<K>> BPlusTreeNode<K> findLeaf(BPlusTreeNode<K> node, K key, Class<K> type) throws InvalidTypeException {
+    private BPlusTreeNode<T> findLeaf(BPlusTreeNode<T> node, T key, Deque<BPlusTreeNode<T>> path) {
         while (!node.isLeaf) {
-            int i = 0;
-            // Compare based on the type of T
-            while (i < node.keys.size()) {
-                if (type == Integer.class) {
-                    // Perform Integer comparison if T is Integer
-                    Integer currentKey = (Integer) node.keys.get(i);
-                    if ((Integer) key>= currentKey) {
-                        break;
-                    }
-                } else if (type == String.class) {
-                    // Perform String comparison if T is String
-                    String currentKey = (String) node.keys.get(i);
-                    if (key.compareTo(type.cast(currentKey)) < 0) {
-                        break;
-                    }
-                }
-                i++;
+            if (path != null) {
+                path.push(node);
             }
 
-            // Get the child node's offset
-            int childOffset = node.childrenOffsets.get(i);
             // Deserialize the child node
-            node = BPlusTreeNode.deserialize(buffer, childOffset, order,type);
+            node = readNode(node.childrenOffsets.get(childIndex(node, key)));
         }
         return node;
     }
 
+    // The child of an internal node whose subtree holds the key
+    private int childIndex(BPlusTreeNode<T> node, T key) {
+        int i = 0;
+        // Separator keys are the first key of their right subtree
+        while (i < node.keys.size() && key.compareTo(node.keys.get(i)) >= 0) {
+            i++;
+        }
+        return i;
+    }
+
     /**
      * Insert a key-value pair into a leaf node.
      *
@@ -231,25 +348,7 @@ public class BPlusTree<T extends Comparable<T>> implements Iterable<Map.Entry<T,
      * @param value The value associated with the key.
      */
     private void insertInLeaf(BPlusTreeNode<T> leaf, T key, String value, Class<T> type) throws InvalidTypeException {
-        int index = 0;
-
-        // Check the type of T
-        if (type == Integer.class) {
-            // Handle the case where the key is an Integer
-            Integer keyAsInt = (Integer) key;
-            while (index < leaf.keys.size() && keyAsInt > (Integer) leaf.keys.get(index)) {
-                index++;
-            }
-        } else if (type == String.class) {
-            // Handle the case where the key is a String
-            String keyAsString = (String) key;
-            while (index < leaf.keys.size() && keyAsString.compareTo((String) leaf.keys.get(index)) > 0) {
-                index++;
-            }
-        } else {
-            // You can throw an exception or handle other types
-            throw new InvalidTypeException("Unsupported key type");
-        }
+        int index = getInsertIndex(key, type, leaf.keys);
 
         // Insert the key-value pair at the correct index
         leaf.keys.add(index, key);
@@ -266,10 +365,11 @@ public class BPlusTree<T extends Comparable<T>> implements Iterable<Map.Entry<T,
      * @param leaf The leaf node to split.
      * @param key The key to insert into the leaf.
      * @param value The value associated with the key.
+     * @param path The internal nodes above the leaf, nearest parent on top.
      */
-    private void splitLeaf(BPlusTreeNode<T> leaf, T key, String value, Class<T> type) throws InvalidTypeException {
+    private void splitLeaf(BPlusTreeNode<T> leaf, T key, String value, Class<T> type, Deque<BPlusTreeNode<T>> path) throws InvalidTypeException {
         int t = (order - 1) / 2; // Number of keys in each split node
-        BPlusTreeNode<T> newLeaf = new BPlusTreeNode<>(true, allocateNode(true), order);
+        BPlusTreeNode<T> newLeaf = newNode(true);
 
         // Prepare lists to redistribute keys and values
         List<T> allKeys = new ArrayList<>(leaf.keys);
@@ -288,34 +388,14 @@ public class BPlusTree<T extends Comparable<T>> implements Iterable<Map.Entry<T,
         leaf.values = new ArrayList<>(allValues.subList(0, t + 1));
 
         // Update the nextLeaf pointers after splitting
-        newLeaf.nextLeaf = leaf.nextLeaf;  // The new leaf points to the next leaf node (if any)
-        leaf.nextLeaf = newLeaf;  // The old leaf points to the new leaf node
-
-        // Update the root if necessary
-        if (leaf == root) {
-            BPlusTreeNode<T> newRoot = new BPlusTreeNode<>(false, allocateNode(false), order);
-            newRoot.keys.add(newLeaf.keys.get(0));
-            newRoot.childrenOffsets.add(leaf.offset);
-            newRoot.childrenOffsets.add(newLeaf.offset);
-            root = newRoot;
-            serializeNode(newRoot);
-        } else {
-            BPlusTreeNode<T> parent = findParent(root, leaf);
-            int index = parent.childrenOffsets.indexOf(leaf.offset);
-            parent.keys.add(index, newLeaf.keys.get(0));
-            parent.childrenOffsets.add(index + 1, newLeaf.offset);
-
-            // Split the internal node if needed
-            if (parent.keys.size() > order - 1) {
-                splitInternalNode(parent);
-            } else {
-                serializeNode(parent);
-            }
-        }
+        newLeaf.nextLeafOffset = leaf.nextLeafOffset;  // The new leaf points to the next leaf node (if any)
+        leaf.nextLeafOffset = newLeaf.offset;  // The old leaf points to the new leaf node
 
         // Serialize the leaf and new leaf nodes after splitting
         serializeNode(leaf);
         serializeNode(newLeaf);
+
+        insertIntoParent(leaf, newLeaf.keys.get(0), newLeaf, path);
     }
 
     private static <T extends Comparable<T>> int getInsertIndex(T key, Class<T> type, List<T> allKeys) throws InvalidTypeException {
@@ -341,70 +421,68 @@ public class BPlusTree<T extends Comparable<T>> implements Iterable<Map.Entry<T,
         return insertIndex;
     }
 
+    /**
+     * Link a node that was just split to its new right sibling through their parent,
+     * growing a new root when the split node was the root.
+     *
+     * @param left The node that was split.
+     * @param separator The first key of the right subtree.
+     * @param right The new right sibling.
+     * @param path The internal nodes above the split node, nearest parent on top.
+     */
+    private void insertIntoParent(BPlusTreeNode<T> left, T separator, BPlusTreeNode<T> right, Deque<BPlusTreeNode<T>> path) throws InvalidTypeException {
+        if (path.isEmpty()) {
+            BPlusTreeNode<T> newRoot = newNode(false);
+            newRoot.keys.add(separator);
+            newRoot.childrenOffsets.add(left.offset);
+            newRoot.childrenOffsets.add(right.offset);
+            root = newRoot;
+            height++;
+            serializeNode(newRoot);
+            writeHeader();
+            return;
+        }
+
+        BPlusTreeNode<T> parent = path.pop();
+        int index = parent.childrenOffsets.indexOf(left.offset);
+        parent.keys.add(index, separator);
+        parent.childrenOffsets.add(index + 1, right.offset);
+
+        // Split the internal node if needed
+        if (parent.keys.size() > order - 1) {
+            splitInternalNode(parent, path);
+        } else {
+            serializeNode(parent);
+        }
+    }
+
 
     /**
      * Split an internal node and distribute its keys and children between the original and new internal nodes.
+     * The middle key moves up into the parent.
      *
      * @param node The internal node to split.
+     * @param path The internal nodes above the node, nearest parent on top.
      */
-    private void splitInternalNode(BPlusTreeNode<T> node) throws InvalidTypeException {
-        int t = (order - 1) / 2; // Number of keys in each split node
-        BPlusTreeNode<T> newInternal = new BPlusTreeNode<>(false, allocateNode(false),order);
+    private void splitInternalNode(BPlusTreeNode<T> node, Deque<BPlusTreeNode<T>> path) throws InvalidTypeException {
+        BPlusTreeNode<T> newInternal = newNode(false);
 
         // Calculate the middle index
-        int mid = t;
+        int mid = (order - 1) / 2;
+        T middleKey = node.keys.get(mid);
 
         // Move the keys and children to the new node
         newInternal.keys.addAll(node.keys.subList(mid + 1, node.keys.size()));
         newInternal.childrenOffsets.addAll(node.childrenOffsets.subList(mid + 1, node.childrenOffsets.size()));
 
         // Adjust the current node
-        node.keys = new ArrayList<>(node.keys.subList(0, mid + 1));
+        node.keys = new ArrayList<>(node.keys.subList(0, mid));
         node.childrenOffsets = new ArrayList<>(node.childrenOffsets.subList(0, mid + 1));
 
-        if (node == root) {
-            // Create a new root
-            BPlusTreeNode<T> newRoot = new BPlusTreeNode<>(false, allocateNode(false),order);
-            newRoot.keys.add(node.keys.get(mid));
-            newRoot.childrenOffsets.add(node.offset);
-            newRoot.childrenOffsets.add(newInternal.offset);
-            root = newRoot;
-            serializeNode(newRoot);
-        } else {
-            BPlusTreeNode<T> parent = findParent(root, node);
-            int index = parent.childrenOffsets.indexOf(node.offset);
-            parent.keys.add(index, node.keys.get(mid));
-            parent.childrenOffsets.add(index + 1, newInternal.offset);
-
-            if (parent.keys.size() > order - 1) {
-                splitInternalNode(parent);
-            } else {
-                serializeNode(parent);
-            }
-        }
         serializeNode(node);
         serializeNode(newInternal);
-    }
 
-    /**
-     * Find the parent of a given child node.
-     *
-     * @param node The current node.
-     * @param child The child node.
-     * @return The parent node, or null if not found.
-     */
-    private BPlusTreeNode<T> findParent(BPlusTreeNode<T> node, BPlusTreeNode<T> child) throws InvalidTypeException {
-        if (!node.isLeaf && node.childrenOffsets.contains(child.offset)) {
-            return node;
-        }
-        for (Integer offset : node.childrenOffsets) {
-            BPlusTreeNode<T> n = BPlusTreeNode.deserialize(buffer, offset,order,type);
-            BPlusTreeNode<T> foundNode = findParent(n, child);
-            if (foundNode != null) {
-                return foundNode;
-            }
-        }
-        return null;
+        insertIntoParent(node, middleKey, newInternal, path);
     }
 
     /**
@@ -414,58 +492,104 @@ public class BPlusTree<T extends Comparable<T>> implements Iterable<Map.Entry<T,
      * @return The value associated with the key, or null if the key is not found.
      */
     public String search(T key) throws InvalidTypeException {
-        BPlusTreeNode<T> leaf = findLeaf(root, key,type);
+        SEARCHES.increment();
+        BPlusTreeNode<T> leaf = findLeaf(root, key, null);
         int index = leaf.keys.indexOf(key);
         return index != -1 ? leaf.values.get(index) : null;
     }
 
+    /**
+     * Search like {@link #search}, but read nodes through a private view of the buffer, so any
+     * number of threads may search at once. Nothing may modify the tree meanwhile.
+     *
+     * @param key The key to search for.
+     * @return The value associated with the key, or null if the key is not found.
+     */
+    public String searchShared(T key) {
+        SEARCHES.increment();
+        ByteBuffer view = buffer.duplicate().order(buffer.order());
+        BPlusTreeNode<T> node = root;
+        while (!node.isLeaf) {
+            node = readNode(view, node.childrenOffsets.get(childIndex(node, key)));
+        }
+        int index = node.keys.indexOf(key);
+        return index != -1 ? node.values.get(index) : null;
+    }
+
     /**
      * Delete a key from the B+ Tree.
      *
      * @param key The key to delete.
      */
     public void delete(T key) throws InvalidTypeException {
-        BPlusTreeNode<T> leaf = findLeaf(root, key,type);
+        DELETES.increment();
+        Deque<BPlusTreeNode<T>> path = new ArrayDeque<>();
+        BPlusTreeNode<T> leaf = findLeaf(root, key, path);
         int index = leaf.keys.indexOf(key);
 
         if (index != -1) {
             leaf.keys.remove(index);
             leaf.values.remove(index);
+            serializeNode(leaf);
             // Handle underflow if necessary
-            if (leaf.keys.size() < (order - 1) / 2 && leaf != root) {
-                handleUnderflow(leaf);
+            if (leaf != root && leaf.keys.size() < minKeys()) {
+                handleUnderflow(leaf, path);
             }
         }
-        serializeNode(leaf);
+    }
+
+    private int minKeys() {
+        return (order - 1) / 2;
     }
 
     /**
      * Handle the underflow situation in a node by either borrowing from or merging with siblings.
      *
      * @param node The node with underflow.
+     * @param path The internal nodes above the node, nearest parent on top.
      */
-    private void handleUnderflow(BPlusTreeNode<T> node) throws InvalidTypeException {
-        BPlusTreeNode<T> parent = findParent(root, node);
+    private void handleUnderflow(BPlusTreeNode<T> node, Deque<BPlusTreeNode<T>> path) throws InvalidTypeException {
+        BPlusTreeNode<T> parent = path.pop();
         int index = parent.childrenOffsets.indexOf(node.offset);
 
-        if (index > 0) {
-            BPlusTreeNode<T> leftSibling = BPlusTreeNode.deserialize(buffer, parent.childrenOffsets.get(index - 1),order,type);
-            if (leftSibling.keys.size() > (order - 1) / 2) {
-                borrowFromLeftSibling(parent, index, node, leftSibling);
-            } else {
-                mergeWithLeftSibling(parent, index, node, leftSibling);
-            }
+        BPlusTreeNode<T> leftSibling = index > 0 ? readNode(parent.childrenOffsets.get(index - 1)) : null;
+        BPlusTreeNode<T> rightSibling = index < parent.childrenOffsets.size() - 1 ? readNode(parent.childrenOffsets.get(index + 1)) : null;
+
+        if (leftSibling != null && leftSibling.keys.size() > minKeys()) {
+            borrowFromLeftSibling(parent, index, node, leftSibling);
             serializeNode(leftSibling);
-        } else if (index < parent.childrenOffsets.size() - 1) {
-            BPlusTreeNode<T> rightSibling = BPlusTreeNode.deserialize(buffer, parent.childrenOffsets.get(index + 1),order,type);
-            if (rightSibling.keys.size() > (order - 1) / 2) {
-                borrowFromRightSibling(parent, index, node, rightSibling);
-            } else {
-                mergeWithRightSibling(parent, index, node, rightSibling);
-            }
+            serializeNode(node);
+            serializeNode(parent);
+            return;
+        }
+        if (rightSibling != null && rightSibling.keys.size() > minKeys()) {
+            borrowFromRightSibling(parent, index, node, rightSibling);
             serializeNode(rightSibling);
+            serializeNode(node);
+            serializeNode(parent);
+            return;
+        }
+
+        // Neither sibling can spare a key, so merge and take a key out of the parent
+        BPlusTreeNode<T> merged;
+        if (leftSibling != null) {
+            mergeWithLeftSibling(parent, index, node, leftSibling);
+            merged = leftSibling;
+        } else {
+            mergeWithRightSibling(parent, index, node, rightSibling);
+            merged = node;
+        }
+
+        if (parent == root) {
+            // Shrink the tree when the root has lost its last key
+            if (parent.keys.isEmpty()) {
+                root = merged;
+                height--;
+                writeHeader();
+            }
+        } else if (parent.keys.size() < minKeys()) {
+            handleUnderflow(parent, path);
         }
-        serializeNode(parent);
     }
 
     /**
@@ -477,17 +601,15 @@ public class BPlusTree<T extends Comparable<T>> implements Iterable<Map.Entry<T,
      * @param leftSibling The left sibling node.
      */
     private void borrowFromLeftSibling(BPlusTreeNode<T> parent, int index, BPlusTreeNode<T> node, BPlusTreeNode<T> leftSibling) {
+        int parentKeyIndex = index - 1;
         if (node.isLeaf) {
             // Leaf node: borrow a key-value pair from the left sibling
-            int parentKeyIndex = index - 1;
-
             T movingKey = leftSibling.keys.remove(leftSibling.keys.size() - 1);
             node.keys.add(0, movingKey);
             node.values.add(0, leftSibling.values.remove(leftSibling.values.size() - 1));
             parent.keys.set(parentKeyIndex, movingKey);
         } else {
-            // Internal node: borrow a key and child from the left sibling
-            int parentKeyIndex = index - 1;
+            // Internal node: rotate the separator down and the sibling's last key up
             T parentKey = parent.keys.get(parentKeyIndex);
 
             node.keys.add(0, parentKey);
@@ -508,22 +630,21 @@ public class BPlusTree<T extends Comparable<T>> implements Iterable<Map.Entry<T,
         int parentKeyIndex = index;
         if (node.isLeaf) {
             // Leaf node: borrow a key-value pair from the right sibling
-            T parentKey = parent.keys.get(parentKeyIndex);
-
-            node.keys.add(parentKey);
+            node.keys.add(rightSibling.keys.remove(0));
             node.values.add(rightSibling.values.remove(0));
+            parent.keys.set(parentKeyIndex, rightSibling.keys.get(0));
         } else {
-            // Internal node: borrow a key and child from the right sibling
+            // Internal node: rotate the separator down and the sibling's first key up
             T parentKey = parent.keys.get(parentKeyIndex);
 
             node.keys.add(parentKey);
             node.childrenOffsets.add(rightSibling.childrenOffsets.remove(0));
+            parent.keys.set(parentKeyIndex, rightSibling.keys.remove(0));
         }
-        parent.keys.set(parentKeyIndex, rightSibling.keys.remove(0));
     }
 
     /**
-     * Merge a node with its left sibling.
+     * Merge a node into its left sibling.
      *
      * @param parent The parent node.
      * @param index The index of the node in the parent's children list.
@@ -534,8 +655,15 @@ public class BPlusTree<T extends Comparable<T>> implements Iterable<Map.Entry<T,
         int parentKeyIndex = index - 1; // The index of the key in the parent separating the nodes
 
         // Combine the current node with the left sibling
-        leftSibling.keys.addAll(node.keys);
-        leftSibling.childrenOffsets.addAll(node.childrenOffsets);
+        if (node.isLeaf) {
+            leftSibling.keys.addAll(node.keys);
+            leftSibling.values.addAll(node.values);
+            leftSibling.nextLeafOffset = node.nextLeafOffset;
+        } else {
+            leftSibling.keys.add(parent.keys.get(parentKeyIndex));
+            leftSibling.keys.addAll(node.keys);
+            leftSibling.childrenOffsets.addAll(node.childrenOffsets);
+        }
 
         // Remove the key from the parent and the current node from the parent's children list
         parent.keys.remove(parentKeyIndex);
@@ -544,21 +672,10 @@ public class BPlusTree<T extends Comparable<T>> implements Iterable<Map.Entry<T,
         // Serialize the updated nodes
         serializeNode(leftSibling);
         serializeNode(parent);
-
-        // Handle the case where the parent node becomes underflow
-        if (parent.keys.size() < (order - 1) / 2 && parent != root) {
-            handleUnderflow(parent);
-        }
-
-        // Handle the case where the parent node is empty
-        if (parent.keys.isEmpty()) {
-            int midIndex = (leftSibling.keys.size() - 1) / 2;
-            parent.keys.add(leftSibling.keys.get(midIndex));
-        }
     }
 
     /**
-     * Merge a node with its right sibling.
+     * Merge a node's right sibling into it.
      *
      * @param parent The parent node.
      * @param index The index of the node in the parent's children list.
@@ -569,10 +686,13 @@ public class BPlusTree<T extends Comparable<T>> implements Iterable<Map.Entry<T,
         int parentKeyIndex = index; // The index of the parent key separating `node` and `rightSibling`
 
         // Merge the current node with the right sibling
-        node.keys.addAll(rightSibling.keys);
         if (node.isLeaf) {
+            node.keys.addAll(rightSibling.keys);
             node.values.addAll(rightSibling.values);
+            node.nextLeafOffset = rightSibling.nextLeafOffset;
         } else {
+            node.keys.add(parent.keys.get(parentKeyIndex));
+            node.keys.addAll(rightSibling.keys);
             node.childrenOffsets.addAll(rightSibling.childrenOffsets);
         }
 
@@ -583,17 +703,6 @@ public class BPlusTree<T extends Comparable<T>> implements Iterable<Map.Entry<T,
         // Serialize the updated nodes
         serializeNode(node);
         serializeNode(parent);
-
-        // Handle the case where parent node becomes underflow
-        if (parent.keys.size() < (order - 1) / 2 && parent != root) {
-            handleUnderflow(parent);
-        }
-
-        // Handle the case where the parent node is empty
-        if (parent.keys.isEmpty()) {
-            int midIndex = (rightSibling.keys.size() - 1) / 2;
-            parent.keys.add(rightSibling.keys.get(midIndex));
-        }
     }
 
     /**
@@ -664,7 +773,7 @@ public class BPlusTree<T extends Comparable<T>> implements Iterable<Map.Entry<T,
         // Recursively print child nodes for internal nodes
         if (!node.isLeaf) {
             for (Integer offset : node.childrenOffsets) {
-                BPlusTreeNode<T> child = BPlusTreeNode.deserialize(buffer, offset, order,type);
+                BPlusTreeNode<T> child = readNode(offset);
                 printTree(child, indent + "  ", node.offset);
             }
         }
@@ -718,7 +827,7 @@ public class BPlusTree<T extends Comparable<T>> implements Iterable<Map.Entry<T,
         // Recursively process child nodes for internal nodes
         if (!node.isLeaf) {
             for (Integer offset : node.childrenOffsets) {
-                BPlusTreeNode<T> child = BPlusTreeNode.deserialize(buffer, offset, order,type);
+                BPlusTreeNode<T> child = readNode(offset);
                 toString(child, indent + "  ", node.offset, sb);
             }
         }
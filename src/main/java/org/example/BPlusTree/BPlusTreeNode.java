@@ -4,6 +4,7 @@ import com.sun.jdi.InvalidTypeException;
 import org.example.Config.Config;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -14,16 +15,24 @@ public class BPlusTreeNode<T extends Comparable<T>> {
     public List<Integer> childrenOffsets; // Only for internal nodes
     public int offset;
     public final int order;
-    public BPlusTreeNode<T> nextLeaf; // Points to the next leaf node (only used in leaf nodes)
+    public final int keySize; // Maximum encoded size of a key in bytes
+    public final int valueSize; // Maximum encoded size of a value in bytes
+    public int nextLeafOffset; // Offset of the next leaf node, -1 if none (only used in leaf nodes)
 
     public BPlusTreeNode(boolean isLeaf, int offset, int order) {
+        this(isLeaf, offset, order, Config.keySize, Config.valueSize);
+    }
+
+    public BPlusTreeNode(boolean isLeaf, int offset, int order, int keySize, int valueSize) {
         this.isLeaf = isLeaf;
         this.keys = new ArrayList<>();
         this.values = new ArrayList<>();
         this.childrenOffsets = new ArrayList<>();
         this.offset = offset;
         this.order = order;
-        this.nextLeaf = null; // Default to null
+        this.keySize = keySize;
+        this.valueSize = valueSize;
+        this.nextLeafOffset = -1; // Default to no next leaf
     }
 
     @Override
@@ -34,6 +43,7 @@ public class BPlusTreeNode<T extends Comparable<T>> {
                 ", values=" + values +
                 ", childrenOffsets=" + childrenOffsets +
                 ", offset=" + offset +
+                ", nextLeafOffset=" + nextLeafOffset +
                 '}';
     }
 
@@ -52,30 +62,43 @@ public class BPlusTreeNode<T extends Comparable<T>> {
      * @return The size of the node in bytes.
      */
     public int getSize() {
-        int keySize = Config.keySize; // Size of each key
-        int offsetSize = Config.offsetSize; // Size of each offset
-        int valueSize = Config.valueSize; // Maximum size of each value (adjust as needed)
-        int nextLeaf = Config.nextLeaf;
+        return getSize(isLeaf, order, keySize, valueSize);
+    }
+
+    /**
+     * Calculate the fixed slot size of a node. Every key and value is stored with a 4 byte
+     * length prefix (integer keys are stored as-is), so the slot is large enough for a full
+     * node regardless of the actual key and value lengths.
+     *
+     * @param isLeaf Whether the node is a leaf.
+     * @param order The order of the tree.
+     * @param keySize The maximum encoded key size in bytes.
+     * @param valueSize The maximum encoded value size in bytes.
+     * @return The size of the node slot in bytes.
+     */
+    public static int getSize(boolean isLeaf, int order, int keySize, int valueSize) {
+        int header = 1 + Config.offsetSize; // isLeaf flag + key count
         int maxKeys = order - 1; // Maximum number of keys
-        int nodeSize;
+        int keySlot = Config.offsetSize + keySize; // Length prefix + key bytes
 
         if (isLeaf) {
-            // Size calculation for leaf nodes
-            nodeSize = (maxKeys * keySize) + (maxKeys * valueSize) + nextLeaf; // Adding space for nextLeaf pointer (4 bytes)
-        } else {
-            // Size calculation for internal nodes
-            nodeSize = (maxKeys * keySize) + (order * offsetSize) + (offsetSize * (maxKeys + 1));
+            // Keys, length-prefixed values and the nextLeaf pointer
+            return header + (maxKeys * keySlot) + (maxKeys * (Config.offsetSize + valueSize)) + Config.nextLeaf;
         }
-
-        return nodeSize;
+        // Keys and one child offset more than there are keys
+        return header + (maxKeys * keySlot) + (order * Config.offsetSize);
     }
 
     public static <T extends Comparable<T>> BPlusTreeNode<T> deserialize(ByteBuffer buffer, int offset, int order,Class<T> type){
+        return deserialize(buffer, offset, order, type, Config.keySize, Config.valueSize);
+    }
+
+    public static <T extends Comparable<T>> BPlusTreeNode<T> deserialize(ByteBuffer buffer, int offset, int order, Class<T> type, int keySize, int valueSize){
         // System.out.println("deserializing node at offset " + offset);
         buffer.position(offset);
         boolean isLeaf = buffer.get() == 1;
 
-        BPlusTreeNode<T> node = new BPlusTreeNode<>(isLeaf, offset, order);
+        BPlusTreeNode<T> node = new BPlusTreeNode<>(isLeaf, offset, order, keySize, valueSize);
 
         int keyCount = buffer.getInt();
         for (int i = 0; i < keyCount; i++) {
@@ -85,7 +108,7 @@ public class BPlusTreeNode<T extends Comparable<T>> {
                int keyLength = buffer.getInt();
                byte[] keyBytes = new byte[keyLength];
                buffer.get(keyBytes);
-               node.keys.add(type.cast(new String(keyBytes)));
+               node.keys.add(type.cast(new String(keyBytes, StandardCharsets.UTF_8)));
            }
         }
 
@@ -94,14 +117,11 @@ public class BPlusTreeNode<T extends Comparable<T>> {
                 int valueLength = buffer.getInt();
                 byte[] valueBytes = new byte[valueLength];
                 buffer.get(valueBytes);
-                node.values.add(new String(valueBytes));
+                node.values.add(new String(valueBytes, StandardCharsets.UTF_8));
             }
 
-            int nextLeafOffset = buffer.getInt();  // Offset of the next leaf node
-            // For leaf nodes, deserialize the nextLeaf pointer (if it exists)
-            if (nextLeafOffset != -1) {
-                node.nextLeaf = deserialize(buffer, nextLeafOffset, order,type);
-            }
+            // Only the offset of the next leaf is read; the leaf itself is loaded on demand
+            node.nextLeafOffset = buffer.getInt();
 
         } else {
             for (int i = 0; i <= keyCount; i++) {
@@ -122,7 +142,7 @@ public class BPlusTreeNode<T extends Comparable<T>> {
                buffer.putInt((Integer) key);
            }
            else if(key instanceof String){
-               byte[] keyBytes = ((String) key).getBytes();
+               byte[] keyBytes = ((String) key).getBytes(StandardCharsets.UTF_8);
                buffer.putInt(keyBytes.length);
                buffer.put(keyBytes);
            }
@@ -133,17 +153,13 @@ public class BPlusTreeNode<T extends Comparable<T>> {
 
         if (isLeaf) {
             for (String value : values) {
-                byte[] valueBytes = value.getBytes();
+                byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
                 buffer.putInt(valueBytes.length);
                 buffer.put(valueBytes);
             }
 
-            // Serialize the nextLeaf pointer (if exists)
-            if (nextLeaf != null) {
-                buffer.putInt(nextLeaf.offset);  // Assuming you store the next leaf's offset
-            } else {
-                buffer.putInt(-1);  // Indicating no next leaf
-            }
+            // Serialize the nextLeaf pointer (-1 indicates no next leaf)
+            buffer.putInt(nextLeafOffset);
 
         } else {
             for (int offset : childrenOffsets) {
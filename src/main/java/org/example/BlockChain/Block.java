@@ -2,37 +2,140 @@ package org.example.BlockChain;
 
 import com.sun.jdi.InvalidTypeException;
 import org.example.BPlusTree.BPlusTree;
+import org.example.Config.Config;
 import org.example.Transaction.Transaction;
 import org.example.Util.HashUtil;
 
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public class Block {
     private String previousBlockHash;  // Link to the previous block
     private String blockHash;          // Unique hash of the block
     private long timestamp;            // Block creation timestamp
-    private BPlusTree<String> transactions;       // B+ Tree to store key-value pairs in the block
+    private long nonce;                // Proof of work counter, set by the miner
+    private int difficultyBits;        // Leading zero bits the block hash must have
+    private BPlusTree<String> transactions;       // B+ Tree indexing the block's transactions by hash
+    private final List<Transaction> transactionList = new ArrayList<>(); // Transactions in block order
+    private byte[] merkleRoot;         // Cached Merkle root, null when stale
     public static final int MAX_BLOCK_SIZE = 1; // 1MB
+    public static final int TRANSACTION_KEY_SIZE = 64; // Fits a hex SHA-256 transaction hash
+    public static final int MAX_TRANSACTIONS = 2048; // Fits the tree even if every node holds a single key
 
     // Constructor
     public Block(String previousBlockHash) throws InvalidTypeException, NoSuchAlgorithmException {
         this.previousBlockHash = previousBlockHash;
         this.timestamp = Instant.now().getEpochSecond();
-        this.transactions = new BPlusTree<>(MAX_BLOCK_SIZE,3,String.class);
+        this.transactions = new BPlusTree<>(MAX_BLOCK_SIZE,3,String.class,TRANSACTION_KEY_SIZE,Config.valueSize);
         this.blockHash = calculateBlockHash();  // Calculate the block's hash
     }
 
-    // Method to calculate the block's hash based on the previous block's hash and timestamp
-    public String calculateBlockHash() throws NoSuchAlgorithmException {
-        String nonce = UUID.randomUUID().toString();
-        String dataToHash = nonce +previousBlockHash + timestamp + transactions.generateHashCode();
-        return HashUtil.computeSha256(String.valueOf(dataToHash.hashCode()));
+    /**
+     * Rebuild a block from a decoded header and its transactions. An all-zero previous hash
+     * marks the genesis block.
+     *
+     * @param header The block header.
+     * @param transactions The transactions in block order.
+     * @throws IllegalArgumentException If the transactions do not match the header's Merkle root.
+     */
+    public Block(BlockHeader header, List<Transaction> transactions) throws InvalidTypeException {
+        byte[] previous = header.getPreviousHash();
+        this.previousBlockHash = Arrays.equals(previous, new byte[HashUtil.SHA256_LENGTH]) ? null : HashUtil.toHex(previous);
+        this.timestamp = header.getTimestamp();
+        this.nonce = header.getNonce();
+        this.difficultyBits = header.getDifficultyBits();
+        this.transactions = new BPlusTree<>(MAX_BLOCK_SIZE,3,String.class,TRANSACTION_KEY_SIZE,Config.valueSize);
+        for (Transaction transaction : transactions) {
+            addTransaction(transaction);
+        }
+        if (!Arrays.equals(getMerkleRoot(), header.getMerkleRoot())) {
+            throw new IllegalArgumentException("Transactions do not match the block's Merkle root");
+        }
+        this.blockHash = calculateBlockHash();
     }
-    public void addTransaction(Transaction transaction) throws InvalidTypeException {
-        this.transactions.insert(String.valueOf(Math.random()),"!");
-       // this.transactions.insert(String.valueOf(transaction.transactionHash),transaction.toJson());
+
+    // Method to calculate the block's hash from its binary header
+    public String calculateBlockHash() {
+        return HashUtil.toHex(getHeader().hash());
+    }
+
+    /**
+     * Build the binary header from the block's current fields. The genesis block links to an all-zero hash.
+     *
+     * @return The header that is hashed for proof of work.
+     */
+    public BlockHeader getHeader() {
+        byte[] previous = previousBlockHash == null ? new byte[HashUtil.SHA256_LENGTH] : HashUtil.fromHex(previousBlockHash);
+        return new BlockHeader(BlockHeader.VERSION, previous, getMerkleRoot(), timestamp, difficultyBits, nonce);
+    }
+
+    /**
+     * The Merkle root of the block's transaction hashes, cached until the next transaction is added.
+     *
+     * @return The 32 byte Merkle root, all zeros for an empty block.
+     */
+    public byte[] getMerkleRoot() {
+        if (merkleRoot == null) {
+            List<byte[]> hashes = new ArrayList<>(transactionList.size());
+            for (Transaction transaction : transactionList) {
+                hashes.add(HashUtil.fromHex(transaction.transactionHash));
+            }
+            merkleRoot = computeMerkleRoot(hashes);
+        }
+        return merkleRoot.clone();
+    }
+
+    /**
+     * Compute a Merkle root by hashing pairs of nodes level by level, pairing the last node
+     * with itself on levels with an odd number of nodes.
+     *
+     * @param leaves The 32 byte leaf hashes.
+     * @return The 32 byte root, all zeros if there are no leaves.
+     */
+    public static byte[] computeMerkleRoot(List<byte[]> leaves) {
+        if (leaves.isEmpty()) {
+            return new byte[HashUtil.SHA256_LENGTH];
+        }
+        List<byte[]> level = leaves;
+        while (level.size() > 1) {
+            List<byte[]> parents = new ArrayList<>((level.size() + 1) / 2);
+            for (int i = 0; i < level.size(); i += 2) {
+                MessageDigest digest = HashUtil.sha256();
+                digest.update(level.get(i));
+                digest.update(level.get(Math.min(i + 1, level.size() - 1)));
+                parents.add(digest.digest());
+            }
+            level = parents;
+        }
+        return level.get(0).clone();
+    }
+
+    /**
+     * Add a transaction to the block, indexed by its hash in the block's tree.
+     *
+     * @param transaction The transaction to add.
+     * @return False if the block already contains the transaction.
+     */
+    public boolean addTransaction(Transaction transaction) throws InvalidTypeException {
+        if (this.transactions.search(transaction.transactionHash) != null) {
+            return false;
+        }
+        this.transactions.insert(transaction.transactionHash, String.valueOf(transactionList.size()));
+        transactionList.add(transaction);
+        merkleRoot = null;
+        return true;
+    }
+
+    /**
+     * @return True if the block's transaction tree may not have room for another transaction.
+     */
+    public boolean isFull() {
+        return !transactions.hasRoomForInsert();
     }
 
     // Getters
@@ -40,6 +143,17 @@ public class Block {
         return previousBlockHash;
     }
 
+    /**
+     * Link the block to its parent, e.g. once the parent has been mined. The block hash is
+     * recomputed for the new header.
+     *
+     * @param previousBlockHash The parent's hash.
+     */
+    public void setPreviousBlockHash(String previousBlockHash) {
+        this.previousBlockHash = previousBlockHash;
+        this.blockHash = calculateBlockHash();
+    }
+
     public String getBlockHash() {
         return blockHash;
     }
@@ -50,6 +164,26 @@ public class Block {
         return timestamp;
     }
 
+    public long getNonce() {
+        return nonce;
+    }
+
+    public void setNonce(long nonce) {
+        this.nonce = nonce;
+    }
+
+    public int getDifficultyBits() {
+        return difficultyBits;
+    }
+
+    public void setDifficultyBits(int difficultyBits) {
+        this.difficultyBits = difficultyBits;
+    }
+
+    public List<Transaction> getTransactionList() {
+        return Collections.unmodifiableList(transactionList);
+    }
+
     public BPlusTree getTransactions() {
         return transactions;
     }
@@ -60,6 +194,8 @@ public class Block {
                 "previousBlockHash='" + previousBlockHash + '\'' +
                 ", blockHash='" + blockHash + '\'' +
                 ", timestamp=" + timestamp +
+                ", nonce=" + nonce +
+                ", difficultyBits=" + difficultyBits +
                 ", transactions=" + transactions.toString() +
                 '}';
     }
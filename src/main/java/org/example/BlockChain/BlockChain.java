@@ -1,48 +1,321 @@
 package org.example.BlockChain;
 import com.sun.jdi.InvalidTypeException;
-import org.example.Transaction.Transaction;
+import org.example.Config.Config;
+import org.example.Miner;
+import org.example.Storage.BlockCache;
+import org.example.Storage.BlockStore;
+import org.example.Util.HashUtil;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 public class BlockChain {
 
     private List<Block> chain;
+    private final BlockStore store; // Holds the blocks, or null when they are only kept on the heap
+    private final int minDifficultyBits;
 
     public BlockChain() throws InvalidTypeException, NoSuchAlgorithmException {
+        this(Config.minDifficultyBits);
+    }
+
+    /**
+     * @param minDifficultyBits The leading zero bits every block after genesis must have.
+     */
+    public BlockChain(int minDifficultyBits) throws InvalidTypeException, NoSuchAlgorithmException {
+        this(createGenesisBlock(), minDifficultyBits);
+    }
+
+    /**
+     * Start an in-memory chain from a given genesis block, so that several chains, e.g. the nodes
+     * of one test network, agree on it.
+     *
+     * @param genesis The first block.
+     */
+    public BlockChain(Block genesis) {
+        this(genesis, Config.minDifficultyBits);
+    }
+
+    /**
+     * @param genesis The first block.
+     * @param minDifficultyBits The leading zero bits every block after genesis must have.
+     */
+    public BlockChain(Block genesis, int minDifficultyBits) {
+        this.minDifficultyBits = checkDifficulty(minDifficultyBits);
         chain = new ArrayList<>();
-        chain.add(createGenesisBlock());
+        chain.add(genesis);
+        store = null;
+    }
+
+    /**
+     * Keep the chain in a block store, so it survives a restart. Recently used blocks are kept
+     * in memory within the default {@link BlockCache} budget.
+     *
+     * @param store The store holding the blocks.
+     */
+    public BlockChain(BlockStore store) throws InvalidTypeException, NoSuchAlgorithmException, IOException {
+        this(store, Config.minDifficultyBits);
+    }
+
+    /**
+     * @param store The store holding the blocks.
+     * @param minDifficultyBits The leading zero bits every block after genesis must have.
+     */
+    public BlockChain(BlockStore store, int minDifficultyBits) throws InvalidTypeException, NoSuchAlgorithmException, IOException {
+        this(new BlockCache(store), minDifficultyBits);
     }
 
-    private Block createGenesisBlock() throws InvalidTypeException, NoSuchAlgorithmException {
+    /**
+     * Keep the chain in a block store read through a cache, so only the tip and recently used
+     * blocks are held in memory. An empty store is given a genesis block.
+     *
+     * @param cache The cache over the store holding the blocks.
+     */
+    public BlockChain(BlockCache cache) throws InvalidTypeException, NoSuchAlgorithmException, IOException {
+        this(cache, Config.minDifficultyBits);
+    }
+
+    /**
+     * @param cache The cache over the store holding the blocks.
+     * @param minDifficultyBits The leading zero bits every block after genesis must have.
+     */
+    public BlockChain(BlockCache cache, int minDifficultyBits) throws InvalidTypeException, NoSuchAlgorithmException, IOException {
+        this.minDifficultyBits = checkDifficulty(minDifficultyBits);
+        if (cache.getStore().size() == 0) {
+            cache.append(createGenesisBlock());
+        }
+        chain = new StoredBlocks(cache);
+        store = cache.getStore();
+    }
+
+    private static int checkDifficulty(int difficultyBits) {
+        if (difficultyBits < 0 || difficultyBits > HashUtil.SHA256_LENGTH * 8) {
+            throw new IllegalArgumentException("Difficulty must be between 0 and 256 bits");
+        }
+        return difficultyBits;
+    }
+
+    private static Block createGenesisBlock() throws InvalidTypeException, NoSuchAlgorithmException {
         // The first block (genesis block) doesn't have any previous hash
         return new Block(null);
     }
 
-    // Check if the current block is full
-    private boolean isCurrentBlockFull() {
-        Block currentBlock = chain.get(chain.size() - 1);
-        return currentBlock.getTransactions().lastAllocatedEndOffset >= (1024 * 1024) * Block.MAX_BLOCK_SIZE;
+    /**
+     * Start a block on top of the current tip. The block is not part of the chain until it is
+     * mined and passed to {@link #addBlock(Block)}.
+     *
+     * @return An empty block linked to the tip.
+     */
+    public synchronized Block createBlock() throws InvalidTypeException, NoSuchAlgorithmException {
+        Block tip = getTip();
+        tip.setBlockHash(tip.calculateBlockHash());
+        return new Block(tip.getBlockHash());
     }
 
-    // Add a transaction to the blockchain
-    public void addTransaction(Transaction transaction) throws InvalidTypeException, NoSuchAlgorithmException {
-        // Check if the current block is full
-        if (isCurrentBlockFull()) {
-            createNewBlock();  // Create a new block if the current one is full
+    /**
+     * Append a mined block. It must link to the current tip, its difficulty must be at least the
+     * chain's minimum, and its hash must match its header and meet that difficulty.
+     *
+     * @param block The block to append.
+     * @throws IllegalArgumentException If the block does not extend the chain.
+     */
+    public synchronized void addBlock(Block block) {
+        String tipHash = getTip().calculateBlockHash();
+        if (!tipHash.equals(block.getPreviousBlockHash())) {
+            throw new IllegalArgumentException("Block does not extend the tip " + tipHash);
         }
+        if (block.getDifficultyBits() < minDifficultyBits) {
+            throw new IllegalArgumentException("Block difficulty of " + block.getDifficultyBits()
+                    + " bits is below the chain's minimum of " + minDifficultyBits);
+        }
+        String hash = block.calculateBlockHash();
+        if (!hash.equals(block.getBlockHash()) || !Miner.meetsDifficulty(HashUtil.fromHex(hash), block.getDifficultyBits())) {
+            throw new IllegalArgumentException("Block hash " + block.getBlockHash() + " is not valid proof of work");
+        }
+        chain.add(block);
+    }
+
+    /**
+     * Drop the blocks above a height, e.g. when a branch with more work replaces them. Genesis
+     * is always kept.
+     *
+     * @param height The height of the new tip.
+     * @return The dropped blocks, lowest first.
+     */
+    public synchronized List<Block> truncate(int height) {
+        Objects.checkIndex(height, chain.size());
+        List<Block> top = chain.subList(height + 1, chain.size());
+        List<Block> dropped = new ArrayList<>(top);
+        top.clear();
+        return dropped;
+    }
+
+    /**
+     * Validate every block's proof of work, transactions and link to its parent. A stored chain
+     * is only validated above its last checkpoint, which is then advanced.
+     *
+     * @param validator The validator to run.
+     * @return The outcome, including the validation rate.
+     */
+    public ChainValidator.Result validateChain(ChainValidator validator) throws IOException {
+        return store != null ? validator.validate(store) : validator.validate(getBlocks());
+    }
+
+    /**
+     * @return The leading zero bits every block after genesis must have.
+     */
+    public int getMinDifficultyBits() {
+        return minDifficultyBits;
+    }
 
-        // Add the transaction to the B+ Tree of the last block
-        Block lastBlock = chain.get(chain.size() - 1);
-        lastBlock.addTransaction(transaction);
+    public synchronized Block getTip() {
+        return chain.get(chain.size() - 1);
     }
 
-    // Create a new block and add it to the blockchain
-    private void createNewBlock() throws InvalidTypeException, NoSuchAlgorithmException {
-        Block previousBlock = chain.get(chain.size() - 1);
-        Block newBlock = new Block(previousBlock.getBlockHash());
-        chain.add(newBlock);
+    /**
+     * @return The number of blocks after genesis.
+     */
+    public synchronized int getHeight() {
+        return chain.size() - 1;
+    }
+
+    /**
+     * @param hash The block's hash.
+     * @return The block on the chain with that hash, or null if there is none.
+     */
+    public synchronized Block getBlock(String hash) throws InvalidTypeException {
+        int height = getHeight(hash);
+        return height < 0 ? null : chain.get(height);
+    }
+
+    /**
+     * @param hash The block's hash.
+     * @return The height of the block on the chain with that hash, or -1 if there is none.
+     */
+    public synchronized int getHeight(String hash) throws InvalidTypeException {
+        if (store != null) {
+            return store.getHeight(hash);
+        }
+        for (int height = chain.size() - 1; height >= 0; height--) {
+            if (hash.equals(chain.get(height).calculateBlockHash())) {
+                return height;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Read a block's header. A stored block's header is read from its encoding without decoding
+     * the transactions.
+     *
+     * @param height The block's height.
+     * @return The block's header.
+     */
+    public synchronized BlockHeader getHeader(int height) throws IOException {
+        if (store != null) {
+            return BlockHeader.readFrom(store.getEncoded(height).position(BlockCodec.HEADER_OFFSET));
+        }
+        return chain.get(height).getHeader();
+    }
+
+    /**
+     * Encode a block for a peer. A stored block's encoding is copied as it is.
+     *
+     * @param height The block's height.
+     * @return The block in {@link BlockCodec} form.
+     */
+    public synchronized byte[] getEncoded(int height) throws IOException {
+        if (store != null) {
+            ByteBuffer encoded = store.getEncoded(height);
+            byte[] bytes = new byte[encoded.remaining()];
+            encoded.get(bytes);
+            return bytes;
+        }
+        return BlockCodec.encode(chain.get(height));
+    }
+
+    /**
+     * @return The blocks from genesis to tip.
+     */
+    public List<Block> getBlocks() {
+        return Collections.unmodifiableList(chain);
+    }
+
+    /**
+     * The blocks of a {@link BlockStore} as a list, read through a {@link BlockCache}. The tip
+     * is always kept decoded, since every new block is checked against it.
+     */
+    private static class StoredBlocks extends AbstractList<Block> {
+        private final BlockCache cache;
+        private final BlockStore store;
+        private Block tip;
+
+        StoredBlocks(BlockCache cache) throws InvalidTypeException, IOException {
+            this.cache = cache;
+            this.store = cache.getStore();
+            this.tip = cache.get(store.size() - 1);
+        }
+
+        @Override
+        public Block get(int height) {
+            if (height == store.size() - 1) {
+                return tip;
+            }
+            try {
+                return cache.get(height);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InvalidTypeException e) {
+                throw new IllegalStateException("Stored block " + height + " cannot be decoded", e);
+            }
+        }
+
+        @Override
+        public void add(int height, Block block) {
+            if (height != size()) {
+                throw new UnsupportedOperationException("Blocks can only be appended");
+            }
+            try {
+                cache.append(block);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InvalidTypeException e) {
+                throw new IllegalStateException("Block cannot be indexed", e);
+            }
+            tip = block;
+            modCount++;
+        }
+
+        @Override
+        protected void removeRange(int fromHeight, int toHeight) {
+            if (toHeight != size()) {
+                throw new UnsupportedOperationException("Only the blocks at the top can be removed");
+            }
+            if (fromHeight == toHeight) {
+                return;
+            }
+            try {
+                cache.truncate(fromHeight - 1);
+                tip = cache.get(fromHeight - 1);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InvalidTypeException e) {
+                throw new IllegalStateException("Stored blocks cannot be truncated", e);
+            }
+            modCount++;
+        }
+
+        @Override
+        public int size() {
+            return store.size();
+        }
     }
 
     @Override
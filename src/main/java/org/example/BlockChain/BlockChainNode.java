@@ -1,73 +1,367 @@
 package org.example.BlockChain;
 import com.sun.jdi.InvalidTypeException;
-import org.example.MessageProtocol.Message;
+import org.example.Config.Config;
+import org.example.Mempool.Mempool;
+import org.example.Metrics.Metrics;
 import org.example.Miner;
+import org.example.P2P.BlockSync;
+import org.example.P2P.ConnectionListener;
+import org.example.P2P.Gossip;
 import org.example.P2P.P2PNode;
+import org.example.P2P.PeerConnections;
 import org.example.P2P.PeerManager;
+import org.example.State.BlockExecutor;
+import org.example.State.WorldState;
+import org.example.Storage.BlockStore;
 import org.example.Transaction.Transaction;
-import org.example.Transaction.TransactionValidator;
+import org.example.Util.Ed25519;
+import org.example.Util.HashUtil;
 
 import java.io.*;
-import java.net.*;
+import java.nio.file.Path;
+import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
-public class BlockChainNode {
-    private static final int PORT = 5000;
-    private static BlockChain blockchain;
+/**
+ * A full node: the chain, world state and mempool, the peer-to-peer stack that gossips
+ * transactions and blocks and syncs the chain, and optionally a block producer. Nodes hold no
+ * static state, so several can run in one process, e.g. in the network simulator.
+ * <p>
+ * Every block, whether gossiped, synced or produced, goes through a {@link BlockTree} rooted at
+ * the chain's tip when the node was created. The tree executes blocks against the world state,
+ * each block's transactions in parallel through a {@link BlockExecutor}, and follows the branch
+ * with the most work; the chain is then rewound and extended to match the tree's head, and the
+ * transactions of rewound blocks go back to the mempool.
+ */
+public class BlockChainNode implements Closeable {
+    private static final int PORT = Config.p2pPort;
+    private static final int WORLD_STATE_MB = 64;
+    private static final Path BLOCK_DIRECTORY = Path.of("blocks");
 
-    static {
-        try {
-            blockchain = new BlockChain();
-        } catch (InvalidTypeException | NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
+    private final BlockChain blockchain;
+    private final WorldState worldState;
+    private final BlockExecutor executor;
+    private final BlockTree tree;
+    private final int treeBase; // The chain height of the tree's root
+    private final Miner miner;
+    private final Mempool mempool = new Mempool();
+    private final PeerManager peerManager = new PeerManager();
+    private final Gossip gossip;
+    private final BlockSync sync;
+    private final P2PNode p2pNode;
+    private final PeerConnections outbound;
+    private final List<Consumer<Block>> blockListeners = new CopyOnWriteArrayList<>();
+    private BlockProducer producer;
+
+    public BlockChainNode(BlockChain blockchain, WorldState worldState, Miner miner, int port) throws IOException {
+        this(blockchain, worldState, miner, port, UnaryOperator.identity());
+    }
+
+    /**
+     * @param blockchain The chain blocks are appended to.
+     * @param worldState The state after the chain's tip, which every block added is executed against.
+     * @param miner The miner for produced blocks.
+     * @param port The port to listen on, or 0 for any free port.
+     * @param network Wraps the node's connection listener, e.g. to delay its messages in a simulation.
+     */
+    public BlockChainNode(BlockChain blockchain, WorldState worldState, Miner miner, int port, UnaryOperator<ConnectionListener> network) throws IOException {
+        this.blockchain = blockchain;
+        this.worldState = worldState;
+        this.executor = new BlockExecutor(worldState);
+        this.tree = new BlockTree(blockchain.getTip(), worldState, blockchain.getMinDifficultyBits(), executor);
+        this.treeBase = blockchain.getHeight();
+        this.miner = miner;
+        this.gossip = new Gossip(new NodeInventory(), blockchain.getMinDifficultyBits());
+        // Every peer is also asked for the blocks we lack, headers first
+        this.sync = new BlockSync(blockchain);
+        sync.setAppender(block -> {
+            BlockTree.AddResult result = addToTree(block, false);
+            return result != BlockTree.AddResult.INVALID && result != BlockTree.AddResult.ORPHAN;
+        });
+        this.p2pNode = new P2PNode(port, Config.eventLoopThreads, network.apply(ConnectionListener.all(peerManager, gossip, sync)));
+        this.outbound = new PeerConnections(p2pNode);
+        // The last node created in a process is the one its gauges describe
+        Metrics.gauge("mempool.size", mempool::size);
+        Metrics.gauge("mempool.bytes", mempool::getBytes);
+        Metrics.gauge("chain.height", blockchain::getHeight);
+        Metrics.gauge("miner.hashrate", miner::getHashrate);
+        Metrics.gauge("p2p.peers", () -> peerManager.getBestPeers(Integer.MAX_VALUE).size());
+        Metrics.gauge("p2p.port", p2pNode::getPort);
+    }
+
+    /**
+     * Start connecting to peers, beginning with the bootstrap peers; more are learned from them.
+     *
+     * @param bootstrapPeers Addresses as {@code host:port}.
+     */
+    public void start(Collection<String> bootstrapPeers) {
+        for (String peer : bootstrapPeers) {
+            peerManager.addPeer(peer);
         }
+        peerManager.start(p2pNode, outbound);
+        // Block requests go to the peers expected to deliver fastest
+        sync.setRanking(peerManager::estimatedMillis);
     }
 
-    private static PeerManager peerManager = new PeerManager();
+    /**
+     * Produce blocks from the mempool and announce every new block to peers. When a block from a
+     * peer takes the head, the producer cancels the block it is mining, abandons the ones in
+     * flight and starts again on the new head; their transactions stay in the mempool.
+     *
+     * @param policy When to seal a block.
+     */
+    public synchronized void startProducing(SealingPolicy policy) {
+        if (producer != null) {
+            throw new IllegalStateException("Node is already producing blocks");
+        }
+        producer = new BlockProducer(blockchain, mempool, worldState, miner, policy);
+        // A produced block only misses the head if a peer's block took it, which restarts the producer
+        producer.setAppender((block, changes) -> {
+            BlockTree.AddResult result = addToTree(block, true);
+            return result == BlockTree.AddResult.EXTENDED || result == BlockTree.AddResult.REORGANIZED;
+        });
+        producer.addListener(gossip::announceBlock);
+        producer.start();
+    }
 
-    public static void main(String[] args) {
+    /**
+     * Add a block to the tree, then rewind and extend the chain to the tree's head. Transactions
+     * of rewound blocks are offered to the mempool again before those of the new blocks are
+     * removed from it.
+     *
+     * @param block A block from a peer or the producer.
+     * @param produced True if the producer made the block; a peer's block that moves the head
+     *                 restarts the producer on it.
+     * @return Where the block ended up in the tree.
+     */
+    private BlockTree.AddResult addToTree(Block block, boolean produced) {
+        BlockTree.AddResult result;
+        List<Block> rewound;
+        List<Block> appended = new ArrayList<>();
+        synchronized (tree) {
+            try {
+                result = tree.add(block);
+            } catch (InvalidTypeException e) {
+                return BlockTree.AddResult.INVALID;
+            }
+            int height = treeBase + tree.getHeadHeight();
+            for (Block head = tree.getHead(); !isOnChain(head, height); head = tree.getBlock(head.getPreviousBlockHash())) {
+                appended.add(head);
+                height--;
+            }
+            rewound = blockchain.truncate(height);
+            Collections.reverse(appended);
+            for (Block added : appended) {
+                blockchain.addBlock(added);
+            }
+        }
+        for (Block dropped : rewound) {
+            dropped.getTransactionList().forEach(mempool::add);
+        }
+        for (Block added : appended) {
+            mempool.removeAll(added.getTransactionList());
+            notifyBlock(added);
+        }
+        if (!produced && !appended.isEmpty()) {
+            restartProducer();
+        }
+        return result;
+    }
+
+    // The blocks in the producer's pipeline no longer extend the head
+    private synchronized void restartProducer() {
+        if (producer != null) {
+            try {
+                producer.restart();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private boolean isOnChain(Block block, int height) {
         try {
-            // Start listening for incoming connections
-            P2PNode p2pNode = new P2PNode();
-           Thread p2pThread = new Thread(p2pNode);
-            p2pThread.start();
+            return height <= blockchain.getHeight()
+                    && HashUtil.toHex(blockchain.getHeader(height).hash()).equals(block.calculateBlockHash());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-            // Add a bootstrap peer (for simplicity, we manually add one peer)
-            peerManager.addPeer(peerManager.getBootstrapPeer());
+    /**
+     * Add a transaction to the mempool and announce it to peers.
+     *
+     * @param transaction A signed transaction.
+     * @return What the mempool did with it.
+     */
+    public Mempool.AddResult submit(Transaction transaction) {
+        Mempool.AddResult result = mempool.add(transaction);
+        if (result == Mempool.AddResult.ADDED || result == Mempool.AddResult.REPLACED) {
+            gossip.announceTransaction(transaction);
+        }
+        return result;
+    }
 
-            // Simulate adding transactions
-            Transaction transaction = new Transaction("Alice", "Bob", 10,System.currentTimeMillis());
-            if (TransactionValidator.validateTransaction(transaction)) {
-                blockchain.addTransaction(transaction);
-            }
+    /**
+     * @param listener Called with every block added to this node's chain, whether produced or
+     *                 received from a peer.
+     */
+    public void addBlockListener(Consumer<Block> listener) {
+        blockListeners.add(listener);
+    }
+
+    private void notifyBlock(Block block) {
+        for (Consumer<Block> listener : blockListeners) {
+            listener.accept(block);
+        }
+    }
+
+    public int getPort() {
+        return p2pNode.getPort();
+    }
 
-            // Start mining and adding blocks to the blockchain
-            Block block = blockchain.createBlock();
-            String minedHash = Miner.mine(block);
-            blockchain.addBlock(block);
+    public BlockChain getBlockchain() {
+        return blockchain;
+    }
+
+    public WorldState getWorldState() {
+        return worldState;
+    }
+
+    public BlockTree getTree() {
+        return tree;
+    }
+
+    public Mempool getMempool() {
+        return mempool;
+    }
+
+    public Gossip getGossip() {
+        return gossip;
+    }
 
-            // Broadcast the new block to peers
-            String blockMessage = new Message(Message.MessageType.NEW_BLOCK, minedHash).toString();
-            for (String peer : peerManager.getPeers()) {
-                sendMessageToPeer(peer, blockMessage);
+    public BlockSync getSync() {
+        return sync;
+    }
+
+    public PeerManager getPeerManager() {
+        return peerManager;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (producer != null) {
+                try {
+                    producer.stop();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                producer = null;
             }
+        }
+        peerManager.close();
+        gossip.close();
+        sync.close();
+        outbound.close();
+        p2pNode.close();
+        miner.shutdown();
+        executor.shutdown();
+    }
 
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (NoSuchAlgorithmException | InvalidTypeException e) {
+    public static void main(String[] args) {
+        try {
+            BlockChain blockchain = new BlockChain(new BlockStore(BLOCK_DIRECTORY));
+            // Only the blocks above the last checkpoint are validated again on a restart
+            ChainValidator validator = new ChainValidator();
+            ChainValidator.Result validation = blockchain.validateChain(validator);
+            validator.shutdown();
+            System.out.println(validation);
+            if (!validation.valid()) {
+                throw new IllegalStateException("Stored chain is invalid at height " + validation.invalidHeight());
+            }
+            WorldState worldState = new WorldState(WORLD_STATE_MB);
+
+            // Start listening for incoming connections
+            int port = args.length > 0 ? Integer.parseInt(args[0]) : PORT;
+            BlockChainNode node = new BlockChainNode(blockchain, worldState, new Miner(), port);
+            // Bootstrap peers are given after the port, or come from the config
+            node.start(args.length > 1 ? Arrays.asList(args).subList(1, args.length) : Config.bootstrapPeers);
+
+            // Simulate a funded account sending a transaction
+            KeyPair alice = Ed25519.generateKeyPair();
+            String aliceAddress = Transaction.addressOf(alice.getPublic());
+            worldState.credit(aliceAddress, 100);
+            worldState.commit();
+            Transaction transaction = new Transaction(aliceAddress, "Bob", 10, 0, System.currentTimeMillis(), 0);
+            transaction.sign(alice);
+            node.submit(transaction);
+
+            node.startProducing(SealingPolicy.DEFAULT);
+            Metrics.registerMBean();
+            Metrics.startReporter(Config.metricsReportMillis);
+
+            // The transport and producer threads are daemons, so the main thread keeps the node alive
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    node.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+            Thread.currentThread().join();
+        } catch (InvalidTypeException | NoSuchAlgorithmException | IOException e) {
             throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    private static void sendMessageToPeer(String peerAddress, String message) {
-        try {
-            Socket socket = new Socket(peerAddress.split(":")[0], Integer.parseInt(peerAddress.split(":")[1]));
-            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-            out.println(message);
-            socket.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+    // Gossiped transactions go to the mempool and blocks to the tree
+    private class NodeInventory implements Gossip.Inventory {
+        @Override
+        public boolean addTransaction(Transaction transaction) {
+            Mempool.AddResult result = mempool.add(transaction);
+            return result == Mempool.AddResult.ADDED || result == Mempool.AddResult.REPLACED;
+        }
+
+        @Override
+        public Transaction getTransaction(String hash) {
+            return mempool.get(hash);
+        }
+
+        @Override
+        public boolean addBlock(Block block) {
+            BlockTree.AddResult result = addToTree(block, false);
+            // Blocks on a side branch are relayed too, so peers can switch once it has the most work
+            return result == BlockTree.AddResult.EXTENDED || result == BlockTree.AddResult.REORGANIZED
+                    || result == BlockTree.AddResult.SIDE_BRANCH;
+        }
+
+        @Override
+        public void forEachTransaction(Consumer<Transaction> action) {
+            mempool.forEach(action);
+        }
+
+        @Override
+        public Block getBlock(String hash) {
+            Block block = tree.getBlock(hash);
+            if (block != null) {
+                return block;
+            }
+            try {
+                return blockchain.getBlock(hash);
+            } catch (InvalidTypeException e) {
+                return null;
+            }
         }
     }
 }
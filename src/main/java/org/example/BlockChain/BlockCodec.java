@@ -0,0 +1,80 @@
+package org.example.BlockChain;
+
+import com.sun.jdi.InvalidTypeException;
+import org.example.Transaction.Transaction;
+import org.example.Transaction.TransactionCodec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Canonical binary encoding of a {@link Block}, used for storage and the network.
+ * <p>
+ * Layout (big-endian):
+ * version (1) | header ({@link BlockHeader#SIZE}) | transaction count (4) | transactions ({@link TransactionCodec})
+ */
+public class BlockCodec {
+    public static final byte VERSION = 1;
+    static final int HEADER_OFFSET = 1;
+    static final int COUNT_OFFSET = HEADER_OFFSET + BlockHeader.SIZE;
+    static final int TRANSACTIONS_OFFSET = COUNT_OFFSET + Integer.BYTES;
+
+    /**
+     * @param block The block to measure.
+     * @return The number of bytes {@link #encode(Block, ByteBuffer)} writes.
+     */
+    public static int encodedSize(Block block) {
+        int size = TRANSACTIONS_OFFSET;
+        for (Transaction transaction : block.getTransactionList()) {
+            size += TransactionCodec.encodedSize(transaction);
+        }
+        return size;
+    }
+
+    public static byte[] encode(Block block) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize(block));
+        encode(block, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Write the block at the buffer's position, advancing it.
+     *
+     * @param block The block to encode.
+     * @param buffer The buffer to write to.
+     */
+    public static void encode(Block block, ByteBuffer buffer) {
+        List<Transaction> transactions = block.getTransactionList();
+        buffer.put(VERSION);
+        block.getHeader().writeTo(buffer);
+        buffer.putInt(transactions.size());
+        for (Transaction transaction : transactions) {
+            TransactionCodec.encode(transaction, buffer);
+        }
+    }
+
+    /**
+     * Read a block at the buffer's position, advancing it. The transactions are checked
+     * against the header's Merkle root.
+     *
+     * @param buffer The buffer to read from.
+     * @return The decoded block.
+     */
+    public static Block decode(ByteBuffer buffer) throws InvalidTypeException {
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported block encoding version " + version);
+        }
+        BlockHeader header = BlockHeader.readFrom(buffer);
+        int count = buffer.getInt();
+        if (count < 0 || count > Block.MAX_TRANSACTIONS || count > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid transaction count " + count);
+        }
+        List<Transaction> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            transactions.add(TransactionCodec.decode(buffer));
+        }
+        return new Block(header, transactions);
+    }
+}
@@ -0,0 +1,163 @@
+package org.example.BlockChain;
+
+import org.example.Util.HashUtil;
+import org.example.Util.Sha256Midstate;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The fixed-size binary block header that is hashed for proof of work.
+ * <p>
+ * Layout (88 bytes, big-endian):
+ * version (4) | previous hash (32) | Merkle root (32) | timestamp (8) | difficulty bits (4) | nonce (8)
+ * <p>
+ * The first 64 bytes form one SHA-256 block that does not depend on the nonce, so it is absorbed
+ * once into a {@link Sha256Midstate} and every attempt only hashes the 24 byte tail.
+ */
+public class BlockHeader {
+    public static final int VERSION = 1;
+    public static final int SIZE = 88;
+    public static final int PREFIX_SIZE = 64; // Constant part absorbed into the midstate
+    public static final int TAIL_SIZE = SIZE - PREFIX_SIZE;
+    public static final int TAIL_NONCE_OFFSET = TAIL_SIZE - Long.BYTES; // The nonce ends the tail
+
+    // Reused per thread so hashing a header does not allocate
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[SIZE]);
+
+    private final int version;
+    private final byte[] previousHash;
+    private final byte[] merkleRoot;
+    private final long timestamp;
+    private final int difficultyBits;
+    private final long nonce;
+
+    public BlockHeader(int version, byte[] previousHash, byte[] merkleRoot, long timestamp, int difficultyBits, long nonce) {
+        if (previousHash.length != HashUtil.SHA256_LENGTH || merkleRoot.length != HashUtil.SHA256_LENGTH) {
+            throw new IllegalArgumentException("Hashes in a block header must be 32 bytes");
+        }
+        this.version = version;
+        this.previousHash = previousHash;
+        this.merkleRoot = merkleRoot;
+        this.timestamp = timestamp;
+        this.difficultyBits = difficultyBits;
+        this.nonce = nonce;
+    }
+
+    /**
+     * Read a header written by {@link #writeTo(ByteBuffer)}.
+     *
+     * @param buffer The buffer positioned at the header; its position is advanced past it.
+     * @return The header.
+     */
+    public static BlockHeader readFrom(ByteBuffer buffer) {
+        int version = buffer.getInt();
+        byte[] previousHash = new byte[HashUtil.SHA256_LENGTH];
+        buffer.get(previousHash);
+        byte[] merkleRoot = new byte[HashUtil.SHA256_LENGTH];
+        buffer.get(merkleRoot);
+        long timestamp = buffer.getLong();
+        int difficultyBits = buffer.getInt();
+        long nonce = buffer.getLong();
+        return new BlockHeader(version, previousHash, merkleRoot, timestamp, difficultyBits, nonce);
+    }
+
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(version)
+                .put(previousHash)
+                .put(merkleRoot)
+                .putLong(timestamp)
+                .putInt(difficultyBits)
+                .putLong(nonce);
+    }
+
+    public byte[] toBytes() {
+        byte[] bytes = new byte[SIZE];
+        writeTo(ByteBuffer.wrap(bytes));
+        return bytes;
+    }
+
+    /**
+     * @return The SHA-256 hash of the header.
+     */
+    public byte[] hash() {
+        byte[] out = new byte[HashUtil.SHA256_LENGTH];
+        hash(out, 0);
+        return out;
+    }
+
+    /**
+     * Hash the header into a caller-provided array without allocating.
+     *
+     * @param out The array receiving the hash.
+     * @param outOffset Where the 32 hash bytes are written.
+     */
+    public void hash(byte[] out, int outOffset) {
+        byte[] scratch = SCRATCH.get();
+        writeTo(ByteBuffer.wrap(scratch));
+        HashUtil.sha256(scratch, 0, SIZE, out, outOffset);
+    }
+
+    /**
+     * @return The hashing state after the constant first 64 bytes of the header.
+     */
+    public Sha256Midstate midstate() {
+        return new Sha256Midstate(toBytes(), 0, PREFIX_SIZE);
+    }
+
+    /**
+     * @return A copy of the last 24 bytes of the header, with the nonce at {@link #TAIL_NONCE_OFFSET}.
+     */
+    public byte[] tail() {
+        return Arrays.copyOfRange(toBytes(), PREFIX_SIZE, SIZE);
+    }
+
+    /**
+     * Write a nonce into a header tail returned by {@link #tail()}.
+     *
+     * @param tail The header tail.
+     * @param nonce The nonce to write.
+     */
+    public static void writeNonce(byte[] tail, long nonce) {
+        for (int i = TAIL_NONCE_OFFSET + Long.BYTES - 1; i >= TAIL_NONCE_OFFSET; i--) {
+            tail[i] = (byte) nonce;
+            nonce >>>= 8;
+        }
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public byte[] getPreviousHash() {
+        return previousHash.clone();
+    }
+
+    public byte[] getMerkleRoot() {
+        return merkleRoot.clone();
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getDifficultyBits() {
+        return difficultyBits;
+    }
+
+    public long getNonce() {
+        return nonce;
+    }
+
+    @Override
+    public String toString() {
+        return "BlockHeader{" +
+                "version=" + version +
+                ", previousHash=" + HashUtil.toHex(previousHash) +
+                ", merkleRoot=" + HashUtil.toHex(merkleRoot) +
+                ", timestamp=" + timestamp +
+                ", difficultyBits=" + difficultyBits +
+                ", nonce=" + nonce +
+                '}';
+    }
+}
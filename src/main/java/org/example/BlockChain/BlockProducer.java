@@ -0,0 +1,353 @@
+package org.example.BlockChain;
+
+import com.sun.jdi.InvalidTypeException;
+import org.example.Mempool.Mempool;
+import org.example.Metrics.Counter;
+import org.example.Metrics.Histogram;
+import org.example.Metrics.Metrics;
+import org.example.Miner;
+import org.example.State.AccountState;
+import org.example.State.StateDiff;
+import org.example.State.WorldState;
+import org.example.Transaction.Transaction;
+import org.example.Transaction.TransactionCodec;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Produces blocks from the mempool through a pipeline of four stages, each on its own thread:
+ * <ol>
+ *     <li>select: when the {@link SealingPolicy} says so, take the best transactions from the
+ *     mempool and execute them against the world state and the blocks still in the pipeline,
+ *     dropping the ones that fail;</li>
+ *     <li>build: index the transactions in a new block's tree and compute its Merkle root;</li>
+ *     <li>mine: link the block to the previously mined one and search for its nonce;</li>
+ *     <li>append: add the block to the chain, commit its changes to the world state, remove its
+ *     transactions from the mempool and notify the listeners.</li>
+ * </ol>
+ * The stages hand blocks over through queues holding one block each, so block N+1 is selected
+ * and built while block N is being mined. A block's changes reach the world state and the
+ * mempool only once it is on the chain, so a block abandoned when the pipeline fails or mining
+ * is cancelled leaves both as they were. While it runs, the producer assumes it is the only
+ * one extending the chain and changing the world state; when another block takes the tip,
+ * {@link #restart()} abandons the blocks in flight and starts over on the new tip.
+ */
+public class BlockProducer {
+    private static final long POLL_MILLIS = 10;  // How often the select stage checks the mempool
+    private static final Histogram SELECT_NANOS = Metrics.histogram("block.selectNanos");
+    private static final Histogram BUILD_NANOS = Metrics.histogram("block.buildNanos");
+    private static final Counter BLOCKS = Metrics.counter("block.produced");
+    private static final Counter TRANSACTIONS = Metrics.counter("block.transactions");
+
+    private final BlockChain chain;
+    private final Mempool mempool;
+    private final WorldState state;
+    private final Miner miner;
+    private final SealingPolicy policy;
+    private final BlockingQueue<Job> selected = new ArrayBlockingQueue<>(1);
+    private final BlockingQueue<Job> built = new ArrayBlockingQueue<>(1);
+    private final BlockingQueue<Job> mined = new ArrayBlockingQueue<>(1);
+    private final List<Consumer<Block>> listeners = new CopyOnWriteArrayList<>();
+    private final List<Thread> stages = new ArrayList<>();
+    private final Map<String, AccountState> pending = new ConcurrentHashMap<>(); // Accounts as changed by the blocks in the pipeline
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet(); // Hashes of the mempool transactions those blocks dispose of
+    private final AtomicLong inFlightBytes = new AtomicLong();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile Appender appender = this::appendToChain;
+    private volatile boolean running;
+    private volatile long producedBlocks;
+
+    // A block moving through the pipeline: its transactions, the mempool transactions it
+    // disposes of, and its changes to the world state; END tells the next stage to finish
+    private record Job(List<Transaction> transactions, List<Transaction> done, StateDiff changes, Block block) {
+    }
+
+    private static final Job END = new Job(List.of(), List.of(), StateDiff.EMPTY, null);
+
+    /**
+     * Adds a mined block to the chain and commits its changes to the world state.
+     */
+    public interface Appender {
+        /**
+         * @param block The mined block, linked to the previous one.
+         * @param changes The block's changes, as executed by the select stage.
+         * @return False if the block was not added because another block took the tip; the
+         *         pipeline then stops as if mining was cancelled.
+         * @throws IllegalArgumentException If the block cannot be added.
+         */
+        boolean append(Block block, StateDiff changes) throws InvalidTypeException;
+    }
+
+    public BlockProducer(BlockChain chain, Mempool mempool, WorldState state, Miner miner, SealingPolicy policy) {
+        this.chain = chain;
+        this.mempool = mempool;
+        this.state = state;
+        this.miner = miner;
+        this.policy = policy;
+    }
+
+    /**
+     * @param listener Called on the append thread with every block added to the chain.
+     */
+    public void addListener(Consumer<Block> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Replace how mined blocks are added, e.g. so a node can pass them through its block tree,
+     * which executes them itself. The appender must leave the world state as the block's changes
+     * would.
+     *
+     * @param appender Adds a block and commits its changes; by default the block is appended to
+     *                 the chain and its changes are committed as they are.
+     */
+    public void setAppender(Appender appender) {
+        this.appender = appender;
+    }
+
+    private boolean appendToChain(Block block, StateDiff changes) throws InvalidTypeException {
+        chain.addBlock(block);
+        state.reapply(changes);
+        return true;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            throw new IllegalStateException("Block producer already running");
+        }
+        running = true;
+        failure.set(null);
+        pending.clear();
+        inFlight.clear();
+        inFlightBytes.set(0);
+        selected.clear();
+        built.clear();
+        mined.clear();
+        stages.clear();
+        stages.add(stage("producer-select", this::selectLoop));
+        stages.add(stage("producer-build", this::buildLoop));
+        stages.add(stage("producer-mine", this::mineLoop));
+        stages.add(stage("producer-append", this::appendLoop));
+        stages.forEach(Thread::start);
+    }
+
+    /**
+     * Stop selecting transactions, let the blocks already in the pipeline be mined and appended,
+     * and wait for the stages to finish. If the pipeline failed, or mining was cancelled, the
+     * stages have already stopped and the blocks in flight are abandoned.
+     */
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        for (Thread stage : stages) {
+            stage.join();
+        }
+    }
+
+    /**
+     * Abandon the blocks in flight, cancelling the one being mined, and start again on top of the
+     * chain's current tip, e.g. after a block from a peer took it. The abandoned blocks'
+     * transactions never left the mempool, so they are selected again. A block that is already
+     * being appended is let finish rather than interrupted, since it may be writing to the chain.
+     */
+    public synchronized void restart() throws InterruptedException {
+        if (!stages.isEmpty() && failure.compareAndSet(null, new InterruptedException("Abandoned for a new tip"))) {
+            running = false;
+            miner.cancel();
+            List<Thread> upstream = stages.subList(0, stages.size() - 1);
+            upstream.forEach(Thread::interrupt);
+            for (Thread stage : upstream) {
+                stage.join();
+            }
+            mined.clear();
+            mined.put(END);  // The append stage finishes without taking another block
+        }
+        for (Thread stage : stages) {
+            stage.join();
+        }
+        start();
+    }
+
+    /**
+     * @return The number of blocks appended to the chain.
+     */
+    public long getProducedBlocks() {
+        return producedBlocks;
+    }
+
+    /**
+     * @return The error that stopped the pipeline, an {@link InterruptedException} if mining was
+     * cancelled, or null.
+     */
+    public Throwable getFailure() {
+        return failure.get();
+    }
+
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    private Thread stage(String name, Stage body) {
+        Thread thread = new Thread(() -> {
+            try {
+                body.run();
+            } catch (Exception e) {
+                fail(e);  // Also when interrupted or cancelled, so the other stages do not wait for this one
+            }
+        }, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    // Stop every stage at once, abandoning the blocks in flight; the first failure is kept
+    private void fail(Exception e) {
+        if (!failure.compareAndSet(null, e)) {
+            return;
+        }
+        running = false;
+        miner.cancel();
+        stages.forEach(Thread::interrupt);
+    }
+
+    private void selectLoop() throws InterruptedException, InvalidTypeException {
+        long pendingSince = -1;
+        while (running) {
+            int waiting = mempool.size() - inFlight.size();
+            if (waiting <= 0) {
+                pendingSince = -1;
+                Thread.sleep(POLL_MILLIS);
+                continue;
+            }
+            long now = System.nanoTime();
+            if (pendingSince < 0) {
+                pendingSince = now;
+            }
+            if (!policy.shouldSeal(waiting, mempool.getBytes() - inFlightBytes.get(), now - pendingSince)) {
+                Thread.sleep(POLL_MILLIS);
+                continue;
+            }
+            long start = System.nanoTime();
+            // The transactions already in the pipeline are still in the mempool, and skipped
+            Job job = execute(mempool.select(policy.maxTransactions() + inFlight.size()));
+            SELECT_NANOS.recordSince(start);
+            pendingSince = job.transactions().isEmpty() ? now : -1;  // Nothing executable yet, wait another interval
+            if (!job.transactions().isEmpty()) {
+                selected.put(job);
+            } else if (inFlight.isEmpty()) {
+                mempool.removeAll(job.done());  // Invalid on the committed state, no block to wait for
+            }
+        }
+        selected.put(END);
+    }
+
+    // Executes the candidates that fit in the block and are valid on the state left by the blocks
+    // in the pipeline, without changing the world state, and marks them and the ones that can
+    // never become valid as in flight
+    private Job execute(List<Transaction> candidates) throws InvalidTypeException {
+        List<Transaction> included = new ArrayList<>();
+        List<Transaction> done = new ArrayList<>();
+        Map<String, AccountState> before = new HashMap<>();
+        Map<String, AccountState> after = new HashMap<>();
+        long bytes = 0;
+        for (Transaction transaction : candidates) {
+            if (inFlight.contains(transaction.transactionHash)) {
+                continue;
+            }
+            int size = TransactionCodec.encodedSize(transaction);
+            if (included.size() == policy.maxTransactions() || bytes + size > policy.maxBytes()) {
+                break;
+            }
+            AccountState sender = read(transaction.sender, after);
+            if (transaction.nonce == sender.nonce() && transaction.cost() <= sender.balance()) {
+                before.putIfAbsent(transaction.sender, sender);
+                after.put(transaction.sender, new AccountState(sender.balance() - transaction.cost(), sender.nonce() + 1));
+                AccountState recipient = read(transaction.recipient, after);
+                before.putIfAbsent(transaction.recipient, recipient);
+                after.put(transaction.recipient, new AccountState(recipient.balance() + transaction.amount, recipient.nonce()));
+                included.add(transaction);
+                bytes += size;
+                done.add(transaction);
+            } else if (transaction.nonce <= sender.nonce()) {
+                done.add(transaction);  // Replayed, or unaffordable at its turn; a later nonce may still become valid
+            }
+        }
+        if (!included.isEmpty()) {
+            pending.putAll(after);
+            for (Transaction transaction : done) {
+                inFlight.add(transaction.transactionHash);
+                inFlightBytes.addAndGet(TransactionCodec.encodedSize(transaction));
+            }
+        }
+        return new Job(included, done, new StateDiff(before, after), null);
+    }
+
+    // An account as this block found it: changed by the block itself, by an earlier block still
+    // in the pipeline, or committed
+    private AccountState read(String address, Map<String, AccountState> block) throws InvalidTypeException {
+        AccountState account = block.get(address);
+        if (account == null) {
+            account = pending.get(address);
+        }
+        return account != null ? account : state.getAccount(address);
+    }
+
+    private void buildLoop() throws InterruptedException, InvalidTypeException, NoSuchAlgorithmException {
+        for (Job job = selected.take(); job != END; job = selected.take()) {
+            long start = System.nanoTime();
+            Block block = new Block(null);  // Linked once its parent is mined
+            for (Transaction transaction : job.transactions()) {
+                block.addTransaction(transaction);
+            }
+            block.getMerkleRoot();  // Computed and cached here rather than on the mining thread
+            BUILD_NANOS.recordSince(start);
+            built.put(new Job(job.transactions(), job.done(), job.changes(), block));
+        }
+        built.put(END);
+    }
+
+    private void mineLoop() throws InterruptedException {
+        String previousHash = chain.getTip().calculateBlockHash();
+        for (Job job = built.take(); job != END; job = built.take()) {
+            Block block = job.block();
+            block.setPreviousBlockHash(previousHash);
+            previousHash = miner.mine(block);
+            if (previousHash == null) {
+                throw new InterruptedException("Mining cancelled");
+            }
+            mined.put(job);
+        }
+        mined.put(END);
+    }
+
+    private void appendLoop() throws InterruptedException, InvalidTypeException {
+        for (Job job = mined.take(); job != END; job = mined.take()) {
+            if (!appender.append(job.block(), job.changes())) {
+                throw new InterruptedException("Block " + job.block().getBlockHash() + " was superseded");
+            }
+            // Later blocks in the pipeline may have changed the same accounts again
+            job.changes().after().forEach(pending::remove);
+            mempool.removeAll(job.done());
+            for (Transaction transaction : job.done()) {
+                inFlight.remove(transaction.transactionHash);
+                inFlightBytes.addAndGet(-TransactionCodec.encodedSize(transaction));
+            }
+            producedBlocks++;
+            BLOCKS.increment();
+            TRANSACTIONS.add(job.transactions().size());
+            for (Consumer<Block> listener : listeners) {
+                listener.accept(job.block());
+            }
+        }
+    }
+}
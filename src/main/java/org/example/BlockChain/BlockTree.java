@@ -0,0 +1,382 @@
+package org.example.BlockChain;
+
+import com.sun.jdi.InvalidTypeException;
+import org.example.Config.Config;
+import org.example.Miner;
+import org.example.State.BlockExecutor;
+import org.example.State.StateDiff;
+import org.example.State.WorldState;
+import org.example.Transaction.TransactionValidator;
+import org.example.Util.HashUtil;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every known block, indexed by hash and linked to its parent, so competing branches are kept
+ * side by side. The head is the tip of the branch with the most cumulative work, where a block
+ * is worth 2^difficulty bits; on a tie the branch seen first stays. Blocks below the chain's
+ * minimum difficulty are rejected, so cheap blocks cannot be piled onto a branch.
+ * <p>
+ * The world state always reflects the head. Every block on the head's branch keeps the
+ * {@link StateDiff} it committed, so switching to another branch reverts the blocks down to the
+ * common ancestor and then applies the new branch's blocks, replaying stored diffs for blocks
+ * executed before and executing only the rest. A reorganization therefore costs time in
+ * proportion to its depth, not to the length of the chain. A block that fails to execute is
+ * marked invalid, along with everything built on it, and the old head is restored.
+ * <p>
+ * Blocks whose parent is unknown are held as orphans and connected once the parent arrives.
+ * <p>
+ * A block a finality depth under the head is final: it becomes the tree's root, and the blocks
+ * below it and the branches forking off below it are forgotten along with their diffs, so the
+ * tree's memory stays bounded however long the chain grows. The root keeps its cumulative work,
+ * so branches are still compared by their total work. A block forking off below the root is
+ * never connected and stays an orphan until it is evicted.
+ */
+public class BlockTree {
+    private static final int MAX_ORPHANS = 1024;
+
+    public enum AddResult {
+        EXTENDED,     // The block became the head on top of the previous head
+        REORGANIZED,  // The block's branch outweighed the head's and became the head
+        SIDE_BRANCH,  // The block was stored on a branch with less work than the head's
+        ORPHAN,       // The block's parent is unknown; it is held until the parent arrives
+        DUPLICATE,    // The block is already known
+        INVALID       // The block, its transactions or its parent are invalid
+    }
+
+    private static final class Node {
+        final Block block;
+        Node parent; // Null for the root
+        final int height;
+        final BigInteger work;
+        StateDiff diff; // Set once the block has been executed on top of its parent
+        boolean invalid;
+
+        Node(Block block, Node parent) {
+            this.block = block;
+            this.parent = parent;
+            this.height = parent == null ? 0 : parent.height + 1;
+            BigInteger blockWork = BigInteger.ONE.shiftLeft(block.getDifficultyBits());
+            this.work = parent == null ? blockWork : parent.work.add(blockWork);
+        }
+    }
+
+    private final WorldState state;
+    private final BlockExecutor executor; // Null to execute blocks sequentially on the state
+    private final int minDifficultyBits;
+    private final int finalityDepth;
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final Map<String, List<Block>> orphans = new LinkedHashMap<>(); // By parent hash, oldest first
+    private int orphanCount;
+    private Node root;
+    private Node head;
+    private int reorganizations;
+    private int deepestReorganization;
+
+    /**
+     * @param genesis The root of the tree.
+     * @param state The world state after genesis, which the tree updates as the head moves. It
+     *              must have no uncommitted changes, and nothing else may change it.
+     */
+    public BlockTree(Block genesis, WorldState state) {
+        this(genesis, state, Config.minDifficultyBits);
+    }
+
+    /**
+     * @param genesis The root of the tree.
+     * @param state The world state after genesis, which the tree updates as the head moves.
+     * @param minDifficultyBits The leading zero bits every block after genesis must have.
+     */
+    public BlockTree(Block genesis, WorldState state, int minDifficultyBits) {
+        this(genesis, state, minDifficultyBits, null);
+    }
+
+    /**
+     * Execute blocks with a {@link BlockExecutor}, so the transactions of a block are executed in
+     * parallel.
+     *
+     * @param genesis The root of the tree.
+     * @param state The world state after genesis, which the tree updates as the head moves.
+     * @param minDifficultyBits The leading zero bits every block after genesis must have.
+     * @param executor An executor over the same state, or null to execute blocks sequentially.
+     */
+    public BlockTree(Block genesis, WorldState state, int minDifficultyBits, BlockExecutor executor) {
+        this(genesis, state, minDifficultyBits, executor, Config.finalityDepth);
+    }
+
+    /**
+     * @param genesis The root of the tree.
+     * @param state The world state after genesis, which the tree updates as the head moves.
+     * @param minDifficultyBits The leading zero bits every block after genesis must have.
+     * @param executor An executor over the same state, or null to execute blocks sequentially.
+     * @param finalityDepth The blocks under the head after which a block is final.
+     */
+    public BlockTree(Block genesis, WorldState state, int minDifficultyBits, BlockExecutor executor, int finalityDepth) {
+        if (executor != null && executor.getState() != state) {
+            throw new IllegalArgumentException("Executor must apply blocks to the tree's state");
+        }
+        if (finalityDepth < 1) {
+            throw new IllegalArgumentException("Finality depth must be positive");
+        }
+        this.state = state;
+        this.executor = executor;
+        this.minDifficultyBits = minDifficultyBits;
+        this.finalityDepth = finalityDepth;
+        this.head = new Node(genesis, null);
+        this.root = head;
+        head.diff = StateDiff.EMPTY;
+        nodes.put(genesis.calculateBlockHash(), head);
+    }
+
+    /**
+     * Add a block received or mined anywhere in the tree, moving the head if its branch now has
+     * the most work.
+     *
+     * @param block The block to add.
+     * @return Where the block ended up.
+     */
+    public synchronized AddResult add(Block block) throws InvalidTypeException {
+        String hash = block.calculateBlockHash();
+        if (nodes.containsKey(hash)) {
+            return AddResult.DUPLICATE;
+        }
+        if (block.getDifficultyBits() < minDifficultyBits
+                || !hash.equals(block.getBlockHash()) || !Miner.meetsDifficulty(HashUtil.fromHex(hash), block.getDifficultyBits())) {
+            return AddResult.INVALID;
+        }
+        Node parent = nodes.get(block.getPreviousBlockHash());
+        if (parent == null) {
+            addOrphan(block);
+            return AddResult.ORPHAN;
+        }
+        AddResult result = connect(block, hash, parent);
+
+        // Blocks waiting for this one can now be connected, and so can their children
+        Deque<String> connected = new ArrayDeque<>();
+        connected.add(hash);
+        while (!connected.isEmpty()) {
+            List<Block> children = orphans.remove(connected.poll());
+            if (children == null) {
+                continue;
+            }
+            orphanCount -= children.size();
+            for (Block child : children) {
+                String childHash = child.calculateBlockHash();
+                Node childParent = nodes.get(child.getPreviousBlockHash());
+                if (!nodes.containsKey(childHash) && connect(child, childHash, childParent) != AddResult.INVALID) {
+                    connected.add(childHash);
+                }
+            }
+        }
+        return result;
+    }
+
+    private AddResult connect(Block block, String hash, Node parent) throws InvalidTypeException {
+        if (parent.invalid) {
+            return AddResult.INVALID;
+        }
+        if (!TransactionValidator.validateAll(block.getTransactionList())) {
+            return AddResult.INVALID;
+        }
+        Node node = new Node(block, parent);
+        nodes.put(hash, node);
+        if (node.work.compareTo(head.work) <= 0) {
+            return AddResult.SIDE_BRANCH;
+        }
+        boolean extendsHead = parent == head;
+        if (!switchHead(node)) {
+            return AddResult.INVALID;
+        }
+        return extendsHead ? AddResult.EXTENDED : AddResult.REORGANIZED;
+    }
+
+    private void addOrphan(Block block) {
+        if (orphanCount == MAX_ORPHANS) {
+            // Drop the orphans waiting for the parent we have been waiting on the longest
+            Iterator<List<Block>> oldest = orphans.values().iterator();
+            orphanCount -= oldest.next().size();
+            oldest.remove();
+        }
+        orphans.computeIfAbsent(block.getPreviousBlockHash(), parent -> new ArrayList<>()).add(block);
+        orphanCount++;
+    }
+
+    /**
+     * Move the state from the head to the target block.
+     *
+     * @return False if a block on the target's branch failed to execute; the head is then unchanged.
+     */
+    private boolean switchHead(Node target) throws InvalidTypeException {
+        Node fork = commonAncestor(head, target);
+        List<Node> branch = pathFrom(fork, target);
+        int depth = head.height - fork.height;
+        for (Node node = head; node != fork; node = node.parent) {
+            state.revert(node.diff);
+        }
+        for (int i = 0; i < branch.size(); i++) {
+            Node node = branch.get(i);
+            if (node.diff == null) {
+                node.diff = executor != null ? executor.executeWithDiff(node.block) : state.applyBlockWithDiff(node.block);
+            } else {
+                state.reapply(node.diff);
+            }
+            if (node.diff == null) {
+                node.invalid = true;
+                // Undo the part of the branch that applied, then restore the old head
+                for (int j = i - 1; j >= 0; j--) {
+                    state.revert(branch.get(j).diff);
+                }
+                for (Node restored : pathFrom(fork, head)) {
+                    state.reapply(restored.diff);
+                }
+                return false;
+            }
+        }
+        if (depth > 0) {
+            reorganizations++;
+            deepestReorganization = Math.max(deepestReorganization, depth);
+        }
+        head = target;
+        prune();
+        return true;
+    }
+
+    // Make the block a finality depth under the head the root, forgetting everything not built on it
+    private void prune() {
+        if (head.height - root.height <= finalityDepth) {
+            return;
+        }
+        Node finalNode = ancestorAt(head, head.height - finalityDepth);
+        nodes.values().removeIf(node -> node.height < finalNode.height || ancestorAt(node, finalNode.height) != finalNode);
+        finalNode.parent = null;
+        finalNode.diff = StateDiff.EMPTY;  // Never reverted again
+        root = finalNode;
+    }
+
+    private static Node ancestorAt(Node node, int height) {
+        while (node.height > height) {
+            node = node.parent;
+        }
+        return node;
+    }
+
+    private static Node commonAncestor(Node a, Node b) {
+        while (a.height > b.height) {
+            a = a.parent;
+        }
+        while (b.height > a.height) {
+            b = b.parent;
+        }
+        while (a != b) {
+            a = a.parent;
+            b = b.parent;
+        }
+        return a;
+    }
+
+    // The nodes after an ancestor up to and including a descendant, oldest first
+    private static List<Node> pathFrom(Node ancestor, Node descendant) {
+        List<Node> path = new ArrayList<>(descendant.height - ancestor.height);
+        for (Node node = descendant; node != ancestor; node = node.parent) {
+            path.add(node);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    public synchronized Block getHead() {
+        return head.block;
+    }
+
+    /**
+     * @return The number of blocks between genesis and the head.
+     */
+    public synchronized int getHeadHeight() {
+        return head.height;
+    }
+
+    /**
+     * @return The cumulative work of the head's branch.
+     */
+    public synchronized BigInteger getHeadWork() {
+        return head.work;
+    }
+
+    /**
+     * @param hash The block hash.
+     * @return The block, on any branch, or null if it is unknown or was pruned below the root.
+     */
+    public synchronized Block getBlock(String hash) {
+        Node node = nodes.get(hash);
+        return node == null ? null : node.block;
+    }
+
+    public synchronized boolean contains(String hash) {
+        return nodes.containsKey(hash);
+    }
+
+    /**
+     * @param hash The block hash.
+     * @return True if the block is on the head's branch.
+     */
+    public synchronized boolean isOnMainChain(String hash) {
+        Node node = nodes.get(hash);
+        if (node == null || node.height > head.height) {
+            return false;
+        }
+        return ancestorAt(head, node.height) == node;
+    }
+
+    /**
+     * @return The blocks from the root, the last final block, to the head.
+     */
+    public synchronized List<Block> getMainChain() {
+        List<Block> chain = new ArrayList<>(head.height + 1);
+        for (Node node = head; node != null; node = node.parent) {
+            chain.add(node.block);
+        }
+        Collections.reverse(chain);
+        return chain;
+    }
+
+    /**
+     * @return The height of the root, the last final block, counted from genesis.
+     */
+    public synchronized int getRootHeight() {
+        return root.height;
+    }
+
+    /**
+     * @return The number of blocks held from the root up, on all branches, excluding orphans.
+     */
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    public synchronized int getOrphanCount() {
+        return orphanCount;
+    }
+
+    /**
+     * @return The number of times the head moved to another branch.
+     */
+    public synchronized int getReorganizations() {
+        return reorganizations;
+    }
+
+    /**
+     * @return The most blocks a single reorganization reverted.
+     */
+    public synchronized int getDeepestReorganization() {
+        return deepestReorganization;
+    }
+}
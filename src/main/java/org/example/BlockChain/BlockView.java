@@ -0,0 +1,101 @@
+package org.example.BlockChain;
+
+import org.example.Transaction.TransactionView;
+import org.example.Util.HashUtil;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Zero-copy, reusable view of a block encoded by {@link BlockCodec}. Header fields are read
+ * straight from the underlying buffer and transactions are visited through a single reused
+ * {@link TransactionView}, so scanning a stored or received block does not build the block.
+ */
+public class BlockView {
+    private static final int PREVIOUS_HASH = BlockCodec.HEADER_OFFSET + Integer.BYTES;
+    private static final int MERKLE_ROOT = PREVIOUS_HASH + HashUtil.SHA256_LENGTH;
+    private static final int TIMESTAMP = MERKLE_ROOT + HashUtil.SHA256_LENGTH;
+    private static final int DIFFICULTY_BITS = TIMESTAMP + Long.BYTES;
+    private static final int NONCE = DIFFICULTY_BITS + Integer.BYTES;
+
+    private final TransactionView transaction = new TransactionView();
+    private ByteBuffer buffer;
+    private int offset;
+
+    /**
+     * Point the view at an encoded block. The buffer's position is left unchanged.
+     *
+     * @param buffer The buffer holding the encoding.
+     * @param offset The absolute offset of the encoding.
+     * @return This view.
+     */
+    public BlockView wrap(ByteBuffer buffer, int offset) {
+        byte version = buffer.get(offset);
+        if (version != BlockCodec.VERSION) {
+            throw new IllegalArgumentException("Unsupported block encoding version " + version);
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    public long timestamp() {
+        return buffer.getLong(offset + TIMESTAMP);
+    }
+
+    public int difficultyBits() {
+        return buffer.getInt(offset + DIFFICULTY_BITS);
+    }
+
+    public long nonce() {
+        return buffer.getLong(offset + NONCE);
+    }
+
+    public void previousHash(byte[] out, int outOffset) {
+        buffer.get(offset + PREVIOUS_HASH, out, outOffset, HashUtil.SHA256_LENGTH);
+    }
+
+    public void merkleRoot(byte[] out, int outOffset) {
+        buffer.get(offset + MERKLE_ROOT, out, outOffset, HashUtil.SHA256_LENGTH);
+    }
+
+    /**
+     * Hash the encoded header in place, giving the block hash.
+     *
+     * @param out The array receiving the hash.
+     * @param outOffset Where the 32 hash bytes are written.
+     */
+    public void blockHash(byte[] out, int outOffset) {
+        ByteBuffer header = buffer.duplicate();
+        header.limit(offset + BlockCodec.COUNT_OFFSET).position(offset + BlockCodec.HEADER_OFFSET);
+        HashUtil.sha256(header, out, outOffset);
+    }
+
+    public int transactionCount() {
+        return buffer.getInt(offset + BlockCodec.COUNT_OFFSET);
+    }
+
+    /**
+     * Visit the transactions in block order. The view passed to the action is reused and is
+     * only valid during the call.
+     *
+     * @param action Called once per transaction.
+     * @return The size of the encoded block in bytes.
+     */
+    public int forEachTransaction(Consumer<TransactionView> action) {
+        int position = offset + BlockCodec.TRANSACTIONS_OFFSET;
+        for (int i = transactionCount(); i > 0; i--) {
+            transaction.wrap(buffer, position);
+            action.accept(transaction);
+            position += transaction.length();
+        }
+        return position - offset;
+    }
+
+    /**
+     * @return The size of the encoded block in bytes.
+     */
+    public int length() {
+        return forEachTransaction(view -> { });
+    }
+}
@@ -0,0 +1,225 @@
+package org.example.BlockChain;
+
+import org.example.Config.Config;
+import org.example.Miner;
+import org.example.Storage.BlockStore;
+import org.example.Transaction.TransactionView;
+import org.example.Util.HashUtil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Validates a whole chain from its encoded blocks. Every block is checked on its own, in
+ * parallel: its transactions must hash to their recorded hashes and to the header's Merkle
+ * root, and its header hash must meet its difficulty, which must be at least the chain's
+ * minimum. Only the final pass that checks each block links to the hash of the one before is
+ * sequential.
+ * <p>
+ * Blocks are validated in windows of a few batches per thread, so memory stays bounded and a
+ * stored chain gets a checkpoint after every window. Validating the same store again, e.g.
+ * after a restart, only covers the blocks above its checkpoint.
+ */
+public class ChainValidator {
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    private static final int BATCHES_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final int batchSize;
+    private final int windowSize;
+    private final int minDifficultyBits;
+
+    public ChainValidator() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param threadCount The number of threads checking blocks.
+     * @param batchSize The number of consecutive blocks each task checks.
+     */
+    public ChainValidator(int threadCount, int batchSize) {
+        this(threadCount, batchSize, Config.minDifficultyBits);
+    }
+
+    /**
+     * @param threadCount The number of threads checking blocks.
+     * @param batchSize The number of consecutive blocks each task checks.
+     * @param minDifficultyBits The leading zero bits every block after genesis must have.
+     */
+    public ChainValidator(int threadCount, int batchSize, int minDifficultyBits) {
+        if (threadCount < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Validator needs at least one thread and one block per batch");
+        }
+        this.pool = new ForkJoinPool(threadCount);
+        this.batchSize = batchSize;
+        this.windowSize = threadCount * BATCHES_PER_THREAD * batchSize;
+        this.minDifficultyBits = minDifficultyBits;
+    }
+
+    /**
+     * The outcome of validating a chain.
+     *
+     * @param startHeight The first height validated; lower blocks were trusted from a checkpoint.
+     * @param validatedBlocks The number of blocks checked.
+     * @param invalidHeight The height of the first invalid block, or -1.
+     * @param error Why that block is invalid, or null.
+     * @param elapsedNanos The time validation took.
+     */
+    public record Result(int startHeight, int validatedBlocks, int invalidHeight, String error, long elapsedNanos) {
+        public boolean valid() {
+            return invalidHeight < 0;
+        }
+
+        public double blocksPerSecond() {
+            return elapsedNanos == 0 ? 0 : validatedBlocks * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            String outcome = valid() ? "valid" : "invalid at height " + invalidHeight + ": " + error;
+            return String.format("Chain %s, validated %d blocks from height %d in %.1f ms (%.0f blocks/s)",
+                    outcome, validatedBlocks, startHeight, elapsedNanos / 1e6, blocksPerSecond());
+        }
+    }
+
+    /**
+     * Validate blocks held in memory, from genesis.
+     *
+     * @param blocks The blocks from genesis to tip.
+     * @return The outcome.
+     */
+    public Result validate(List<Block> blocks) {
+        return validate(0, blocks.size(), new byte[HashUtil.SHA256_LENGTH],
+                height -> ByteBuffer.wrap(BlockCodec.encode(blocks.get(height))), null);
+    }
+
+    /**
+     * Validate the blocks of a store above its checkpoint, advancing the checkpoint as blocks pass.
+     *
+     * @param store The store holding the chain.
+     * @return The outcome.
+     */
+    public Result validate(BlockStore store) throws IOException {
+        int checkpoint = store.getCheckpoint();
+        byte[] parentHash = new byte[HashUtil.SHA256_LENGTH];
+        if (checkpoint >= 0) {
+            new BlockView().wrap(store.getEncoded(checkpoint), 0).blockHash(parentHash, 0);
+        }
+        IntFunction<ByteBuffer> source = height -> {
+            try {
+                return store.getEncoded(height);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        try {
+            return validate(checkpoint + 1, store.size(), parentHash, source, store);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Result validate(int from, int to, byte[] parentHash, IntFunction<ByteBuffer> source, BlockStore checkpoints) {
+        long start = System.nanoTime();
+        byte[] expectedParent = parentHash.clone();
+        for (int windowStart = from; windowStart < to; windowStart += windowSize) {
+            int windowEnd = Math.min(to, windowStart + windowSize);
+            int count = windowEnd - windowStart;
+            byte[][] hashes = new byte[count][HashUtil.SHA256_LENGTH];
+            byte[][] parents = new byte[count][HashUtil.SHA256_LENGTH];
+            String[] errors = new String[count];
+            int base = windowStart;
+            int batches = (count + batchSize - 1) / batchSize;
+            pool.submit(() -> IntStream.range(0, batches).parallel().forEach(batch -> {
+                BlockView view = new BlockView();
+                for (int i = batch * batchSize; i < Math.min(count, (batch + 1) * batchSize); i++) {
+                    errors[i] = check(view, source.apply(base + i), base + i == 0 ? 0 : minDifficultyBits, hashes[i], parents[i]);
+                }
+            })).join();
+
+            // The only sequential step: every block must link to the one before it
+            for (int i = 0; i < count; i++) {
+                String error = errors[i];
+                if (error == null && !Arrays.equals(parents[i], expectedParent)) {
+                    error = "Block does not link to its parent " + HashUtil.toHex(expectedParent);
+                }
+                if (error != null) {
+                    if (windowStart + i > from) {
+                        checkpoint(checkpoints, windowStart + i - 1);
+                    }
+                    return new Result(from, windowStart + i - from, windowStart + i, error, System.nanoTime() - start);
+                }
+                expectedParent = hashes[i];
+            }
+            checkpoint(checkpoints, windowEnd - 1);
+        }
+        return new Result(from, to - from, -1, null, System.nanoTime() - start);
+    }
+
+    private static void checkpoint(BlockStore store, int height) {
+        if (store == null) {
+            return;
+        }
+        try {
+            store.setCheckpoint(height);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Check one encoded block on its own.
+     *
+     * @param minDifficultyBits The difficulty the block must have at least; none for genesis.
+     * @return Why the block is invalid, or null if it is valid.
+     */
+    private static String check(BlockView view, ByteBuffer encoded, int minDifficultyBits, byte[] hash, byte[] parent) {
+        try {
+            view.wrap(encoded, 0);
+            view.previousHash(parent, 0);
+            List<byte[]> leaves = new ArrayList<>(view.transactionCount());
+            boolean[] hashesMatch = {true};
+            view.forEachTransaction(transaction -> {
+                byte[] computed = new byte[HashUtil.SHA256_LENGTH];
+                transaction.computeHash(computed, 0);
+                hashesMatch[0] &= matchesRecordedHash(transaction, computed);
+                leaves.add(computed);
+            });
+            if (!hashesMatch[0]) {
+                return "Transaction hash does not match its contents";
+            }
+            byte[] merkleRoot = new byte[HashUtil.SHA256_LENGTH];
+            view.merkleRoot(merkleRoot, 0);
+            if (!Arrays.equals(merkleRoot, Block.computeMerkleRoot(leaves))) {
+                return "Transactions do not match the Merkle root";
+            }
+            view.blockHash(hash, 0);
+            if (view.difficultyBits() < minDifficultyBits) {
+                return "Block difficulty of " + view.difficultyBits() + " bits is below the minimum of " + minDifficultyBits;
+            }
+            if (!Miner.meetsDifficulty(hash, view.difficultyBits())) {
+                return "Block hash does not meet its difficulty of " + view.difficultyBits() + " bits";
+            }
+            return null;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return "Malformed block encoding: " + e.getMessage();
+        }
+    }
+
+    private static boolean matchesRecordedHash(TransactionView transaction, byte[] computed) {
+        byte[] recorded = new byte[HashUtil.SHA256_LENGTH];
+        transaction.hash(recorded, 0);
+        return Arrays.equals(recorded, computed);
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,37 @@
+package org.example.BlockChain;
+
+import java.time.Duration;
+
+/**
+ * Decides when the block producer seals the pending transactions into a block: once enough
+ * transactions or bytes are waiting, or once transactions have been waiting for the maximum
+ * interval. Blocks are never sealed empty.
+ *
+ * @param maxTransactions The number of transactions in a full block.
+ * @param maxBytes The encoded size of the transactions in a full block.
+ * @param maxInterval How long transactions may wait for a block that is not full.
+ */
+public record SealingPolicy(int maxTransactions, long maxBytes, Duration maxInterval) {
+    public static final SealingPolicy DEFAULT = new SealingPolicy(Block.MAX_TRANSACTIONS, 1024 * 1024, Duration.ofSeconds(10));
+
+    public SealingPolicy {
+        if (maxTransactions < 1 || maxTransactions > Block.MAX_TRANSACTIONS) {
+            throw new IllegalArgumentException("A block holds between 1 and " + Block.MAX_TRANSACTIONS + " transactions");
+        }
+        if (maxBytes < 1 || maxInterval.isNegative() || maxInterval.isZero()) {
+            throw new IllegalArgumentException("Block size and interval must be positive");
+        }
+    }
+
+    /**
+     * @param pendingTransactions The number of transactions waiting.
+     * @param pendingBytes Their encoded size.
+     * @param waitedNanos How long transactions have been waiting.
+     * @return True if a block should be sealed now.
+     */
+    public boolean shouldSeal(int pendingTransactions, long pendingBytes, long waitedNanos) {
+        return pendingTransactions > 0 && (pendingTransactions >= maxTransactions
+                || pendingBytes >= maxBytes
+                || waitedNanos >= maxInterval.toNanos());
+    }
+}
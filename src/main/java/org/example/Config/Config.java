@@ -1,8 +1,49 @@
 package org.example.Config;
 
+import java.util.List;
+
 public class Config {
-   public static final int keySize = 4; //  integer keys or String with 4 letters
+   public static final int keySize = 16; //  max String key length in bytes (integer keys always take 4)
     public static final int offsetSize = 4; //  integer offsets
     public static final int valueSize = 25; // Adjust based on max value length
     public static final int nextLeaf = 4;
+    public static final int verifiedSignatureCacheSize = 100_000; // Verified transaction signatures remembered
+    public static final int blockSegmentSize = 64 * 1024 * 1024; // Size at which the block store starts a new segment file
+    public static final int blockHashIndexMB = 16; // Initial size of the block store's hash index, doubled when full
+    public static final int p2pPort = 5000; // Default port a node listens on for peers
+    public static final int p2pBacklog = 1024; // Pending incoming connections the OS queues
+    public static final int eventLoopThreads = 2; // Threads serving all peer connections
+    public static final int peerBufferSize = 64 * 1024; // Size of the pooled direct buffers used for socket I/O
+    public static final int pooledPeerBuffers = 256; // Released buffers each event loop keeps for reuse
+    public static final int maxPeerMessageSize = 16 * 1024 * 1024; // Larger messages close the connection
+    public static final int compressionThreshold = 1024; // Message payloads from this size on are deflated if that shrinks them
+    public static final long peerSendQueueLimit = 8L * 1024 * 1024; // Bytes queued for a peer before sends are refused
+    public static final long peerPauseReadBytes = 1024 * 1024; // Queued bytes at which a slow peer is no longer read from
+    public static final long reconnectInitialBackoffMillis = 100; // First wait before reconnecting to a peer
+    public static final long reconnectMaxBackoffMillis = 30_000; // Longest wait between reconnect attempts
+    public static final long blockCacheBudget = 64L * 1024 * 1024; // Heap kept for decoded blocks of a stored chain
+    public static final long inventoryFlushMillis = 20; // How long announcements are gathered into one INV message per peer
+    public static final int maxInventoryItems = 4096; // Items in one INV or GET_DATA message
+    public static final int seenInventoryPerGeneration = 100_000; // Hashes each generation of the gossip seen-set holds
+    public static final long inventoryRequestTimeoutMillis = 2_000; // After this a requested item may be asked of another peer
+    public static final int maxHeadersPerMessage = 2000; // Headers sent in answer to one GET_HEADERS
+    public static final int syncBatchBlocks = 16; // Blocks asked for in one GET_BLOCKS during sync
+    public static final int syncBlocksPerPeer = 64; // Blocks requested from one peer and not yet received
+    public static final int syncWindowBlocks = 1024; // How far past the last applied block bodies are downloaded
+    public static final long syncStallMillis = 2_000; // A request holding up the next block to apply is reassigned after this
+    public static final long syncRequestTimeoutMillis = 10_000; // Any unanswered sync request is reassigned after this
+    public static final List<String> bootstrapPeers = List.of("localhost:5001"); // Dialed when no peers are given on the command line
+    public static final int targetOutboundPeers = 8; // Connections a node opens to its best known peers
+    public static final long peerMaintenanceMillis = 5_000; // How often peers are pinged and new ones dialed
+    public static final int maxKnownPeers = 10_000; // Addresses remembered from peer exchange
+    public static final int maxAddressesPerMessage = 1000; // Addresses sent in answer to one GET_ADDR
+    public static final int banScore = 100; // Misbehaviour points at which a peer is banned
+    public static final long banMillis = 24 * 60 * 60 * 1000L; // How long a banned peer is refused
+    public static final int malformedMessagePenalty = 100; // Misbehaviour points for a message that cannot be decoded
+    public static final int invalidHeadersPenalty = 100; // Misbehaviour points for headers that do not link or lack proof of work
+    public static final int invalidBlockPenalty = 100; // Misbehaviour points for a block with a transaction that fails validation
+    public static final int maxReconstructionsPerPeer = 8; // Compact blocks a peer may leave waiting for missing transactions
+    public static final long metricsReportMillis = 60_000; // How often a running node prints its metrics
+    public static final int minDifficultyBits = 16; // Leading zero bits every block after genesis must have, whatever its header claims
+    public static final int finalityDepth = 100; // Blocks under the head after which a block is final and the block tree forgets what lies below it
 }
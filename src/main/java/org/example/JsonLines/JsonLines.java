@@ -0,0 +1,154 @@
+package org.example.JsonLines;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.sun.jdi.InvalidTypeException;
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockHeader;
+import org.example.Transaction.Transaction;
+import org.example.Util.HashUtil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming JSON mapping of transactions and blocks, written field by field with Jackson's
+ * {@link JsonGenerator} and read token by token with its {@link JsonParser}, so no object
+ * tree is built. Transactions use the same field names as {@link Transaction#toJson()}.
+ */
+public class JsonLines {
+    // Thread-safe, and shares its symbol tables between parsers, so every reader and writer uses it
+    static final JsonFactory FACTORY = new JsonFactory();
+
+    public static void writeTransaction(JsonGenerator generator, Transaction transaction) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("sender", transaction.sender);
+        generator.writeStringField("recipient", transaction.recipient);
+        generator.writeNumberField("amount", transaction.amount);
+        generator.writeNumberField("fee", transaction.fee);
+        generator.writeNumberField("timestamp", transaction.timestamp);
+        generator.writeNumberField("nonce", transaction.nonce);
+        generator.writeStringField("transactionHash", transaction.transactionHash);
+        generator.writeStringField("publicKey", transaction.publicKey);
+        generator.writeStringField("signature", transaction.signature);
+        generator.writeEndObject();
+    }
+
+    /**
+     * Read a transaction object. A missing hash is computed from the other fields.
+     *
+     * @param parser The parser, positioned on the object's start token.
+     * @return The transaction; the parser is left on the object's end token.
+     */
+    public static Transaction readTransaction(JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_OBJECT, "a transaction object");
+        String sender = null;
+        String recipient = null;
+        double amount = 0;
+        double fee = 0;
+        long timestamp = 0;
+        long nonce = 0;
+        String transactionHash = null;
+        String publicKey = null;
+        String signature = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "sender" -> sender = parser.getValueAsString();
+                case "recipient" -> recipient = parser.getValueAsString();
+                case "amount" -> amount = parser.getDoubleValue();
+                case "fee" -> fee = parser.getDoubleValue();
+                case "timestamp" -> timestamp = parser.getLongValue();
+                case "nonce" -> nonce = parser.getLongValue();
+                case "transactionHash" -> transactionHash = parser.getValueAsString();
+                case "publicKey" -> publicKey = parser.getValueAsString();
+                case "signature" -> signature = parser.getValueAsString();
+                default -> parser.skipChildren();
+            }
+        }
+        if (sender == null || recipient == null) {
+            throw new JsonParseException(parser, "Transaction is missing its sender or recipient");
+        }
+        Transaction transaction = new Transaction(sender, recipient, amount, timestamp, transactionHash);
+        transaction.fee = fee;
+        transaction.nonce = nonce;
+        transaction.publicKey = publicKey;
+        transaction.signature = signature;
+        if (transactionHash == null) {
+            transaction.transactionHash = transaction.computeHash();
+        }
+        return transaction;
+    }
+
+    public static void writeBlock(JsonGenerator generator, Block block) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("previousBlockHash", block.getPreviousBlockHash());
+        generator.writeStringField("blockHash", block.calculateBlockHash());
+        generator.writeNumberField("timestamp", block.getTimestamp());
+        generator.writeNumberField("nonce", block.getNonce());
+        generator.writeNumberField("difficultyBits", block.getDifficultyBits());
+        generator.writeArrayFieldStart("transactions");
+        for (Transaction transaction : block.getTransactionList()) {
+            writeTransaction(generator, transaction);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Read a block object and check its hash, if present, against its contents.
+     *
+     * @param parser The parser, positioned on the object's start token.
+     * @return The block; the parser is left on the object's end token.
+     */
+    public static Block readBlock(JsonParser parser) throws IOException, InvalidTypeException {
+        expect(parser, JsonToken.START_OBJECT, "a block object");
+        String previousBlockHash = null;
+        String blockHash = null;
+        long timestamp = 0;
+        long nonce = 0;
+        int difficultyBits = 0;
+        List<Transaction> transactions = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "previousBlockHash" -> previousBlockHash = parser.getValueAsString();
+                case "blockHash" -> blockHash = parser.getValueAsString();
+                case "timestamp" -> timestamp = parser.getLongValue();
+                case "nonce" -> nonce = parser.getLongValue();
+                case "difficultyBits" -> difficultyBits = parser.getIntValue();
+                case "transactions" -> {
+                    expect(parser, JsonToken.START_ARRAY, "a transaction array");
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        transactions.add(readTransaction(parser));
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+
+        List<byte[]> hashes = new ArrayList<>(transactions.size());
+        for (Transaction transaction : transactions) {
+            hashes.add(HashUtil.fromHex(transaction.transactionHash));
+        }
+        byte[] previous = previousBlockHash == null ? new byte[HashUtil.SHA256_LENGTH] : HashUtil.fromHex(previousBlockHash);
+        BlockHeader header = new BlockHeader(BlockHeader.VERSION, previous, Block.computeMerkleRoot(hashes), timestamp, difficultyBits, nonce);
+        Block block = new Block(header, transactions);
+        if (blockHash != null && !blockHash.equals(block.getBlockHash())) {
+            throw new JsonParseException(parser, "Block hash does not match the block's contents");
+        }
+        return block;
+    }
+
+    private static void expect(JsonParser parser, JsonToken token, String what) throws JsonParseException {
+        if (parser.currentToken() != token) {
+            throw new JsonParseException(parser, "Expected " + what);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.example.JsonLines;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.sun.jdi.InvalidTypeException;
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockChain;
+import org.example.Transaction.Transaction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the objects written by {@link JsonLinesWriter} one at a time from a single streaming
+ * parser, so memory use does not grow with the size of the input.
+ */
+public class JsonLinesReader implements Closeable {
+    private final JsonParser parser;
+
+    public JsonLinesReader(InputStream in) throws IOException {
+        this.parser = JsonLines.FACTORY.createParser(in);
+    }
+
+    /**
+     * @return The next transaction, or null at the end of the input.
+     */
+    public Transaction nextTransaction() throws IOException {
+        return parser.nextToken() == null ? null : JsonLines.readTransaction(parser);
+    }
+
+    /**
+     * @return The next block, or null at the end of the input.
+     */
+    public Block nextBlock() throws IOException, InvalidTypeException {
+        return parser.nextToken() == null ? null : JsonLines.readBlock(parser);
+    }
+
+    /**
+     * Append the remaining blocks to a chain, e.g. the output of
+     * {@link JsonLinesWriter#writeBlocks(BlockChain)}. Blocks the chain already holds, such as
+     * a shared genesis, are skipped; every other block goes through {@link BlockChain#addBlock},
+     * so it must be mined and extend the chain's tip.
+     *
+     * @param chain The chain to append to.
+     * @return The number of blocks appended.
+     * @throws IllegalArgumentException If a block does not extend the chain.
+     */
+    public long appendBlocks(BlockChain chain) throws IOException, InvalidTypeException {
+        long count = 0;
+        for (Block block = nextBlock(); block != null; block = nextBlock()) {
+            if (chain.getHeight(block.calculateBlockHash()) < 0) {
+                chain.addBlock(block);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
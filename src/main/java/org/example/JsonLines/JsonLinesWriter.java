@@ -0,0 +1,76 @@
+package org.example.JsonLines;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockChain;
+import org.example.Transaction.Transaction;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes transactions or blocks as JSON lines: one object per line, streamed straight to
+ * the output so memory use does not grow with the size of the export.
+ */
+public class JsonLinesWriter implements Closeable, Flushable {
+    private final JsonGenerator generator;
+
+    public JsonLinesWriter(OutputStream out) throws IOException {
+        this.generator = JsonLines.FACTORY.createGenerator(out, JsonEncoding.UTF8);
+    }
+
+    public void write(Transaction transaction) throws IOException {
+        JsonLines.writeTransaction(generator, transaction);
+        generator.writeRaw('\n');
+    }
+
+    public void write(Block block) throws IOException {
+        JsonLines.writeBlock(generator, block);
+        generator.writeRaw('\n');
+    }
+
+    /**
+     * Write every transaction of the chain, in chain order.
+     *
+     * @param chain The chain to export.
+     * @return The number of transactions written.
+     */
+    public long writeTransactions(BlockChain chain) throws IOException {
+        long count = 0;
+        for (Block block : chain.getBlocks()) {
+            for (Transaction transaction : block.getTransactionList()) {
+                write(transaction);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Write every block of the chain, from genesis to tip.
+     *
+     * @param chain The chain to export.
+     * @return The number of blocks written.
+     */
+    public long writeBlocks(BlockChain chain) throws IOException {
+        long count = 0;
+        for (Block block : chain.getBlocks()) {
+            write(block);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        generator.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
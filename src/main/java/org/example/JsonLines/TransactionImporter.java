@@ -0,0 +1,177 @@
+package org.example.JsonLines;
+
+import com.fasterxml.jackson.core.JsonParser;
+import org.example.Mempool.Mempool;
+import org.example.Transaction.Transaction;
+import org.example.Transaction.TransactionValidator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bulk loads JSON-lines transactions into a {@link Mempool} through a three stage pipeline:
+ * the calling thread reads lines into batches, a pool of workers parses and validates the
+ * batches in parallel, signatures included, and a single inserter offers the valid transactions
+ * to the pool in input order, from where they are mined into blocks like any other. The queue
+ * between the stages is bounded, so memory use stays constant however large the input is.
+ */
+public class TransactionImporter {
+    private static final int DEFAULT_BATCH_SIZE = 1024;
+    private static final Future<Batch> END = CompletableFuture.completedFuture(null);
+
+    private final Mempool mempool;
+    private final int threadCount;
+    private final int batchSize;
+
+    public TransactionImporter(Mempool mempool) {
+        this(mempool, Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param mempool The pool receiving the transactions.
+     * @param threadCount The number of threads parsing and validating.
+     * @param batchSize The number of lines handed to a worker at a time.
+     */
+    public TransactionImporter(Mempool mempool, int threadCount, int batchSize) {
+        if (threadCount < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Thread count and batch size must be positive");
+        }
+        this.mempool = mempool;
+        this.threadCount = threadCount;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * The outcome of an import.
+     *
+     * @param imported The number of transactions the pool accepted.
+     * @param rejected The number of lines that were malformed, failed validation or were refused
+     *                 by the pool, e.g. as duplicates.
+     */
+    public record Result(long imported, long rejected) {
+    }
+
+    private record Batch(List<Transaction> valid, int rejected) {
+    }
+
+    /**
+     * Import every line of the input. Blank lines are skipped.
+     *
+     * @param in The JSON-lines input, read to the end but not closed.
+     * @return The number of imported and rejected transactions.
+     */
+    public Result importFrom(InputStream in) throws IOException, InterruptedException {
+        AtomicInteger threadId = new AtomicInteger();
+        ExecutorService parsers = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "json-import-" + threadId.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ExecutorService inserterThread = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "json-import-inserter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Futures are queued in input order, which is the order the inserter applies them in
+        BlockingQueue<Future<Batch>> pending = new ArrayBlockingQueue<>(threadCount * 2);
+        Future<Result> inserter = inserterThread.submit(() -> insert(pending));
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            List<String> lines = new ArrayList<>(batchSize);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                lines.add(line);
+                if (lines.size() == batchSize) {
+                    List<String> batch = lines;
+                    enqueue(pending, parsers.submit(() -> parse(batch)), inserter);
+                    lines = new ArrayList<>(batchSize);
+                }
+            }
+            if (!lines.isEmpty()) {
+                List<String> batch = lines;
+                enqueue(pending, parsers.submit(() -> parse(batch)), inserter);
+            }
+            enqueue(pending, END, inserter);
+            return inserter.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } finally {
+            parsers.shutdownNow();
+            inserterThread.shutdownNow();
+        }
+    }
+
+    private Batch parse(List<String> lines) {
+        List<Transaction> valid = new ArrayList<>(lines.size());
+        int rejected = 0;
+        for (String line : lines) {
+            try (JsonParser parser = JsonLines.FACTORY.createParser(line)) {
+                parser.nextToken();
+                Transaction transaction = JsonLines.readTransaction(parser);
+                if (TransactionValidator.validateTransaction(transaction)) {
+                    valid.add(transaction);
+                } else {
+                    rejected++;
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                rejected++;
+            }
+        }
+        return new Batch(valid, rejected);
+    }
+
+    private Result insert(BlockingQueue<Future<Batch>> pending) throws Exception {
+        long imported = 0;
+        long rejected = 0;
+        for (Future<Batch> next = pending.take(); next != END; next = pending.take()) {
+            Batch batch = next.get();
+            for (Transaction transaction : batch.valid()) {
+                switch (mempool.add(transaction)) {
+                    case ADDED, REPLACED -> imported++;
+                    default -> rejected++;
+                }
+            }
+            rejected += batch.rejected();
+        }
+        return new Result(imported, rejected);
+    }
+
+    // Waits for room in the queue, but gives up if the inserter has failed and stopped taking
+    private static void enqueue(BlockingQueue<Future<Batch>> pending, Future<Batch> batch, Future<Result> inserter)
+            throws InterruptedException, ExecutionException {
+        while (!pending.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            if (inserter.isDone()) {
+                inserter.get();
+                throw new IllegalStateException("Inserter stopped before the end of the input");
+            }
+        }
+    }
+
+    private static IOException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause() instanceof ExecutionException ? e.getCause().getCause() : e.getCause();
+        if (cause instanceof RuntimeException runtime) {
+            throw runtime;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return new IOException("Failed to import transactions", cause);
+    }
+}
@@ -0,0 +1,298 @@
+package org.example.Mempool;
+
+import org.example.Metrics.Counter;
+import org.example.Metrics.Histogram;
+import org.example.Metrics.Metrics;
+import org.example.Transaction.Transaction;
+import org.example.Transaction.TransactionCodec;
+import org.example.Transaction.TransactionValidator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Pool of valid transactions waiting for a block.
+ * <p>
+ * Transactions are indexed by hash, so a duplicate is rejected with one concurrent map lookup
+ * before its signature is even checked; by sender and nonce, so a sender's transactions come
+ * out in nonce order and a higher fee can replace a pending transaction; and by fee, so the
+ * best transactions are selected first and the worst are evicted when the pool exceeds its
+ * memory cap, measured as the transactions' encoded size. Lookups are lock-free, changes take
+ * a single lock.
+ */
+public class Mempool {
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final Histogram ADD_NANOS = Metrics.histogram("mempool.addNanos");
+    private static final Counter ADDED = Metrics.counter("mempool.added");
+    private static final Counter DUPLICATES = Metrics.counter("mempool.duplicates");
+    private static final Counter REJECTED = Metrics.counter("mempool.rejected");
+
+    // Highest fee first, then first come first served
+    private static final Comparator<Entry> BY_PRIORITY = Comparator
+            .comparingDouble((Entry entry) -> entry.transaction.fee).reversed()
+            .thenComparingLong(entry -> entry.sequence);
+
+    private final long maxBytes;
+    private final Map<String, Entry> byHash = new ConcurrentHashMap<>();
+    private final Map<String, NavigableMap<Long, Entry>> bySender = new ConcurrentHashMap<>();
+    private final TreeSet<Entry> byFee = new TreeSet<>(BY_PRIORITY);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicLong sequence = new AtomicLong();
+    private long bytes;
+
+    public Mempool() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxBytes The total encoded size of the transactions the pool may hold.
+     */
+    public Mempool(long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Mempool needs a positive size");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * The outcome of offering a transaction to the pool.
+     */
+    public enum AddResult {
+        ADDED,       // Accepted
+        REPLACED,    // Accepted in place of the sender's pending transaction with the same nonce
+        DUPLICATE,   // Already in the pool
+        INVALID,     // Failed validation
+        UNDERPRICED  // Its fee is too low to replace a transaction or to evict one from a full pool
+    }
+
+    private static final class Entry {
+        final Transaction transaction;
+        final long sequence;
+        final int size;
+
+        Entry(Transaction transaction, long sequence) {
+            this.transaction = transaction;
+            this.sequence = sequence;
+            this.size = TransactionCodec.encodedSize(transaction);
+        }
+    }
+
+    /**
+     * Validate a transaction and add it to the pool, evicting the lowest-fee transactions if the
+     * pool would exceed its memory cap.
+     *
+     * @param transaction The transaction to add.
+     * @return What happened to the transaction.
+     */
+    public AddResult add(Transaction transaction) {
+        long start = System.nanoTime();
+        AddResult result = tryAdd(transaction);
+        ADD_NANOS.recordSince(start);
+        switch (result) {
+            case ADDED, REPLACED -> ADDED.increment();
+            case DUPLICATE -> DUPLICATES.increment();
+            default -> REJECTED.increment();
+        }
+        return result;
+    }
+
+    private AddResult tryAdd(Transaction transaction) {
+        if (transaction.transactionHash != null && byHash.containsKey(transaction.transactionHash)) {
+            return AddResult.DUPLICATE;  // Duplicate gossip is dropped before the signature check
+        }
+        if (!TransactionValidator.validateTransaction(transaction)) {
+            return AddResult.INVALID;
+        }
+        Entry entry = new Entry(transaction, sequence.getAndIncrement());
+        lock.lock();
+        try {
+            if (byHash.containsKey(transaction.transactionHash)) {
+                return AddResult.DUPLICATE;  // Added concurrently while we were validating
+            }
+            NavigableMap<Long, Entry> pending = bySender.get(transaction.sender);
+            Entry replaced = pending == null ? null : pending.get(transaction.nonce);
+            if (replaced != null && replaced.transaction.fee >= transaction.fee) {
+                return AddResult.UNDERPRICED;
+            }
+            if (replaced != null) {
+                removeEntry(replaced);
+            }
+            if (!makeRoom(entry)) {
+                if (replaced != null) {
+                    insertEntry(replaced);
+                }
+                return AddResult.UNDERPRICED;
+            }
+            insertEntry(entry);
+            return replaced == null ? AddResult.ADDED : AddResult.REPLACED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void insertEntry(Entry entry) {
+        Transaction transaction = entry.transaction;
+        byHash.put(transaction.transactionHash, entry);
+        bySender.computeIfAbsent(transaction.sender, sender -> new TreeMap<>()).put(transaction.nonce, entry);
+        byFee.add(entry);
+        bytes += entry.size;
+    }
+
+    // Evict lower-priority transactions until the entry fits, or refuse it, changing nothing, if
+    // that would not free enough space. A sender's later nonces cannot execute without the
+    // evicted one, so they go with it; a transaction is only a candidate if everything it takes
+    // with it ranks below the entry, and it does not take the entry's own predecessor.
+    private boolean makeRoom(Entry entry) {
+        long freeable = maxBytes - bytes;
+        Set<Entry> evicted = new LinkedHashSet<>();
+        Iterator<Entry> worst = byFee.descendingIterator();
+        while (freeable < entry.size) {
+            if (!worst.hasNext()) {
+                return false;
+            }
+            Entry candidate = worst.next();
+            if (BY_PRIORITY.compare(candidate, entry) < 0) {
+                return false;
+            }
+            Transaction transaction = candidate.transaction;
+            if (evicted.contains(candidate)
+                    || (transaction.sender.equals(entry.transaction.sender) && transaction.nonce < entry.transaction.nonce)) {
+                continue;
+            }
+            Collection<Entry> cascade = bySender.get(transaction.sender).tailMap(transaction.nonce, true).values();
+            if (cascade.stream().anyMatch(later -> BY_PRIORITY.compare(later, entry) < 0)) {
+                continue;  // A later nonce pays more than the entry
+            }
+            for (Entry later : cascade) {
+                if (evicted.add(later)) {
+                    freeable += later.size;
+                }
+            }
+        }
+        for (Entry later : evicted) {
+            removeEntry(later);
+        }
+        return true;
+    }
+
+    /**
+     * @param transactionHash A transaction hash.
+     * @return True if the pool holds the transaction.
+     */
+    public boolean contains(String transactionHash) {
+        return byHash.containsKey(transactionHash);
+    }
+
+    /**
+     * @param transactionHash A transaction hash.
+     * @return The pooled transaction, or null.
+     */
+    public Transaction get(String transactionHash) {
+        Entry entry = byHash.get(transactionHash);
+        return entry == null ? null : entry.transaction;
+    }
+
+    /**
+     * Visit every pooled transaction without locking, e.g. to match the short IDs of a compact
+     * block. Transactions added or removed meanwhile may or may not be visited.
+     *
+     * @param action Receives each transaction.
+     */
+    public void forEach(Consumer<Transaction> action) {
+        for (Entry entry : byHash.values()) {
+            action.accept(entry.transaction);
+        }
+    }
+
+    /**
+     * Choose up to {@code limit} transactions for a block, highest fee first, while keeping each
+     * sender's transactions in nonce order without gaps. A heap holds the next transaction of
+     * every sender; taking one pushes that sender's following nonce, so selecting N
+     * transactions costs O(S + N log S) for S senders.
+     *
+     * @param limit The maximum number of transactions.
+     * @return The selected transactions in block order. They stay in the pool.
+     */
+    public List<Transaction> select(int limit) {
+        lock.lock();
+        try {
+            PriorityQueue<Entry> heads = new PriorityQueue<>(BY_PRIORITY);
+            for (NavigableMap<Long, Entry> pending : bySender.values()) {
+                heads.add(pending.firstEntry().getValue());
+            }
+            List<Transaction> selected = new ArrayList<>(Math.min(limit, byHash.size()));
+            while (selected.size() < limit && !heads.isEmpty()) {
+                Transaction transaction = heads.poll().transaction;
+                selected.add(transaction);
+                Entry next = bySender.get(transaction.sender).get(transaction.nonce + 1);
+                if (next != null) {
+                    heads.add(next);
+                }
+            }
+            return selected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove transactions, e.g. the ones included in a committed block.
+     *
+     * @param transactions The transactions to remove; ones not in the pool are ignored.
+     */
+    public void removeAll(Collection<Transaction> transactions) {
+        lock.lock();
+        try {
+            for (Transaction transaction : transactions) {
+                Entry entry = byHash.get(transaction.transactionHash);
+                if (entry != null) {
+                    removeEntry(entry);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void removeEntry(Entry entry) {
+        Transaction transaction = entry.transaction;
+        byHash.remove(transaction.transactionHash);
+        byFee.remove(entry);
+        NavigableMap<Long, Entry> pending = bySender.get(transaction.sender);
+        pending.remove(transaction.nonce);
+        if (pending.isEmpty()) {
+            bySender.remove(transaction.sender);
+        }
+        bytes -= entry.size;
+    }
+
+    public int size() {
+        return byHash.size();
+    }
+
+    /**
+     * @return The total encoded size of the pooled transactions.
+     */
+    public long getBytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
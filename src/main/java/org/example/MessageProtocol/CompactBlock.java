@@ -0,0 +1,138 @@
+package org.example.MessageProtocol;
+
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockHeader;
+import org.example.Transaction.Transaction;
+import org.example.Util.HashUtil;
+import org.example.Util.SipHash;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A block as its header plus a 6 byte short ID per transaction, for relaying to peers that
+ * already hold most of the transactions. Short IDs are the low 48 bits of SipHash-2-4 of the
+ * transaction hash, keyed by the SHA-256 of the header and a per-block salt, so they cannot be
+ * chosen to collide ahead of time.
+ * <p>
+ * Layout (big-endian): header ({@link BlockHeader#SIZE}) | salt (8) | count (4) | short IDs (6 each)
+ */
+public class CompactBlock {
+    public static final int SHORT_ID_SIZE = 6;
+    private static final long SHORT_ID_MASK = (1L << (8 * SHORT_ID_SIZE)) - 1;
+
+    private final BlockHeader header;
+    private final long salt;
+    private final long[] shortIds;
+    private final long k0;
+    private final long k1;
+
+    private CompactBlock(BlockHeader header, long salt, long[] shortIds) {
+        this.header = header;
+        this.salt = salt;
+        this.shortIds = shortIds;
+        byte[] keyInput = ByteBuffer.allocate(BlockHeader.SIZE + Long.BYTES).put(header.toBytes()).putLong(salt).array();
+        ByteBuffer key = ByteBuffer.wrap(HashUtil.sha256(keyInput));
+        this.k0 = key.getLong();
+        this.k1 = key.getLong();
+    }
+
+    /**
+     * @param block The block to relay.
+     * @param salt A random value making the short IDs differ from those of other relays of the block.
+     * @return The compact form of the block.
+     */
+    public static CompactBlock of(Block block, long salt) {
+        List<Transaction> transactions = block.getTransactionList();
+        CompactBlock compact = new CompactBlock(block.getHeader(), salt, new long[transactions.size()]);
+        for (int i = 0; i < transactions.size(); i++) {
+            compact.shortIds[i] = compact.shortId(transactions.get(i).transactionHash);
+        }
+        return compact;
+    }
+
+    /**
+     * @param transactionHash A hex transaction hash.
+     * @return The transaction's short ID in this block.
+     */
+    public long shortId(String transactionHash) {
+        byte[] hash = HashUtil.fromHex(transactionHash);
+        return SipHash.hash(k0, k1, hash, 0, hash.length) & SHORT_ID_MASK;
+    }
+
+    /**
+     * Match the short IDs against known transactions, e.g. the mempool. A short ID matched by
+     * more than one transaction is left unresolved.
+     *
+     * @param known Passes each known transaction to its argument.
+     * @return The block's transactions in order, null where a transaction must be requested.
+     */
+    public Transaction[] reconstruct(Consumer<Consumer<Transaction>> known) {
+        Map<Long, Integer> indexes = new HashMap<>(shortIds.length * 2);
+        for (int i = 0; i < shortIds.length; i++) {
+            indexes.put(shortIds[i], i);
+        }
+        Transaction[] transactions = new Transaction[shortIds.length];
+        boolean[] ambiguous = new boolean[shortIds.length];
+        known.accept(transaction -> {
+            Integer index = indexes.get(shortId(transaction.transactionHash));
+            if (index != null && !ambiguous[index]) {
+                Transaction matched = transactions[index];
+                if (matched == null || matched.transactionHash.equals(transaction.transactionHash)) {
+                    transactions[index] = transaction;
+                } else {
+                    transactions[index] = null;
+                    ambiguous[index] = true;
+                }
+            }
+        });
+        return transactions;
+    }
+
+    public Message toMessage() {
+        ByteBuffer buffer = ByteBuffer.allocate(BlockHeader.SIZE + Long.BYTES + Integer.BYTES + shortIds.length * SHORT_ID_SIZE);
+        header.writeTo(buffer);
+        buffer.putLong(salt).putInt(shortIds.length);
+        for (long shortId : shortIds) {
+            buffer.putShort((short) (shortId >>> 32)).putInt((int) shortId);
+        }
+        return new Message(Message.MessageType.COMPACT_BLOCK, buffer.array());
+    }
+
+    /**
+     * @param message A {@link Message.MessageType#COMPACT_BLOCK} message.
+     * @return The compact block it carries.
+     */
+    public static CompactBlock from(Message message) {
+        if (message.type != Message.MessageType.COMPACT_BLOCK) {
+            throw new IllegalStateException(message.type + " messages carry no compact block");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(message.payload);
+        BlockHeader header = BlockHeader.readFrom(buffer);
+        long salt = buffer.getLong();
+        int count = buffer.getInt();
+        if (count < 0 || count != buffer.remaining() / SHORT_ID_SIZE) {
+            throw new IllegalArgumentException("Invalid short ID count " + count);
+        }
+        long[] shortIds = new long[count];
+        for (int i = 0; i < count; i++) {
+            shortIds[i] = (buffer.getShort() & 0xFFFFL) << 32 | buffer.getInt() & 0xFFFFFFFFL;
+        }
+        return new CompactBlock(header, salt, shortIds);
+    }
+
+    public BlockHeader getHeader() {
+        return header;
+    }
+
+    public String getBlockHash() {
+        return HashUtil.toHex(header.hash());
+    }
+
+    public int getTransactionCount() {
+        return shortIds.length;
+    }
+}
@@ -0,0 +1,50 @@
+package org.example.MessageProtocol;
+
+import org.example.Util.HashUtil;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A transaction or block named by its hash, as announced and requested in gossip.
+ * <p>
+ * Layout (33 bytes): kind (1) | hash (32)
+ *
+ * @param kind What the hash names.
+ * @param hash The hex SHA-256 hash.
+ */
+public record InventoryItem(Kind kind, String hash) {
+    public static final int SIZE = 1 + HashUtil.SHA256_LENGTH;
+
+    public enum Kind {
+        TRANSACTION,
+        BLOCK
+    }
+
+    public InventoryItem {
+        if (hash == null || hash.length() != 2 * HashUtil.SHA256_LENGTH) {
+            throw new IllegalArgumentException("Inventory hash must be a hex SHA-256 hash");
+        }
+    }
+
+    public static InventoryItem transaction(String hash) {
+        return new InventoryItem(Kind.TRANSACTION, hash);
+    }
+
+    public static InventoryItem block(String hash) {
+        return new InventoryItem(Kind.BLOCK, hash);
+    }
+
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put((byte) kind.ordinal()).put(HashUtil.fromHex(hash));
+    }
+
+    public static InventoryItem readFrom(ByteBuffer buffer) {
+        int kind = buffer.get();
+        if (kind < 0 || kind >= Kind.values().length) {
+            throw new IllegalArgumentException("Unknown inventory kind " + kind);
+        }
+        byte[] hash = new byte[HashUtil.SHA256_LENGTH];
+        buffer.get(hash);
+        return new InventoryItem(Kind.values()[kind], HashUtil.toHex(hash));
+    }
+}
@@ -1,16 +1,373 @@
 package org.example.MessageProtocol;
 
+import com.sun.jdi.InvalidTypeException;
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockCodec;
+import org.example.BlockChain.BlockHeader;
+import org.example.Transaction.Transaction;
+import org.example.Transaction.TransactionCodec;
+import org.example.Util.HashUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A message between peers: a type and a binary payload, framed on the wire by {@link MessageCodec}.
+ */
 public class Message {
     public enum MessageType {
-        NEW_TRANSACTION, NEW_BLOCK, GET_BLOCKS
+        NEW_TRANSACTION, // One encoded transaction
+        NEW_BLOCK,       // One encoded block
+        GET_BLOCKS,      // Blocks requested by hash: count (4) followed by that many 32 byte hashes
+        TRANSACTIONS,    // A batch: count (4) followed by that many transactions
+        INV,             // Announced inventory: count (4) followed by that many items, see InventoryItem
+        GET_DATA,        // Inventory requested from the peer that announced it, in the same layout as INV
+        GET_HEADERS,     // Headers requested after the first known of some hashes, in the same layout as GET_BLOCKS
+        HEADERS,         // count (4) followed by that many block headers
+        BLOCK,           // One encoded block sent in answer to GET_BLOCKS
+        COMPACT_BLOCK,   // A block as its header and short transaction IDs, see CompactBlock
+        GET_BLOCK_TXN,   // Transactions missing from a compact block: block hash (32) | count (4) | indexes (4 each)
+        BLOCK_TXN,       // The requested transactions: block hash (32) | count (4) | transactions
+        HELLO,           // Sent first on every connection: the port the sender listens on (4) | its random node ID (8)
+        PING,            // A nonce (8) the peer echoes in a PONG, to measure the round trip
+        PONG,
+        GET_ADDR,        // Asks for peer addresses; no payload
+        ADDR             // count (4) followed by that many host:port addresses, each a length (2) and UTF-8 text
     }
 
     public MessageType type;
-    public String data;
+    public byte[] payload;
 
-    public Message(MessageType type, String data) {
+    public Message(MessageType type, byte[] payload) {
         this.type = type;
-        this.data = data;
+        this.payload = payload;
+    }
+
+    /**
+     * @param type The message type.
+     * @param data A text payload, sent as UTF-8.
+     */
+    public Message(MessageType type, String data) {
+        this(type, data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Message transaction(Transaction transaction) {
+        return new Message(MessageType.NEW_TRANSACTION, TransactionCodec.encode(transaction));
+    }
+
+    /**
+     * @param transactions The transactions to send in one message.
+     * @return A {@link MessageType#TRANSACTIONS} batch.
+     */
+    public static Message transactions(List<Transaction> transactions) {
+        int size = Integer.BYTES;
+        for (Transaction transaction : transactions) {
+            size += TransactionCodec.encodedSize(transaction);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).putInt(transactions.size());
+        for (Transaction transaction : transactions) {
+            TransactionCodec.encode(transaction, buffer);
+        }
+        return new Message(MessageType.TRANSACTIONS, buffer.array());
+    }
+
+    public static Message block(Block block) {
+        return new Message(MessageType.NEW_BLOCK, BlockCodec.encode(block));
+    }
+
+    /**
+     * @param type {@link MessageType#GET_BLOCKS} or {@link MessageType#GET_HEADERS}.
+     * @param hashes The hex hashes of the blocks requested, or after which headers are requested.
+     * @return The message.
+     */
+    public static Message hashes(MessageType type, List<String> hashes) {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + hashes.size() * HashUtil.SHA256_LENGTH).putInt(hashes.size());
+        for (String hash : hashes) {
+            byte[] raw = HashUtil.fromHex(hash);
+            if (raw.length != HashUtil.SHA256_LENGTH) {
+                throw new IllegalArgumentException("Not a SHA-256 hash: " + hash);
+            }
+            buffer.put(raw);
+        }
+        return new Message(type, buffer.array());
+    }
+
+    /**
+     * @return The hex hashes of a {@link MessageType#GET_BLOCKS} or {@link MessageType#GET_HEADERS} message.
+     */
+    public List<String> getHashes() {
+        if (type != MessageType.GET_BLOCKS && type != MessageType.GET_HEADERS) {
+            throw new IllegalStateException(type + " messages carry no hashes");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        int count = buffer.getInt();
+        if (count < 0 || count != buffer.remaining() / HashUtil.SHA256_LENGTH) {
+            throw new IllegalArgumentException("Invalid hash count " + count);
+        }
+        List<String> hashes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            hashes.add(HashUtil.toHex(payload, buffer.position(), HashUtil.SHA256_LENGTH));
+            buffer.position(buffer.position() + HashUtil.SHA256_LENGTH);
+        }
+        return hashes;
+    }
+
+    public static Message headers(List<BlockHeader> headers) {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + headers.size() * BlockHeader.SIZE).putInt(headers.size());
+        for (BlockHeader header : headers) {
+            header.writeTo(buffer);
+        }
+        return new Message(MessageType.HEADERS, buffer.array());
+    }
+
+    /**
+     * @return The headers of a {@link MessageType#HEADERS} message.
+     */
+    public List<BlockHeader> getHeaders() {
+        if (type != MessageType.HEADERS) {
+            throw new IllegalStateException(type + " messages carry no headers");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        int count = buffer.getInt();
+        if (count < 0 || count != buffer.remaining() / BlockHeader.SIZE) {
+            throw new IllegalArgumentException("Invalid header count " + count);
+        }
+        List<BlockHeader> headers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            headers.add(BlockHeader.readFrom(buffer));
+        }
+        return headers;
     }
-}
 
+    public static Message hello(int port, long nodeId) {
+        return new Message(MessageType.HELLO, ByteBuffer.allocate(Integer.BYTES + Long.BYTES).putInt(port).putLong(nodeId).array());
+    }
+
+    /**
+     * @return The listening port of a {@link MessageType#HELLO} message.
+     */
+    public int getPort() {
+        if (type != MessageType.HELLO) {
+            throw new IllegalStateException(type + " messages carry no port");
+        }
+        return ByteBuffer.wrap(payload).getInt();
+    }
+
+    /**
+     * @return The node ID of a {@link MessageType#HELLO} message, which tells a node it dialed itself.
+     */
+    public long getNodeId() {
+        if (type != MessageType.HELLO) {
+            throw new IllegalStateException(type + " messages carry no node ID");
+        }
+        return ByteBuffer.wrap(payload).getLong(Integer.BYTES);
+    }
+
+    /**
+     * @param type {@link MessageType#PING} or {@link MessageType#PONG}.
+     * @param nonce The value identifying the ping.
+     * @return The message.
+     */
+    public static Message ping(MessageType type, long nonce) {
+        return new Message(type, ByteBuffer.allocate(Long.BYTES).putLong(nonce).array());
+    }
+
+    /**
+     * @return The nonce of a {@link MessageType#PING} or {@link MessageType#PONG} message.
+     */
+    public long getNonce() {
+        if (type != MessageType.PING && type != MessageType.PONG) {
+            throw new IllegalStateException(type + " messages carry no nonce");
+        }
+        return ByteBuffer.wrap(payload).getLong();
+    }
+
+    /**
+     * @param addresses Peer addresses as {@code host:port}.
+     * @return An {@link MessageType#ADDR} message.
+     */
+    public static Message addresses(List<String> addresses) {
+        List<byte[]> encoded = new ArrayList<>(addresses.size());
+        int size = Integer.BYTES;
+        for (String address : addresses) {
+            byte[] bytes = address.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                throw new IllegalArgumentException("Address too long: " + address);
+            }
+            encoded.add(bytes);
+            size += Short.BYTES + bytes.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).putInt(encoded.size());
+        for (byte[] bytes : encoded) {
+            buffer.putShort((short) bytes.length).put(bytes);
+        }
+        return new Message(MessageType.ADDR, buffer.array());
+    }
+
+    /**
+     * @return The addresses of an {@link MessageType#ADDR} message.
+     */
+    public List<String> getAddresses() {
+        if (type != MessageType.ADDR) {
+            throw new IllegalStateException(type + " messages carry no addresses");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / Short.BYTES) {
+            throw new IllegalArgumentException("Invalid address count " + count);
+        }
+        List<String> addresses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = buffer.getShort() & 0xFFFF;
+            if (length > buffer.remaining()) {
+                throw new IllegalArgumentException("Address runs past the message");
+            }
+            addresses.add(new String(payload, buffer.position(), length, StandardCharsets.UTF_8));
+            buffer.position(buffer.position() + length);
+        }
+        return addresses;
+    }
+
+    /**
+     * @param type {@link MessageType#INV} or {@link MessageType#GET_DATA}.
+     * @param items The items to announce or request.
+     * @return The message.
+     */
+    public static Message inventory(MessageType type, List<InventoryItem> items) {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + items.size() * InventoryItem.SIZE).putInt(items.size());
+        for (InventoryItem item : items) {
+            item.writeTo(buffer);
+        }
+        return new Message(type, buffer.array());
+    }
+
+    /**
+     * @return The items of an {@link MessageType#INV} or {@link MessageType#GET_DATA} message.
+     */
+    public List<InventoryItem> getInventory() {
+        if (type != MessageType.INV && type != MessageType.GET_DATA) {
+            throw new IllegalStateException(type + " messages carry no inventory");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        int count = buffer.getInt();
+        if (count < 0 || count != buffer.remaining() / InventoryItem.SIZE) {
+            throw new IllegalArgumentException("Invalid inventory count " + count);
+        }
+        List<InventoryItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(InventoryItem.readFrom(buffer));
+        }
+        return items;
+    }
+
+    /**
+     * @param blockHash The hex hash of a compact block.
+     * @param indexes The positions of the transactions missing from it.
+     * @return A {@link MessageType#GET_BLOCK_TXN} request.
+     */
+    public static Message blockTransactionsRequest(String blockHash, int[] indexes) {
+        ByteBuffer buffer = ByteBuffer.allocate(HashUtil.SHA256_LENGTH + Integer.BYTES + indexes.length * Integer.BYTES)
+                .put(HashUtil.fromHex(blockHash))
+                .putInt(indexes.length);
+        for (int index : indexes) {
+            buffer.putInt(index);
+        }
+        return new Message(MessageType.GET_BLOCK_TXN, buffer.array());
+    }
+
+    /**
+     * @param blockHash The hex hash of a compact block.
+     * @param transactions The transactions requested from it, in the order requested.
+     * @return A {@link MessageType#BLOCK_TXN} reply.
+     */
+    public static Message blockTransactions(String blockHash, List<Transaction> transactions) {
+        int size = HashUtil.SHA256_LENGTH + Integer.BYTES;
+        for (Transaction transaction : transactions) {
+            size += TransactionCodec.encodedSize(transaction);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).put(HashUtil.fromHex(blockHash)).putInt(transactions.size());
+        for (Transaction transaction : transactions) {
+            TransactionCodec.encode(transaction, buffer);
+        }
+        return new Message(MessageType.BLOCK_TXN, buffer.array());
+    }
+
+    /**
+     * @return The hex block hash a {@link MessageType#GET_BLOCK_TXN} or {@link MessageType#BLOCK_TXN} message refers to.
+     */
+    public String getBlockHash() {
+        if (type != MessageType.GET_BLOCK_TXN && type != MessageType.BLOCK_TXN) {
+            throw new IllegalStateException(type + " messages carry no block hash");
+        }
+        return HashUtil.toHex(payload, 0, HashUtil.SHA256_LENGTH);
+    }
+
+    /**
+     * @return The transaction positions requested by a {@link MessageType#GET_BLOCK_TXN} message.
+     */
+    public int[] getIndexes() {
+        if (type != MessageType.GET_BLOCK_TXN) {
+            throw new IllegalStateException(type + " messages carry no indexes");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(payload).position(HashUtil.SHA256_LENGTH);
+        int count = buffer.getInt();
+        if (count < 0 || count != buffer.remaining() / Integer.BYTES) {
+            throw new IllegalArgumentException("Invalid index count " + count);
+        }
+        int[] indexes = new int[count];
+        buffer.asIntBuffer().get(indexes);
+        return indexes;
+    }
+
+    /**
+     * @return The transactions of a {@link MessageType#NEW_TRANSACTION}, {@link MessageType#TRANSACTIONS}
+     * or {@link MessageType#BLOCK_TXN} message.
+     */
+    public List<Transaction> getTransactions() {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        if (type == MessageType.NEW_TRANSACTION) {
+            return List.of(TransactionCodec.decode(buffer));
+        }
+        if (type == MessageType.BLOCK_TXN) {
+            buffer.position(HashUtil.SHA256_LENGTH);
+        } else if (type != MessageType.TRANSACTIONS) {
+            throw new IllegalStateException(type + " messages carry no transactions");
+        }
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / TransactionCodec.FIXED_SIZE) {
+            throw new IllegalArgumentException("Invalid transaction count " + count);
+        }
+        List<Transaction> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            transactions.add(TransactionCodec.decode(buffer));
+        }
+        return transactions;
+    }
+
+    /**
+     * @return The block of a {@link MessageType#NEW_BLOCK} or {@link MessageType#BLOCK} message.
+     */
+    public Block getBlock() throws InvalidTypeException {
+        if (type != MessageType.NEW_BLOCK && type != MessageType.BLOCK) {
+            throw new IllegalStateException(type + " messages carry no block");
+        }
+        return BlockCodec.decode(ByteBuffer.wrap(payload));
+    }
+
+    /**
+     * @return The payload as UTF-8 text.
+     */
+    public String getText() {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return "Message{" +
+                "type=" + type +
+                ", payload=" + payload.length + " bytes" +
+                '}';
+    }
+}
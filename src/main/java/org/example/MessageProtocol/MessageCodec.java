@@ -0,0 +1,146 @@
+package org.example.MessageProtocol;
+
+import org.example.Config.Config;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary framing of {@link Message}s on the wire.
+ * <p>
+ * Frame (big-endian): length (4) | type (1) | flags (1) | payload, where the length counts the
+ * bytes after itself. Payloads of at least {@link Config#compressionThreshold} bytes are deflated
+ * when that makes them smaller; a compressed payload is its original length (4) followed by the
+ * deflated bytes, and the frame carries {@link #FLAG_COMPRESSED}.
+ * <p>
+ * Frames are decoded straight from the buffer they were read into: the header is read in place
+ * and a compressed payload is inflated from the buffer without an intermediate copy.
+ */
+public class MessageCodec {
+    public static final int LENGTH_SIZE = 4;
+    public static final int HEADER_SIZE = LENGTH_SIZE + 2;
+    public static final byte FLAG_COMPRESSED = 1;
+    private static final Message.MessageType[] TYPES = Message.MessageType.values();
+
+    // Reused per thread, since creating them allocates native zlib state
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    /**
+     * @param message The message to frame.
+     * @return The complete frame, compressed if worthwhile.
+     */
+    public static byte[] encode(Message message) {
+        byte[] payload = message.payload;
+        byte flags = 0;
+        if (payload.length >= Config.compressionThreshold) {
+            byte[] compressed = compress(payload);
+            if (compressed != null) {
+                payload = compressed;
+                flags |= FLAG_COMPRESSED;
+            }
+        }
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        frame.putInt(HEADER_SIZE - LENGTH_SIZE + payload.length)
+                .put((byte) message.type.ordinal())
+                .put(flags)
+                .put(payload);
+        return frame.array();
+    }
+
+    // The original length and the deflated payload, or null if that is not smaller
+    private static byte[] compress(byte[] payload) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(payload);
+        deflater.finish();
+        ByteBuffer compressed = ByteBuffer.allocate(payload.length).putInt(payload.length);
+        while (!deflater.finished()) {
+            if (!compressed.hasRemaining()) {
+                return null;
+            }
+            deflater.deflate(compressed);
+        }
+        return compressed.position() < payload.length ? Arrays.copyOf(compressed.array(), compressed.position()) : null;
+    }
+
+    /**
+     * @param buffer A buffer whose position is at the start of a frame.
+     * @return The size of the whole frame, or -1 if not even its length has arrived.
+     * @throws IllegalArgumentException If the length is shorter than a header or the payload
+     *                                  would exceed {@link Config#maxPeerMessageSize}.
+     */
+    public static int frameSize(ByteBuffer buffer) {
+        if (buffer.remaining() < LENGTH_SIZE) {
+            return -1;
+        }
+        int length = buffer.getInt(buffer.position());
+        if (length < HEADER_SIZE - LENGTH_SIZE || length > HEADER_SIZE - LENGTH_SIZE + Config.maxPeerMessageSize) {
+            throw new IllegalArgumentException("Invalid frame length " + length + ", payloads are limited to " + Config.maxPeerMessageSize + " bytes");
+        }
+        return LENGTH_SIZE + length;
+    }
+
+    /**
+     * Decode the complete frame at the buffer's position, advancing past it.
+     *
+     * @param buffer The buffer holding the frame.
+     * @return The message.
+     * @throws IllegalArgumentException If the frame is malformed.
+     */
+    public static Message decode(ByteBuffer buffer) {
+        int start = buffer.position();
+        int size = frameSize(buffer);
+        if (size < HEADER_SIZE || size > buffer.remaining()) {
+            throw new IllegalArgumentException("Incomplete or malformed frame of " + size + " bytes");
+        }
+        int type = Byte.toUnsignedInt(buffer.get(start + LENGTH_SIZE));
+        byte flags = buffer.get(start + LENGTH_SIZE + 1);
+        if (type >= TYPES.length) {
+            throw new IllegalArgumentException("Unknown message type " + type);
+        }
+        ByteBuffer payload = buffer.slice(start + HEADER_SIZE, size - HEADER_SIZE);
+        buffer.position(start + size);
+        byte[] bytes;
+        if ((flags & FLAG_COMPRESSED) != 0) {
+            bytes = decompress(payload);
+        } else {
+            bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+        }
+        return new Message(TYPES[type], bytes);
+    }
+
+    private static byte[] decompress(ByteBuffer payload) {
+        if (payload.remaining() < Integer.BYTES) {
+            throw new IllegalArgumentException("Compressed payload is missing its length");
+        }
+        int length = payload.getInt();
+        if (length < 0 || length > Config.maxPeerMessageSize) {
+            throw new IllegalArgumentException("Compressed payload expands to " + length + " bytes");
+        }
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(payload);
+        byte[] bytes = new byte[length];
+        try {
+            int inflated = 0;
+            while (inflated < length) {
+                int count = inflater.inflate(bytes, inflated, length - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary() || inflater.finished())) {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != length) {
+                throw new IllegalArgumentException("Compressed payload does not match its length");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt compressed payload", e);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,178 @@
+package org.example.Metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The process-wide registry of counters, gauges and histograms, named like
+ * {@code mempool.added} or {@code block.miningNanos}. Components look their metrics up once and
+ * keep them in static fields, so recording on a hot path is a lock-free update with no lookup.
+ * <p>
+ * Every metric can be read as an attribute of the {@code org.example:type=Metrics} MBean, and
+ * printed periodically by the reporter. Histograms appear as their count, mean, median, 99th
+ * percentile and maximum.
+ */
+public final class Metrics {
+    public static final String OBJECT_NAME = "org.example:type=Metrics";
+
+    private static final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private static final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+    private static final Map<String, DoubleSupplier> gauges = new ConcurrentSkipListMap<>();
+    private static ScheduledExecutorService reporter;
+
+    private Metrics() {
+    }
+
+    /**
+     * @param name The counter's name.
+     * @return The counter, created on first use.
+     */
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    /**
+     * @param name The histogram's name, ending in its unit, e.g. {@code Nanos}.
+     * @return The histogram, created on first use.
+     */
+    public static Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    /**
+     * Publish a value that is read when metrics are read, e.g. the size of a pool. Registering
+     * a name again replaces the earlier gauge.
+     *
+     * @param name The gauge's name.
+     * @param value Supplies the current value; called from the reporting thread.
+     */
+    public static void gauge(String name, DoubleSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * @return The current value of every metric by name, histograms flattened into their summaries.
+     */
+    public static Map<String, Number> snapshot() {
+        Map<String, Number> values = new ConcurrentSkipListMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.get()));
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsDouble()));
+        histograms.forEach((name, histogram) -> {
+            values.put(name + ".count", histogram.getCount());
+            values.put(name + ".mean", histogram.getMean());
+            values.put(name + ".p50", histogram.getPercentile(0.50));
+            values.put(name + ".p99", histogram.getPercentile(0.99));
+            values.put(name + ".max", histogram.getMax());
+        });
+        return values;
+    }
+
+    /**
+     * @return Every metric on one line each, sorted by name.
+     */
+    public static String format() {
+        StringBuilder builder = new StringBuilder("Metrics:");
+        snapshot().forEach((name, value) -> {
+            builder.append(System.lineSeparator()).append("  ").append(name).append(" = ");
+            builder.append(value instanceof Double ? String.format("%.2f", value.doubleValue()) : value.toString());
+        });
+        return builder.toString();
+    }
+
+    /**
+     * Expose the metrics through the platform MBean server. Registering again does nothing.
+     */
+    public static void registerMBean() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(new MetricsMBean(), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Already registered
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Print every metric periodically on a daemon thread. Starting it again does nothing.
+     *
+     * @param periodMillis How often to print.
+     */
+    public static synchronized void startReporter(long periodMillis) {
+        if (reporter != null) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> System.out.println(format()), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void stopReporter() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    // Read-only attributes for whatever metrics exist when the MBean is inspected
+    private static final class MetricsMBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) {
+            return snapshot().get(attribute);
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) {
+            throw new UnsupportedOperationException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Number> values = snapshot();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                if (values.containsKey(attribute)) {
+                    list.add(new Attribute(attribute, values.get(attribute)));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException("Metrics have no operations");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            Map<String, Number> values = snapshot();
+            MBeanAttributeInfo[] attributes = values.entrySet().stream()
+                    .map(entry -> new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+                            entry.getKey(), true, false, false))
+                    .toArray(MBeanAttributeInfo[]::new);
+            return new MBeanInfo(Metrics.class.getName(), "BlockTree node metrics", attributes, null, null, null);
+        }
+    }
+}
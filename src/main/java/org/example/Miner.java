@@ -1,17 +1,196 @@
 package org.example;
 
 import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockHeader;
+import org.example.Metrics.Counter;
+import org.example.Metrics.Histogram;
+import org.example.Metrics.Metrics;
+import org.example.Util.HashUtil;
+import org.example.Util.Sha256Midstate;
 
-import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Proof of work miner. The nonce space is handed out in fixed-size ranges to a pool of
+ * worker threads, each hashing the block header with its own nonce until one of them
+ * finds a hash with the required number of leading zero bits. The constant start of the
+ * header is hashed once per block, so an attempt only hashes the 24 byte header tail.
+ */
 public class Miner {
-    private static final String DIFFICULTY_PREFIX = "0000";  // Difficulty level (adjust based on needs)
+    private static final int DEFAULT_DIFFICULTY_BITS = 16;  // Difficulty level (adjust based on needs)
+    private static final Counter HASHES = Metrics.counter("miner.hashes");
+    private static final Histogram MINING_NANOS = Metrics.histogram("miner.miningNanos");
+    private static final long NONCE_RANGE = 1 << 14;  // Nonces a worker claims at a time, also how often it checks for cancellation
 
-    public static String mine(Block block) throws NoSuchAlgorithmException {
-        // Increment the nonce until the hash satisfies the difficulty
-        while (!block.getBlockHash().startsWith(DIFFICULTY_PREFIX)) {
-            block.setBlockHash(block.calculateBlockHash());
+    private final int threadCount;
+    private final int difficultyBits;
+    private final ExecutorService workers;
+    private final LongAdder totalHashes = new LongAdder();
+    private volatile MiningJob currentJob;
+    private volatile double hashrate;  // Hashes per second of the last finished job
+
+    public Miner() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_DIFFICULTY_BITS);
+    }
+
+    /**
+     * @param threadCount The number of worker threads searching for a nonce.
+     * @param difficultyBits The number of leading zero bits a block hash must have.
+     */
+    public Miner(int threadCount, int difficultyBits) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Miner needs at least one thread");
+        }
+        if (difficultyBits < 0 || difficultyBits > HashUtil.SHA256_LENGTH * 8) {
+            throw new IllegalArgumentException("Difficulty must be between 0 and 256 bits");
+        }
+        this.threadCount = threadCount;
+        this.difficultyBits = difficultyBits;
+        AtomicInteger threadId = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "miner-" + threadId.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Search for a nonce that satisfies the difficulty, and store it and the resulting hash in the block.
+     * Blocks until a nonce is found or the search is cancelled.
+     *
+     * @param block The block to mine.
+     * @return The block hash, or null if mining was cancelled.
+     */
+    public synchronized String mine(Block block) throws InterruptedException {
+        block.setDifficultyBits(difficultyBits);
+        MiningJob job = new MiningJob(block.getHeader());
+        currentJob = job;
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < threadCount; i++) {
+                workers.execute(job::search);
+            }
+            Solution solution = job.result.get();
+            if (solution == null) {
+                return null;
+            }
+            block.setNonce(solution.nonce);
+            block.setBlockHash(HashUtil.toHex(solution.hash));
+            return block.getBlockHash();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Mining worker failed", e.getCause());
+        } finally {
+            job.result.complete(null);  // Stops the workers if we were interrupted
+            long elapsed = System.nanoTime() - start;
+            long hashes = job.hashes.sum();
+            hashrate = elapsed > 0 ? hashes * 1e9 / elapsed : 0;
+            HASHES.add(hashes);
+            MINING_NANOS.record(elapsed);
+        }
+    }
+
+    /**
+     * Abort the block being mined, e.g. because a competing block for the same height arrived.
+     * The pending {@link #mine(Block)} call returns null.
+     */
+    public void cancel() {
+        MiningJob job = currentJob;
+        if (job != null) {
+            job.result.complete(null);
+        }
+    }
+
+    /**
+     * @return The hashes per second achieved by the last mining job.
+     */
+    public double getHashrate() {
+        return hashrate;
+    }
+
+    /**
+     * @return The number of hashes computed since the miner was created.
+     */
+    public long getTotalHashes() {
+        return totalHashes.sum();
+    }
+
+    public int getDifficultyBits() {
+        return difficultyBits;
+    }
+
+    public void shutdown() {
+        cancel();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Check whether a hash has at least the given number of leading zero bits.
+     *
+     * @param hash The raw hash.
+     * @param difficultyBits The required number of leading zero bits.
+     * @return True if the hash satisfies the difficulty.
+     */
+    public static boolean meetsDifficulty(byte[] hash, int difficultyBits) {
+        int fullBytes = difficultyBits >>> 3;
+        for (int i = 0; i < fullBytes; i++) {
+            if (hash[i] != 0) {
+                return false;
+            }
+        }
+        int remainingBits = difficultyBits & 7;
+        return remainingBits == 0 || (hash[fullBytes] & 0xff) >>> (8 - remainingBits) == 0;
+    }
+
+    private record Solution(long nonce, byte[] hash) {
+    }
+
+    // One nonce search shared by all workers
+    private class MiningJob {
+        private final Sha256Midstate midstate;
+        private final byte[] tail;
+        private final AtomicLong nextNonce = new AtomicLong();
+        private final CompletableFuture<Solution> result = new CompletableFuture<>();
+        private final LongAdder hashes = new LongAdder();
+
+        MiningJob(BlockHeader header) {
+            this.midstate = header.midstate();
+            this.tail = header.tail();
+        }
+
+        void search() {
+            try {
+                // Each worker hashes its own copy of the header tail, only rewriting the nonce
+                byte[] workerTail = tail.clone();
+                byte[] digest = new byte[HashUtil.SHA256_LENGTH];
+                while (!result.isDone()) {
+                    long start = nextNonce.getAndAdd(NONCE_RANGE);
+                    long end = start + NONCE_RANGE;
+                    for (long nonce = start; nonce < end; nonce++) {
+                        BlockHeader.writeNonce(workerTail, nonce);
+                        midstate.finish(workerTail, 0, BlockHeader.TAIL_SIZE, digest, 0);
+                        if (meetsDifficulty(digest, difficultyBits)) {
+                            // Count the hashes before publishing, so the metrics include them
+                            countHashes(nonce + 1 - start);
+                            result.complete(new Solution(nonce, digest.clone()));
+                            return;
+                        }
+                    }
+                    countHashes(NONCE_RANGE);
+                }
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void countHashes(long count) {
+            hashes.add(count);
+            totalHashes.add(count);
         }
-        return block.getBlockHash();  // Return the valid hash
     }
 }
@@ -0,0 +1,645 @@
+package org.example.P2P;
+
+import com.sun.jdi.InvalidTypeException;
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockChain;
+import org.example.BlockChain.BlockHeader;
+import org.example.Config.Config;
+import org.example.MessageProtocol.Message;
+import org.example.Miner;
+import org.example.Transaction.TransactionValidator;
+import org.example.Util.HashUtil;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Headers-first block download from every connected peer, and the serving side of it.
+ * <p>
+ * On connecting, each peer is asked for the headers after our best known header. Headers are
+ * cheap to check, so the chain of headers, linked and with valid proof of work, is known before
+ * any body is fetched. Headers may leave our chain anywhere below its tip; of the branches peers
+ * offer, the one with the most work is followed, and its blocks are handed over from where it
+ * leaves our chain, so a block tree can switch to it once it has more work than the chain. Bodies are then requested by hash in small batches from all peers that
+ * have them, with a bounded number of blocks in flight per peer and a window limiting how far
+ * past the last applied block downloads may run. A block's transactions are validated when it
+ * arrives, and a peer sending a block with an invalid one is dropped. Blocks arriving out of
+ * order wait until the blocks below them arrive, and are then appended in order. A request that is not answered in
+ * time, or that holds up the next block to apply for too long, is given to another peer, so a
+ * slow peer only slows down its own share and the download proceeds at the combined speed of
+ * the peers.
+ * <p>
+ * All sync state is kept on a single sync thread; blocks are decoded on the event loops.
+ */
+public class BlockSync implements ConnectionListener, Closeable {
+    private static final long TICK_MILLIS = 50; // How often timeouts are checked and idle peers given work
+    private static final int MAX_REFUSED = 1024; // Refused blocks remembered, so their branch is not followed again
+
+    private final BlockChain chain;
+    private final int batchSize;
+    private final int blocksPerPeer;
+    private final int window;
+    private final long stallMillis;
+    private final long requestTimeoutMillis;
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "block-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Only used on the sync thread
+    private final Map<Connection, Peer> peers = new HashMap<>();
+    private final List<String> headerHashes = new ArrayList<>(); // Validated headers above the base, by height
+    private final List<Integer> headerBits = new ArrayList<>();  // Their difficulty, to weigh competing branches
+    private final Map<String, Integer> headerHeights = new HashMap<>();
+    private final Set<String> refused = new LinkedHashSet<>();
+    private final Map<Integer, Block> downloaded = new HashMap<>();
+    private final Map<Integer, Request> inFlight = new HashMap<>();
+    private final List<Request> requests = new ArrayList<>();
+    private final TreeSet<Integer> retry = new TreeSet<>();
+    private int baseHeight;
+    private String baseHash;
+    private int nextRequest;
+    private int applied;    // Height of the last block handed to the appender
+
+    private volatile ToDoubleFunction<Connection> ranking = connection -> 0;
+    private volatile Predicate<Block> appender;
+    private volatile boolean synced;
+    private volatile long downloadedBlocks;
+    private volatile long duplicateBlocks;
+    private volatile long invalidBlocks;
+    private volatile long reassigned;
+    private volatile long servedBlocks;
+
+    private static final class Peer {
+        final Connection connection;
+        int bestHeight = -1;    // Highest block of our headers the peer is known to have
+        int inFlight;           // Blocks requested and not yet received
+        boolean headersPending;
+        long headersRequestedAt;
+        long idleUntil;         // Not given work before this, after a request timed out
+
+        Peer(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    private static final class Request {
+        final Peer peer;
+        final int[] heights;
+        final long sentAt;
+
+        Request(Peer peer, int[] heights, long sentAt) {
+            this.peer = peer;
+            this.heights = heights;
+            this.sentAt = sentAt;
+        }
+    }
+
+    public BlockSync(BlockChain chain) {
+        this(chain, Config.syncBatchBlocks, Config.syncBlocksPerPeer, Config.syncWindowBlocks, Config.syncStallMillis, Config.syncRequestTimeoutMillis);
+    }
+
+    /**
+     * @param chain The chain blocks are appended to and served from.
+     * @param batchSize The blocks asked for in one request.
+     * @param blocksPerPeer The blocks that may be in flight from one peer.
+     * @param window How far past the last applied block bodies are downloaded.
+     * @param stallMillis After this a request holding up the next block to apply is reassigned.
+     * @param requestTimeoutMillis After this any unanswered request is reassigned.
+     */
+    public BlockSync(BlockChain chain, int batchSize, int blocksPerPeer, int window, long stallMillis, long requestTimeoutMillis) {
+        if (batchSize < 1 || blocksPerPeer < batchSize || window < blocksPerPeer || stallMillis < 1 || requestTimeoutMillis < stallMillis) {
+            throw new IllegalArgumentException("Sync needs positive limits, with batch <= per peer <= window and stall <= timeout");
+        }
+        this.chain = chain;
+        this.appender = this::appendToChain;
+        this.batchSize = batchSize;
+        this.blocksPerPeer = blocksPerPeer;
+        this.window = window;
+        this.stallMillis = stallMillis;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        submit(this::resetHeaders);
+        worker.scheduleWithFixedDelay(() -> run(this::tick), TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private interface Task {
+        void run() throws IOException, InvalidTypeException;
+    }
+
+    private void submit(Task task) {
+        try {
+            worker.execute(() -> run(task));
+        } catch (RejectedExecutionException e) {
+            // Closed
+        }
+    }
+
+    private static void run(Task task) {
+        try {
+            task.run();
+        } catch (IOException | InvalidTypeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void onConnected(Connection connection) {
+        submit(() -> {
+            Peer peer = new Peer(connection);
+            peers.put(connection, peer);
+            requestHeaders(peer, headerHeight());
+        });
+    }
+
+    @Override
+    public void onDisconnected(Connection connection) {
+        submit(() -> {
+            Peer peer = peers.remove(connection);
+            if (peer != null) {
+                for (Request request : requests) {
+                    if (request.peer == peer) {
+                        release(request);
+                    }
+                }
+                requests.removeIf(request -> request.peer == peer);
+                schedule();
+            }
+        });
+    }
+
+    @Override
+    public void onMessage(Connection connection, Message message) {
+        try {
+            switch (message.type) {
+                case GET_HEADERS -> {
+                    List<String> locator = message.getHashes();
+                    submit(() -> serveHeaders(connection, locator));
+                }
+                case GET_BLOCKS -> {
+                    List<String> hashes = message.getHashes();
+                    submit(() -> serveBlocks(connection, hashes));
+                }
+                case HEADERS -> {
+                    List<BlockHeader> headers = message.getHeaders();
+                    submit(() -> onHeaders(connection, headers));
+                }
+                case BLOCK -> {
+                    Block block = message.getBlock();  // Decoded here, so bodies are decoded on all event loops
+                    submit(() -> onBlock(connection, block));
+                }
+                default -> {
+                }
+            }
+        } catch (IllegalArgumentException | BufferUnderflowException | InvalidTypeException e) {
+            connection.penalize(Config.malformedMessagePenalty);
+            connection.close();  // A peer sending malformed messages is dropped
+        }
+    }
+
+    // Send headers from the first hash of the locator that is on our chain, starting with that block's own header
+    private void serveHeaders(Connection connection, List<String> locator) throws IOException, InvalidTypeException {
+        for (String hash : locator) {
+            int start = chain.getHeight(hash);
+            if (start >= 0) {
+                int end = Math.min(chain.getHeight(), start + Config.maxHeadersPerMessage - 1);
+                List<BlockHeader> headers = new ArrayList<>(end - start + 1);
+                for (int height = start; height <= end; height++) {
+                    headers.add(chain.getHeader(height));
+                }
+                connection.send(Message.headers(headers));
+                return;
+            }
+        }
+    }
+
+    private void serveBlocks(Connection connection, List<String> hashes) throws IOException, InvalidTypeException {
+        for (String hash : hashes) {
+            int height = chain.getHeight(hash);
+            if (height >= 0) {
+                connection.send(new Message(Message.MessageType.BLOCK, chain.getEncoded(height)));
+                servedBlocks++;
+            }
+        }
+    }
+
+    /**
+     * Ask a peer for headers from a height on. The locator lists hashes of our headers and chain
+     * going back from that height, one by one and then in doubling steps down to genesis, so a
+     * peer that is behind or on another branch still finds a block we share.
+     */
+    private void requestHeaders(Peer peer, int fromHeight) throws IOException {
+        List<String> locator = new ArrayList<>();
+        int step = 1;
+        for (int height = fromHeight; height > 0; height -= step) {
+            locator.add(hashAt(height));
+            if (locator.size() >= 10) {
+                step *= 2;
+            }
+        }
+        locator.add(HashUtil.toHex(chain.getHeader(0).hash()));
+        peer.headersPending = true;
+        peer.headersRequestedAt = System.currentTimeMillis();
+        synced = false;
+        peer.connection.send(Message.hashes(Message.MessageType.GET_HEADERS, locator));
+    }
+
+    private void onHeaders(Connection connection, List<BlockHeader> headers) throws IOException, InvalidTypeException {
+        Peer peer = peers.get(connection);
+        if (peer == null || !peer.headersPending || headers.isEmpty()) {
+            return;
+        }
+        peer.headersPending = false;
+        // The first header is the block the locator shares with the peer, on our headers or below them on the chain
+        byte[] parent = headers.get(0).hash();
+        String anchorHash = HashUtil.toHex(parent);
+        Integer anchor = headerHeights.get(anchorHash);
+        if (anchor == null) {
+            int height = chain.getHeight(anchorHash);
+            if (height < 0 || height >= baseHeight) {
+                tick();
+                return;  // The headers were reset meanwhile
+            }
+            anchor = height;
+        }
+        List<String> hashes = new ArrayList<>(headers.size() - 1);
+        List<Integer> bits = new ArrayList<>(headers.size() - 1);
+        for (BlockHeader header : headers.subList(1, headers.size())) {
+            byte[] hash = header.hash();
+            if (!Arrays.equals(parent, header.getPreviousHash()) || header.getDifficultyBits() < chain.getMinDifficultyBits()
+                    || !Miner.meetsDifficulty(hash, header.getDifficultyBits())) {
+                peer.connection.penalize(Config.invalidHeadersPenalty);
+                peer.connection.close();  // Headers that do not link or lack proof of work
+                return;
+            }
+            String hex = HashUtil.toHex(hash);
+            if (refused.contains(hex)) {
+                break;  // Nothing above a refused block is followed
+            }
+            hashes.add(hex);
+            bits.add(header.getDifficultyBits());
+            parent = hash;
+        }
+        // Skip what the peer's branch shares with ours
+        int height = anchor;
+        int shared = 0;
+        while (shared < hashes.size() && height < headerHeight() && hashes.get(shared).equals(hashAt(height + 1))) {
+            shared++;
+            height++;
+        }
+        List<String> rest = hashes.subList(shared, hashes.size());
+        List<Integer> restBits = bits.subList(shared, bits.size());
+        if (!rest.isEmpty() && (height == headerHeight() || work(restBits).compareTo(workAbove(height)) > 0)) {
+            follow(height, rest, restBits);  // Extends our headers, or is a competing branch with more work
+            height = headerHeight();
+        }
+        peer.bestHeight = Math.max(peer.bestHeight, height);
+        if (headers.size() == Config.maxHeadersPerMessage && hashes.size() == headers.size() - 1 && height == headerHeight()) {
+            requestHeaders(peer, height);  // The peer may have more
+        }
+        tick();
+    }
+
+    /**
+     * Make a branch our headers from where it leaves them. Downloads above that point belong to
+     * the branch given up, and blocks handed over above it are handed over again from the new one.
+     */
+    private void follow(int fork, List<String> hashes, List<Integer> bits) throws IOException {
+        boolean extending = fork == headerHeight();
+        if (fork < baseHeight) {
+            headerHashes.clear();
+            headerBits.clear();
+            headerHeights.clear();
+            baseHeight = fork;
+            baseHash = hashAt(fork);
+            headerHeights.put(baseHash, baseHeight);
+        } else {
+            List<String> dropped = headerHashes.subList(fork - baseHeight, headerHashes.size());
+            dropped.forEach(headerHeights::remove);
+            dropped.clear();
+            headerBits.subList(fork - baseHeight, headerBits.size()).clear();
+        }
+        for (int i = 0; i < hashes.size(); i++) {
+            headerHashes.add(hashes.get(i));
+            headerBits.add(bits.get(i));
+            headerHeights.put(hashes.get(i), fork + i + 1);
+        }
+        if (extending) {
+            return;
+        }
+        downloaded.keySet().removeIf(height -> height > fork);
+        retry.tailSet(fork, false).clear();
+        for (Map.Entry<Integer, Request> entry : new ArrayList<>(inFlight.entrySet())) {
+            if (entry.getKey() > fork) {
+                inFlight.remove(entry.getKey());
+                entry.getValue().peer.inFlight--;
+            }
+        }
+        applied = Math.min(applied, fork);
+        nextRequest = Math.min(nextRequest, fork + 1);
+        for (Peer peer : peers.values()) {
+            peer.bestHeight = Math.min(peer.bestHeight, fork);  // Their blocks above it are on the other branch
+        }
+    }
+
+    private void onBlock(Connection connection, Block block) throws IOException {
+        Peer peer = peers.get(connection);
+        String hash = block.calculateBlockHash();
+        Integer height = headerHeights.get(hash);
+        if (height == null || height <= applied || downloaded.containsKey(height)) {
+            duplicateBlocks++;  // Unrequested, or already received from a peer it was reassigned to
+        } else if (!TransactionValidator.validateAll(block.getTransactionList())) {
+            // Verified here rather than when applied, so the peer that sent it is known. Any peer
+            // would send the same block for this header, so the branch is given up
+            invalidBlocks++;
+            connection.penalize(Config.invalidBlockPenalty);
+            connection.close();
+            resetHeaders();
+            return;
+        } else {
+            downloaded.put(height, block);
+            downloadedBlocks++;
+        }
+        if (height != null) {
+            Request request = inFlight.remove(height);
+            if (request != null) {
+                request.peer.inFlight--;
+            }
+        }
+        if (peer != null) {
+            peer.idleUntil = 0;  // Delivering makes a peer eligible for work again
+        }
+        apply();
+        tick();
+    }
+
+    // Hand over the downloaded blocks that continue the ones handed over before
+    private void apply() throws IOException {
+        for (Block block; (block = downloaded.remove(applied + 1)) != null; ) {
+            if (!appender.test(block)) {
+                // The block failed to execute, or the chain moved on another way below it
+                if (refused.size() == MAX_REFUSED) {
+                    refused.remove(refused.iterator().next());
+                }
+                refused.add(block.calculateBlockHash());
+                resetHeaders();
+                return;
+            }
+            applied++;
+        }
+    }
+
+    // A chain on its own only takes blocks on its tip; one it already has, e.g. from gossip, counts as taken
+    private boolean appendToChain(Block block) {
+        try {
+            chain.addBlock(block);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return chain.getTip().calculateBlockHash().equals(block.calculateBlockHash());
+        }
+    }
+
+    private void tick() throws IOException {
+        long now = System.currentTimeMillis();
+        for (Peer peer : peers.values()) {
+            if (peer.headersPending && now - peer.headersRequestedAt >= requestTimeoutMillis) {
+                peer.headersPending = false;
+            }
+        }
+        expire(now);
+        schedule();
+        boolean headersPending = peers.values().stream().anyMatch(peer -> peer.headersPending);
+        if (!headersPending && applied >= headerHeight()) {
+            if (!headerHashes.isEmpty()) {
+                resetHeaders();  // Caught up, so the headers are no longer needed
+            }
+            // Peers known to be past the new base were asked for their headers again
+            synced = peers.values().stream().noneMatch(peer -> peer.headersPending);
+        }
+    }
+
+    // Give the heights of requests that took too long back to be requested from other peers
+    private void expire(long now) {
+        int next = applied + 1;
+        for (Iterator<Request> iterator = requests.iterator(); iterator.hasNext(); ) {
+            Request request = iterator.next();
+            long age = now - request.sentAt;
+            boolean stalling = age >= stallMillis && inFlight.get(next) == request;
+            if (age >= requestTimeoutMillis || stalling) {
+                if (release(request) > 0) {
+                    reassigned++;
+                    request.peer.idleUntil = now + requestTimeoutMillis;
+                }
+                iterator.remove();
+            } else if (Arrays.stream(request.heights).noneMatch(height -> inFlight.get(height) == request)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private int release(Request request) {
+        int released = 0;
+        for (int height : request.heights) {
+            if (inFlight.get(height) == request) {
+                inFlight.remove(height);
+                request.peer.inFlight--;
+                retry.add(height);
+                released++;
+            }
+        }
+        return released;
+    }
+
+    // Hand the next heights to every peer that has room for them and has the blocks
+    private void schedule() {
+        int limit = Math.min(headerHeight(), applied + window);
+        nextRequest = Math.max(nextRequest, applied + 1);
+        retry.headSet(applied, true).clear();
+        long now = System.currentTimeMillis();
+        ToDoubleFunction<Connection> cost = ranking;
+        List<Peer> ranked = new ArrayList<>(peers.values());
+        ranked.sort(Comparator.comparingDouble(peer -> cost.applyAsDouble(peer.connection)));
+        for (Peer peer : ranked) {
+            if (peer.idleUntil > now) {
+                continue;
+            }
+            while (peer.inFlight < blocksPerPeer) {
+                int max = Math.min(limit, peer.bestHeight);
+                int[] heights = nextHeights(Math.min(batchSize, blocksPerPeer - peer.inFlight), max);
+                if (heights.length == 0) {
+                    break;
+                }
+                Request request = new Request(peer, heights, now);
+                List<String> hashes = new ArrayList<>(heights.length);
+                for (int height : heights) {
+                    inFlight.put(height, request);
+                    hashes.add(headerHash(height));
+                }
+                requests.add(request);
+                peer.inFlight += heights.length;
+                peer.connection.send(Message.hashes(Message.MessageType.GET_BLOCKS, hashes));
+            }
+        }
+    }
+
+    // Reassigned heights first, so the lowest missing blocks are filled in before new ones are asked for
+    private int[] nextHeights(int count, int max) {
+        int[] heights = new int[count];
+        int taken = 0;
+        for (Iterator<Integer> iterator = retry.iterator(); taken < count && iterator.hasNext(); ) {
+            int height = iterator.next();
+            if (height > max) {
+                break;
+            }
+            iterator.remove();
+            if (!downloaded.containsKey(height)) {
+                heights[taken++] = height;
+            }
+        }
+        while (taken < count && nextRequest <= max) {
+            heights[taken++] = nextRequest++;
+        }
+        return Arrays.copyOf(heights, taken);
+    }
+
+    // Start the headers again from the chain's tip, and ask every peer what it has beyond it
+    private void resetHeaders() throws IOException {
+        headerHashes.clear();
+        headerBits.clear();
+        headerHeights.clear();
+        downloaded.clear();
+        inFlight.clear();
+        requests.clear();
+        retry.clear();
+        baseHeight = chain.getHeight();
+        baseHash = chain.getTip().calculateBlockHash();
+        applied = baseHeight;
+        nextRequest = baseHeight + 1;
+        headerHeights.put(baseHash, baseHeight);
+        for (Peer peer : peers.values()) {
+            peer.inFlight = 0;
+            if (peer.bestHeight > baseHeight) {
+                requestHeaders(peer, baseHeight);
+            }
+        }
+    }
+
+    private int headerHeight() {
+        return baseHeight + headerHashes.size();
+    }
+
+    private String headerHash(int height) {
+        return height == baseHeight ? baseHash : headerHashes.get(height - baseHeight - 1);
+    }
+
+    // The hash at a height of our headers, or of the chain below them
+    private String hashAt(int height) throws IOException {
+        return height >= baseHeight ? headerHash(height) : HashUtil.toHex(chain.getHeader(height).hash());
+    }
+
+    // The work of our headers, and the chain below them, above a height
+    private BigInteger workAbove(int height) throws IOException {
+        BigInteger work = work(headerBits.subList(Math.max(height - baseHeight, 0), headerBits.size()));
+        for (int below = height + 1; below <= baseHeight; below++) {
+            work = work.add(BigInteger.ONE.shiftLeft(chain.getHeader(below).getDifficultyBits()));
+        }
+        return work;
+    }
+
+    private static BigInteger work(List<Integer> bits) {
+        BigInteger work = BigInteger.ZERO;
+        for (int difficultyBits : bits) {
+            work = work.add(BigInteger.ONE.shiftLeft(difficultyBits));
+        }
+        return work;
+    }
+
+    /**
+     * Rank peers for block requests, so that the lowest heights, which hold up applying the
+     * chain, go to the fastest peers first.
+     *
+     * @param ranking The expected cost of fetching from a peer's connection; lower is better.
+     */
+    public void setRanking(ToDoubleFunction<Connection> ranking) {
+        this.ranking = ranking;
+    }
+
+    /**
+     * Replace how downloaded blocks are appended, e.g. so a node can pass them through its block
+     * tree, which also executes them and switches to a branch with more work. Blocks are handed
+     * over parent first, from where the followed branch leaves the chain. A refused block makes
+     * sync start again from the chain's tip, without following its branch again.
+     *
+     * @param appender Takes a block and returns false if it refused it; by default
+     *                 {@link BlockChain#addBlock}, which only takes blocks on the chain's tip.
+     */
+    public void setAppender(Predicate<Block> appender) {
+        this.appender = appender;
+    }
+
+    /**
+     * @return True if the chain has the branch with the most work that connected peers have
+     *         offered headers for, and no peer is being asked for more.
+     */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * @return The number of blocks downloaded by sync.
+     */
+    public long getDownloadedBlocks() {
+        return downloadedBlocks;
+    }
+
+    /**
+     * @return The number of blocks received that were unrequested or already received.
+     */
+    public long getDuplicateBlocks() {
+        return duplicateBlocks;
+    }
+
+    /**
+     * @return The number of blocks dropped because a transaction failed validation.
+     */
+    public long getInvalidBlocks() {
+        return invalidBlocks;
+    }
+
+    /**
+     * @return The number of requests given to another peer because they were too slow.
+     */
+    public long getReassigned() {
+        return reassigned;
+    }
+
+    /**
+     * @return The number of blocks sent to peers.
+     */
+    public long getServedBlocks() {
+        return servedBlocks;
+    }
+
+    @Override
+    public void close() {
+        worker.shutdownNow();
+    }
+}
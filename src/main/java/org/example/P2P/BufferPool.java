@@ -0,0 +1,58 @@
+package org.example.P2P;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Fixed-size direct buffers reused by one event loop. Direct buffers are costly to allocate and
+ * are what the socket calls read into and write from without an extra copy, so each loop keeps
+ * a small stock of them instead of allocating per read or per connection. Not thread-safe: a
+ * pool is only used by the thread of the loop that owns it.
+ */
+public class BufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+
+    /**
+     * @param bufferSize The size of each buffer in bytes.
+     * @param maxPooled The number of released buffers kept for reuse; others are left to the GC.
+     */
+    public BufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize < 1 || maxPooled < 0) {
+            throw new IllegalArgumentException("Buffer size must be positive and the pool size non-negative");
+        }
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * @return A cleared buffer of {@link #getBufferSize()} bytes.
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.pollFirst();
+        return buffer != null ? buffer.clear() : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Return a buffer taken from {@link #acquire()}. Buffers of another size are ignored.
+     *
+     * @param buffer The buffer, which the caller must no longer use.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.isDirect() && buffer.capacity() == bufferSize && free.size() < maxPooled) {
+            free.addFirst(buffer);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return The number of buffers waiting for reuse.
+     */
+    public int available() {
+        return free.size();
+    }
+}
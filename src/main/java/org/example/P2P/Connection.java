@@ -0,0 +1,375 @@
+package org.example.P2P;
+
+import org.example.Config.Config;
+import org.example.Metrics.Counter;
+import org.example.Metrics.Metrics;
+import org.example.MessageProtocol.Message;
+import org.example.MessageProtocol.MessageCodec;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A non-blocking connection to a peer, owned by one {@link EventLoop}. Peers exchange
+ * {@link Message}s in the binary frames of {@link MessageCodec}.
+ * <p>
+ * Incoming bytes are read into the loop's shared direct buffer and complete frames are decoded
+ * from it in place; only the unfinished tail of a frame is kept per connection, in a pooled buffer that goes back to the pool once empty.
+ * {@link #send(Message)} may be called from any thread and only queues the message for the loop.
+ * When the socket is writable the loop coalesces as many queued messages as fit into one pooled
+ * direct buffer and writes them with a single call, so bursts of small messages cost few
+ * system calls and packets.
+ * <p>
+ * A peer that does not read what it is sent is pushed back on: once its send queue passes
+ * {@link Config#peerPauseReadBytes} the connection stops reading from it until the queue drains,
+ * and messages that would take the queue past its limit are refused.
+ */
+public class Connection implements EventLoop.Ready {
+    private static final Counter BYTES_RECEIVED = Metrics.counter("p2p.bytesReceived");
+    private static final Counter BYTES_SENT = Metrics.counter("p2p.bytesSent");
+    private static final Counter MESSAGES_RECEIVED = Metrics.counter("p2p.messagesReceived");
+    private static final Counter MESSAGES_SENT = Metrics.counter("p2p.messagesSent");
+
+    private final SocketChannel channel;
+    private final EventLoop loop;
+    private final ConnectionListener listener;
+    private final InetSocketAddress remoteAddress;
+    private final boolean outbound;
+    private final Queue<ByteBuffer> sendQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private SelectionKey key;
+    private ByteBuffer partial; // Start of a message whose end has not arrived yet
+    private ByteBuffer writeBuffer; // Coalesced messages not fully written yet, in read mode
+    private volatile long sendQueueLimit = Config.peerSendQueueLimit;
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicInteger misbehaviour = new AtomicInteger();
+    private boolean readPaused;
+    private volatile boolean closed;
+
+    Connection(SocketChannel channel, EventLoop loop, ConnectionListener listener, InetSocketAddress remoteAddress, boolean outbound) {
+        this.channel = channel;
+        this.loop = loop;
+        this.listener = listener;
+        this.remoteAddress = remoteAddress;
+        this.outbound = outbound;
+    }
+
+    /**
+     * Register with the loop; called on the loop thread. Outbound connections first wait for the
+     * connect to complete.
+     */
+    void register() throws IOException {
+        int ops = channel.isConnectionPending() ? SelectionKey.OP_CONNECT : SelectionKey.OP_READ;
+        key = channel.register(loop.selector(), ops, this);
+        if (ops == SelectionKey.OP_READ) {
+            listener.onConnected(this);
+        }
+    }
+
+    /**
+     * Queue a message for the peer.
+     *
+     * @param message The message.
+     * @return False if the connection is closed or the peer's send queue is full.
+     */
+    public boolean send(Message message) {
+        byte[] bytes = MessageCodec.encode(message);
+        if (closed || queuedBytes.get() + bytes.length > sendQueueLimit) {
+            return false;
+        }
+        queuedBytes.addAndGet(bytes.length);
+        sendQueue.add(ByteBuffer.wrap(bytes));
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(this::startWriting);
+        }
+        return true;
+    }
+
+    private void startWriting() {
+        if (key == null || !key.isValid() || (key.interestOps() & SelectionKey.OP_CONNECT) != 0) {
+            return;  // Flushed once connected
+        }
+        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+    }
+
+    @Override
+    public void ready(SelectionKey key) {
+        try {
+            if (key.isConnectable()) {
+                finishConnect();
+            }
+            if (key.isValid() && key.isReadable()) {
+                read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                write();
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    private void finishConnect() throws IOException {
+        channel.finishConnect();
+        key.interestOps(SelectionKey.OP_READ | (sendQueue.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+        listener.onConnected(this);
+    }
+
+    private void read() throws IOException {
+        ByteBuffer buffer = loop.readBuffer().clear();
+        int read = channel.read(buffer);
+        if (read < 0) {
+            close();
+            return;
+        }
+        bytesReceived.addAndGet(read);
+        BYTES_RECEIVED.add(read);
+        buffer.flip();
+        if (partial != null) {
+            appendPartial(buffer);
+            buffer = partial.flip();
+        }
+        deliverMessages(buffer);
+        if (!closed) {  // The listener may have closed the connection
+            keepRemainder(buffer);
+        }
+    }
+
+    // Deliver every complete frame, leaving the buffer's position at the start of the unfinished one
+    private void deliverMessages(ByteBuffer buffer) throws IOException {
+        while (!closed) {
+            int size;
+            try {
+                size = MessageCodec.frameSize(buffer);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid frame from " + remoteAddress, e);
+            }
+            if (size < 0 || size > buffer.remaining()) {
+                return;
+            }
+            Message message;
+            try {
+                message = MessageCodec.decode(buffer);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Malformed frame from " + remoteAddress, e);
+            }
+            MESSAGES_RECEIVED.increment();
+            listener.onMessage(this, message);
+        }
+    }
+
+    private void keepRemainder(ByteBuffer buffer) throws IOException {
+        if (!buffer.hasRemaining()) {
+            releasePartial();
+            return;
+        }
+        if (buffer == partial) {
+            partial.compact();
+        } else {
+            partial = loop.buffers().acquire();
+            appendPartial(buffer);
+        }
+    }
+
+    // Append to the partial buffer, in write mode, growing it past the pooled size if needed
+    private void appendPartial(ByteBuffer source) {
+        if (partial.remaining() < source.remaining()) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(partial.capacity() * 2, partial.position() + source.remaining()));
+            partial.flip();
+            grown.put(partial);
+            releasePartial();
+            partial = grown;
+        }
+        partial.put(source);
+    }
+
+    private void releasePartial() {
+        if (partial != null) {
+            loop.buffers().release(partial);
+            partial = null;
+        }
+    }
+
+    private void write() throws IOException {
+        while (true) {
+            if (writeBuffer == null) {
+                if (sendQueue.isEmpty()) {
+                    break;
+                }
+                writeBuffer = loop.buffers().acquire();
+                coalesce();
+            }
+            int written = channel.write(writeBuffer);
+            writes.incrementAndGet();
+            bytesSent.addAndGet(written);
+            BYTES_SENT.add(written);
+            queuedBytes.addAndGet(-written);
+            if (writeBuffer.hasRemaining()) {
+                break;  // The socket is full; continue when it is writable again
+            }
+            loop.buffers().release(writeBuffer);
+            writeBuffer = null;
+        }
+        updateInterest();
+    }
+
+    // Fill the write buffer from the queue; a message larger than the buffer is copied in pieces
+    private void coalesce() {
+        for (ByteBuffer message; writeBuffer.hasRemaining() && (message = sendQueue.peek()) != null; ) {
+            if (message.remaining() <= writeBuffer.remaining()) {
+                writeBuffer.put(message);
+                sendQueue.poll();
+                messagesSent.incrementAndGet();
+                MESSAGES_SENT.increment();
+            } else {
+                int length = writeBuffer.remaining();
+                writeBuffer.put(message.slice(message.position(), length));
+                message.position(message.position() + length);
+            }
+        }
+        writeBuffer.flip();
+    }
+
+    private void updateInterest() {
+        int ops = SelectionKey.OP_READ;
+        if (writeBuffer != null || !sendQueue.isEmpty()) {
+            ops |= SelectionKey.OP_WRITE;
+        } else {
+            flushScheduled.set(false);
+            if (!sendQueue.isEmpty() && flushScheduled.compareAndSet(false, true)) {
+                ops |= SelectionKey.OP_WRITE;  // A message was queued while we were finishing
+            }
+        }
+        long queued = queuedBytes.get();
+        if (queued > Config.peerPauseReadBytes) {
+            readPaused = true;
+        } else if (readPaused && queued <= Config.peerPauseReadBytes / 4) {
+            readPaused = false;
+        }
+        if (readPaused) {
+            ops &= ~SelectionKey.OP_READ;
+        }
+        key.interestOps(ops);
+    }
+
+    /**
+     * Close the connection. Safe to call from any thread and more than once.
+     */
+    public void close() {
+        if (!loop.inLoop()) {
+            loop.execute(this::close);
+            return;
+        }
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        releasePartial();
+        if (writeBuffer != null) {
+            loop.buffers().release(writeBuffer);
+            writeBuffer = null;
+        }
+        sendQueue.clear();
+        queuedBytes.set(0);
+        listener.onDisconnected(this);
+    }
+
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    public InetSocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    /**
+     * @return True if this node opened the connection.
+     */
+    public boolean isOutbound() {
+        return outbound;
+    }
+
+    /**
+     * @return The bytes queued for the peer but not yet written.
+     */
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    /**
+     * @param limit The bytes that may be queued for the peer before sends are refused.
+     */
+    public void setSendQueueLimit(long limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Send queue limit must be positive");
+        }
+        this.sendQueueLimit = limit;
+    }
+
+    /**
+     * @return The number of messages written to the socket.
+     */
+    public long getMessagesSent() {
+        return messagesSent.get();
+    }
+
+    /**
+     * @return The number of socket writes; fewer than the messages sent when writes were coalesced.
+     */
+    public long getWrites() {
+        return writes.get();
+    }
+
+    /**
+     * @return The number of bytes read from the peer.
+     */
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * @return The number of bytes written to the peer.
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * Record that the peer broke the protocol, e.g. sent a malformed message. The points are
+     * added to the peer's misbehaviour score when the connection closes, see {@link PeerManager}.
+     *
+     * @param points The severity, where {@link Config#banScore} gets the peer banned.
+     */
+    public void penalize(int points) {
+        misbehaviour.addAndGet(points);
+    }
+
+    /**
+     * @return The misbehaviour points recorded on this connection.
+     */
+    public int getMisbehaviour() {
+        return misbehaviour.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Connection{" + (outbound ? "to " : "from ") + remoteAddress + '}';
+    }
+}
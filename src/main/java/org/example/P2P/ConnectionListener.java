@@ -0,0 +1,46 @@
+package org.example.P2P;
+
+import org.example.MessageProtocol.Message;
+
+/**
+ * Receives the events of a {@link P2PNode}'s connections. Methods are called on the event-loop
+ * thread owning the connection, so they must return quickly and hand slow work to another thread.
+ */
+public interface ConnectionListener {
+    default void onConnected(Connection connection) {
+    }
+
+    void onMessage(Connection connection, Message message);
+
+    default void onDisconnected(Connection connection) {
+    }
+
+    /**
+     * @param listeners The listeners to combine, e.g. gossip and sync.
+     * @return A listener passing every event to each of the listeners in turn.
+     */
+    static ConnectionListener all(ConnectionListener... listeners) {
+        return new ConnectionListener() {
+            @Override
+            public void onConnected(Connection connection) {
+                for (ConnectionListener listener : listeners) {
+                    listener.onConnected(connection);
+                }
+            }
+
+            @Override
+            public void onMessage(Connection connection, Message message) {
+                for (ConnectionListener listener : listeners) {
+                    listener.onMessage(connection, message);
+                }
+            }
+
+            @Override
+            public void onDisconnected(Connection connection) {
+                for (ConnectionListener listener : listeners) {
+                    listener.onDisconnected(connection);
+                }
+            }
+        };
+    }
+}
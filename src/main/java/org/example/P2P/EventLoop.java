@@ -0,0 +1,112 @@
+package org.example.P2P;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One selector and the thread that polls it. Every channel registered with a loop is only ever
+ * touched by the loop's thread; other threads hand work over with {@link #execute(Runnable)}.
+ */
+class EventLoop implements Runnable {
+    /**
+     * Attached to a selection key, called on the loop thread when the key is ready.
+     */
+    interface Ready {
+        void ready(SelectionKey key);
+    }
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final BufferPool buffers;
+    private final ByteBuffer readBuffer; // Shared by every connection on the loop, one read at a time
+    private volatile boolean running = true;
+
+    EventLoop(String name, BufferPool buffers) throws IOException {
+        this.selector = Selector.open();
+        this.buffers = buffers;
+        this.readBuffer = buffers.acquire();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Run a task on the loop thread, waking the selector if called from another thread.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (!inLoop()) {
+            selector.wakeup();
+        }
+    }
+
+    boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    BufferPool buffers() {
+        return buffers;
+    }
+
+    ByteBuffer readBuffer() {
+        return readBuffer;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                for (Runnable task; (task = tasks.poll()) != null; ) {
+                    task.run();
+                }
+                // Tasks queued by handlers on this thread do not wake the selector, so don't block on them
+                if (tasks.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.selectNow();
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (key.isValid()) {
+                        ((Ready) key.attachment()).ready(key);
+                    }
+                }
+                selector.selectedKeys().clear();
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                // A failing handler must not take the other connections of the loop down with it
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Stop the loop and close every channel registered with it.
+     */
+    void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+}
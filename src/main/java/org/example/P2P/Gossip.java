@@ -0,0 +1,511 @@
+package org.example.P2P;
+
+import com.sun.jdi.InvalidTypeException;
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockHeader;
+import org.example.Config.Config;
+import org.example.MessageProtocol.CompactBlock;
+import org.example.MessageProtocol.InventoryItem;
+import org.example.MessageProtocol.Message;
+import org.example.Miner;
+import org.example.Transaction.Transaction;
+import org.example.Transaction.TransactionValidator;
+import org.example.Util.HashUtil;
+import org.example.Util.RotatingBloomFilter;
+
+import java.io.Closeable;
+import java.nio.BufferUnderflowException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Inventory-based gossip over a node's connections. New transactions and blocks are announced
+ * by hash: announcements for a peer are gathered for a few milliseconds and sent as one
+ * {@link Message.MessageType#INV} message, the peer asks with {@link Message.MessageType#GET_DATA}
+ * only for the items it lacks, and only those are sent in full. Items that arrive are passed
+ * to the {@link Inventory} and, if it accepts them, announced to every other peer. A block the
+ * inventory refuses because its parent is missing has the parent requested from the same peer.
+ * <p>
+ * Hashes that were already seen are remembered in a {@link RotatingBloomFilter}, so repeated
+ * announcements are dropped without a lookup and memory stays bounded, and an item is requested
+ * from one peer at a time until the request times out. Each unique item therefore crosses each
+ * link in full at most once, and traffic grows with the data rather than with the number of peers.
+ * <p>
+ * Blocks are pushed straight to peers as {@link CompactBlock}s instead of being announced:
+ * the header and a 6 byte short ID per transaction, which the receiver matches against its own
+ * pool, only asking for the transactions it lacks. A block whose transactions were gossiped
+ * beforehand thus arrives in one message a fraction of its size, without a round trip. The
+ * header's proof of work is checked before any matching is done, and each peer may only leave
+ * a few compact blocks waiting for transactions, so a peer cannot make us hold state cheaply.
+ * <p>
+ * Messages are handled on a single gossip thread rather than on the event loops, since adding
+ * items validates them.
+ */
+public class Gossip implements ConnectionListener, Closeable {
+    private static final double SEEN_FALSE_POSITIVE_RATE = 0.0001; // A false positive means an item is not fetched from that announcement
+    private static final int SEEN_GENERATIONS = 4;
+
+    /**
+     * Where gossiped items come from and go to, e.g. the mempool and the chain.
+     */
+    public interface Inventory {
+        /**
+         * @return True if the transaction was accepted and should be relayed.
+         */
+        boolean addTransaction(Transaction transaction);
+
+        /**
+         * @return The transaction, or null if it is not known.
+         */
+        Transaction getTransaction(String hash);
+
+        /**
+         * @return True if the block was accepted and should be relayed. A refused block whose
+         *         parent {@link #getBlock(String)} does not know has the parent requested.
+         */
+        boolean addBlock(Block block);
+
+        /**
+         * @return The block, or null if it is not known.
+         */
+        Block getBlock(String hash);
+
+        /**
+         * Pass every transaction compact blocks may be rebuilt from, e.g. the mempool's.
+         */
+        void forEachTransaction(Consumer<Transaction> action);
+    }
+
+    // A compact block waiting for the transactions that were not in our pool
+    private record Reconstruction(Connection source, BlockHeader header, Transaction[] transactions, int[] missing, long requestedAt) {
+    }
+
+    private final Inventory inventory;
+    private final long requestTimeoutMillis;
+    private final int minDifficultyBits;
+    private final RotatingBloomFilter seen;
+    private final Map<Connection, Queue<InventoryItem>> pending = new ConcurrentHashMap<>();
+    private final Map<String, Long> requested = new ConcurrentHashMap<>(); // Hash to the time it was requested
+    private final Map<String, Reconstruction> reconstructions = new HashMap<>(); // Only used on the gossip thread
+    private final SecureRandom random = new SecureRandom();
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "gossip");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong announced = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong compactBlocks = new AtomicLong();
+    private final AtomicLong reconstructed = new AtomicLong();
+    private final AtomicLong invalidBlocks = new AtomicLong();
+    private final AtomicLong missingTransactions = new AtomicLong();
+    private final AtomicLong parentRequests = new AtomicLong();
+    private long lastExpiry;
+
+    public Gossip(Inventory inventory) {
+        this(inventory, Config.minDifficultyBits);
+    }
+
+    /**
+     * @param inventory Supplies and accepts the gossiped items.
+     * @param minDifficultyBits The leading zero bits a compact block's header must have.
+     */
+    public Gossip(Inventory inventory, int minDifficultyBits) {
+        this(inventory, Config.seenInventoryPerGeneration, Config.inventoryFlushMillis, Config.inventoryRequestTimeoutMillis, minDifficultyBits);
+    }
+
+    /**
+     * @param inventory Supplies and accepts the gossiped items.
+     * @param seenPerGeneration The hashes each generation of the seen-set holds.
+     * @param flushMillis How long announcements are gathered before they are sent.
+     * @param requestTimeoutMillis How long a requested item is awaited before another peer may be asked.
+     */
+    public Gossip(Inventory inventory, int seenPerGeneration, long flushMillis, long requestTimeoutMillis) {
+        this(inventory, seenPerGeneration, flushMillis, requestTimeoutMillis, Config.minDifficultyBits);
+    }
+
+    /**
+     * @param inventory Supplies and accepts the gossiped items.
+     * @param seenPerGeneration The hashes each generation of the seen-set holds.
+     * @param flushMillis How long announcements are gathered before they are sent.
+     * @param requestTimeoutMillis How long a requested item is awaited before another peer may be asked.
+     * @param minDifficultyBits The leading zero bits a compact block's header must have.
+     */
+    public Gossip(Inventory inventory, int seenPerGeneration, long flushMillis, long requestTimeoutMillis, int minDifficultyBits) {
+        if (flushMillis < 1 || requestTimeoutMillis < 1) {
+            throw new IllegalArgumentException("Gossip intervals must be positive");
+        }
+        this.inventory = inventory;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        this.minDifficultyBits = minDifficultyBits;
+        this.seen = new RotatingBloomFilter(seenPerGeneration, SEEN_FALSE_POSITIVE_RATE, SEEN_GENERATIONS);
+        worker.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Announce a transaction that was accepted locally, e.g. submitted by a client.
+     */
+    public void announceTransaction(Transaction transaction) {
+        seen.add(key(transaction.transactionHash));
+        relay(InventoryItem.transaction(transaction.transactionHash), null);
+    }
+
+    /**
+     * Send a block that was accepted locally, e.g. one this node mined, to every peer as a
+     * compact block.
+     */
+    public void announceBlock(Block block) {
+        seen.add(key(block.calculateBlockHash()));
+        relayBlock(block, null);
+    }
+
+    @Override
+    public void onConnected(Connection connection) {
+        pending.putIfAbsent(connection, new ConcurrentLinkedQueue<>());
+    }
+
+    @Override
+    public void onDisconnected(Connection connection) {
+        pending.remove(connection);
+    }
+
+    @Override
+    public void onMessage(Connection connection, Message message) {
+        try {
+            worker.execute(() -> handle(connection, message));
+        } catch (RejectedExecutionException e) {
+            // Closed
+        }
+    }
+
+    private void handle(Connection connection, Message message) {
+        try {
+            switch (message.type) {
+                case INV -> onInventory(connection, message.getInventory());
+                case GET_DATA -> onGetData(connection, message.getInventory());
+                case NEW_TRANSACTION, TRANSACTIONS -> onTransactions(connection, message.getTransactions());
+                case NEW_BLOCK -> onBlock(connection, message.getBlock());
+                case COMPACT_BLOCK -> onCompactBlock(connection, CompactBlock.from(message));
+                case GET_BLOCK_TXN -> onGetBlockTransactions(connection, message.getBlockHash(), message.getIndexes());
+                case BLOCK_TXN -> onBlockTransactions(connection, message.getBlockHash(), message.getTransactions());
+                default -> {
+                }
+            }
+        } catch (IllegalArgumentException | BufferUnderflowException | InvalidTypeException e) {
+            connection.penalize(Config.malformedMessagePenalty);
+            connection.close();  // A peer sending malformed messages is dropped
+        }
+    }
+
+    private void onInventory(Connection connection, List<InventoryItem> items) {
+        long now = System.currentTimeMillis();
+        List<InventoryItem> wanted = new ArrayList<>();
+        for (InventoryItem item : items) {
+            received.incrementAndGet();
+            Long requestedAt = requested.get(item.hash());
+            if (seen.mightContain(key(item.hash())) || requestedAt != null && now - requestedAt < requestTimeoutMillis) {
+                duplicates.incrementAndGet();
+                continue;
+            }
+            requested.put(item.hash(), now);
+            wanted.add(item);
+        }
+        if (!wanted.isEmpty()) {
+            requests.addAndGet(wanted.size());
+            connection.send(Message.inventory(Message.MessageType.GET_DATA, wanted));
+        }
+    }
+
+    private void onGetData(Connection connection, List<InventoryItem> items) {
+        List<Transaction> transactions = new ArrayList<>();
+        for (InventoryItem item : items) {
+            if (item.kind() == InventoryItem.Kind.TRANSACTION) {
+                Transaction transaction = inventory.getTransaction(item.hash());
+                if (transaction != null) {
+                    transactions.add(transaction);
+                }
+            } else {
+                Block block = inventory.getBlock(item.hash());
+                if (block != null) {
+                    connection.send(Message.block(block));
+                }
+            }
+        }
+        if (!transactions.isEmpty()) {
+            connection.send(Message.transactions(transactions));
+        }
+    }
+
+    private void onTransactions(Connection source, List<Transaction> transactions) {
+        List<Transaction> fresh = new ArrayList<>(transactions.size());
+        for (Transaction transaction : transactions) {
+            requested.remove(transaction.transactionHash);
+            if (seen.add(key(transaction.transactionHash))) {
+                fresh.add(transaction);
+            } else {
+                duplicates.incrementAndGet();
+            }
+        }
+        // Verified on all cores first, so adding them only finds their signatures in the cache
+        boolean[] valid = TransactionValidator.validateBatch(fresh);
+        for (int i = 0; i < valid.length; i++) {
+            Transaction transaction = fresh.get(i);
+            if (valid[i] && inventory.addTransaction(transaction)) {
+                relay(InventoryItem.transaction(transaction.transactionHash), source);
+            }
+        }
+    }
+
+    private void onBlock(Connection source, Block block) {
+        String hash = block.calculateBlockHash();
+        requested.remove(hash);
+        if (!seen.add(key(hash))) {
+            duplicates.incrementAndGet();
+        } else if (!TransactionValidator.validateAll(block.getTransactionList())) {
+            invalidBlocks.incrementAndGet();
+            source.penalize(Config.invalidBlockPenalty);
+            source.close();  // A peer relaying forged or altered transactions is dropped
+        } else if (inventory.addBlock(block)) {
+            relayBlock(block, source);
+        } else if (isOrphan(block) && !requested.containsKey(block.getPreviousBlockHash())) {
+            // The peer built on a block we lack, so it has that block too; its parent is asked for
+            // in turn until the branch reaches a block we have
+            parentRequests.incrementAndGet();
+            requestBlock(source, block.getPreviousBlockHash());
+        }
+    }
+
+    // A mined block whose parent the inventory does not have
+    private boolean isOrphan(Block block) {
+        return block.getPreviousBlockHash() != null && hasProofOfWork(block.getHeader())
+                && inventory.getBlock(block.getPreviousBlockHash()) == null;
+    }
+
+    private boolean hasProofOfWork(BlockHeader header) {
+        return header.getDifficultyBits() >= minDifficultyBits && Miner.meetsDifficulty(header.hash(), header.getDifficultyBits());
+    }
+
+    private void onCompactBlock(Connection source, CompactBlock compact) throws InvalidTypeException {
+        compactBlocks.incrementAndGet();
+        String hash = compact.getBlockHash();
+        if (seen.mightContain(key(hash)) || reconstructions.containsKey(hash)) {
+            duplicates.incrementAndGet();
+            return;
+        }
+        BlockHeader header = compact.getHeader();
+        if (!hasProofOfWork(header)) {
+            invalidBlocks.incrementAndGet();
+            source.penalize(Config.invalidHeadersPenalty);
+            source.close();  // Matching short IDs is only worth it for a block that was mined
+            return;
+        }
+        Transaction[] transactions = compact.reconstruct(inventory::forEachTransaction);
+        int[] missing = IntStream.range(0, transactions.length).filter(i -> transactions[i] == null).toArray();
+        if (missing.length == 0) {
+            reconstructed.incrementAndGet();
+            complete(source, header, transactions);
+            return;
+        }
+        if (reconstructions.values().stream().filter(waiting -> waiting.source() == source).count() >= Config.maxReconstructionsPerPeer) {
+            requestBlock(source, hash);  // Fetched whole rather than held while the peer answers
+            return;
+        }
+        missingTransactions.addAndGet(missing.length);
+        reconstructions.put(hash, new Reconstruction(source, header, transactions, missing, System.currentTimeMillis()));
+        source.send(Message.blockTransactionsRequest(hash, missing));
+    }
+
+    private void onGetBlockTransactions(Connection connection, String hash, int[] indexes) {
+        Block block = inventory.getBlock(hash);
+        if (block == null) {
+            return;
+        }
+        List<Transaction> all = block.getTransactionList();
+        List<Transaction> transactions = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            if (index < 0 || index >= all.size()) {
+                throw new IllegalArgumentException("Block has no transaction " + index);
+            }
+            transactions.add(all.get(index));
+        }
+        connection.send(Message.blockTransactions(hash, transactions));
+    }
+
+    private void onBlockTransactions(Connection source, String hash, List<Transaction> received) throws InvalidTypeException {
+        Reconstruction reconstruction = reconstructions.get(hash);
+        if (reconstruction == null || reconstruction.source() != source) {
+            return;
+        }
+        reconstructions.remove(hash);
+        if (received.size() != reconstruction.missing().length) {
+            requestBlock(source, hash);
+            return;
+        }
+        for (int i = 0; i < received.size(); i++) {
+            reconstruction.transactions()[reconstruction.missing()[i]] = received.get(i);
+        }
+        complete(source, reconstruction.header(), reconstruction.transactions());
+    }
+
+    private void complete(Connection source, BlockHeader header, Transaction[] transactions) throws InvalidTypeException {
+        Block block;
+        try {
+            block = new Block(header, Arrays.asList(transactions));
+        } catch (IllegalArgumentException e) {
+            // A short ID matched the wrong pool transaction, so fall back to the full block
+            requestBlock(source, HashUtil.toHex(header.hash()));
+            return;
+        }
+        onBlock(source, block);
+    }
+
+    private void requestBlock(Connection source, String hash) {
+        requested.put(hash, System.currentTimeMillis());
+        requests.incrementAndGet();
+        source.send(Message.inventory(Message.MessageType.GET_DATA, List.of(InventoryItem.block(hash))));
+    }
+
+    private void relayBlock(Block block, Connection except) {
+        Message message = CompactBlock.of(block, random.nextLong()).toMessage();
+        for (Connection connection : pending.keySet()) {
+            if (connection != except) {
+                connection.send(message);
+            }
+        }
+    }
+
+    private void relay(InventoryItem item, Connection except) {
+        for (Map.Entry<Connection, Queue<InventoryItem>> entry : pending.entrySet()) {
+            if (entry.getKey() != except) {
+                entry.getValue().add(item);
+            }
+        }
+    }
+
+    // Send each peer's gathered announcements, and forget requests that were never answered
+    private void flush() {
+        for (Map.Entry<Connection, Queue<InventoryItem>> entry : pending.entrySet()) {
+            Connection connection = entry.getKey();
+            Queue<InventoryItem> queue = entry.getValue();
+            if (!connection.isOpen()) {
+                pending.remove(connection);
+                continue;
+            }
+            while (!queue.isEmpty()) {
+                List<InventoryItem> items = new ArrayList<>();
+                for (InventoryItem item; items.size() < Config.maxInventoryItems && (item = queue.poll()) != null; ) {
+                    items.add(item);
+                }
+                announced.addAndGet(items.size());
+                connection.send(Message.inventory(Message.MessageType.INV, items));
+            }
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastExpiry >= requestTimeoutMillis) {
+            requested.values().removeIf(requestedAt -> now - requestedAt >= requestTimeoutMillis);
+            // Blocks whose missing transactions never came are fetched in full instead
+            for (Iterator<Reconstruction> iterator = reconstructions.values().iterator(); iterator.hasNext(); ) {
+                Reconstruction reconstruction = iterator.next();
+                if (now - reconstruction.requestedAt() >= requestTimeoutMillis) {
+                    iterator.remove();
+                    requestBlock(reconstruction.source(), HashUtil.toHex(reconstruction.header().hash()));
+                }
+            }
+            lastExpiry = now;
+        }
+    }
+
+    private static byte[] key(String hash) {
+        if (hash == null || hash.length() != 2 * HashUtil.SHA256_LENGTH) {
+            throw new IllegalArgumentException("Not a SHA-256 hash: " + hash);
+        }
+        return HashUtil.fromHex(hash);
+    }
+
+    /**
+     * @return The number of items announced to peers.
+     */
+    public long getAnnounced() {
+        return announced.get();
+    }
+
+    /**
+     * @return The number of items peers announced to this node.
+     */
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * @return The number of items requested from peers.
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return The number of announcements and items dropped because they were already seen or requested.
+     */
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    /**
+     * @return The number of compact blocks received.
+     */
+    public long getCompactBlocks() {
+        return compactBlocks.get();
+    }
+
+    /**
+     * @return The number of compact blocks rebuilt from the pool alone, without a round trip.
+     */
+    public long getReconstructed() {
+        return reconstructed.get();
+    }
+
+    /**
+     * @return The number of blocks dropped because a transaction failed validation or the header
+     *         lacked proof of work.
+     */
+    public long getInvalidBlocks() {
+        return invalidBlocks.get();
+    }
+
+    /**
+     * @return The number of compact block transactions that had to be requested.
+     */
+    public long getMissingTransactions() {
+        return missingTransactions.get();
+    }
+
+    /**
+     * @return The number of parents requested for blocks that arrived before them.
+     */
+    public long getParentRequests() {
+        return parentRequests.get();
+    }
+
+    @Override
+    public void close() {
+        worker.shutdownNow();
+        pending.clear();
+    }
+}
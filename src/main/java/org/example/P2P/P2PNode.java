@@ -1,56 +1,139 @@
 package org.example.P2P;
 
-import java.io.*;
-import java.net.*;
-import java.util.concurrent.*;
+import org.example.Config.Config;
 
-public class P2PNode implements Runnable {
-    private static final int PORT = 5000;
-    private static ServerSocket serverSocket;
-    private static ExecutorService pool = Executors.newCachedThreadPool();
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
 
-    @Override
-    public void run() {
-        try {
-            serverSocket = new ServerSocket(PORT);
-            System.out.println("Server started on port " + PORT);
+/**
+ * Non-blocking peer-to-peer transport. A small fixed set of event-loop threads, each polling
+ * its own selector, serves every connection, so the number of threads does not grow with the
+ * number of peers. The first loop also accepts incoming connections and hands them to the
+ * loops in turn.
+ */
+public class P2PNode implements Closeable {
+    private final ConnectionListener listener;
+    private final EventLoop[] loops;
+    private final ServerSocketChannel server;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    public P2PNode(ConnectionListener listener) throws IOException {
+        this(Config.p2pPort, Config.eventLoopThreads, listener);
+    }
+
+    /**
+     * Bind the listening socket and start the event loops.
+     *
+     * @param port The port to listen on, 0 for any free port.
+     * @param eventLoopCount The number of event-loop threads.
+     * @param listener Receives the events of every connection.
+     */
+    public P2PNode(int port, int eventLoopCount, ConnectionListener listener) throws IOException {
+        if (eventLoopCount < 1) {
+            throw new IllegalArgumentException("Node needs at least one event loop");
+        }
+        this.listener = listener;
+        this.loops = new EventLoop[eventLoopCount];
+        for (int i = 0; i < eventLoopCount; i++) {
+            loops[i] = new EventLoop("p2p-loop-" + i, new BufferPool(Config.peerBufferSize, Config.pooledPeerBuffers));
+        }
+        this.server = ServerSocketChannel.open();
+        server.configureBlocking(false);
+        server.bind(new InetSocketAddress(port), Config.p2pBacklog);
+        EventLoop acceptor = loops[0];
+        acceptor.execute(() -> {
+            try {
+                server.register(acceptor.selector(), SelectionKey.OP_ACCEPT, (EventLoop.Ready) key -> accept());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        for (EventLoop loop : loops) {
+            loop.start();
+        }
+    }
 
-            while (true) {
-                // Accept incoming connections from other peers
-                Socket clientSocket = serverSocket.accept();
-                pool.submit(new ClientHandler(clientSocket)); // Handle communication in a new thread
+    private void accept() {
+        try {
+            for (SocketChannel channel; (channel = server.accept()) != null; ) {
+                attach(channel, (InetSocketAddress) channel.getRemoteAddress(), false, listener);
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    // Handler to manage the communication between peers
-    static class ClientHandler implements Runnable {
-        private Socket clientSocket;
+    /**
+     * Open a connection to a peer without blocking. Messages may be sent right away; they are
+     * written once the connection is established.
+     *
+     * @param address The peer's listening address.
+     * @return The connection, which may still be connecting.
+     */
+    public Connection connect(InetSocketAddress address) throws IOException {
+        return connect(address, listener);
+    }
 
-        public ClientHandler(Socket socket) {
-            this.clientSocket = socket;
+    /**
+     * Open a connection whose events go to its own listener rather than the node's.
+     *
+     * @param address The peer's listening address.
+     * @param connectionListener Receives the events of this connection.
+     * @return The connection, which may still be connecting.
+     */
+    public Connection connect(InetSocketAddress address, ConnectionListener connectionListener) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.connect(address);
+            return attach(channel, address, true, connectionListener);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
         }
+    }
 
-        @Override
-        public void run() {
+    private Connection attach(SocketChannel channel, InetSocketAddress address, boolean outbound, ConnectionListener connectionListener) throws IOException {
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+        Connection connection = new Connection(channel, loop, connectionListener, address, outbound);
+        // Queued before any send, so the connection is registered by the time its messages are flushed
+        loop.execute(() -> {
             try {
-                BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true);
-                String message;
-
-                // Read incoming messages from peer
-                while ((message = in.readLine()) != null) {
-                    System.out.println("Received: " + message);
-                    // Respond with a simple acknowledgment (or implement more complex logic here)
-                    out.println("Message received: " + message);
-                }
-
-                clientSocket.close();
+                connection.register();
             } catch (IOException e) {
-                e.printStackTrace();
+                connection.close();
             }
+        });
+        return connection;
+    }
+
+    ConnectionListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @return The port the node listens on.
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Stop accepting, close every connection and stop the event loops.
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (EventLoop loop : loops) {
+            loop.close();
         }
     }
 }
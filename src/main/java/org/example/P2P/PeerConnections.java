@@ -0,0 +1,230 @@
+package org.example.P2P;
+
+import org.example.Config.Config;
+import org.example.MessageProtocol.Message;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-lived outbound connections, one per peer, opened on first use and kept for every later
+ * message instead of connecting per message. A connection that drops or fails to connect is
+ * reopened after a backoff that doubles with every failed attempt, up to a maximum, and resets
+ * once a connection succeeds. Messages sent to a peer while it is waiting to reconnect, or
+ * whose send queue is full, are dropped and counted.
+ * <p>
+ * Peers are addressed as {@code host:port}. Messages they send back go to the node's listener.
+ */
+public class PeerConnections implements Closeable {
+    private final P2PNode node;
+    private final long sendQueueLimit;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reconnects = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "peer-reconnect");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong reconnectAttempts = new AtomicLong();
+    private volatile boolean closed;
+
+    public PeerConnections(P2PNode node) {
+        this(node, Config.peerSendQueueLimit, Config.reconnectInitialBackoffMillis, Config.reconnectMaxBackoffMillis);
+    }
+
+    /**
+     * @param node The transport the connections are opened on.
+     * @param sendQueueLimit The bytes that may be queued for one peer.
+     * @param initialBackoffMillis The wait before the first reconnect attempt.
+     * @param maxBackoffMillis The longest wait between reconnect attempts.
+     */
+    public PeerConnections(P2PNode node, long sendQueueLimit, long initialBackoffMillis, long maxBackoffMillis) {
+        if (initialBackoffMillis < 1 || maxBackoffMillis < initialBackoffMillis) {
+            throw new IllegalArgumentException("Backoff must be positive and no more than its maximum");
+        }
+        this.node = node;
+        this.sendQueueLimit = sendQueueLimit;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Queue a message for a peer, connecting to it first if needed.
+     *
+     * @param peer The peer's address as {@code host:port}.
+     * @param message The message.
+     * @return False if the message was dropped.
+     */
+    public boolean send(String peer, Message message) {
+        if (closed) {
+            return false;
+        }
+        Connection connection = peers.computeIfAbsent(peer, Peer::new).connection;
+        if (connection == null || !connection.send(message)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queue a message for several peers.
+     *
+     * @param peers The peers' addresses.
+     * @param message The message.
+     * @return The number of peers the message was queued for.
+     */
+    public int broadcast(Collection<String> peers, Message message) {
+        int sent = 0;
+        for (String peer : peers) {
+            if (send(peer, message)) {
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Open the connection to a peer, unless it is already open or waiting to reconnect. It is
+     * kept open, and reopened when it drops, like the connections opened by {@link #send}.
+     *
+     * @param peer The peer's address as {@code host:port}.
+     */
+    public void connect(String peer) {
+        if (!closed) {
+            peers.computeIfAbsent(peer, Peer::new);
+        }
+    }
+
+    /**
+     * @param peer The peer's address.
+     * @return The peer's current connection, or null if there is none.
+     */
+    public Connection getConnection(String peer) {
+        Peer state = peers.get(peer);
+        return state == null ? null : state.connection;
+    }
+
+    /**
+     * Close the connection to a peer and stop reconnecting to it.
+     *
+     * @param peer The peer's address.
+     */
+    public void disconnect(String peer) {
+        Peer state = peers.remove(peer);
+        if (state != null) {
+            state.close();
+        }
+    }
+
+    /**
+     * @return The number of messages dropped because a peer was unreachable or too slow.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return The number of reconnect attempts made.
+     */
+    public long getReconnectAttempts() {
+        return reconnectAttempts.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        reconnects.shutdownNow();
+        for (Peer peer : peers.values()) {
+            peer.close();
+        }
+        peers.clear();
+    }
+
+    private static InetSocketAddress parse(String peer) {
+        int separator = peer.lastIndexOf(':');
+        if (separator < 1) {
+            throw new IllegalArgumentException("Peer address must be host:port, got " + peer);
+        }
+        return new InetSocketAddress(peer.substring(0, separator), Integer.parseInt(peer.substring(separator + 1)));
+    }
+
+    // The connection to one peer and its reconnect schedule
+    private final class Peer implements ConnectionListener {
+        private final String address;
+        private final InetSocketAddress socketAddress;
+        private volatile Connection connection;
+        private long backoffMillis = initialBackoffMillis;
+        private volatile boolean removed;
+
+        Peer(String address) {
+            this.address = address;
+            this.socketAddress = parse(address);
+            open();
+        }
+
+        private void open() {
+            if (closed || removed) {
+                return;
+            }
+            try {
+                Connection opened = node.connect(socketAddress, this);
+                opened.setSendQueueLimit(sendQueueLimit);
+                connection = opened;
+            } catch (IOException e) {
+                scheduleReconnect();
+            }
+        }
+
+        private synchronized void scheduleReconnect() {
+            connection = null;
+            if (closed || removed) {
+                return;
+            }
+            long delay = backoffMillis;
+            backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+            reconnectAttempts.incrementAndGet();
+            reconnects.schedule(this::open, delay, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public synchronized void onConnected(Connection connection) {
+            backoffMillis = initialBackoffMillis;
+            node.getListener().onConnected(connection);
+        }
+
+        @Override
+        public void onMessage(Connection connection, Message message) {
+            node.getListener().onMessage(connection, message);
+        }
+
+        @Override
+        public void onDisconnected(Connection connection) {
+            node.getListener().onDisconnected(connection);
+            scheduleReconnect();
+        }
+
+        void close() {
+            removed = true;
+            Connection current = connection;
+            if (current != null) {
+                current.close();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Peer{" + address + '}';
+        }
+    }
+}
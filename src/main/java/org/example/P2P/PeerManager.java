@@ -1,22 +1,477 @@
 package org.example.P2P;
 
+import org.example.Config.Config;
+import org.example.MessageProtocol.Message;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The table of known peers, and which of them this node connects to.
+ * <p>
+ * Peers are kept in a concurrent map keyed by their listening address, {@code host:port}. Each
+ * connected peer is pinged periodically to measure its round-trip time, and the rate at which it
+ * delivers data is sampled whenever it sends enough to measure. Both are kept as moving averages
+ * and combined into the time the peer would take to deliver a 1 MiB batch, by which peers are
+ * ranked: the fastest known peers are dialed first, and {@link #estimatedMillis(Connection)}
+ * lets sync hand its requests to the fastest connected peers first.
+ * <p>
+ * Peers learn addresses from each other: every outbound peer is asked for addresses once
+ * connected, and answers with its best known peers. Protocol violations recorded on a
+ * connection with {@link Connection#penalize(int)} add up in the misbehaviour score of the
+ * peer's host, and a host reaching {@link Config#banScore} is refused for {@link Config#banMillis}.
+ * Scores are kept by host rather than by address, so a peer cannot shed its points or a ban by
+ * reconnecting from another port, or by never sending the HELLO that names its listening port.
+ * Once the table holds {@link Config#maxKnownPeers} addresses, peers that are banned or failed
+ * to connect make room for new ones.
+ */
+public class PeerManager implements ConnectionListener, Closeable {
+    private static final double SMOOTHING = 0.25; // Weight of a new sample in the moving averages
+    private static final double UNKNOWN_RTT_MILLIS = 1_000; // Assumed for peers not measured yet
+    private static final double DEFAULT_BYTES_PER_SECOND = 1024 * 1024; // Assumed until a peer's rate is measured
+    private static final double RANKING_BYTES = 1024 * 1024; // Size of the batch peers are ranked by
+    private static final long MIN_THROUGHPUT_SAMPLE = 64 * 1024; // Less traffic in an interval says nothing about the link
+    private static final int DIAL_ROUNDS = 3; // Maintenance rounds a dialed peer has to connect
+
+    private final int targetOutbound;
+    private final long maintenanceMillis;
+    private final long nodeId = new SecureRandom().nextLong();
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, PeerInfo> peers = new ConcurrentHashMap<>();
+    private final Map<String, Standing> standings = new ConcurrentHashMap<>(); // Host to its misbehaviour, only once it has some
+    private final Map<Connection, PeerInfo> connections = new ConcurrentHashMap<>();
+    private final Map<String, Integer> dialing = new ConcurrentHashMap<>(); // Address to the rounds it has left to connect
+    private final Set<String> selfAddresses = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "peer-manager");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile int listenPort;
+    private volatile PeerConnections outbound;
 
-public class PeerManager {
-    private List<String> peers = new ArrayList<>();
+    // The misbehaviour recorded against one host
+    private static final class Standing {
+        private final AtomicInteger misbehaviour = new AtomicInteger();
+        private volatile long bannedUntil;
 
-    public void addPeer(String peerAddress) {
-        if (!peers.contains(peerAddress)) {
-            peers.add(peerAddress);
+        boolean isBanned() {
+            return bannedUntil > System.currentTimeMillis();
         }
     }
 
+    /**
+     * What is known about one peer.
+     */
+    public final class PeerInfo {
+        private final String address;
+        private volatile String host;
+        private volatile double rttMillis = -1;
+        private volatile double bytesPerSecond = -1;
+        private volatile int failedDials;
+        private volatile Connection connection;
+        private long pingNonce;
+        private long pingSentNanos;
+        private long lastBytes;
+
+        PeerInfo(String address) {
+            this.address = address;
+            this.host = address.substring(0, address.lastIndexOf(':'));
+        }
+
+        synchronized Message ping(long nonce) {
+            pingNonce = nonce;
+            pingSentNanos = System.nanoTime();
+            return Message.ping(Message.MessageType.PING, nonce);
+        }
+
+        synchronized void pong(long nonce) {
+            if (nonce == pingNonce && nonce != 0) {
+                double sample = (System.nanoTime() - pingSentNanos) / 1e6;
+                rttMillis = rttMillis < 0 ? sample : rttMillis + SMOOTHING * (sample - rttMillis);
+                pingNonce = 0;
+            }
+        }
+
+        synchronized void sampleThroughput(long bytesReceived, double seconds) {
+            long bytes = bytesReceived - lastBytes;
+            lastBytes = bytesReceived;
+            if (bytes >= MIN_THROUGHPUT_SAMPLE) {
+                double sample = bytes / seconds;
+                bytesPerSecond = bytesPerSecond < 0 ? sample : bytesPerSecond + SMOOTHING * (sample - bytesPerSecond);
+            }
+        }
+
+        synchronized void attach(Connection connection) {
+            this.connection = connection;
+            this.host = host(connection.getRemoteAddress());
+            this.lastBytes = connection.getBytesReceived();
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        /**
+         * @return The smoothed round-trip time, or -1 if it was never measured.
+         */
+        public double getRttMillis() {
+            return rttMillis;
+        }
+
+        /**
+         * @return The smoothed rate at which the peer delivered data, or -1 if it was never measured.
+         */
+        public double getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        /**
+         * @return The misbehaviour points of the peer's host.
+         */
+        public int getMisbehaviour() {
+            Standing standing = standings.get(host);
+            return standing == null ? 0 : standing.misbehaviour.get();
+        }
+
+        public boolean isBanned() {
+            return PeerManager.this.isBanned(host);
+        }
+
+        public boolean isConnected() {
+            Connection current = connection;
+            return current != null && current.isOpen();
+        }
+
+        /**
+         * @return The time the peer is expected to take to deliver a 1 MiB batch, used to rank peers.
+         */
+        public double estimatedMillis() {
+            double rtt = rttMillis < 0 ? UNKNOWN_RTT_MILLIS : rttMillis;
+            double rate = bytesPerSecond < 0 ? DEFAULT_BYTES_PER_SECOND : bytesPerSecond;
+            return rtt + RANKING_BYTES * 1000 / Math.max(rate, 1);
+        }
+
+        @Override
+        public String toString() {
+            return "PeerInfo{" +
+                    "address='" + address + '\'' +
+                    ", rttMillis=" + rttMillis +
+                    ", bytesPerSecond=" + bytesPerSecond +
+                    ", misbehaviour=" + getMisbehaviour() +
+                    ", connected=" + isConnected() +
+                    ", banned=" + isBanned() +
+                    '}';
+        }
+    }
+
+    public PeerManager() {
+        this(Config.targetOutboundPeers, Config.peerMaintenanceMillis);
+    }
+
+    /**
+     * @param targetOutbound The number of connections to open to the best known peers.
+     * @param maintenanceMillis How often peers are pinged and new ones dialed.
+     */
+    public PeerManager(int targetOutbound, long maintenanceMillis) {
+        if (targetOutbound < 0 || maintenanceMillis < 1) {
+            throw new IllegalArgumentException("Peer manager needs a non-negative target and a positive interval");
+        }
+        this.targetOutbound = targetOutbound;
+        this.maintenanceMillis = maintenanceMillis;
+    }
+
+    /**
+     * Start pinging peers and dialing the best known ones. The node's listener must pass
+     * connection events to this manager.
+     *
+     * @param node The node whose listening port is announced to peers.
+     * @param outbound The connections peers are dialed with.
+     */
+    public void start(P2PNode node, PeerConnections outbound) {
+        this.listenPort = node.getPort();
+        this.outbound = outbound;
+        maintenance.scheduleWithFixedDelay(this::maintain, 0, maintenanceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Remember a peer's address, e.g. a bootstrap peer.
+     *
+     * @param peerAddress The address as {@code host:port}.
+     * @return False if the address is malformed, or the table is full of peers still worth dialing.
+     */
+    public boolean addPeer(String peerAddress) {
+        int separator = peerAddress.lastIndexOf(':');
+        if (separator < 1 || peerAddress.length() > 255) {
+            return false;
+        }
+        try {
+            int port = Integer.parseInt(peerAddress.substring(separator + 1));
+            if (port < 1 || port > 0xFFFF) {
+                return false;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (peers.containsKey(peerAddress) || selfAddresses.contains(peerAddress)) {
+            return true;
+        }
+        if (peers.size() >= Config.maxKnownPeers && !evictUnreachable()) {
+            return false;
+        }
+        peers.putIfAbsent(peerAddress, new PeerInfo(peerAddress));
+        return true;
+    }
+
+    // Forget the peer least worth dialing: a banned one first, then the one that failed to connect most often
+    private boolean evictUnreachable() {
+        return peers.values().stream()
+                .filter(info -> !info.isConnected() && !dialing.containsKey(info.address) && (info.isBanned() || info.failedDials > 0))
+                .max(Comparator.comparing(PeerInfo::isBanned).thenComparingInt(info -> info.failedDials))
+                .map(info -> peers.remove(info.address, info))
+                .orElse(false);
+    }
+
+    /**
+     * @return The addresses of every known peer.
+     */
     public List<String> getPeers() {
-        return peers;
+        return new ArrayList<>(peers.keySet());
     }
-    public String getBootstrapPeer() {
-        return "localhost:5001"; // Assuming a known peer or bootstrap node
+
+    /**
+     * @param peerAddress The address as {@code host:port}.
+     * @return What is known about the peer, or null if it is unknown.
+     */
+    public PeerInfo getPeer(String peerAddress) {
+        return peers.get(peerAddress);
+    }
+
+    /**
+     * @param count The number of peers wanted.
+     * @return Up to that many connected peers, fastest first.
+     */
+    public List<PeerInfo> getBestPeers(int count) {
+        return connections.values().stream()
+                .distinct()
+                .sorted(Comparator.comparingDouble(PeerInfo::estimatedMillis))
+                .limit(count)
+                .toList();
+    }
+
+    /**
+     * @param connection A connection of this node.
+     * @return The time its peer is expected to take to deliver a 1 MiB batch; lower is better.
+     */
+    public double estimatedMillis(Connection connection) {
+        PeerInfo info = connections.get(connection);
+        return info == null ? Double.MAX_VALUE : info.estimatedMillis();
+    }
+
+    @Override
+    public void onConnected(Connection connection) {
+        connection.send(Message.hello(listenPort, nodeId));
+        if (connection.isOutbound()) {
+            PeerInfo info = peers.computeIfAbsent(address(connection.getRemoteAddress(), connection.getRemoteAddress().getPort()), PeerInfo::new);
+            if (!attach(connection, info)) {
+                return;
+            }
+            dialing.remove(info.address);
+            info.failedDials = 0;
+            connection.send(new Message(Message.MessageType.GET_ADDR, new byte[0]));
+        } else {
+            // Known by its ephemeral address until its HELLO names the port it listens on
+            attach(connection, new PeerInfo(address(connection.getRemoteAddress(), connection.getRemoteAddress().getPort())));
+        }
+    }
+
+    private boolean attach(Connection connection, PeerInfo info) {
+        if (isBanned(host(connection.getRemoteAddress()))) {
+            connection.close();
+            return false;
+        }
+        info.attach(connection);
+        connections.put(connection, info);
+        connection.send(info.ping(nextNonce()));
+        return true;
+    }
+
+    @Override
+    public void onDisconnected(Connection connection) {
+        PeerInfo info = connections.remove(connection);
+        if (info == null) {
+            return;
+        }
+        if (info.connection == connection) {
+            info.connection = null;
+        }
+        // Charged to the host, so points earned before a HELLO re-keyed the peer, or without one, count too
+        int points = connection.getMisbehaviour();
+        if (points > 0) {
+            Standing standing = standings.computeIfAbsent(host(connection.getRemoteAddress()), host -> new Standing());
+            if (standing.misbehaviour.addAndGet(points) >= Config.banScore) {
+                standing.bannedUntil = System.currentTimeMillis() + Config.banMillis;
+                PeerConnections dialer = outbound;
+                if (dialer != null) {
+                    dialer.disconnect(info.address);  // Stop reconnecting to it
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onMessage(Connection connection, Message message) {
+        try {
+            switch (message.type) {
+                case HELLO -> onHello(connection, message.getPort(), message.getNodeId());
+                case PING -> connection.send(Message.ping(Message.MessageType.PONG, message.getNonce()));
+                case PONG -> {
+                    PeerInfo info = connections.get(connection);
+                    if (info != null) {
+                        info.pong(message.getNonce());
+                    }
+                }
+                case GET_ADDR -> execute(() -> connection.send(Message.addresses(bestAddresses(Config.maxAddressesPerMessage))));
+                case ADDR -> {
+                    List<String> addresses = message.getAddresses();
+                    if (addresses.size() > Config.maxAddressesPerMessage) {
+                        throw new IllegalArgumentException("Too many addresses");
+                    }
+                    addresses.forEach(this::addPeer);
+                }
+                default -> {
+                }
+            }
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            connection.penalize(Config.malformedMessagePenalty);
+            connection.close();
+        }
+    }
+
+    private void onHello(Connection connection, int port, long peerNodeId) {
+        String address = address(connection.getRemoteAddress(), port);
+        if (peerNodeId == nodeId) {
+            // Dialed ourselves, e.g. through an address a peer passed on
+            selfAddresses.add(address);
+            peers.remove(address);
+            PeerConnections dialer = outbound;
+            if (dialer != null) {
+                dialer.disconnect(address);
+            }
+            connection.close();
+            return;
+        }
+        if (connection.isOutbound() || port < 1 || port > 0xFFFF || !addPeer(address)) {
+            return;
+        }
+        PeerInfo provisional = connections.get(connection);
+        PeerInfo info = peers.get(address);
+        if (info == null || provisional == null || info == provisional) {
+            return;
+        }
+        if (attach(connection, info)) {
+            info.rttMillis = provisional.rttMillis;
+        }
+    }
+
+    // Ping every connected peer, sample their throughput and dial the best known peers into free slots
+    private void maintain() {
+        // A host whose ban ran out starts over with a clean score
+        standings.values().removeIf(standing -> standing.bannedUntil != 0 && !standing.isBanned());
+        double seconds = maintenanceMillis / 1000.0;
+        for (Map.Entry<Connection, PeerInfo> entry : connections.entrySet()) {
+            Connection connection = entry.getKey();
+            PeerInfo info = entry.getValue();
+            info.sampleThroughput(connection.getBytesReceived(), seconds);
+            connection.send(info.ping(nextNonce()));
+        }
+        PeerConnections dialer = outbound;
+        if (dialer == null) {
+            return;
+        }
+        // Peers that did not connect within a few rounds free their slot and rank lower next time
+        for (Map.Entry<String, Integer> entry : dialing.entrySet()) {
+            if (entry.getValue() <= 1) {
+                dialing.remove(entry.getKey());
+                dialer.disconnect(entry.getKey());
+                PeerInfo info = peers.get(entry.getKey());
+                if (info != null) {
+                    info.failedDials++;
+                }
+            } else {
+                entry.setValue(entry.getValue() - 1);
+            }
+        }
+        long connectedOutbound = connections.keySet().stream().filter(Connection::isOutbound).count();
+        long free = targetOutbound - connectedOutbound - dialing.size();
+        if (free <= 0) {
+            return;
+        }
+        peers.values().stream()
+                .filter(info -> !info.isBanned() && !info.isConnected() && !dialing.containsKey(info.address))
+                .sorted(Comparator.comparingInt((PeerInfo info) -> info.failedDials).thenComparingDouble(PeerInfo::estimatedMillis))
+                .limit(free)
+                .forEach(info -> {
+                    dialing.put(info.address, DIAL_ROUNDS);
+                    dialer.connect(info.address);
+                });
+    }
+
+    // Addresses worth passing on: peers we could connect to, fastest first
+    private List<String> bestAddresses(int count) {
+        return peers.values().stream()
+                .filter(info -> !info.isBanned() && info.failedDials == 0)
+                .sorted(Comparator.comparingDouble(PeerInfo::estimatedMillis))
+                .limit(count)
+                .map(PeerInfo::getAddress)
+                .toList();
     }
-}
 
+    private void execute(Runnable task) {
+        try {
+            maintenance.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Closed
+        }
+    }
+
+    private long nextNonce() {
+        long nonce;
+        do {
+            nonce = random.nextLong();
+        } while (nonce == 0);
+        return nonce;
+    }
+
+    private boolean isBanned(String host) {
+        Standing standing = standings.get(host);
+        return standing != null && standing.isBanned();
+    }
+
+    private static String address(InetSocketAddress remote, int port) {
+        return remote.getHostString() + ":" + port;
+    }
+
+    // The IP address of a connected peer, whatever name it was dialed by
+    private static String host(InetSocketAddress remote) {
+        return remote.getAddress() != null ? remote.getAddress().getHostAddress() : remote.getHostString();
+    }
+
+    @Override
+    public void close() {
+        maintenance.shutdownNow();
+    }
+}
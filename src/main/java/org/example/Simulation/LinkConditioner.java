@@ -0,0 +1,174 @@
+package org.example.Simulation;
+
+import org.example.MessageProtocol.Message;
+import org.example.MessageProtocol.MessageCodec;
+import org.example.P2P.Connection;
+import org.example.P2P.ConnectionListener;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers a node's connection events to its listener as if they had crossed a link with the
+ * given {@link LinkProfile}, and counts the bytes the node exchanged with its peers.
+ * <p>
+ * Each connection's messages queue behind each other: a message is received once the ones
+ * before it have been transmitted at the link's bandwidth, plus the latency, and a message that
+ * lost a packet waits for its retransmission. Events are delivered in order on the conditioner's
+ * own thread, so listeners see the same ordering as without it.
+ */
+public class LinkConditioner implements ConnectionListener, Closeable {
+    private static final int PACKET_BYTES = 1460; // TCP payload of one Ethernet frame
+    private static final long MIN_RETRANSMIT_NANOS = TimeUnit.MILLISECONDS.toNanos(200); // Linux's minimum retransmission timeout
+    private static final AtomicInteger conditionerCount = new AtomicInteger();
+
+    private final ConnectionListener listener;
+    private final LinkProfile profile;
+    private final Map<Connection, Link> links = new ConcurrentHashMap<>();
+    private final AtomicLong closedBytesReceived = new AtomicLong();
+    private final AtomicLong closedBytesSent = new AtomicLong();
+    private final AtomicLong messagesReceived = new AtomicLong();
+    private final ScheduledExecutorService delivery;
+
+    // The receiving end of one connection: when it is free again and what is waiting to be delivered
+    private static final class Link {
+        final Queue<Event> pending = new ArrayDeque<>();
+        long busyUntil;     // When the last queued message has been transmitted
+        long lastDelivery;  // When the last queued event is delivered; later events wait for it
+    }
+
+    private record Event(long deliverAt, Runnable action) {
+    }
+
+    /**
+     * @param listener The node's listener.
+     * @param profile The conditions of the links into the node.
+     */
+    public LinkConditioner(ConnectionListener listener, LinkProfile profile) {
+        this.listener = listener;
+        this.profile = profile;
+        String name = "link-" + conditionerCount.getAndIncrement();
+        this.delivery = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void onConnected(Connection connection) {
+        Link link = new Link();
+        links.put(connection, link);
+        enqueue(link, System.nanoTime(), () -> listener.onConnected(connection));
+    }
+
+    @Override
+    public void onMessage(Connection connection, Message message) {
+        Link link = links.get(connection);
+        if (link == null) {
+            return;
+        }
+        messagesReceived.incrementAndGet();
+        int size = MessageCodec.HEADER_SIZE + message.payload.length;
+        long now = System.nanoTime();
+        long deliverAt;
+        synchronized (link) {
+            long start = Math.max(now, link.busyUntil);
+            link.busyUntil = start + transmissionNanos(size);
+            deliverAt = link.busyUntil + profile.latency().toNanos();
+            if (lost(size)) {
+                deliverAt += Math.max(MIN_RETRANSMIT_NANOS, 2 * profile.latency().toNanos());
+            }
+        }
+        enqueue(link, deliverAt, () -> listener.onMessage(connection, message));
+    }
+
+    @Override
+    public void onDisconnected(Connection connection) {
+        Link link = links.remove(connection);
+        closedBytesReceived.addAndGet(connection.getBytesReceived());
+        closedBytesSent.addAndGet(connection.getBytesSent());
+        if (link != null) {
+            enqueue(link, System.nanoTime(), () -> listener.onDisconnected(connection));
+        }
+    }
+
+    private long transmissionNanos(int bytes) {
+        long bytesPerSecond = profile.bytesPerSecond();
+        return bytesPerSecond == Long.MAX_VALUE ? 0 : (long) (bytes * 1e9 / bytesPerSecond);
+    }
+
+    // A message is delayed if any of its packets is lost
+    private boolean lost(int bytes) {
+        if (profile.lossRate() == 0) {
+            return false;
+        }
+        int packets = Math.max(1, (bytes + PACKET_BYTES - 1) / PACKET_BYTES);
+        return ThreadLocalRandom.current().nextDouble() < 1 - Math.pow(1 - profile.lossRate(), packets);
+    }
+
+    private void enqueue(Link link, long deliverAt, Runnable action) {
+        long at;
+        synchronized (link) {
+            at = Math.max(deliverAt, link.lastDelivery);  // Nothing overtakes an earlier event on the same connection
+            link.lastDelivery = at;
+            link.pending.add(new Event(at, action));
+        }
+        try {
+            delivery.schedule(() -> drain(link), at - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed
+        }
+    }
+
+    // Deliver the link's events that are due, in the order they were queued
+    private void drain(Link link) {
+        while (true) {
+            Event event;
+            synchronized (link) {
+                event = link.pending.peek();
+                if (event == null || event.deliverAt() > System.nanoTime()) {
+                    return;  // The task scheduled for it delivers it
+                }
+                link.pending.poll();
+            }
+            event.action().run();
+        }
+    }
+
+    /**
+     * @return The bytes the node read from its peers, on open and closed connections.
+     */
+    public long getBytesReceived() {
+        return closedBytesReceived.get() + links.keySet().stream().mapToLong(Connection::getBytesReceived).sum();
+    }
+
+    /**
+     * @return The bytes the node wrote to its peers, on open and closed connections.
+     */
+    public long getBytesSent() {
+        return closedBytesSent.get() + links.keySet().stream().mapToLong(Connection::getBytesSent).sum();
+    }
+
+    /**
+     * @return The number of messages the node received.
+     */
+    public long getMessagesReceived() {
+        return messagesReceived.get();
+    }
+
+    @Override
+    public void close() {
+        delivery.shutdownNow();
+    }
+}
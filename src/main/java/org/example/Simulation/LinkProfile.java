@@ -0,0 +1,29 @@
+package org.example.Simulation;
+
+import java.time.Duration;
+
+/**
+ * The conditions of the link into a simulated node: every message arrives one-way latency after
+ * it was sent, no faster than the bandwidth allows, and each of its packets may be lost. Since
+ * peers talk over TCP, a lost packet delays the message, and everything behind it, by a
+ * retransmission rather than dropping it.
+ *
+ * @param latency The one-way delay.
+ * @param bytesPerSecond The rate at which the link delivers data.
+ * @param lossRate The probability that a packet is lost, below 1.
+ */
+public record LinkProfile(Duration latency, long bytesPerSecond, double lossRate) {
+    /**
+     * Loopback as it is: no added latency, bandwidth or loss.
+     */
+    public static final LinkProfile LOOPBACK = new LinkProfile(Duration.ZERO, Long.MAX_VALUE, 0);
+
+    public LinkProfile {
+        if (latency.isNegative() || bytesPerSecond < 1) {
+            throw new IllegalArgumentException("Latency must not be negative and bandwidth must be positive");
+        }
+        if (!(lossRate >= 0 && lossRate < 1)) {
+            throw new IllegalArgumentException("Loss rate must be at least 0 and below 1");
+        }
+    }
+}
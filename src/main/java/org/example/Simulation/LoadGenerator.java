@@ -0,0 +1,234 @@
+package org.example.Simulation;
+
+import com.sun.jdi.InvalidTypeException;
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockChain;
+import org.example.BlockChain.BlockChainNode;
+import org.example.BlockChain.SealingPolicy;
+import org.example.Mempool.Mempool;
+import org.example.Miner;
+import org.example.State.WorldState;
+import org.example.Transaction.Transaction;
+import org.example.Util.Ed25519;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Offers a node a stream of signed transactions through its ingest API,
+ * {@link BlockChainNode#submit(Transaction)}, shaped by a {@link LoadProfile}, and measures what
+ * the node makes of it: the rate at which transactions end up in blocks, how long each took from
+ * submission to inclusion, and what the load cost in garbage collection and heap.
+ * <p>
+ * Senders are drawn from a Zipf distribution over the accounts, so a skewed profile piles long
+ * nonce chains onto a few hot accounts. Transactions are signed as they are sent; when signing
+ * cannot keep up with the profile, the offered rate in the report falls short of it.
+ * <p>
+ * Run with {@code java -cp <classpath> org.example.Simulation.LoadGenerator [accounts] [skew]
+ * [transactions per second] [seconds] [burst every s] [burst length s] [burst factor]}.
+ */
+public class LoadGenerator {
+    private static final double ACCOUNT_BALANCE = 1e12;
+    private static final long MEMORY_SAMPLE_MILLIS = 100;
+
+    private final BlockChainNode node;
+    private final LoadProfile profile;
+    private final List<KeyPair> accounts = new ArrayList<>();
+    private final List<String> addresses = new ArrayList<>();
+    private final double[] popularity; // Cumulative probability of each account being the sender
+    private final long[] nonces;
+    private final Random random = new Random(1);
+    private final Map<String, Long> submittedAt = new ConcurrentHashMap<>(); // Transaction hash to when it was submitted
+    private final List<Long> inclusionNanos = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong included = new AtomicLong();
+    private volatile long lastIncludedAt;
+
+    /**
+     * Result of one {@link #run}.
+     *
+     * @param offeredPerSecond The rate transactions were actually submitted at.
+     * @param transactionsPerSecond Transactions included in blocks per second of the run.
+     * @param submitted Transactions submitted.
+     * @param rejected Submitted transactions the mempool did not accept.
+     * @param included Submitted transactions included in a block.
+     * @param latencyP50Millis Median time from submission to inclusion.
+     * @param latencyP90Millis 90th percentile of the same.
+     * @param latencyP99Millis 99th percentile of the same.
+     * @param latencyMaxMillis Slowest inclusion.
+     * @param gcCount Garbage collections during the run.
+     * @param gcMillis Time spent in them, as reported by the collectors.
+     * @param peakHeapBytes Highest sampled heap usage.
+     * @param heapBytesAfter Heap usage at the end of the run.
+     */
+    public record Report(double offeredPerSecond, double transactionsPerSecond, long submitted, long rejected,
+                         long included, double latencyP50Millis, double latencyP90Millis, double latencyP99Millis,
+                         double latencyMaxMillis, long gcCount, long gcMillis, long peakHeapBytes, long heapBytesAfter) {
+        @Override
+        public String toString() {
+            return String.format("offered %.1f tx/s, included %.1f tx/s (%d of %d, %d rejected), inclusion latency "
+                            + "p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms, %d GCs taking %d ms, heap peak %d MiB, after %d MiB",
+                    offeredPerSecond, transactionsPerSecond, included, submitted, rejected, latencyP50Millis,
+                    latencyP90Millis, latencyP99Millis, latencyMaxMillis, gcCount, gcMillis,
+                    peakHeapBytes >> 20, heapBytesAfter >> 20);
+        }
+    }
+
+    /**
+     * Create and fund the profile's accounts in the node's world state. The node should be
+     * producing blocks, or be connected to one that is.
+     *
+     * @param node The node to submit transactions to.
+     * @param profile The transaction stream to offer.
+     */
+    public LoadGenerator(BlockChainNode node, LoadProfile profile) throws InvalidTypeException, NoSuchAlgorithmException {
+        this.node = node;
+        this.profile = profile;
+        this.nonces = new long[profile.accounts()];
+        this.popularity = new double[profile.accounts()];
+        WorldState state = node.getWorldState();
+        double total = 0;
+        for (int i = 0; i < profile.accounts(); i++) {
+            KeyPair keys = Ed25519.generateKeyPair();
+            accounts.add(keys);
+            addresses.add(Transaction.addressOf(keys.getPublic()));
+            state.credit(addresses.get(i), ACCOUNT_BALANCE);
+            total += 1 / Math.pow(i + 1, profile.skew());
+            popularity[i] = total;
+        }
+        state.commit();
+        for (int i = 0; i < popularity.length; i++) {
+            popularity[i] /= total;
+        }
+        node.addBlockListener(this::onBlock);
+    }
+
+    private void onBlock(Block block) {
+        long now = System.nanoTime();
+        int count = 0;
+        for (Transaction transaction : block.getTransactionList()) {
+            Long submitted = submittedAt.remove(transaction.transactionHash);
+            if (submitted != null) {
+                inclusionNanos.add(now - submitted);
+                count++;
+            }
+        }
+        if (count > 0) {
+            included.addAndGet(count);
+            lastIncludedAt = now;
+        }
+    }
+
+    // The sender of the next transaction, hot accounts more often under skew
+    private int nextSender() {
+        int index = Arrays.binarySearch(popularity, random.nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, popularity.length - 1);
+    }
+
+    /**
+     * Offer the profile's load, then wait for the submitted transactions to be included.
+     *
+     * @param duration How long to submit transactions for.
+     * @param drain How long to wait afterwards for inclusion.
+     * @return What was measured during this run.
+     */
+    public Report run(Duration duration, Duration drain) throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        long gcCount = collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+        long gcMillis = collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+        AtomicLong peakHeap = new AtomicLong(memory.getHeapMemoryUsage().getUsed());
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "load-memory");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                0, MEMORY_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+
+        int samples = inclusionNanos.size();
+        long includedBefore = included.get();
+        long submitted = 0;
+        long rejected = 0;
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        lastIncludedAt = start;
+        try {
+            // Stops at the end of the run even when behind, so a shortfall shows in the offered rate
+            for (long due = start; due < end && System.nanoTime() < end; due += (long) (1e9 / profile.rateAt(due - start))) {
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                int sender = nextSender();
+                Transaction transaction = new Transaction(addresses.get(sender), "sink", 1, 1,
+                        System.currentTimeMillis(), nonces[sender]);
+                transaction.sign(accounts.get(sender));
+                submittedAt.put(transaction.transactionHash, System.nanoTime());
+                Mempool.AddResult result = node.submit(transaction);
+                submitted++;
+                if (result == Mempool.AddResult.ADDED || result == Mempool.AddResult.REPLACED) {
+                    nonces[sender]++;
+                } else {
+                    submittedAt.remove(transaction.transactionHash);
+                    rejected++;
+                }
+            }
+            long offeredNanos = System.nanoTime() - start;
+            long deadline = System.nanoTime() + drain.toNanos();
+            while (included.get() - includedBefore < submitted - rejected && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+
+            long includedNow = included.get() - includedBefore;
+            double seconds = Math.max(lastIncludedAt - start, duration.toNanos()) / 1e9;
+            long[] latencies;
+            synchronized (inclusionNanos) {
+                latencies = inclusionNanos.subList(samples, inclusionNanos.size()).stream().mapToLong(Long::longValue).toArray();
+            }
+            Arrays.sort(latencies);
+            return new Report(submitted / (offeredNanos / 1e9), includedNow / seconds, submitted, rejected, includedNow,
+                    NetworkSimulator.percentileMillis(latencies, 0.50), NetworkSimulator.percentileMillis(latencies, 0.90),
+                    NetworkSimulator.percentileMillis(latencies, 0.99), NetworkSimulator.percentileMillis(latencies, 1.0),
+                    collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum() - gcCount,
+                    collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum() - gcMillis,
+                    peakHeap.get(), memory.getHeapMemoryUsage().getUsed());
+        } finally {
+            sampler.shutdownNow();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        double skew = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+        double rate = args.length > 2 ? Double.parseDouble(args[2]) : 1_000;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+        long burstEvery = args.length > 4 ? Long.parseLong(args[4]) : 0;
+        long burstLength = args.length > 5 ? Long.parseLong(args[5]) : 0;
+        double burstFactor = args.length > 6 ? Double.parseDouble(args[6]) : 1;
+
+        LoadProfile profile = new LoadProfile(accounts, skew, rate, Duration.ofSeconds(burstEvery),
+                Duration.ofSeconds(burstLength), burstFactor);
+        SealingPolicy policy = new SealingPolicy(Block.MAX_TRANSACTIONS, 1024 * 1024, Duration.ofSeconds(1));
+        try (BlockChainNode node = new BlockChainNode(new BlockChain(12), new WorldState(256), new Miner(1, 12), 0)) {
+            LoadGenerator generator = new LoadGenerator(node, profile);
+            node.startProducing(policy);
+            System.out.println(generator.run(Duration.ofSeconds(seconds), Duration.ofSeconds(30)));
+        }
+    }
+}
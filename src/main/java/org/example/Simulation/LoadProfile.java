@@ -0,0 +1,48 @@
+package org.example.Simulation;
+
+import java.time.Duration;
+
+/**
+ * The transaction stream a {@link LoadGenerator} offers: how many accounts send, how unevenly the
+ * sends are spread over them, and the rate, which bursts periodically.
+ *
+ * @param accounts The number of sending accounts.
+ * @param skew The Zipf exponent of the senders' popularity; 0 spreads sends evenly, 1 or more
+ *             concentrates them on a few hot accounts.
+ * @param transactionsPerSecond The base submission rate.
+ * @param burstEvery How often a burst starts, or zero for a steady rate.
+ * @param burstLength How long a burst lasts.
+ * @param burstFactor The rate during a burst, as a multiple of the base rate.
+ */
+public record LoadProfile(int accounts, double skew, double transactionsPerSecond,
+                          Duration burstEvery, Duration burstLength, double burstFactor) {
+    public LoadProfile {
+        if (accounts < 1 || !(skew >= 0) || !(transactionsPerSecond > 0)) {
+            throw new IllegalArgumentException("Load needs accounts, a non-negative skew and a positive rate");
+        }
+        if (burstEvery.isNegative() || burstLength.isNegative() || burstLength.compareTo(burstEvery) > 0 || !(burstFactor > 0)) {
+            throw new IllegalArgumentException("Bursts must fit in their period and have a positive factor");
+        }
+    }
+
+    /**
+     * @param accounts The number of sending accounts.
+     * @param skew The Zipf exponent of the senders' popularity.
+     * @param transactionsPerSecond The rate.
+     * @return A profile without bursts.
+     */
+    public static LoadProfile steady(int accounts, double skew, double transactionsPerSecond) {
+        return new LoadProfile(accounts, skew, transactionsPerSecond, Duration.ZERO, Duration.ZERO, 1);
+    }
+
+    /**
+     * @param elapsedNanos Time since the load started.
+     * @return The submission rate at that time.
+     */
+    public double rateAt(long elapsedNanos) {
+        if (burstEvery.isZero() || elapsedNanos % burstEvery.toNanos() >= burstLength.toNanos()) {
+            return transactionsPerSecond;
+        }
+        return transactionsPerSecond * burstFactor;
+    }
+}
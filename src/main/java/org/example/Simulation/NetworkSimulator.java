@@ -0,0 +1,262 @@
+package org.example.Simulation;
+
+import com.sun.jdi.InvalidTypeException;
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockChain;
+import org.example.BlockChain.BlockChainNode;
+import org.example.BlockChain.BlockCodec;
+import org.example.BlockChain.SealingPolicy;
+import org.example.Miner;
+import org.example.State.WorldState;
+import org.example.Transaction.Transaction;
+import org.example.Util.Ed25519;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a network of {@link BlockChainNode}s in one process, so protocol changes can be
+ * benchmarked on a single machine. The nodes talk over loopback through a
+ * {@link LinkConditioner} each, which adds the latency, bandwidth limit and packet loss of the
+ * given {@link LinkProfile}.
+ * <p>
+ * Node 0 produces the blocks; transactions from a set of funded accounts are submitted to the
+ * other nodes at random, so they are gossiped before they can be included. The simulator reports
+ * how many transactions per second reached every node in a block, how long blocks took to reach
+ * each node, and how many bytes each node sent and received.
+ * <p>
+ * Run with {@code java -cp <classpath> org.example.Simulation.NetworkSimulator [nodes] [bootstrap
+ * peers] [latency ms] [bandwidth KiB/s] [loss rate] [seconds] [transactions per second]}.
+ */
+public class NetworkSimulator implements Closeable {
+    private static final int STATE_MB = 16;
+    private static final double ACCOUNT_BALANCE = 1e12;
+
+    private final List<BlockChainNode> nodes = new ArrayList<>();
+    private final List<LinkConditioner> links = new ArrayList<>();
+    private final List<KeyPair> accounts = new ArrayList<>();
+    private final long[] nonces;
+    private final Random random = new Random(1);
+    private final Map<String, Long> producedAt = new ConcurrentHashMap<>(); // Block hash to when node 0 appended it
+    private final Map<String, AtomicInteger> arrivals = new ConcurrentHashMap<>();
+    private final List<Long> propagationNanos = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong confirmedTransactions = new AtomicLong();
+    private volatile long lastConfirmedAt;
+
+    /**
+     * Result of one {@link #run}.
+     *
+     * @param transactionsPerSecond Transactions in blocks that reached every node, per second of the run.
+     * @param submitted Transactions submitted.
+     * @param confirmed Submitted transactions in blocks that reached every node.
+     * @param blocks Blocks produced.
+     * @param propagationP50Millis Median time from a block's production to its arrival at a node.
+     * @param propagationP90Millis 90th percentile of the same.
+     * @param propagationP99Millis 99th percentile of the same.
+     * @param propagationMaxMillis Slowest arrival.
+     * @param bytesReceivedPerNode Bytes read from peers per node.
+     * @param bytesSentPerNode Bytes written to peers per node.
+     */
+    public record Report(double transactionsPerSecond, long submitted, long confirmed, int blocks,
+                         double propagationP50Millis, double propagationP90Millis, double propagationP99Millis,
+                         double propagationMaxMillis, long bytesReceivedPerNode, long bytesSentPerNode) {
+        @Override
+        public String toString() {
+            return String.format("%.1f tx/s (%d of %d confirmed), %d blocks, propagation p50 %.1f ms, p90 %.1f ms, "
+                            + "p99 %.1f ms, max %.1f ms, %d KiB received and %d KiB sent per node",
+                    transactionsPerSecond, confirmed, submitted, blocks, propagationP50Millis, propagationP90Millis,
+                    propagationP99Millis, propagationMaxMillis, bytesReceivedPerNode / 1024, bytesSentPerNode / 1024);
+        }
+    }
+
+    /**
+     * Start the nodes; node 0 starts producing blocks at once.
+     *
+     * @param nodeCount The number of nodes, at least 2.
+     * @param bootstrapPeers How many earlier nodes each node is given to bootstrap from; more are discovered.
+     * @param link The conditions of every link.
+     * @param accountCount The number of funded accounts sending transactions.
+     * @param difficultyBits The mining difficulty of produced blocks.
+     * @param policy When node 0 seals a block.
+     */
+    public NetworkSimulator(int nodeCount, int bootstrapPeers, LinkProfile link, int accountCount,
+                            int difficultyBits, SealingPolicy policy) throws IOException, InvalidTypeException, NoSuchAlgorithmException {
+        if (nodeCount < 2 || bootstrapPeers < 1 || accountCount < 1) {
+            throw new IllegalArgumentException("Simulation needs at least 2 nodes, 1 bootstrap peer and 1 account");
+        }
+        this.nonces = new long[accountCount];
+        byte[] genesis = BlockCodec.encode(new Block(null));
+        try {
+            for (int i = 0; i < nodeCount; i++) {
+                // Each node decodes its own copy, so the nodes share no mutable state
+                BlockChain chain = new BlockChain(BlockCodec.decode(ByteBuffer.wrap(genesis)), difficultyBits);
+                WorldState state = new WorldState(STATE_MB);
+                BlockChainNode node = new BlockChainNode(chain, state, new Miner(1, difficultyBits), 0, listener -> {
+                    LinkConditioner conditioner = new LinkConditioner(listener, link);
+                    links.add(conditioner);
+                    return conditioner;
+                });
+                nodes.add(node);
+                node.addBlockListener(i == 0 ? this::onProduced : this::onArrived);
+            }
+        } catch (IOException | InvalidTypeException | RuntimeException e) {
+            close();
+            throw e;
+        }
+
+        // Every node executes the blocks it receives, so every node starts with the same balances
+        for (int i = 0; i < accountCount; i++) {
+            accounts.add(Ed25519.generateKeyPair());
+        }
+        for (BlockChainNode node : nodes) {
+            WorldState state = node.getWorldState();
+            for (KeyPair keys : accounts) {
+                state.credit(Transaction.addressOf(keys.getPublic()), ACCOUNT_BALANCE);
+            }
+            state.commit();
+        }
+
+        for (int i = 0; i < nodeCount; i++) {
+            List<String> bootstrap = new ArrayList<>();
+            List<Integer> earlier = new ArrayList<>();
+            for (int j = 0; j < i; j++) {
+                earlier.add(j);
+            }
+            Collections.shuffle(earlier, random);
+            for (int j : earlier.subList(0, Math.min(bootstrapPeers, earlier.size()))) {
+                bootstrap.add("127.0.0.1:" + nodes.get(j).getPort());  // The address peers see inbound connections from
+            }
+            nodes.get(i).start(bootstrap);
+        }
+        nodes.get(0).startProducing(policy);
+    }
+
+    private void onProduced(Block block) {
+        String hash = block.getBlockHash();
+        producedAt.put(hash, System.nanoTime());
+        arrivals.put(hash, new AtomicInteger());
+    }
+
+    private void onArrived(Block block) {
+        long now = System.nanoTime();
+        String hash = block.calculateBlockHash();
+        Long produced = producedAt.get(hash);
+        AtomicInteger count = arrivals.get(hash);
+        if (produced == null || count == null) {
+            return;
+        }
+        propagationNanos.add(now - produced);
+        if (count.incrementAndGet() == nodes.size() - 1) {
+            confirmedTransactions.addAndGet(block.getTransactionList().size());
+            lastConfirmedAt = now;
+        }
+    }
+
+    /**
+     * Submit transactions at a steady rate, then wait for the blocks holding them to reach every node.
+     *
+     * @param duration How long to submit transactions for.
+     * @param transactionsPerSecond The submission rate.
+     * @param drain How long to wait afterwards for submitted transactions to be confirmed.
+     * @return What was measured during this run.
+     */
+    public Report run(Duration duration, double transactionsPerSecond, Duration drain) throws InterruptedException {
+        int count = (int) (duration.toNanos() / 1e9 * transactionsPerSecond);
+        // Signed up front, so signing does not limit the rate
+        List<Transaction> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int account = random.nextInt(accounts.size());
+            KeyPair keys = accounts.get(account);
+            Transaction transaction = new Transaction(Transaction.addressOf(keys.getPublic()), "sink", 1, 1,
+                    System.currentTimeMillis(), nonces[account]++);
+            transaction.sign(keys);
+            transactions.add(transaction);
+        }
+
+        long bytesReceived = links.stream().mapToLong(LinkConditioner::getBytesReceived).sum();
+        long bytesSent = links.stream().mapToLong(LinkConditioner::getBytesSent).sum();
+        int samples = propagationNanos.size();
+        int blocks = producedAt.size();
+        long confirmed = confirmedTransactions.get();
+        long start = System.nanoTime();
+        lastConfirmedAt = start;
+        for (int i = 0; i < count; i++) {
+            long due = start + (long) (i * 1e9 / transactionsPerSecond);
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            nodes.get(1 + random.nextInt(nodes.size() - 1)).submit(transactions.get(i));
+        }
+        long deadline = System.nanoTime() + drain.toNanos();
+        while (confirmedTransactions.get() - confirmed < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        long confirmedNow = confirmedTransactions.get() - confirmed;
+        double seconds = Math.max(lastConfirmedAt - start, duration.toNanos()) / 1e9;
+        long[] delays;
+        synchronized (propagationNanos) {
+            delays = propagationNanos.subList(samples, propagationNanos.size()).stream().mapToLong(Long::longValue).toArray();
+        }
+        Arrays.sort(delays);
+        return new Report(confirmedNow / seconds, count, confirmedNow, producedAt.size() - blocks,
+                percentileMillis(delays, 0.50), percentileMillis(delays, 0.90), percentileMillis(delays, 0.99),
+                percentileMillis(delays, 1.0),
+                (links.stream().mapToLong(LinkConditioner::getBytesReceived).sum() - bytesReceived) / nodes.size(),
+                (links.stream().mapToLong(LinkConditioner::getBytesSent).sum() - bytesSent) / nodes.size());
+    }
+
+    static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+    public List<BlockChainNode> getNodes() {
+        return nodes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (BlockChainNode node : nodes) {
+            node.close();
+        }
+        for (LinkConditioner link : links) {
+            link.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int bootstrapPeers = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        long latencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 50;
+        long kibPerSecond = args.length > 3 ? Long.parseLong(args[3]) : 1024;
+        double lossRate = args.length > 4 ? Double.parseDouble(args[4]) : 0.001;
+        int seconds = args.length > 5 ? Integer.parseInt(args[5]) : 30;
+        double rate = args.length > 6 ? Double.parseDouble(args[6]) : 200;
+
+        LinkProfile link = new LinkProfile(Duration.ofMillis(latencyMillis), kibPerSecond * 1024, lossRate);
+        SealingPolicy policy = new SealingPolicy(Block.MAX_TRANSACTIONS, 1024 * 1024, Duration.ofSeconds(1));
+        try (NetworkSimulator simulator = new NetworkSimulator(nodeCount, bootstrapPeers, link, 1_000, 12, policy)) {
+            Thread.sleep(2_000);  // Let the nodes connect
+            System.out.println(simulator.run(Duration.ofSeconds(seconds), rate, Duration.ofSeconds(30)));
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.example.State;
+
+/**
+ * The state of one account: its balance and the nonce its next transaction must carry.
+ *
+ * @param balance The account balance.
+ * @param nonce The number of transactions the account has sent.
+ */
+public record AccountState(double balance, long nonce) {
+    public static final AccountState EMPTY = new AccountState(0, 0);
+
+    /**
+     * @return The account as stored in the world-state tree: balance and nonce separated by a colon.
+     */
+    String encode() {
+        return balance + ":" + nonce;
+    }
+
+    static AccountState decode(String value) {
+        int separator = value.indexOf(':');
+        return new AccountState(Double.parseDouble(value.substring(0, separator)), Long.parseLong(value.substring(separator + 1)));
+    }
+}
@@ -0,0 +1,191 @@
+package org.example.State;
+
+import com.sun.jdi.InvalidTypeException;
+import org.example.BlockChain.Block;
+import org.example.Transaction.Transaction;
+import org.example.Transaction.TransactionValidator;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Executes a block's transactions against a {@link WorldState} optimistically in parallel.
+ * <p>
+ * Every transaction is first executed speculatively on all cores against a
+ * {@linkplain WorldState#snapshot() snapshot} of the state before the block, which is read
+ * without locking, recording which accounts it read (and the values it saw) and which it
+ * wrote; signatures are verified in the same pass. The results are then validated in block
+ * order against the writes of the earlier transactions: a transaction whose reads are still
+ * current keeps its speculative writes, and one that read an account an earlier transaction
+ * changed is re-executed on the spot. The outcome is the same as applying the block
+ * sequentially, while blocks whose senders rarely touch each other's accounts are almost
+ * entirely executed in parallel.
+ */
+public class BlockExecutor {
+    private final WorldState state;
+    private final ForkJoinPool pool;
+
+    public BlockExecutor(WorldState state) {
+        this(state, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param state The world state blocks are applied to.
+     * @param threadCount The number of threads executing speculatively.
+     */
+    public BlockExecutor(WorldState state, int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Executor needs at least one thread");
+        }
+        this.state = state;
+        this.pool = new ForkJoinPool(threadCount);
+    }
+
+    /**
+     * The outcome of executing a block.
+     *
+     * @param valid True if every transaction applied and the state was committed.
+     * @param failedIndex The index of the first rejected transaction, or -1.
+     * @param reexecuted The number of transactions executed again because of a conflict.
+     */
+    public record Result(boolean valid, int failedIndex, int reexecuted) {
+    }
+
+    /**
+     * Execute a block and commit its changes, or leave the state unchanged if any transaction is
+     * invalid. Must not run concurrently with other changes to the same world state.
+     *
+     * @param block The block to execute.
+     * @return Whether the block applied, and how many transactions had to be re-executed.
+     */
+    public Result execute(Block block) throws InvalidTypeException {
+        Outcome outcome = run(block, state.snapshot());
+        if (outcome.failedIndex() >= 0) {
+            return new Result(false, outcome.failedIndex(), outcome.reexecuted());
+        }
+        state.stage(outcome.writes());
+        state.commit();
+        return new Result(true, -1, outcome.reexecuted());
+    }
+
+    /**
+     * Execute a block like {@link WorldState#applyBlockWithDiff}: commit its changes and record
+     * them, so the block can later be reverted. There must be no other uncommitted changes.
+     *
+     * @param block The block to execute.
+     * @return The accounts the block changed, or null if a transaction was rejected and nothing changed.
+     */
+    public StateDiff executeWithDiff(Block block) throws InvalidTypeException {
+        WorldState.Snapshot snapshot = state.snapshot();
+        Outcome outcome = run(block, snapshot);
+        if (outcome.failedIndex() >= 0) {
+            return null;
+        }
+        Map<String, AccountState> before = new HashMap<>();
+        for (String address : outcome.writes().keySet()) {
+            before.put(address, snapshot.getAccount(address));
+        }
+        state.stage(outcome.writes());
+        state.commit();
+        return new StateDiff(before, outcome.writes());
+    }
+
+    // The block's writes if every transaction applied, otherwise the index of the first that did not
+    private record Outcome(Map<String, AccountState> writes, int failedIndex, int reexecuted) {
+    }
+
+    private Outcome run(Block block, WorldState.Snapshot snapshot) {
+        List<Transaction> transactions = block.getTransactionList();
+        Execution[] executions = new Execution[transactions.size()];
+        // The snapshot takes no lock, so the speculative executions do not wait on each other
+        pool.submit(() -> IntStream.range(0, executions.length).parallel().forEach(i -> {
+            Transaction transaction = transactions.get(i);
+            Execution execution = new Execution(TransactionValidator.validateTransaction(transaction));
+            execution.run(transaction, snapshot::getAccount);
+            executions[i] = execution;
+        })).join();
+
+        // Writes of the transactions validated so far, on top of the state before the block
+        Map<String, AccountState> overlay = new HashMap<>();
+        AccountReader current = address -> {
+            AccountState account = overlay.get(address);
+            return account != null ? account : snapshot.getAccount(address);
+        };
+        int reexecuted = 0;
+        for (int i = 0; i < executions.length; i++) {
+            Execution execution = executions[i];
+            if (!execution.readsStillCurrent(overlay)) {
+                Execution retry = new Execution(execution.signatureValid);
+                retry.run(transactions.get(i), current);
+                execution = retry;
+                reexecuted++;
+            }
+            if (!execution.applied) {
+                return new Outcome(Map.of(), i, reexecuted);
+            }
+            overlay.putAll(execution.writes);
+        }
+        return new Outcome(overlay, -1, reexecuted);
+    }
+
+    /**
+     * @return The world state blocks are applied to.
+     */
+    public WorldState getState() {
+        return state;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private interface AccountReader {
+        AccountState read(String address);
+    }
+
+    // One execution of a transaction with its read and write sets
+    private static class Execution {
+        final boolean signatureValid;
+        final Map<String, AccountState> reads = new HashMap<>(4);
+        final Map<String, AccountState> writes = new HashMap<>(4);
+        boolean applied;
+
+        Execution(boolean signatureValid) {
+            this.signatureValid = signatureValid;
+        }
+
+        void run(Transaction transaction, AccountReader reader) {
+            AccountState sender = read(transaction.sender, reader);
+            if (!signatureValid || transaction.nonce != sender.nonce() || transaction.cost() > sender.balance()) {
+                return;
+            }
+            writes.put(transaction.sender, new AccountState(sender.balance() - transaction.cost(), sender.nonce() + 1));
+            AccountState recipient = read(transaction.recipient, reader);
+            writes.put(transaction.recipient, new AccountState(recipient.balance() + transaction.amount, recipient.nonce()));
+            applied = true;
+        }
+
+        private AccountState read(String address, AccountReader reader) {
+            AccountState own = writes.get(address);  // A transfer to oneself reads its own write
+            if (own != null) {
+                return own;
+            }
+            AccountState account = reader.read(address);
+            reads.put(address, account);
+            return account;
+        }
+
+        boolean readsStillCurrent(Map<String, AccountState> overlay) {
+            for (Map.Entry<String, AccountState> read : reads.entrySet()) {
+                AccountState written = overlay.get(read.getKey());
+                if (written != null && !written.equals(read.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
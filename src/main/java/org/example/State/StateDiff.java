@@ -0,0 +1,21 @@
+package org.example.State;
+
+import java.util.Map;
+
+/**
+ * The accounts a committed block changed, with their states before and after it, so the
+ * block can be undone or applied again without executing its transactions.
+ *
+ * @param before The committed states the block replaced, {@link AccountState#EMPTY} for new accounts.
+ * @param after The states the block committed.
+ */
+public record StateDiff(Map<String, AccountState> before, Map<String, AccountState> after) {
+    public static final StateDiff EMPTY = new StateDiff(Map.of(), Map.of());
+
+    /**
+     * @return The number of accounts changed.
+     */
+    public int size() {
+        return after.size();
+    }
+}
@@ -0,0 +1,265 @@
+package org.example.State;
+
+import com.sun.jdi.InvalidTypeException;
+import org.example.BPlusTree.BPlusTree;
+import org.example.BlockChain.Block;
+import org.example.Metrics.Histogram;
+import org.example.Metrics.Metrics;
+import org.example.Transaction.Transaction;
+import org.example.Transaction.TransactionValidator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Account balances and nonces, stored in a {@link BPlusTree} keyed by address.
+ * <p>
+ * Changes made while executing a block go to an in-memory write buffer and only reach the tree
+ * when the block is committed, in address order, so a block touching the same account many
+ * times writes it once and the tree is updated leaf by leaf. Reads check the write buffer, then
+ * a bounded cache of committed accounts, and only then the tree.
+ */
+public class WorldState {
+    private static final int ORDER = 32;
+    private static final Histogram COMMIT_NANOS = Metrics.histogram("state.commitNanos");
+    public static final int ADDRESS_SIZE = 64; // Maximum address length in bytes
+    private static final int VALUE_SIZE = 48;  // Fits a double balance, a colon and a long nonce
+    private static final int DEFAULT_CACHE_SIZE = 65_536;
+
+    private final BPlusTree<String> accounts;
+    private final TreeMap<String, AccountState> writeBuffer = new TreeMap<>(); // Sorted for the flush
+    private final Map<String, AccountState> cache;
+
+    /**
+     * @param MB The memory size of the account tree in megabytes.
+     */
+    public WorldState(int MB) throws InvalidTypeException {
+        this(MB, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param MB The memory size of the account tree in megabytes.
+     * @param cacheSize The number of committed accounts kept deserialized.
+     */
+    public WorldState(int MB, int cacheSize) throws InvalidTypeException {
+        this.accounts = new BPlusTree<>(MB, ORDER, String.class, ADDRESS_SIZE, VALUE_SIZE);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AccountState> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * @param address The account address.
+     * @return The account including uncommitted changes, {@link AccountState#EMPTY} if unknown.
+     */
+    public synchronized AccountState getAccount(String address) throws InvalidTypeException {
+        AccountState account = writeBuffer.get(address);
+        return account != null ? account : getCommitted(address);
+    }
+
+    /**
+     * Freeze the state as it is now, e.g. to execute a block's transactions on several threads.
+     * The snapshot holds a copy of the write buffer and reads committed accounts from the tree
+     * without taking the state's lock, so nothing may commit while it is in use.
+     *
+     * @return A read-only view of the current state.
+     */
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(new HashMap<>(writeBuffer));
+    }
+
+    /**
+     * A read-only view of the state taken by {@link #snapshot()}, safe to read from any number
+     * of threads at once.
+     */
+    public final class Snapshot {
+        private final Map<String, AccountState> buffered;
+
+        private Snapshot(Map<String, AccountState> buffered) {
+            this.buffered = buffered;
+        }
+
+        /**
+         * @param address The account address.
+         * @return The account as of the snapshot, {@link AccountState#EMPTY} if unknown.
+         */
+        public AccountState getAccount(String address) {
+            AccountState account = buffered.get(address);
+            if (account != null) {
+                return account;
+            }
+            // The shared cache reorders itself on reads, so it is bypassed
+            String value = accounts.searchShared(address);
+            return value == null ? AccountState.EMPTY : AccountState.decode(value);
+        }
+    }
+
+    // The account as of the last commit, ignoring the write buffer
+    private AccountState getCommitted(String address) throws InvalidTypeException {
+        AccountState account = cache.get(address);
+        if (account == null) {
+            String value = accounts.search(address);
+            account = value == null ? AccountState.EMPTY : AccountState.decode(value);
+            cache.put(address, account);
+        }
+        return account;
+    }
+
+    /**
+     * Check that the sender can afford the transaction's amount and fee, that it carries the
+     * sender's next nonce, and that the recipient is an address an account can be stored under.
+     *
+     * @param transaction The transaction to check.
+     * @return True if the transaction can be applied to the current state.
+     */
+    public synchronized boolean canApply(Transaction transaction) throws InvalidTypeException {
+        if (!TransactionValidator.isValidAddress(transaction.recipient)) {
+            return false;
+        }
+        AccountState sender = getAccount(transaction.sender);
+        return transaction.nonce == sender.nonce() && transaction.cost() <= sender.balance();
+    }
+
+    /**
+     * Apply a transaction to the write buffer if {@link #canApply(Transaction)} allows it.
+     *
+     * @param transaction The transaction to apply.
+     * @return False if the transaction was rejected and nothing changed.
+     */
+    public synchronized boolean apply(Transaction transaction) throws InvalidTypeException {
+        if (!canApply(transaction)) {
+            return false;
+        }
+        AccountState sender = getAccount(transaction.sender);
+        writeBuffer.put(transaction.sender, new AccountState(sender.balance() - transaction.cost(), sender.nonce() + 1));
+        AccountState recipient = getAccount(transaction.recipient);
+        writeBuffer.put(transaction.recipient, new AccountState(recipient.balance() + transaction.amount, recipient.nonce()));
+        return true;
+    }
+
+    /**
+     * Add funds to an account in the write buffer, e.g. for the genesis allocation or a block reward.
+     *
+     * @param address The account address.
+     * @param amount The amount to add.
+     */
+    public synchronized void credit(String address, double amount) throws InvalidTypeException {
+        AccountState account = getAccount(address);
+        writeBuffer.put(address, new AccountState(account.balance() + amount, account.nonce()));
+    }
+
+    /**
+     * Apply all transactions of a block and commit them, or none if any is rejected.
+     *
+     * @param block The block to execute.
+     * @return False if a transaction was rejected; the state is then left unchanged.
+     */
+    public synchronized boolean applyBlock(Block block) throws InvalidTypeException {
+        for (Transaction transaction : block.getTransactionList()) {
+            if (!apply(transaction)) {
+                rollback();
+                return false;
+            }
+        }
+        commit();
+        return true;
+    }
+
+    /**
+     * Apply all transactions of a block and commit them, recording what changed so the block
+     * can later be undone with {@link #revert(StateDiff)} and redone with {@link #reapply(StateDiff)}.
+     * There must be no other uncommitted changes.
+     *
+     * @param block The block to execute.
+     * @return The accounts the block changed, or null if a transaction was rejected and nothing changed.
+     */
+    public synchronized StateDiff applyBlockWithDiff(Block block) throws InvalidTypeException {
+        for (Transaction transaction : block.getTransactionList()) {
+            if (!apply(transaction)) {
+                rollback();
+                return null;
+            }
+        }
+        Map<String, AccountState> before = new HashMap<>();
+        for (String address : writeBuffer.keySet()) {
+            before.put(address, getCommitted(address));
+        }
+        StateDiff diff = new StateDiff(before, new HashMap<>(writeBuffer));
+        commit();
+        return diff;
+    }
+
+    /**
+     * Undo a committed block, restoring the accounts it changed. Blocks must be reverted newest first.
+     *
+     * @param diff The block's changes.
+     */
+    public synchronized void revert(StateDiff diff) throws InvalidTypeException {
+        writeBuffer.putAll(diff.before());
+        commit();
+    }
+
+    /**
+     * Commit a block's changes on top of the state they were computed against, e.g. to redo a
+     * reverted block, or to commit a block executed ahead of time once it reaches the chain.
+     *
+     * @param diff The block's changes.
+     */
+    public synchronized void reapply(StateDiff diff) throws InvalidTypeException {
+        writeBuffer.putAll(diff.after());
+        commit();
+    }
+
+    /**
+     * Put already computed account states in the write buffer.
+     *
+     * @param changes The new states by address.
+     */
+    synchronized void stage(Map<String, AccountState> changes) {
+        writeBuffer.putAll(changes);
+    }
+
+    /**
+     * Write the buffered changes to the tree in address order and clear the buffer. Every entry is
+     * checked to fit the tree before any is written, so a commit applies all changes or none.
+     *
+     * @throws IllegalArgumentException If an address or account does not fit the tree; the
+     *                                  buffered changes are then discarded and the tree is unchanged.
+     */
+    public synchronized void commit() throws InvalidTypeException {
+        long start = System.nanoTime();
+        for (Map.Entry<String, AccountState> entry : writeBuffer.entrySet()) {
+            if (entry.getKey().getBytes(StandardCharsets.UTF_8).length > ADDRESS_SIZE
+                    || entry.getValue().encode().getBytes(StandardCharsets.UTF_8).length > VALUE_SIZE) {
+                writeBuffer.clear();
+                throw new IllegalArgumentException("Account " + entry.getKey() + " cannot be stored");
+            }
+        }
+        for (Map.Entry<String, AccountState> entry : writeBuffer.entrySet()) {
+            accounts.insert(entry.getKey(), entry.getValue().encode());
+            cache.put(entry.getKey(), entry.getValue());
+        }
+        writeBuffer.clear();
+        COMMIT_NANOS.recordSince(start);
+    }
+
+    /**
+     * Discard the buffered changes.
+     */
+    public synchronized void rollback() {
+        writeBuffer.clear();
+    }
+
+    /**
+     * @return The number of accounts changed since the last commit.
+     */
+    public synchronized int pendingWrites() {
+        return writeBuffer.size();
+    }
+}
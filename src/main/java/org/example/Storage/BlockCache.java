@@ -0,0 +1,187 @@
+package org.example.Storage;
+
+import com.sun.jdi.InvalidTypeException;
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockCodec;
+import org.example.Config.Config;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tiered access to the blocks of a {@link BlockStore}. Recently used blocks stay decoded on the
+ * heap, each with its transaction tree; the rest only exist as their compact records in the
+ * store and are decoded again when read. Resident blocks are evicted least recently used first
+ * once their estimated size exceeds the memory budget, so heap usage does not grow with the chain.
+ */
+public class BlockCache {
+    private final BlockStore store;
+    private final long memoryBudget;
+    private final LinkedHashMap<Integer, Block> resident = new LinkedHashMap<>(16, 0.75f, true);
+    private long residentBytes;
+    private long hits;
+    private long reloads;
+    private long evictions;
+
+    public BlockCache(BlockStore store) {
+        this(store, Config.blockCacheBudget);
+    }
+
+    /**
+     * @param store The store holding every block.
+     * @param memoryBudget The estimated heap, in bytes, resident blocks may take.
+     */
+    public BlockCache(BlockStore store, long memoryBudget) {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("Memory budget must not be negative");
+        }
+        this.store = store;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Store a block and keep it resident, since a new block is the most likely to be read next.
+     *
+     * @param block The block to append.
+     * @return The block's height.
+     */
+    public int append(Block block) throws IOException, InvalidTypeException {
+        int height = store.append(block);
+        synchronized (this) {
+            admit(height, block);
+        }
+        return height;
+    }
+
+    /**
+     * @param height The block's height.
+     * @return The block, from memory or reloaded from the store.
+     */
+    public Block get(int height) throws IOException, InvalidTypeException {
+        synchronized (this) {
+            Block block = resident.get(height);
+            if (block != null) {
+                hits++;
+                return block;
+            }
+        }
+        // Decode outside the lock so reloads of different blocks run concurrently
+        Block block = store.get(height);
+        synchronized (this) {
+            Block raced = resident.get(height);
+            if (raced != null) {
+                return raced;
+            }
+            reloads++;
+            admit(height, block);
+        }
+        return block;
+    }
+
+    /**
+     * @param hash The block's hash.
+     * @return The block, or null if no stored block has the hash.
+     */
+    public Block get(String hash) throws IOException, InvalidTypeException {
+        int height = store.getHeight(hash);
+        return height < 0 ? null : get(height);
+    }
+
+    /**
+     * Drop the blocks above a height from the store and from memory.
+     *
+     * @param height The height of the last block to keep.
+     */
+    public void truncate(int height) throws IOException, InvalidTypeException {
+        store.truncate(height);
+        synchronized (this) {
+            Iterator<Map.Entry<Integer, Block>> entries = resident.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<Integer, Block> entry = entries.next();
+                if (entry.getKey() > height) {
+                    residentBytes -= sizeOf(entry.getValue());
+                    entries.remove();
+                }
+            }
+        }
+    }
+
+    private void admit(int height, Block block) {
+        Block replaced = resident.put(height, block);
+        if (replaced != null) {
+            residentBytes -= sizeOf(replaced);
+        }
+        residentBytes += sizeOf(block);
+        Iterator<Map.Entry<Integer, Block>> eldest = resident.entrySet().iterator();
+        // Keep at least the block just admitted, even if it alone exceeds the budget
+        while (residentBytes > memoryBudget && resident.size() > 1) {
+            Block evicted = eldest.next().getValue();
+            eldest.remove();
+            residentBytes -= sizeOf(evicted);
+            evictions++;
+        }
+    }
+
+    // The transaction tree's buffer dominates, the encoding approximates the transaction objects
+    private static long sizeOf(Block block) {
+        return (long) block.getTransactions().capacity() + BlockCodec.encodedSize(block);
+    }
+
+    /**
+     * Drop every resident block, e.g. after a bulk scan. Metrics are kept.
+     */
+    public synchronized void clear() {
+        resident.clear();
+        residentBytes = 0;
+    }
+
+    public BlockStore getStore() {
+        return store;
+    }
+
+    public synchronized int getResidentBlocks() {
+        return resident.size();
+    }
+
+    /**
+     * @return The estimated heap taken by resident blocks.
+     */
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * @return The number of reads answered by a resident block.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of blocks decoded again from the store.
+     */
+    public synchronized long getReloads() {
+        return reloads;
+    }
+
+    /**
+     * @return The number of blocks evicted to stay within the budget.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BlockCache{" +
+                "residentBlocks=" + resident.size() +
+                ", residentBytes=" + residentBytes +
+                ", memoryBudget=" + memoryBudget +
+                ", hits=" + hits +
+                ", reloads=" + reloads +
+                ", evictions=" + evictions +
+                '}';
+    }
+}
@@ -0,0 +1,448 @@
+package org.example.Storage;
+
+import com.sun.jdi.InvalidTypeException;
+import org.example.BPlusTree.BPlusTree;
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockCodec;
+import org.example.BlockChain.BlockView;
+import org.example.Config.Config;
+import org.example.Util.HashUtil;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only on-disk storage for the blocks of a chain, addressed by height or by hash. Blocks
+ * are only removed from the top, by {@link #truncate(int)} when the chain switches branches.
+ * <p>
+ * A store directory holds:
+ * <ul>
+ *     <li>{@code blocks-NNNNN.dat}: segment files of records, length (4) | CRC-32C (4) | block ({@link BlockCodec}).
+ *     A new segment is started once a record would not fit in the current one.</li>
+ *     <li>{@code heights.idx}: segment (4) | offset (4) of each block's record, in height order.</li>
+ *     <li>{@code hashes.idx}: a memory-mapped {@link BPlusTree} from block hash to height, after a
+ *     header of clean flag (4) | unused (4) | indexed blocks (8).</li>
+ *     <li>{@code checkpoint}: height (4) | hash (32) of the last block known to head a valid chain.</li>
+ * </ul>
+ * Records are read through memory-mapped segments, so {@link #getEncoded(int)} hands out a slice of
+ * the file without copying. A block is written to its segment before it is indexed, so after a
+ * crash the store is recovered on open: index entries pointing at missing or damaged records are
+ * dropped, records written but not indexed are indexed, and a torn record at the end of the last
+ * segment is truncated away. The hash index is only trusted if the store was closed, otherwise it is
+ * rebuilt from the segments.
+ * <p>
+ * Appends are not forced to disk; call {@link #sync()} to make them durable.
+ */
+public class BlockStore implements Closeable {
+    private static final String SEGMENT_FORMAT = "blocks-%05d.dat";
+    private static final String HEIGHTS_FILE = "heights.idx";
+    private static final String HASHES_FILE = "hashes.idx";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int RECORD_HEADER_SIZE = 8; // length and checksum
+    private static final int INDEX_ENTRY_SIZE = 8; // segment and offset
+    private static final int HASH_INDEX_HEADER_SIZE = 16;
+    private static final int HASH_INDEX_ORDER = 32;
+    private static final int HASH_KEY_SIZE = 64; // Hex block hash
+    private static final int HEIGHT_VALUE_SIZE = 10; // Decimal height
+
+    private final Path directory;
+    private final int segmentSize;
+    private final List<Segment> segments = new ArrayList<>();
+    private final FileChannel heights;
+    private long[] locations = new long[1024]; // Segment in the high half, offset in the low half
+    private int size;
+    private FileChannel hashFile;
+    private MappedByteBuffer hashMap;
+    private BPlusTree<String> hashes;
+
+    public BlockStore(Path directory) throws IOException, InvalidTypeException {
+        this(directory, Config.blockSegmentSize, Config.blockHashIndexMB);
+    }
+
+    /**
+     * Open the store in a directory, creating it if needed and recovering from an unclean shutdown.
+     *
+     * @param directory The directory holding the store's files.
+     * @param segmentSize The size at which a new segment file is started.
+     * @param hashIndexMB The initial size of the hash index file, which doubles whenever it fills up.
+     */
+    public BlockStore(Path directory, int segmentSize, int hashIndexMB) throws IOException, InvalidTypeException {
+        if (segmentSize <= RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size must be more than " + RECORD_HEADER_SIZE + " bytes");
+        }
+        if (hashIndexMB < 1) {
+            throw new IllegalArgumentException("Hash index must be 1 MB or more");
+        }
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        for (int i = 0; i == 0 || Files.exists(segmentPath(i)); i++) {
+            segments.add(new Segment(segmentPath(i)));
+        }
+        this.heights = FileChannel.open(directory.resolve(HEIGHTS_FILE), CREATE, READ, WRITE);
+        recover();
+        openHashIndex(hashIndexMB);
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format(SEGMENT_FORMAT, segment));
+    }
+
+    /**
+     * Bring the height index and the segments back in line after a crash.
+     */
+    private void recover() throws IOException {
+        int entries = (int) (heights.size() / INDEX_ENTRY_SIZE);
+        ByteBuffer index = ByteBuffer.allocate(entries * INDEX_ENTRY_SIZE);
+        while (index.hasRemaining() && heights.read(index, index.position()) >= 0) {
+            // Read the whole index
+        }
+        index.flip();
+        for (int i = 0; i < entries; i++) {
+            addLocation(index.getLong());
+        }
+        // Entries are written after their records, so only the last ones can point at lost records
+        while (size > 0 && recordLength(segmentOf(size - 1), offsetOf(size - 1)) < 0) {
+            size--;
+        }
+        int indexed = size;
+
+        // Index records that were written but not indexed, and cut off a torn one
+        int segment = size == 0 ? 0 : segmentOf(size - 1);
+        long offset = size == 0 ? 0 : offsetOf(size - 1) + recordLength(segment, offsetOf(size - 1));
+        while (true) {
+            int length = recordLength(segment, offset);
+            if (length > 0) {
+                addLocation(location(segment, offset));
+                offset += length;
+            } else if (offset < segments.get(segment).size || segment == segments.size() - 1) {
+                segments.get(segment).truncate(offset);
+                while (segments.size() > segment + 1) {
+                    segments.remove(segments.size() - 1).delete();
+                }
+                break;
+            } else {
+                segment++;
+                offset = 0;
+            }
+        }
+
+        if (indexed != entries || size != indexed) {
+            heights.truncate((long) indexed * INDEX_ENTRY_SIZE);
+            for (int height = indexed; height < size; height++) {
+                writeLocation(height);
+            }
+        }
+    }
+
+    /**
+     * Open the hash index, rebuilding it unless the store was closed cleanly with every block indexed.
+     */
+    private void openHashIndex(int hashIndexMB) throws IOException, InvalidTypeException {
+        hashFile = FileChannel.open(directory.resolve(HASHES_FILE), CREATE, READ, WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HASH_INDEX_HEADER_SIZE);
+        hashFile.read(header, 0);
+        boolean clean = header.getInt(0) == 1;
+        long indexed = header.getLong(8);
+        if (!clean || indexed > size) {
+            hashFile.truncate(0);
+            indexed = 0;
+        }
+        long length = Math.max(hashFile.size(), (long) hashIndexMB << 20);
+        mapHashIndex(length);
+        for (int height = (int) indexed; height < size; height++) {
+            indexHash(hashOf(height), height);
+        }
+        // Mark the index dirty until close, so a crash makes the next open rebuild it
+        hashMap.putInt(0, 0).putLong(8, size);
+        hashMap.force();
+    }
+
+    private void mapHashIndex(long length) throws IOException, InvalidTypeException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Hash index exceeds " + Integer.MAX_VALUE + " bytes");
+        }
+        hashMap = hashFile.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        ByteBuffer tree = hashMap.slice(HASH_INDEX_HEADER_SIZE, (int) length - HASH_INDEX_HEADER_SIZE);
+        hashes = new BPlusTree<>(tree, HASH_INDEX_ORDER, String.class, HASH_KEY_SIZE, HEIGHT_VALUE_SIZE);
+    }
+
+    private void indexHash(String hash, int height) throws IOException, InvalidTypeException {
+        if (!hashes.hasRoomForInsert()) {
+            // The tree reopens itself from its header in the larger mapping
+            mapHashIndex(hashMap.capacity() * 2L);
+        }
+        hashes.insert(hash, Integer.toString(height));
+    }
+
+    private String hashOf(int height) throws IOException {
+        byte[] hash = new byte[HashUtil.SHA256_LENGTH];
+        new BlockView().wrap(getEncoded(height), 0).blockHash(hash, 0);
+        return HashUtil.toHex(hash);
+    }
+
+    /**
+     * Append a block at the next height.
+     *
+     * @param block The block to store.
+     * @return The block's height.
+     */
+    public synchronized int append(Block block) throws IOException, InvalidTypeException {
+        int length = BlockCodec.encodedSize(block);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        record.position(RECORD_HEADER_SIZE);
+        BlockCodec.encode(block, record);
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), RECORD_HEADER_SIZE, length);
+        record.putInt(0, length).putInt(4, (int) crc.getValue()).flip();
+
+        Segment segment = segments.get(segments.size() - 1);
+        if (segment.size > 0 && segment.size + record.remaining() > segmentSize) {
+            segment = new Segment(segmentPath(segments.size()));
+            segments.add(segment);
+        }
+        long offset = segment.append(record);
+        int height = size;
+        addLocation(location(segments.size() - 1, offset));
+        writeLocation(height);
+        indexHash(block.calculateBlockHash(), height);
+        return height;
+    }
+
+    /**
+     * Drop the blocks above a height, e.g. when the chain switches to a branch with more work.
+     * Their records and index entries are removed, and a checkpoint above the height is lowered to it.
+     *
+     * @param height The height of the last block to keep.
+     */
+    public synchronized void truncate(int height) throws IOException, InvalidTypeException {
+        Objects.checkIndex(height, size);
+        if (getCheckpoint() > height) {
+            setCheckpoint(height);
+        }
+        for (int dropped = size - 1; dropped > height; dropped--) {
+            hashes.delete(hashOf(dropped));
+        }
+        int segment = segmentOf(height);
+        segments.get(segment).truncate(offsetOf(height) + recordLength(segment, offsetOf(height)));
+        while (segments.size() > segment + 1) {
+            segments.remove(segments.size() - 1).delete();
+        }
+        size = height + 1;
+        heights.truncate((long) size * INDEX_ENTRY_SIZE);
+    }
+
+    /**
+     * @param height The block's height.
+     * @return The block, decoded from its record.
+     */
+    public Block get(int height) throws IOException, InvalidTypeException {
+        return BlockCodec.decode(getEncoded(height));
+    }
+
+    /**
+     * @param hash The block's hash.
+     * @return The block, or null if no stored block has the hash.
+     */
+    public Block get(String hash) throws IOException, InvalidTypeException {
+        int height = getHeight(hash);
+        return height < 0 ? null : get(height);
+    }
+
+    /**
+     * Read a block's encoding without decoding it, e.g. to wrap it in a {@link BlockView}.
+     *
+     * @param height The block's height.
+     * @return A read-only slice of the mapped segment holding the encoded block.
+     */
+    public synchronized ByteBuffer getEncoded(int height) throws IOException {
+        Objects.checkIndex(height, size);
+        Segment segment = segments.get(segmentOf(height));
+        long offset = offsetOf(height);
+        int length = segment.read(offset, RECORD_HEADER_SIZE).getInt(0);
+        return segment.read(offset + RECORD_HEADER_SIZE, length);
+    }
+
+    /**
+     * @param hash The block's hash.
+     * @return The block's height, or -1 if no stored block has the hash.
+     */
+    public synchronized int getHeight(String hash) throws InvalidTypeException {
+        String height = hash.length() == HASH_KEY_SIZE ? hashes.search(hash) : null;
+        return height == null ? -1 : Integer.parseInt(height);
+    }
+
+    /**
+     * Record that the blocks up to a height have been validated, so validation after a restart
+     * can start above it.
+     *
+     * @param height The height of the last validated block.
+     */
+    public synchronized void setCheckpoint(int height) throws IOException {
+        Objects.checkIndex(height, size);
+        byte[] hash = new byte[HashUtil.SHA256_LENGTH];
+        new BlockView().wrap(getEncoded(height), 0).blockHash(hash, 0);
+        ByteBuffer checkpoint = ByteBuffer.allocate(Integer.BYTES + hash.length).putInt(height).put(hash).flip();
+        try (FileChannel channel = FileChannel.open(directory.resolve(CHECKPOINT_FILE), CREATE, WRITE)) {
+            channel.write(checkpoint, 0);
+            channel.force(false);
+        }
+    }
+
+    /**
+     * @return The height of the last validated block, or -1 if there is no checkpoint or the
+     * block it names is no longer stored.
+     */
+    public synchronized int getCheckpoint() throws IOException {
+        Path path = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            return -1;
+        }
+        ByteBuffer checkpoint = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (checkpoint.remaining() != Integer.BYTES + HashUtil.SHA256_LENGTH) {
+            return -1;
+        }
+        int height = checkpoint.getInt();
+        if (height < 0 || height >= size) {
+            return -1;
+        }
+        byte[] hash = new byte[HashUtil.SHA256_LENGTH];
+        new BlockView().wrap(getEncoded(height), 0).blockHash(hash, 0);
+        return Arrays.equals(hash, Arrays.copyOfRange(checkpoint.array(), Integer.BYTES, checkpoint.limit())) ? height : -1;
+    }
+
+    /**
+     * @return The number of stored blocks.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Force all appended blocks and their indexes to disk.
+     */
+    public synchronized void sync() throws IOException {
+        segments.get(segments.size() - 1).channel.force(false);
+        heights.force(false);
+        hashMap.force();
+    }
+
+    /**
+     * Sync the store and mark its hash index clean, so the next open can use it as is.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        sync();
+        hashMap.putInt(0, 1).putLong(8, size);
+        hashMap.force();
+        for (Segment segment : segments) {
+            segment.channel.close();
+        }
+        heights.close();
+        hashFile.close();
+    }
+
+    /**
+     * @return The total length of the intact record at the position, or -1 if there is none.
+     */
+    private int recordLength(int segment, long offset) throws IOException {
+        if (segment >= segments.size()) {
+            return -1;
+        }
+        Segment file = segments.get(segment);
+        if (offset + RECORD_HEADER_SIZE > file.size) {
+            return -1;
+        }
+        ByteBuffer header = file.read(offset, RECORD_HEADER_SIZE);
+        int length = header.getInt(0);
+        if (length <= 0 || offset + RECORD_HEADER_SIZE + length > file.size) {
+            return -1;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(file.read(offset + RECORD_HEADER_SIZE, length));
+        return (int) crc.getValue() == header.getInt(4) ? RECORD_HEADER_SIZE + length : -1;
+    }
+
+    private void addLocation(long location) {
+        if (size == locations.length) {
+            locations = Arrays.copyOf(locations, size * 2);
+        }
+        locations[size++] = location;
+    }
+
+    private void writeLocation(int height) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE).putLong(0, locations[height]);
+        heights.write(entry, (long) height * INDEX_ENTRY_SIZE);
+    }
+
+    private static long location(int segment, long offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    private int segmentOf(int height) {
+        return (int) (locations[height] >>> 32);
+    }
+
+    private long offsetOf(int height) {
+        return locations[height] & 0xFFFFFFFFL;
+    }
+
+    /**
+     * One segment file, written through its channel and read through a mapping that is
+     * extended when a read reaches past it.
+     */
+    private static final class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        private long size;
+        private MappedByteBuffer mapped;
+
+        Segment(Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, CREATE, READ, WRITE);
+            this.size = channel.size();
+        }
+
+        ByteBuffer read(long offset, int length) throws IOException {
+            if (mapped == null || offset + length > mapped.capacity()) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            return mapped.slice((int) offset, length);
+        }
+
+        long append(ByteBuffer record) throws IOException {
+            long offset = size;
+            while (record.hasRemaining()) {
+                size += channel.write(record, size);
+            }
+            return offset;
+        }
+
+        void truncate(long length) throws IOException {
+            if (length < size) {
+                channel.truncate(length);
+                size = length;
+                mapped = null;
+            }
+        }
+
+        void delete() throws IOException {
+            channel.close();
+            Files.delete(path);
+        }
+    }
+}
@@ -1,40 +1,108 @@
 package org.example.Transaction;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.Util.Ed25519;
 import org.example.Util.HashUtil;
 
+import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
-import java.util.UUID;
+import java.security.PublicKey;
+import java.util.Arrays;
 
 public class Transaction {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper(); // Thread-safe once configured, so shared
+    private static final int ADDRESS_LENGTH = 20; // Bytes of the public key hash kept as the address
+
     public String sender;
     public String recipient;
     public double amount;
+    public double fee;        // Paid by the sender on top of the amount, orders the mempool
     public long timestamp;
     public String transactionHash;
+    public long nonce;        // Number of earlier transactions from the sender, orders them and prevents replays
+    public String publicKey;  // Signer's raw Ed25519 public key as hex, null if unsigned
+    public String signature;  // Ed25519 signature of the transaction hash as hex, null if unsigned
 
     public Transaction(String sender, String recipient, double amount, long timestamp) throws NoSuchAlgorithmException {
         this.sender = sender;
         this.recipient = recipient;
         this.amount = amount;
         this.timestamp = timestamp;
-        this.transactionHash = generateTransactionHash();
+        this.transactionHash = computeHash();
     }
 
-    private String generateTransactionHash() throws NoSuchAlgorithmException {
-        // Generate a unique nonce (random value)
-        String nonce = UUID.randomUUID().toString();
+    public Transaction(String sender, String recipient, double amount, long timestamp, long nonce) {
+        this.sender = sender;
+        this.recipient = recipient;
+        this.amount = amount;
+        this.timestamp = timestamp;
+        this.nonce = nonce;
+        this.transactionHash = computeHash();
+    }
 
-        // Create a transaction string with the original fields + the nonce
-        String transactionData = sender + recipient + amount + timestamp + nonce;
+    public Transaction(String sender, String recipient, double amount, double fee, long timestamp, long nonce) {
+        this.sender = sender;
+        this.recipient = recipient;
+        this.amount = amount;
+        this.fee = fee;
+        this.timestamp = timestamp;
+        this.nonce = nonce;
+        this.transactionHash = computeHash();
+    }
+
+    /**
+     * @return What the transaction takes from the sender's balance: the amount plus the fee.
+     */
+    public double cost() {
+        return amount + fee;
+    }
+
+    /**
+     * Rebuild a transaction whose hash is already known, e.g. when decoding it.
+     */
+    public Transaction(String sender, String recipient, double amount, long timestamp, String transactionHash) {
+        this.sender = sender;
+        this.recipient = recipient;
+        this.amount = amount;
+        this.timestamp = timestamp;
+        this.transactionHash = transactionHash;
+    }
+
+    /**
+     * @return The SHA-256 of the canonical binary encoding of the transaction's fields, as hex.
+     */
+    public String computeHash() {
+        return HashUtil.toHex(HashUtil.sha256(TransactionCodec.encodeForHashing(this)));
+    }
+
+    /**
+     * Sign the transaction: record the public key, recompute the hash, which covers the key, and
+     * sign the hash. The sender should be {@link #addressOf(PublicKey)} of the same key for the
+     * transaction to validate.
+     *
+     * @param keys The sender's Ed25519 key pair.
+     */
+    public void sign(KeyPair keys) {
+        this.publicKey = HashUtil.toHex(Ed25519.rawPublicKey(keys.getPublic()));
+        byte[] hash = HashUtil.sha256(TransactionCodec.encodeForHashing(this));
+        this.transactionHash = HashUtil.toHex(hash);
+        this.signature = HashUtil.toHex(Ed25519.sign(keys.getPrivate(), hash));
+    }
+
+    /**
+     * @param key An Ed25519 public key.
+     * @return The account address owned by the key: the first 20 bytes of its SHA-256, as hex.
+     */
+    public static String addressOf(PublicKey key) {
+        return addressOf(Ed25519.rawPublicKey(key));
+    }
 
-        // Compute the hash using SHA-256
-        return HashUtil.computeSha256(transactionData);
+    static String addressOf(byte[] rawPublicKey) {
+        return HashUtil.toHex(Arrays.copyOf(HashUtil.sha256(rawPublicKey), ADDRESS_LENGTH));
     }
 
     public String toJson() {
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            return objectMapper.writeValueAsString(this);
+            return OBJECT_MAPPER.writeValueAsString(this);
         } catch (Exception e) {
             throw new RuntimeException("Failed to serialize transaction to JSON", e);
         }
@@ -46,8 +114,12 @@ public class Transaction {
                 "sender='" + sender + '\'' +
                 ", recipient='" + recipient + '\'' +
                 ", amount=" + amount +
+                ", fee=" + fee +
                 ", timestamp=" + timestamp +
+                ", nonce=" + nonce +
                 ", transactionHash='" + transactionHash + '\'' +
+                ", publicKey='" + publicKey + '\'' +
+                ", signature='" + signature + '\'' +
                 '}';
     }
 }
@@ -0,0 +1,117 @@
+package org.example.Transaction;
+
+import org.example.Util.Ed25519;
+import org.example.Util.HashUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Canonical binary encoding of a {@link Transaction}, used for hashing, storage and the network.
+ * <p>
+ * Layout (big-endian):
+ * version (1) | sender length (2) | sender (UTF-8) | recipient length (2) | recipient (UTF-8) |
+ * amount (8, IEEE 754) | fee (8, IEEE 754) | timestamp (8) | nonce (8) | public key (32) | signature (64) | hash (32)
+ * <p>
+ * The transaction hash is the SHA-256 of the encoding up to and including the public key, and
+ * the signature signs that hash. An unsigned transaction has an all-zero key and signature.
+ */
+public class TransactionCodec {
+    public static final byte VERSION = 4;
+    public static final int FIXED_SIZE = 1 + 2 + 2 + Double.BYTES + Double.BYTES + Long.BYTES + Long.BYTES
+            + Ed25519.PUBLIC_KEY_LENGTH + Ed25519.SIGNATURE_LENGTH + HashUtil.SHA256_LENGTH;
+    private static final int UNHASHED_SIZE = Ed25519.SIGNATURE_LENGTH + HashUtil.SHA256_LENGTH;
+    private static final int MAX_STRING_LENGTH = 0xffff;
+    private static final byte[] ZEROS = new byte[Ed25519.SIGNATURE_LENGTH];
+
+    /**
+     * @param transaction The transaction to measure.
+     * @return The number of bytes {@link #encode(Transaction, ByteBuffer)} writes.
+     */
+    public static int encodedSize(Transaction transaction) {
+        return FIXED_SIZE + utf8(transaction.sender).length + utf8(transaction.recipient).length;
+    }
+
+    public static byte[] encode(Transaction transaction) {
+        byte[] sender = utf8(transaction.sender);
+        byte[] recipient = utf8(transaction.recipient);
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_SIZE + sender.length + recipient.length);
+        writeBody(buffer, sender, recipient, transaction);
+        writeTrailer(buffer, transaction);
+        return buffer.array();
+    }
+
+    /**
+     * Write the transaction at the buffer's position, advancing it.
+     *
+     * @param transaction The transaction to encode.
+     * @param buffer The buffer to write to.
+     */
+    public static void encode(Transaction transaction, ByteBuffer buffer) {
+        writeBody(buffer, utf8(transaction.sender), utf8(transaction.recipient), transaction);
+        writeTrailer(buffer, transaction);
+    }
+
+    /**
+     * @param transaction The transaction to encode.
+     * @return The encoding without the signature and hash, i.e. the bytes the hash is computed over.
+     */
+    public static byte[] encodeForHashing(Transaction transaction) {
+        byte[] sender = utf8(transaction.sender);
+        byte[] recipient = utf8(transaction.recipient);
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_SIZE - UNHASHED_SIZE + sender.length + recipient.length);
+        writeBody(buffer, sender, recipient, transaction);
+        return buffer.array();
+    }
+
+    /**
+     * Read a transaction at the buffer's position, advancing it.
+     *
+     * @param buffer The buffer to read from.
+     * @return The decoded transaction.
+     */
+    public static Transaction decode(ByteBuffer buffer) {
+        TransactionView view = new TransactionView().wrap(buffer, buffer.position());
+        buffer.position(buffer.position() + view.length());
+        return view.toTransaction();
+    }
+
+    private static void writeBody(ByteBuffer buffer, byte[] sender, byte[] recipient, Transaction transaction) {
+        buffer.put(VERSION)
+                .putShort((short) sender.length)
+                .put(sender)
+                .putShort((short) recipient.length)
+                .put(recipient)
+                .putDouble(transaction.amount)
+                .putDouble(transaction.fee)
+                .putLong(transaction.timestamp)
+                .putLong(transaction.nonce);
+        putHex(buffer, transaction.publicKey, Ed25519.PUBLIC_KEY_LENGTH);
+    }
+
+    private static void writeTrailer(ByteBuffer buffer, Transaction transaction) {
+        putHex(buffer, transaction.signature, Ed25519.SIGNATURE_LENGTH);
+        putHex(buffer, transaction.transactionHash, HashUtil.SHA256_LENGTH);
+    }
+
+    // Writes a fixed-width field, zero-filled when absent
+    private static void putHex(ByteBuffer buffer, String hex, int length) {
+        if (hex == null) {
+            buffer.put(ZEROS, 0, length);
+            return;
+        }
+        byte[] bytes = HashUtil.fromHex(hex);
+        if (bytes.length != length) {
+            throw new IllegalArgumentException("Expected " + length + " bytes but got " + bytes.length);
+        }
+        buffer.put(bytes);
+    }
+
+    private static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_LENGTH) {
+            throw new IllegalArgumentException("Address longer than " + MAX_STRING_LENGTH + " bytes");
+        }
+        return bytes;
+    }
+}
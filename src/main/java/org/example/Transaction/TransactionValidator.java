@@ -1,9 +1,138 @@
 package org.example.Transaction;
 
+import com.sun.jdi.InvalidTypeException;
+import org.example.Config.Config;
+import org.example.Metrics.Counter;
+import org.example.Metrics.Histogram;
+import org.example.Metrics.Metrics;
+import org.example.State.WorldState;
+import org.example.Util.Ed25519;
+import org.example.Util.HashUtil;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
 public class TransactionValidator {
+    private static final int PARALLEL_BATCH_SIZE = 16; // A verification takes tens of microseconds, so small batches already pay off
+    private static final VerifiedSignatureCache VERIFIED = new VerifiedSignatureCache(Config.verifiedSignatureCacheSize);
+    private static final Histogram VALIDATION_NANOS = Metrics.histogram("transaction.validationNanos");
+    private static final Counter INVALID = Metrics.counter("transaction.invalid");
+
+    /**
+     * Check a transaction's fields, that its hash matches its contents, that the sender is the
+     * address of the signing key and that the signature is valid. Verified signatures are
+     * remembered, so validating the same transaction again only recomputes its hash.
+     *
+     * @param transaction The transaction to validate.
+     * @return True if the transaction is valid.
+     */
     public static boolean validateTransaction(Transaction transaction) {
-        // For simplicity, assume basic validation:
-        return transaction.sender != null && transaction.recipient != null && transaction.amount > 0;
+        long start = System.nanoTime();
+        boolean valid = checkTransaction(transaction);
+        VALIDATION_NANOS.recordSince(start);
+        if (!valid) {
+            INVALID.increment();
+        }
+        return valid;
+    }
+
+    private static boolean checkTransaction(Transaction transaction) {
+        if (transaction.sender == null || !isValidAddress(transaction.recipient) || !(transaction.amount > 0) || !(transaction.fee >= 0)
+                || transaction.transactionHash == null || transaction.publicKey == null || transaction.signature == null) {
+            return false;
+        }
+        try {
+            byte[] hash = HashUtil.sha256(TransactionCodec.encodeForHashing(transaction));
+            if (!Arrays.equals(hash, HashUtil.fromHex(transaction.transactionHash))) {
+                return false;
+            }
+            byte[] publicKey = HashUtil.fromHex(transaction.publicKey);
+            if (!transaction.sender.equals(Transaction.addressOf(publicKey))) {
+                return false;
+            }
+            if (VERIFIED.contains(transaction.transactionHash, transaction.signature)) {
+                return true;
+            }
+            if (!Ed25519.verify(publicKey, hash, HashUtil.fromHex(transaction.signature))) {
+                return false;
+            }
+            VERIFIED.add(transaction.transactionHash, transaction.signature);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;  // Malformed hex or oversized fields
+        }
+    }
+
+    /**
+     * Check that an address can be stored as an account: between 1 and
+     * {@link WorldState#ADDRESS_SIZE} ASCII letters and digits.
+     *
+     * @param address The address to check, may be null.
+     * @return True if the address is well formed.
+     */
+    public static boolean isValidAddress(String address) {
+        if (address == null || address.isEmpty() || address.length() > WorldState.ADDRESS_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z')) {
+                return false;
+            }
+        }
+        return true;
     }
-}
 
+    /**
+     * Validate a transaction and check it against the world state: the sender must afford the
+     * amount and fee, and the transaction must carry the sender's next nonce. The state check is a single
+     * lookup, usually answered by the state's write buffer or cache.
+     *
+     * @param transaction The transaction to validate.
+     * @param state The world state to check balances and nonces against.
+     * @return True if the transaction is valid and can be applied.
+     */
+    public static boolean validateTransaction(Transaction transaction, WorldState state) throws InvalidTypeException {
+        return validateTransaction(transaction) && state.canApply(transaction);
+    }
+
+    /**
+     * Validate many transactions at once, e.g. the contents of a block. Batches of more than a
+     * few transactions are verified on all cores.
+     *
+     * @param transactions The transactions to validate.
+     * @return The result for each transaction, in the same order.
+     */
+    public static boolean[] validateBatch(List<Transaction> transactions) {
+        boolean[] valid = new boolean[transactions.size()];
+        IntStream indexes = IntStream.range(0, valid.length);
+        if (valid.length >= PARALLEL_BATCH_SIZE) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(i -> valid[i] = validateTransaction(transactions.get(i)));
+        return valid;
+    }
+
+    /**
+     * Validate every transaction of a block received from a peer, as {@link #validateBatch(List)} does.
+     *
+     * @param transactions The block's transactions.
+     * @return True if all of them are valid.
+     */
+    public static boolean validateAll(List<Transaction> transactions) {
+        for (boolean valid : validateBatch(transactions)) {
+            if (!valid) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The cache of signatures that already verified.
+     */
+    public static VerifiedSignatureCache verifiedSignatures() {
+        return VERIFIED;
+    }
+}
@@ -0,0 +1,164 @@
+package org.example.Transaction;
+
+import org.example.Util.Ed25519;
+import org.example.Util.HashUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Zero-copy, reusable view of a transaction encoded by {@link TransactionCodec}. Fields are read
+ * straight from the underlying buffer with absolute gets, so wrapping and reading fixed-width
+ * fields neither copies nor allocates; only the String accessors decode into new objects.
+ */
+public class TransactionView {
+    private ByteBuffer buffer;
+    private int offset;
+    private int senderLength;
+    private int recipientLength;
+
+    /**
+     * Point the view at an encoded transaction. The buffer's position is left unchanged.
+     *
+     * @param buffer The buffer holding the encoding.
+     * @param offset The absolute offset of the encoding.
+     * @return This view.
+     */
+    public TransactionView wrap(ByteBuffer buffer, int offset) {
+        byte version = buffer.get(offset);
+        if (version != TransactionCodec.VERSION) {
+            throw new IllegalArgumentException("Unsupported transaction encoding version " + version);
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        this.senderLength = Short.toUnsignedInt(buffer.getShort(offset + 1));
+        this.recipientLength = Short.toUnsignedInt(buffer.getShort(offset + 3 + senderLength));
+        if (offset + length() > buffer.limit()) {
+            throw new IllegalArgumentException("Truncated transaction encoding");
+        }
+        return this;
+    }
+
+    /**
+     * @return The size of the encoded transaction in bytes.
+     */
+    public int length() {
+        return TransactionCodec.FIXED_SIZE + senderLength + recipientLength;
+    }
+
+    public String sender() {
+        return string(offset + 3, senderLength);
+    }
+
+    public String recipient() {
+        return string(offset + 5 + senderLength, recipientLength);
+    }
+
+    public double amount() {
+        return buffer.getDouble(amountOffset());
+    }
+
+    public double fee() {
+        return buffer.getDouble(amountOffset() + Double.BYTES);
+    }
+
+    public long timestamp() {
+        return buffer.getLong(amountOffset() + 2 * Double.BYTES);
+    }
+
+    public long nonce() {
+        return buffer.getLong(amountOffset() + 2 * Double.BYTES + Long.BYTES);
+    }
+
+    /**
+     * @return The signer's raw public key as hex, or null if the transaction is unsigned.
+     */
+    public String publicKeyHex() {
+        return hexOrNull(publicKeyOffset(), Ed25519.PUBLIC_KEY_LENGTH);
+    }
+
+    /**
+     * @return The signature as hex, or null if the transaction is unsigned.
+     */
+    public String signatureHex() {
+        return hexOrNull(signatureOffset(), Ed25519.SIGNATURE_LENGTH);
+    }
+
+    /**
+     * Copy the raw transaction hash into a caller-provided array.
+     *
+     * @param out The array receiving the hash.
+     * @param outOffset Where the 32 hash bytes are written.
+     */
+    public void hash(byte[] out, int outOffset) {
+        buffer.get(hashOffset(), out, outOffset, HashUtil.SHA256_LENGTH);
+    }
+
+    /**
+     * Hash the encoded fields covered by the transaction hash in place, i.e. everything before
+     * the signature, to check the recorded hash without decoding.
+     *
+     * @param out The array receiving the hash.
+     * @param outOffset Where the 32 hash bytes are written.
+     */
+    public void computeHash(byte[] out, int outOffset) {
+        ByteBuffer hashed = buffer.duplicate();
+        hashed.limit(signatureOffset()).position(offset);
+        HashUtil.sha256(hashed, out, outOffset);
+    }
+
+    /**
+     * @return The transaction hash as a hexadecimal string.
+     */
+    public String hashHex() {
+        byte[] hash = new byte[HashUtil.SHA256_LENGTH];
+        hash(hash, 0);
+        return HashUtil.toHex(hash);
+    }
+
+    /**
+     * @return A transaction object with the fields of this view.
+     */
+    public Transaction toTransaction() {
+        Transaction transaction = new Transaction(sender(), recipient(), amount(), timestamp(), hashHex());
+        transaction.fee = fee();
+        transaction.nonce = nonce();
+        transaction.publicKey = publicKeyHex();
+        transaction.signature = signatureHex();
+        return transaction;
+    }
+
+    private int amountOffset() {
+        return offset + 5 + senderLength + recipientLength;
+    }
+
+    private int publicKeyOffset() {
+        return amountOffset() + 2 * Double.BYTES + 2 * Long.BYTES;
+    }
+
+    private int signatureOffset() {
+        return publicKeyOffset() + Ed25519.PUBLIC_KEY_LENGTH;
+    }
+
+    private int hashOffset() {
+        return signatureOffset() + Ed25519.SIGNATURE_LENGTH;
+    }
+
+    // All-zero fixed-width fields mark an absent key or signature
+    private String hexOrNull(int start, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(start, bytes, 0, length);
+        for (byte b : bytes) {
+            if (b != 0) {
+                return HashUtil.toHex(bytes);
+            }
+        }
+        return null;
+    }
+
+    private String string(int start, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(start, bytes, 0, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,80 @@
+package org.example.Transaction;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded set of transaction signatures that already verified, so a transaction first seen
+ * through gossip is not verified again when it arrives inside a block. Entries map the
+ * transaction hash to its signature, and a hit requires both to match. The cache is split
+ * into independently locked segments, each evicting its least recently used entry when full.
+ */
+public class VerifiedSignatureCache {
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * @param capacity The maximum number of signatures remembered.
+     */
+    public VerifiedSignatureCache(int capacity) {
+        if (capacity < SEGMENTS) {
+            throw new IllegalArgumentException("Capacity must be at least " + SEGMENTS);
+        }
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(capacity / SEGMENTS);
+        }
+    }
+
+    public boolean contains(String transactionHash, String signature) {
+        Segment segment = segmentFor(transactionHash);
+        synchronized (segment) {
+            return signature.equals(segment.get(transactionHash));
+        }
+    }
+
+    public void add(String transactionHash, String signature) {
+        Segment segment = segmentFor(transactionHash);
+        synchronized (segment) {
+            segment.put(transactionHash, signature);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    private Segment segmentFor(String transactionHash) {
+        return segments[Math.floorMod(transactionHash.hashCode(), SEGMENTS)];
+    }
+
+    private static class Segment extends LinkedHashMap<String, String> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.example.Util;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+
+/**
+ * Ed25519 signing and verification with the JDK's built-in provider. Public keys are handled
+ * as their raw 32 bytes and signatures are 64 bytes.
+ */
+public class Ed25519 {
+    public static final int PUBLIC_KEY_LENGTH = 32;
+    public static final int SIGNATURE_LENGTH = 64;
+    private static final String ALGORITHM = "Ed25519";
+    // The X.509 encoding of an Ed25519 public key is this fixed prefix followed by the raw key
+    private static final byte[] X509_PREFIX = HashUtil.fromHex("302a300506032b6570032100");
+
+    // Signature and KeyFactory are not thread-safe, so every thread keeps its own
+    private static final ThreadLocal<Signature> SIGNATURE = ThreadLocal.withInitial(() -> newInstance(() -> Signature.getInstance(ALGORITHM)));
+    private static final ThreadLocal<KeyFactory> KEY_FACTORY = ThreadLocal.withInitial(() -> newInstance(() -> KeyFactory.getInstance(ALGORITHM)));
+
+    public static KeyPair generateKeyPair() {
+        return newInstance(() -> KeyPairGenerator.getInstance(ALGORITHM)).generateKeyPair();
+    }
+
+    /**
+     * @param key An Ed25519 public key.
+     * @return The raw 32 byte key.
+     */
+    public static byte[] rawPublicKey(PublicKey key) {
+        byte[] encoded = key.getEncoded();
+        return Arrays.copyOfRange(encoded, encoded.length - PUBLIC_KEY_LENGTH, encoded.length);
+    }
+
+    public static byte[] sign(PrivateKey key, byte[] message) {
+        Signature signature = SIGNATURE.get();
+        try {
+            signature.initSign(key);
+            signature.update(message);
+            return signature.sign();
+        } catch (InvalidKeyException | SignatureException e) {
+            throw new IllegalArgumentException("Cannot sign with this key", e);
+        }
+    }
+
+    /**
+     * Verify a signature. Malformed keys and signatures are reported as invalid rather than thrown.
+     *
+     * @param rawPublicKey The raw 32 byte public key of the signer.
+     * @param message The signed message.
+     * @param signatureBytes The 64 byte signature.
+     * @return True if the signature is valid.
+     */
+    public static boolean verify(byte[] rawPublicKey, byte[] message, byte[] signatureBytes) {
+        if (rawPublicKey.length != PUBLIC_KEY_LENGTH || signatureBytes.length != SIGNATURE_LENGTH) {
+            return false;
+        }
+        byte[] encoded = Arrays.copyOf(X509_PREFIX, X509_PREFIX.length + PUBLIC_KEY_LENGTH);
+        System.arraycopy(rawPublicKey, 0, encoded, X509_PREFIX.length, PUBLIC_KEY_LENGTH);
+        Signature signature = SIGNATURE.get();
+        try {
+            signature.initVerify(KEY_FACTORY.get().generatePublic(new X509EncodedKeySpec(encoded)));
+            signature.update(message);
+            return signature.verify(signatureBytes);
+        } catch (InvalidKeySpecException | InvalidKeyException | SignatureException e) {
+            return false;
+        }
+    }
+
+    private interface Factory<T> {
+        T create() throws GeneralSecurityException;
+    }
+
+    private static <T> T newInstance(Factory<T> factory) {
+        try {
+            return factory.create();
+        } catch (GeneralSecurityException e) {
+            // Ed25519 ships with every JDK since 15
+            throw new IllegalStateException("Ed25519 is not available", e);
+        }
+    }
+}
@@ -1,36 +1,197 @@
 package org.example.Util;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.stream.IntStream;
 
 public class HashUtil {
+    public static final int SHA256_LENGTH = 32; // Size of a raw SHA-256 digest in bytes
+    private static final int PARALLEL_BATCH_SIZE = 1024; // Batches at least this large are hashed on all cores
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // MessageDigest is not thread-safe, so every thread keeps and reuses its own instance
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(HashUtil::newSha256);
+
+    static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
 
     /**
-     * Computes the SHA-256 hash of a given input string.
+     * Returns the calling thread's SHA-256 digest, reset and ready for incremental updates.
+     * The digest must not be shared with other threads or kept across calls to other
+     * HashUtil methods, which reuse the same instance.
      *
-     * @param input The input string to be hashed.
-     * @return The SHA-256 hash of the input string, represented as a hexadecimal string.
-     * @throws NoSuchAlgorithmException If the SHA-256 algorithm is not available.
+     * @return The reset per-thread SHA-256 digest.
      */
-    public static String computeSha256(String input) throws NoSuchAlgorithmException {
-        // Create a MessageDigest instance for SHA-256
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-
-        // Apply the hash to the input string and get the byte array
-        byte[] hashBytes = digest.digest(input.getBytes());
-
-        // Convert the byte array to a hexadecimal string
-        StringBuilder hexString = new StringBuilder();
-        for (byte b : hashBytes) {
-            // Convert each byte to a two-digit hexadecimal value
-            String hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1) {
-                hexString.append('0');
+    public static MessageDigest sha256() {
+        MessageDigest digest = SHA256.get();
+        digest.reset();
+        return digest;
+    }
+
+    /**
+     * Computes the raw SHA-256 digest of a byte array.
+     *
+     * @param input The bytes to hash.
+     * @return The 32 byte digest.
+     */
+    public static byte[] sha256(byte[] input) {
+        return sha256(input, 0, input.length);
+    }
+
+    /**
+     * Computes the raw SHA-256 digest of a range of a byte array.
+     *
+     * @param input The array holding the bytes to hash.
+     * @param offset The start of the range.
+     * @param length The length of the range.
+     * @return The 32 byte digest.
+     */
+    public static byte[] sha256(byte[] input, int offset, int length) {
+        MessageDigest digest = sha256();
+        digest.update(input, offset, length);
+        return digest.digest();
+    }
+
+    /**
+     * Computes the raw SHA-256 digest of the remaining bytes of a buffer, consuming them.
+     *
+     * @param input The buffer to hash.
+     * @return The 32 byte digest.
+     */
+    public static byte[] sha256(ByteBuffer input) {
+        MessageDigest digest = sha256();
+        digest.update(input);
+        return digest.digest();
+    }
+
+    /**
+     * Computes the SHA-256 digest of a range of a byte array into a caller-provided array,
+     * without allocating.
+     *
+     * @param input The array holding the bytes to hash.
+     * @param offset The start of the range.
+     * @param length The length of the range.
+     * @param out The array receiving the digest.
+     * @param outOffset Where the 32 digest bytes are written.
+     */
+    public static void sha256(byte[] input, int offset, int length, byte[] out, int outOffset) {
+        MessageDigest digest = sha256();
+        digest.update(input, offset, length);
+        finish(digest, out, outOffset);
+    }
+
+    /**
+     * Computes the SHA-256 digest of the remaining bytes of a buffer into a caller-provided
+     * array, without allocating. The buffer's bytes are consumed.
+     *
+     * @param input The buffer to hash.
+     * @param out The array receiving the digest.
+     * @param outOffset Where the 32 digest bytes are written.
+     */
+    public static void sha256(ByteBuffer input, byte[] out, int outOffset) {
+        MessageDigest digest = sha256();
+        digest.update(input);
+        finish(digest, out, outOffset);
+    }
+
+    /**
+     * Completes an incremental hash started with {@link #sha256()} into a caller-provided array.
+     *
+     * @param digest The digest holding the absorbed input.
+     * @param out The array receiving the digest.
+     * @param outOffset Where the 32 digest bytes are written.
+     */
+    public static void finish(MessageDigest digest, byte[] out, int outOffset) {
+        try {
+            digest.digest(out, outOffset, SHA256_LENGTH);
+        } catch (DigestException e) {
+            throw new IllegalArgumentException("Output array too small for a SHA-256 digest", e);
+        }
+    }
+
+    /**
+     * Hashes many inputs at once. Large batches are spread across all cores.
+     *
+     * @param inputs The inputs to hash.
+     * @return The digests laid out back to back, input i at offset i * 32.
+     */
+    public static byte[] sha256Batch(byte[][] inputs) {
+        byte[] out = new byte[inputs.length * SHA256_LENGTH];
+        IntStream indexes = IntStream.range(0, inputs.length);
+        if (inputs.length >= PARALLEL_BATCH_SIZE) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(i -> sha256(inputs[i], 0, inputs[i].length, out, i * SHA256_LENGTH));
+        return out;
+    }
+
+    /**
+     * Encodes bytes as a lowercase hexadecimal string.
+     *
+     * @param bytes The bytes to encode.
+     * @return The hexadecimal representation.
+     */
+    public static String toHex(byte[] bytes) {
+        return toHex(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Encodes a range of bytes as a lowercase hexadecimal string.
+     *
+     * @param bytes The array holding the bytes to encode.
+     * @param offset The start of the range.
+     * @param length The length of the range.
+     * @return The hexadecimal representation.
+     */
+    public static String toHex(byte[] bytes, int offset, int length) {
+        char[] hex = new char[length * 2];
+        for (int i = 0; i < length; i++) {
+            int b = bytes[offset + i] & 0xff;
+            hex[i * 2] = HEX_DIGITS[b >>> 4];
+            hex[i * 2 + 1] = HEX_DIGITS[b & 0x0f];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Decodes a hexadecimal string, as produced by {@link #toHex(byte[])}.
+     *
+     * @param hex The hexadecimal string (either case).
+     * @return The decoded bytes.
+     */
+    public static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Hex string must have an even length");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Invalid hex string: " + hex);
             }
-            hexString.append(hex);
+            bytes[i] = (byte) ((high << 4) | low);
         }
+        return bytes;
+    }
 
-        // Return the resulting hexadecimal string
-        return hexString.toString();
+    /**
+     * Computes the SHA-256 hash of a given input string.
+     *
+     * @param input The input string to be hashed.
+     * @return The SHA-256 hash of the UTF-8 bytes of the input string, represented as a hexadecimal string.
+     * @throws NoSuchAlgorithmException Never thrown, SHA-256 is always available; kept for existing callers.
+     */
+    public static String computeSha256(String input) throws NoSuchAlgorithmException {
+        return toHex(sha256(input.getBytes(StandardCharsets.UTF_8)));
     }
 }
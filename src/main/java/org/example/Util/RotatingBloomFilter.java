@@ -0,0 +1,111 @@
+package org.example.Util;
+
+import java.util.Arrays;
+
+/**
+ * Bounded set membership for 32 byte hashes, with false positives but no false negatives for
+ * recent entries. Entries go into the newest of a few Bloom filters; once it holds its capacity
+ * the oldest filter is cleared and becomes the newest, so memory stays fixed and entries are
+ * forgotten after a few generations instead of accumulating.
+ * <p>
+ * The inputs are already uniform hashes, so the bit positions are derived from two of their
+ * words by double hashing rather than by hashing again.
+ */
+public class RotatingBloomFilter {
+    private final long[][] generations;
+    private final int bitCount;
+    private final int hashCount;
+    private final int capacity;
+    private int current;
+    private int currentSize;
+
+    /**
+     * @param capacity The entries each generation holds before the filters rotate.
+     * @param falsePositiveRate The target false-positive rate of one full generation.
+     * @param generationCount The number of generations remembered.
+     */
+    public RotatingBloomFilter(int capacity, double falsePositiveRate, int generationCount) {
+        if (capacity < 1 || generationCount < 2 || !(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("Filter needs a positive capacity, a rate between 0 and 1 and two or more generations");
+        }
+        double bits = -capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        this.bitCount = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, Math.ceil(bits)));
+        this.hashCount = Math.max(1, (int) Math.round(bitCount / (double) capacity * Math.log(2)));
+        this.capacity = capacity;
+        this.generations = new long[generationCount][(bitCount + 63) / 64];
+    }
+
+    /**
+     * @param hash A 32 byte hash.
+     * @return True if the hash was probably added within the remembered generations.
+     */
+    public synchronized boolean mightContain(byte[] hash) {
+        long h1 = word(hash, 0);
+        long h2 = word(hash, 8) | 1;
+        for (long[] bits : generations) {
+            if (contains(bits, h1, h2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add a hash unless it is already present.
+     *
+     * @param hash A 32 byte hash.
+     * @return True if the hash was not present before.
+     */
+    public synchronized boolean add(byte[] hash) {
+        if (mightContain(hash)) {
+            return false;
+        }
+        if (currentSize == capacity) {
+            current = (current + 1) % generations.length;
+            Arrays.fill(generations[current], 0);
+            currentSize = 0;
+        }
+        long h1 = word(hash, 0);
+        long h2 = word(hash, 8) | 1;
+        long[] bits = generations[current];
+        for (int i = 0; i < hashCount; i++) {
+            int bit = index(h1 + i * h2);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+        currentSize++;
+        return true;
+    }
+
+    private boolean contains(long[] bits, long h1, long h2) {
+        for (int i = 0; i < hashCount; i++) {
+            int bit = index(h1 + i * h2);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int index(long hash) {
+        return (int) Long.remainderUnsigned(hash, bitCount);
+    }
+
+    private static long word(byte[] hash, int offset) {
+        long word = 0;
+        for (int i = offset; i < offset + Long.BYTES; i++) {
+            word = (word << 8) | (hash[i] & 0xFF);
+        }
+        return word;
+    }
+
+    /**
+     * @return The number of bits in each generation.
+     */
+    public int getBitCount() {
+        return bitCount;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+}
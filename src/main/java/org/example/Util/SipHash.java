@@ -0,0 +1,63 @@
+package org.example.Util;
+
+/**
+ * SipHash-2-4, a fast keyed 64-bit hash. Without the key its outputs cannot be predicted, so
+ * inputs cannot be chosen to collide, which makes it suitable for short identifiers that are
+ * salted per use.
+ */
+public class SipHash {
+
+    /**
+     * @param k0 The first half of the 128-bit key, the little-endian value of key bytes 0 to 7.
+     * @param k1 The second half of the key, key bytes 8 to 15.
+     * @param data The array holding the input.
+     * @param offset The start of the input.
+     * @param length The length of the input.
+     * @return The 64-bit hash.
+     */
+    public static long hash(long k0, long k1, byte[] data, int offset, int length) {
+        long[] v = {
+                k0 ^ 0x736f6d6570736575L,
+                k1 ^ 0x646f72616e646f6dL,
+                k0 ^ 0x6c7967656e657261L,
+                k1 ^ 0x7465646279746573L
+        };
+        int end = offset + length - (length & 7);
+        for (int i = offset; i < end; i += Long.BYTES) {
+            compress(v, littleEndian(data, i, Long.BYTES));
+        }
+        // The last word holds the remaining bytes and the input length in its top byte
+        compress(v, ((long) length << 56) | littleEndian(data, end, length & 7));
+        v[2] ^= 0xff;
+        rounds(v, 4);
+        return v[0] ^ v[1] ^ v[2] ^ v[3];
+    }
+
+    private static void compress(long[] v, long m) {
+        v[3] ^= m;
+        rounds(v, 2);
+        v[0] ^= m;
+    }
+
+    private static void rounds(long[] v, int count) {
+        long v0 = v[0], v1 = v[1], v2 = v[2], v3 = v[3];
+        for (int i = 0; i < count; i++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        v[0] = v0;
+        v[1] = v1;
+        v[2] = v2;
+        v[3] = v3;
+    }
+
+    private static long littleEndian(byte[] data, int offset, int count) {
+        long value = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
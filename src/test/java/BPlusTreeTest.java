@@ -3,6 +3,15 @@ import org.example.BPlusTree.BPlusTree;
 import org.example.BPlusTree.BPlusTreeNode;
 import org.junit.Test;
 
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
 public class BPlusTreeTest {
     @Test
     public void insertItemsDefault() throws InvalidTypeException {
@@ -50,4 +59,54 @@ public class BPlusTreeTest {
         tree.insert("837411393","test");
         tree.printTree();
     }
+    @Test
+    public void insertSearchDeleteMany() throws InvalidTypeException {
+        for (int order : new int[]{3, 4, 8}) {
+            BPlusTree<Integer> tree = new BPlusTree<>(1, order, Integer.class);
+            TreeMap<Integer, String> expected = new TreeMap<>();
+            Random random = new Random(order);
+            for (int i = 0; i < 2000; i++) {
+                int key = random.nextInt(500);
+                if (random.nextInt(3) == 0) {
+                    tree.delete(key);
+                    expected.remove(key);
+                } else {
+                    tree.insert(key, "v" + i);
+                    expected.put(key, "v" + i);
+                }
+            }
+            for (int key = 0; key < 500; key++) {
+                assertEquals(expected.get(key), tree.search(key));
+            }
+            int count = 0;
+            for (Map.Entry<Integer, String> entry : tree) {
+                assertEquals(expected.get(entry.getKey()), entry.getValue());
+                count++;
+            }
+            assertEquals(expected.size(), count);
+            for (Integer key : expected.keySet()) {
+                tree.delete(key);
+                assertNull(tree.search(key));
+            }
+            assertFalse(tree.iterator().hasNext());
+        }
+    }
+    @Test(expected = IllegalArgumentException.class)
+    public void insertKeyTooLarge() throws InvalidTypeException {
+        BPlusTree<String> tree = new BPlusTree<>(1,3,String.class);
+        tree.insert("a key longer than the slot", "test");
+    }
+
+    @Test
+    public void sharedSearchesRunOnSeveralThreadsAtOnce() throws InvalidTypeException {
+        BPlusTree<Integer> tree = new BPlusTree<>(1, 8, Integer.class);
+        for (int key = 0; key < 2_000; key++) {
+            tree.insert(key, "v" + key);
+        }
+        long mismatches = IntStream.range(0, 20_000).parallel()
+                .filter(i -> !("v" + i % 2_000).equals(tree.searchShared(i % 2_000)))
+                .count();
+        assertEquals(0, mismatches);
+        assertNull(tree.searchShared(2_000));
+    }
 }
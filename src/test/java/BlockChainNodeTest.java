@@ -0,0 +1,183 @@
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockChain;
+import org.example.BlockChain.BlockChainNode;
+import org.example.BlockChain.SealingPolicy;
+import org.example.Miner;
+import org.example.P2P.Gossip;
+import org.example.P2P.P2PNode;
+import org.example.State.AccountState;
+import org.example.State.WorldState;
+import org.example.Transaction.Transaction;
+import org.example.Util.Ed25519;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.security.KeyPair;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class BlockChainNodeTest {
+    // A peer that only serves the blocks it announces
+    private static class BlockInventory implements Gossip.Inventory {
+        final Map<String, Block> blocks = new ConcurrentHashMap<>();
+
+        @Override
+        public boolean addTransaction(Transaction transaction) {
+            return false;
+        }
+
+        @Override
+        public Transaction getTransaction(String hash) {
+            return null;
+        }
+
+        @Override
+        public boolean addBlock(Block block) {
+            return false;
+        }
+
+        @Override
+        public Block getBlock(String hash) {
+            return blocks.get(hash);
+        }
+
+        @Override
+        public void forEachTransaction(Consumer<Transaction> action) {
+        }
+    }
+
+    private static Block mine(Miner miner, String previousHash, Transaction... transactions) throws Exception {
+        Block block = new Block(previousHash);
+        for (Transaction transaction : transactions) {
+            block.addTransaction(transaction);
+        }
+        miner.mine(block);
+        return block;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    public void gossipedBlocksAreExecutedAndAHeavierBranchReplacesTheChain() throws Exception {
+        Block genesis = new Block(null);
+        KeyPair alice = Ed25519.generateKeyPair();
+        String address = Transaction.addressOf(alice.getPublic());
+        Transaction payment = new Transaction(address, "bob", 10, 1, 1_000, 0);
+        payment.sign(alice);
+        Miner miner = new Miner(1, 4);
+        Block a1 = mine(miner, genesis.calculateBlockHash(), payment);
+        Block b1 = mine(miner, genesis.calculateBlockHash());
+        Block b2 = mine(miner, b1.getBlockHash());
+        miner.shutdown();
+
+        WorldState state = new WorldState(16);
+        state.credit(address, 100);
+        state.commit();
+        BlockInventory inventory = new BlockInventory();
+        Gossip gossip = new Gossip(inventory, 10_000, 5, 10_000, 4);
+        try (BlockChainNode node = new BlockChainNode(new BlockChain(genesis, 4), state, new Miner(1, 4), 0);
+             P2PNode peer = new P2PNode(0, 1, gossip)) {
+            peer.connect(new InetSocketAddress("localhost", node.getPort()));
+            Thread.sleep(200);
+
+            inventory.blocks.put(a1.getBlockHash(), a1);
+            gossip.announceBlock(a1);
+            await(() -> node.getBlockchain().getHeight() == 1);
+            assertEquals(new AccountState(10, 0), state.getAccount("bob"));
+            assertEquals(new AccountState(89, 1), state.getAccount(address));
+
+            for (Block block : new Block[]{b1, b2}) {
+                inventory.blocks.put(block.getBlockHash(), block);
+                gossip.announceBlock(block);
+            }
+            await(() -> node.getBlockchain().getHeight() == 2);
+            assertEquals(b2.getBlockHash(), node.getBlockchain().getTip().calculateBlockHash());
+            assertEquals(b1.getBlockHash(), node.getBlockchain().getBlocks().get(1).calculateBlockHash());
+            assertEquals(1, node.getTree().getReorganizations());
+            // The rewound block's payment is undone and waits in the mempool again
+            assertEquals(AccountState.EMPTY, state.getAccount("bob"));
+            assertEquals(new AccountState(100, 0), state.getAccount(address));
+            await(() -> node.getMempool().contains(payment.transactionHash));  // Offered again once the chain has moved
+        } finally {
+            gossip.close();
+        }
+    }
+
+    @Test
+    public void missingParentsOfAGossipedBlockAreFetchedFromItsPeer() throws Exception {
+        Block genesis = new Block(null);
+        Miner miner = new Miner(1, 4);
+        Block b1 = mine(miner, genesis.calculateBlockHash());
+        Block b2 = mine(miner, b1.getBlockHash());
+        Block b3 = mine(miner, b2.getBlockHash());
+        miner.shutdown();
+
+        BlockInventory inventory = new BlockInventory();
+        for (Block block : new Block[]{b1, b2, b3}) {
+            inventory.blocks.put(block.getBlockHash(), block);
+        }
+        Gossip gossip = new Gossip(inventory, 10_000, 5, 10_000, 4);
+        try (BlockChainNode node = new BlockChainNode(new BlockChain(genesis, 4), new WorldState(16), new Miner(1, 4), 0);
+             P2PNode peer = new P2PNode(0, 1, gossip)) {
+            peer.connect(new InetSocketAddress("localhost", node.getPort()));
+            Thread.sleep(200);
+
+            gossip.announceBlock(b3);  // Only the tip reaches the node
+            await(() -> node.getBlockchain().getHeight() == 3);
+            assertEquals(b3.getBlockHash(), node.getBlockchain().getTip().calculateBlockHash());
+            assertEquals(2, node.getGossip().getParentRequests());
+            assertEquals(0, node.getTree().getOrphanCount());
+        } finally {
+            gossip.close();
+        }
+    }
+
+    @Test
+    public void producerStartsAgainOnABlockFromAPeer() throws Exception {
+        Block genesis = new Block(null);
+        Miner miner = new Miner(1, 4);
+        Block b1 = mine(miner, genesis.calculateBlockHash());
+        miner.shutdown();
+        KeyPair alice = Ed25519.generateKeyPair();
+        String address = Transaction.addressOf(alice.getPublic());
+        Transaction payment = new Transaction(address, "bob", 10, 1, 1_000, 0);
+        payment.sign(alice);
+
+        WorldState state = new WorldState(16);
+        state.credit(address, 100);
+        state.commit();
+        BlockInventory inventory = new BlockInventory();
+        Gossip gossip = new Gossip(inventory, 10_000, 5, 10_000, 4);
+        try (BlockChainNode node = new BlockChainNode(new BlockChain(genesis, 4), state, new Miner(1, 4), 0);
+             P2PNode peer = new P2PNode(0, 1, gossip)) {
+            node.startProducing(new SealingPolicy(4, 1 << 20, Duration.ofMillis(10)));
+            peer.connect(new InetSocketAddress("localhost", node.getPort()));
+            Thread.sleep(200);
+
+            inventory.blocks.put(b1.getBlockHash(), b1);
+            gossip.announceBlock(b1);
+            await(() -> node.getBlockchain().getHeight() == 1);
+
+            // The producer now builds on the peer's block instead of the tip it started on
+            node.submit(payment);
+            await(() -> node.getBlockchain().getHeight() == 2);
+            Block produced = node.getBlockchain().getTip();
+            assertEquals(b1.getBlockHash(), produced.getPreviousBlockHash());
+            assertEquals(payment.transactionHash, produced.getTransactionList().get(0).transactionHash);
+            assertEquals(new AccountState(10, 0), state.getAccount("bob"));
+        } finally {
+            gossip.close();
+        }
+    }
+}
@@ -1,22 +1,44 @@
-import com.sun.jdi.InvalidTypeException;
+import org.example.BlockChain.Block;
 import org.example.BlockChain.BlockChain;
+import org.example.BlockChain.ChainValidator;
+import org.example.Miner;
 import org.example.Transaction.Transaction;
 import org.junit.Test;
 
-import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
+import static org.junit.Assert.*;
 
 public class BlockChainTest {
     @Test
-    public void  testInit() throws InvalidTypeException, NoSuchAlgorithmException {
-        var chain = new BlockChain();
-        var transactions = new ArrayList<Transaction>();
-        for(int i=0;i<10;i++){
-            transactions.add(new Transaction("aylon","daniel",0.01,System.currentTimeMillis()));
+    public void minedBlocksAreAppendedAndEarlierBlocksNeverChange() throws Exception {
+        BlockChain chain = new BlockChain(4);
+        Block genesis = chain.getTip();
+        String genesisHash = genesis.calculateBlockHash();
+        Miner miner = new Miner(1, 4);
+        try {
+            for (int i = 0; i < 3; i++) {
+                Block block = chain.createBlock();
+                for (int j = 0; j < 10; j++) {
+                    block.addTransaction(new Transaction("aylon", "daniel", 0.01, 1_000 + j, (long) (i * 10 + j)));
+                }
+                // Not part of the chain until it is mined
+                assertThrows(IllegalArgumentException.class, () -> chain.addBlock(block));
+                assertEquals(i, chain.getHeight());
+                miner.mine(block);
+                chain.addBlock(block);
+            }
+        } finally {
+            miner.shutdown();
         }
-        for(Transaction transaction:transactions){
-            chain.addTransaction(transaction);
+
+        assertEquals(3, chain.getHeight());
+        assertEquals(genesisHash, chain.getBlocks().get(0).calculateBlockHash());
+        assertEquals(0, genesis.getTransactionList().size());
+        for (int height = 1; height <= 3; height++) {
+            assertEquals(10, chain.getBlocks().get(height).getTransactionList().size());
         }
-        System.out.println(chain);
+        ChainValidator validator = new ChainValidator(1, 2, 4);
+        ChainValidator.Result result = chain.validateChain(validator);
+        validator.shutdown();
+        assertTrue(result.toString(), result.valid());
     }
 }
@@ -0,0 +1,98 @@
+import org.example.BlockChain.Block;
+import org.example.State.AccountState;
+import org.example.State.BlockExecutor;
+import org.example.State.StateDiff;
+import org.example.State.WorldState;
+import org.example.Transaction.Transaction;
+import org.example.Util.Ed25519;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BlockExecutorTest {
+    @Test
+    public void parallelExecutionMatchesSequentialExecution() throws Exception {
+        KeyPair[] keys = new KeyPair[6];
+        String[] addresses = new String[keys.length];
+        WorldState sequential = new WorldState(1);
+        WorldState parallel = new WorldState(1);
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = Ed25519.generateKeyPair();
+            addresses[i] = Transaction.addressOf(keys[i].getPublic());
+            sequential.credit(addresses[i], 50);
+            parallel.credit(addresses[i], 50);
+        }
+        sequential.commit();
+        parallel.commit();
+
+        // Random transfers between the accounts, so later transactions depend on earlier ones
+        Random random = new Random(3);
+        long[] nonces = new long[keys.length];
+        Block block = new Block(null);
+        for (int n = 0; n < 60; n++) {
+            int from = random.nextInt(keys.length);
+            Transaction transaction = new Transaction(addresses[from], addresses[random.nextInt(keys.length)], 1 + random.nextInt(5), n, nonces[from]++);
+            transaction.sign(keys[from]);
+            block.addTransaction(transaction);
+        }
+
+        BlockExecutor executor = new BlockExecutor(parallel, 4);
+        BlockExecutor.Result result = executor.execute(block);
+        executor.shutdown();
+        assertEquals(sequential.applyBlock(block), result.valid());
+        assertTrue(result.valid());
+        assertTrue(result.reexecuted() > 0);
+        for (String address : addresses) {
+            assertEquals(sequential.getAccount(address), parallel.getAccount(address));
+        }
+    }
+
+    @Test
+    public void invalidBlockLeavesStateUnchanged() throws Exception {
+        KeyPair alice = Ed25519.generateKeyPair();
+        String address = Transaction.addressOf(alice.getPublic());
+        WorldState state = new WorldState(1);
+        state.credit(address, 10);
+        state.commit();
+
+        Block block = new Block(null);
+        for (int n = 0; n < 3; n++) {
+            Transaction transaction = new Transaction(address, "bob", 4, n, n);
+            transaction.sign(alice);
+            block.addTransaction(transaction);
+        }
+        BlockExecutor.Result result = new BlockExecutor(state, 2).execute(block);
+        assertFalse(result.valid());
+        assertEquals(2, result.failedIndex());  // The third transfer overspends
+        assertEquals(new AccountState(10, 0), state.getAccount(address));
+        assertEquals(AccountState.EMPTY, state.getAccount("bob"));
+    }
+
+    @Test
+    public void recordedDiffRevertsTheBlock() throws Exception {
+        KeyPair alice = Ed25519.generateKeyPair();
+        String address = Transaction.addressOf(alice.getPublic());
+        WorldState state = new WorldState(1);
+        state.credit(address, 10);
+        state.commit();
+
+        Block block = new Block(null);
+        for (int n = 0; n < 2; n++) {
+            Transaction transaction = new Transaction(address, "bob", 4, n, n);
+            transaction.sign(alice);
+            block.addTransaction(transaction);
+        }
+        BlockExecutor executor = new BlockExecutor(state, 2);
+        StateDiff diff = executor.executeWithDiff(block);
+        executor.shutdown();
+        assertEquals(new AccountState(2, 2), state.getAccount(address));
+        assertEquals(new AccountState(8, 0), state.getAccount("bob"));
+
+        state.revert(diff);
+        assertEquals(new AccountState(10, 0), state.getAccount(address));
+        assertEquals(AccountState.EMPTY, state.getAccount("bob"));
+    }
+}
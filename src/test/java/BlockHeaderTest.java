@@ -0,0 +1,44 @@
+import org.example.BlockChain.BlockHeader;
+import org.example.Util.HashUtil;
+import org.example.Util.Sha256Midstate;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class BlockHeaderTest {
+    @Test
+    public void midstateMatchesFullHash() {
+        Random random = new Random(7);
+        byte[] out = new byte[32];
+        for (int prefixLength = 0; prefixLength <= 128; prefixLength += 64) {
+            for (int tailLength = 0; tailLength < 200; tailLength++) {
+                byte[] data = new byte[prefixLength + tailLength];
+                random.nextBytes(data);
+                Sha256Midstate midstate = new Sha256Midstate(data, 0, prefixLength);
+                midstate.finish(data, prefixLength, tailLength, out, 0);
+                assertArrayEquals(HashUtil.sha256(data), out);
+            }
+        }
+    }
+
+    @Test
+    public void headerRoundTripsAndHashesThroughMidstate() {
+        byte[] previous = HashUtil.sha256(new byte[]{1});
+        byte[] root = HashUtil.sha256(new byte[]{2});
+        BlockHeader header = new BlockHeader(BlockHeader.VERSION, previous, root, 1234L, 20, 42L);
+        byte[] bytes = header.toBytes();
+        assertEquals(BlockHeader.SIZE, bytes.length);
+        assertArrayEquals(bytes, BlockHeader.readFrom(ByteBuffer.wrap(bytes)).toBytes());
+
+        byte[] tail = new BlockHeader(BlockHeader.VERSION, previous, root, 1234L, 20, 0L).tail();
+        BlockHeader.writeNonce(tail, 42L);
+        byte[] out = new byte[32];
+        header.midstate().finish(tail, 0, BlockHeader.TAIL_SIZE, out, 0);
+        assertArrayEquals(HashUtil.sha256(bytes), out);
+        assertArrayEquals(HashUtil.sha256(bytes), header.hash());
+    }
+}
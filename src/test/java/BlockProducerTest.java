@@ -0,0 +1,119 @@
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockChain;
+import org.example.BlockChain.BlockProducer;
+import org.example.BlockChain.SealingPolicy;
+import org.example.Mempool.Mempool;
+import org.example.Miner;
+import org.example.State.AccountState;
+import org.example.State.WorldState;
+import org.example.Transaction.Transaction;
+import org.example.Util.Ed25519;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class BlockProducerTest {
+    @Test
+    public void producesLinkedMinedBlocksFromTheMempool() throws Exception {
+        BlockChain chain = new BlockChain(8);
+        WorldState state = new WorldState(1);
+        Mempool mempool = new Mempool();
+        KeyPair alice = Ed25519.generateKeyPair();
+        String address = Transaction.addressOf(alice.getPublic());
+        state.credit(address, 100);
+        state.commit();
+
+        Miner miner = new Miner(1, 8);
+        BlockProducer producer = new BlockProducer(chain, mempool, state, miner, new SealingPolicy(4, 1 << 20, Duration.ofMillis(50)));
+        List<Block> appended = new CopyOnWriteArrayList<>();
+        producer.addListener(appended::add);
+        producer.start();
+        for (int nonce = 0; nonce < 10; nonce++) {
+            Transaction transaction = new Transaction(address, "bob", 1, 1, nonce, nonce);
+            transaction.sign(alice);
+            assertEquals(Mempool.AddResult.ADDED, mempool.add(transaction));
+        }
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (mempool.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        producer.stop();
+        miner.shutdown();
+        assertNull(producer.getFailure());
+
+        int transactions = 0;
+        List<Block> blocks = chain.getBlocks();
+        for (int i = 1; i < blocks.size(); i++) {
+            assertEquals(blocks.get(i - 1).calculateBlockHash(), blocks.get(i).getPreviousBlockHash());
+            assertTrue(blocks.get(i).getTransactionList().size() <= 4);
+            transactions += blocks.get(i).getTransactionList().size();
+        }
+        assertEquals(10, transactions);
+        assertEquals(blocks.size() - 1, appended.size());
+        assertEquals(new AccountState(80, 10), state.getAccount(address));
+    }
+
+    @Test
+    public void chainRejectsBlocksThatDoNotExtendTheTip() throws Exception {
+        BlockChain chain = new BlockChain(4);
+        Miner miner = new Miner(1, 4);
+        Block block = chain.createBlock();
+        miner.mine(block);
+        chain.addBlock(block);
+        assertEquals(1, chain.getHeight());
+
+        Block stale = new Block(block.getPreviousBlockHash());
+        miner.mine(stale);
+        miner.shutdown();
+        try {
+            chain.addBlock(stale);
+            fail("Stale block was appended");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void chainRejectsBlocksBelowItsMinimumDifficulty() throws Exception {
+        BlockChain chain = new BlockChain(8);
+        Miner cheap = new Miner(1, 0);  // Every hash meets zero bits
+        Block block = chain.createBlock();
+        cheap.mine(block);
+        cheap.shutdown();
+        assertThrows(IllegalArgumentException.class, () -> chain.addBlock(block));
+        assertEquals(0, chain.getHeight());
+    }
+
+    @Test(timeout = 20_000)
+    public void cancelledMiningAbandonsTheBlockAndStops() throws Exception {
+        BlockChain chain = new BlockChain();
+        WorldState state = new WorldState(1);
+        Mempool mempool = new Mempool();
+        KeyPair alice = Ed25519.generateKeyPair();
+        String address = Transaction.addressOf(alice.getPublic());
+        state.credit(address, 100);
+        state.commit();
+
+        Miner miner = new Miner(1, 64);  // Never finds a nonce
+        BlockProducer producer = new BlockProducer(chain, mempool, state, miner, new SealingPolicy(4, 1 << 20, Duration.ofMillis(10)));
+        producer.start();
+        Transaction transaction = new Transaction(address, "bob", 1, 1, 0, 0);
+        transaction.sign(alice);
+        mempool.add(transaction);
+        while (miner.getTotalHashes() == 0) {
+            Thread.sleep(10);
+        }
+        miner.cancel();
+        producer.stop();
+        miner.shutdown();
+
+        assertTrue(producer.getFailure() instanceof InterruptedException);
+        assertEquals(0, chain.getHeight());
+        assertEquals(new AccountState(100, 0), state.getAccount(address));
+        assertTrue(mempool.contains(transaction.transactionHash));
+    }
+}
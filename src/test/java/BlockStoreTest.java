@@ -0,0 +1,171 @@
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockChain;
+import org.example.BlockChain.BlockView;
+import org.example.Miner;
+import org.example.Storage.BlockCache;
+import org.example.Storage.BlockStore;
+import org.example.Transaction.Transaction;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BlockStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<Block> newBlocks(int count) throws Exception {
+        List<Block> blocks = new ArrayList<>();
+        String previous = null;
+        for (int i = 0; i < count; i++) {
+            Block block = new Block(previous);
+            for (int j = 0; j <= i % 5; j++) {
+                block.addTransaction(new Transaction("sender" + i, "recipient" + j, j + 1, 1_000 + i, (long) j));
+            }
+            block.setBlockHash(block.calculateBlockHash());
+            blocks.add(block);
+            previous = block.getBlockHash();
+        }
+        return blocks;
+    }
+
+    @Test
+    public void readsBlocksByHeightAndHashAcrossSegmentsAndReopens() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        List<Block> blocks = newBlocks(40);
+        try (BlockStore store = new BlockStore(directory, 4096, 1)) {
+            for (int i = 0; i < blocks.size(); i++) {
+                assertEquals(i, store.append(blocks.get(i)));
+            }
+            assertTrue(Files.exists(directory.resolve("blocks-00001.dat")));
+        }
+        try (BlockStore store = new BlockStore(directory, 4096, 1)) {
+            assertEquals(blocks.size(), store.size());
+            for (int i = 0; i < blocks.size(); i++) {
+                String hash = blocks.get(i).getBlockHash();
+                assertEquals(hash, store.get(i).calculateBlockHash());
+                assertEquals(i, store.getHeight(hash));
+                assertEquals(blocks.get(i).getTransactionList().size(), new BlockView().wrap(store.getEncoded(i), 0).transactionCount());
+            }
+            assertEquals(blocks.get(7).getBlockHash(), store.get(blocks.get(7).getBlockHash()).calculateBlockHash());
+            assertEquals(-1, store.getHeight("0".repeat(64)));
+            assertNull(store.get("0".repeat(64)));
+        }
+    }
+
+    @Test
+    public void recoversFromATornTailAndAnUnindexedBlock() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        List<Block> blocks = newBlocks(6);
+        BlockStore crashed = new BlockStore(directory, 1 << 20, 1);
+        for (Block block : blocks) {
+            crashed.append(block);
+        }
+        crashed.sync();
+        // The last block was written but its index entry was lost, and a record was torn mid-write
+        try (FileChannel heights = FileChannel.open(directory.resolve("heights.idx"), StandardOpenOption.WRITE)) {
+            heights.truncate(heights.size() - 3);
+        }
+        try (FileChannel segment = FileChannel.open(directory.resolve("blocks-00000.dat"), StandardOpenOption.WRITE)) {
+            segment.write(ByteBuffer.wrap(new byte[]{0, 0, 1, 0, 7, 7}), segment.size());
+        }
+        long intact = Files.size(directory.resolve("blocks-00000.dat")) - 6;
+
+        try (BlockStore store = new BlockStore(directory, 1 << 20, 1)) {
+            assertEquals(blocks.size(), store.size());
+            assertEquals(intact, Files.size(directory.resolve("blocks-00000.dat")));
+            assertEquals(5, store.getHeight(blocks.get(5).getBlockHash()));
+            Block next = newBlocks(7).get(6);
+            assertEquals(6, store.append(next));
+            assertEquals(6, store.getHeight(next.getBlockHash()));
+        }
+    }
+
+    @Test
+    public void truncateDropsTheTopBlocksAcrossSegmentsAndReopens() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        List<Block> blocks = newBlocks(40);
+        try (BlockStore store = new BlockStore(directory, 4096, 1)) {
+            for (Block block : blocks) {
+                store.append(block);
+            }
+            store.setCheckpoint(30);
+            store.truncate(9);
+            assertEquals(10, store.size());
+            assertEquals(9, store.getCheckpoint());
+            assertEquals(-1, store.getHeight(blocks.get(10).getBlockHash()));
+            assertEquals(9, store.getHeight(blocks.get(9).getBlockHash()));
+            assertFalse(Files.exists(directory.resolve("blocks-00002.dat")));
+            assertEquals(10, store.append(blocks.get(10)));
+        }
+        try (BlockStore store = new BlockStore(directory, 4096, 1)) {
+            assertEquals(11, store.size());
+            assertEquals(10, store.getHeight(blocks.get(10).getBlockHash()));
+            assertEquals(-1, store.getHeight(blocks.get(11).getBlockHash()));
+            assertEquals(blocks.get(10).getBlockHash(), store.get(10).calculateBlockHash());
+        }
+    }
+
+    @Test
+    public void cacheEvictsBlocksBeyondItsBudgetAndReloadsThem() throws Exception {
+        List<Block> blocks = newBlocks(5);
+        long blockSize = blocks.get(0).getTransactions().capacity();
+        try (BlockStore store = new BlockStore(folder.getRoot().toPath())) {
+            BlockCache cache = new BlockCache(store, 2 * blockSize + blockSize / 2);
+            for (Block block : blocks) {
+                cache.append(block);
+            }
+            assertEquals(2, cache.getResidentBlocks());
+            assertEquals(3, cache.getEvictions());
+            assertTrue(cache.getResidentBytes() <= 2 * blockSize + blockSize / 2);
+
+            assertEquals(blocks.get(0).getBlockHash(), cache.get(0).calculateBlockHash());
+            assertSame(cache.get(0), cache.get(blocks.get(0).getBlockHash()));
+            assertEquals(1, cache.getReloads());
+            assertEquals(2, cache.getHits());
+            assertEquals(2, cache.getResidentBlocks());
+        }
+    }
+
+    @Test
+    public void chainSurvivesARestart() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        Miner miner = new Miner(1, 4);
+        String tip;
+        try (BlockStore store = new BlockStore(directory)) {
+            BlockChain chain = new BlockChain(store, 4);
+            for (int i = 0; i < 3; i++) {
+                Block block = chain.createBlock();
+                block.addTransaction(new Transaction("alice", "bob", i + 1, 1_000 + i, (long) i));
+                miner.mine(block);
+                chain.addBlock(block);
+            }
+            tip = chain.getTip().getBlockHash();
+
+            // A rewound block is gone from the store, and the chain extends from the new tip
+            Block rewound = chain.getTip();
+            assertEquals(List.of(rewound), chain.truncate(2));
+            assertEquals(-1, store.getHeight(rewound.getBlockHash()));
+            Block block = chain.createBlock();
+            miner.mine(block);
+            chain.addBlock(block);
+            tip = chain.getTip().getBlockHash();
+        }
+        miner.shutdown();
+        try (BlockStore store = new BlockStore(directory)) {
+            BlockChain chain = new BlockChain(store, 4);
+            assertEquals(3, chain.getHeight());
+            assertEquals(tip, chain.getTip().calculateBlockHash());
+            assertEquals(chain.getBlocks().get(2).calculateBlockHash(), chain.getTip().getPreviousBlockHash());
+        }
+    }
+}
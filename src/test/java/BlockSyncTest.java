@@ -0,0 +1,193 @@
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockChain;
+import org.example.BlockChain.BlockChainNode;
+import org.example.MessageProtocol.Message;
+import org.example.Miner;
+import org.example.P2P.BlockSync;
+import org.example.P2P.P2PNode;
+import org.example.State.AccountState;
+import org.example.State.WorldState;
+import org.example.Storage.BlockStore;
+import org.example.Transaction.Transaction;
+import org.example.Util.Ed25519;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.net.InetSocketAddress;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BlockSyncTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final KeyPair ALICE = Ed25519.generateKeyPair();
+
+    private static Transaction transfer(long nonce) {
+        Transaction transaction = new Transaction(Transaction.addressOf(ALICE.getPublic()), "bob", nonce + 1, 0, 1_000 + nonce, nonce);
+        transaction.sign(ALICE);
+        return transaction;
+    }
+
+    private static BlockChain minedChain(int blocks) throws Exception {
+        Miner miner = new Miner(1, 4);
+        BlockChain chain = new BlockChain(4);
+        for (int i = 0; i < blocks; i++) {
+            Block block = chain.createBlock();
+            block.addTransaction(transfer(i));
+            miner.mine(block);
+            chain.addBlock(block);
+        }
+        miner.shutdown();
+        return chain;
+    }
+
+    private static void append(BlockChain chain, Miner miner, Transaction... transactions) throws Exception {
+        Block block = chain.createBlock();
+        for (Transaction transaction : transactions) {
+            block.addTransaction(transaction);
+        }
+        miner.mine(block);
+        chain.addBlock(block);
+    }
+
+    // A fresh stored chain sharing the source chain's genesis block
+    private BlockChain freshChain(BlockChain source) throws Exception {
+        BlockStore store = new BlockStore(folder.newFolder().toPath());
+        store.append(source.getBlocks().get(0));
+        return new BlockChain(store, 4);
+    }
+
+    private static void awaitHeight(BlockChain chain, int height) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (chain.getHeight() < height && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void downloadsFromSeveralPeersInOrder() throws Exception {
+        int blocks = 300;
+        BlockChain source = minedChain(blocks);
+        BlockChain target = freshChain(source);
+        List<BlockSync> servers = new ArrayList<>();
+        List<P2PNode> nodes = new ArrayList<>();
+        try (BlockSync sync = new BlockSync(target, 8, 16, 64, 1_000, 5_000);
+             P2PNode node = new P2PNode(0, 1, sync)) {
+            for (int i = 0; i < 3; i++) {
+                BlockSync server = new BlockSync(source);
+                servers.add(server);
+                nodes.add(new P2PNode(0, 1, server));
+                node.connect(new InetSocketAddress("localhost", nodes.get(i).getPort()));
+            }
+            awaitHeight(target, blocks);
+            assertEquals(blocks, target.getHeight());
+            assertEquals(source.getTip().calculateBlockHash(), target.getTip().calculateBlockHash());
+            assertEquals(blocks, sync.getDownloadedBlocks());
+            for (BlockSync server : servers) {
+                assertTrue(server.getServedBlocks() > 0);  // Every peer took a share
+            }
+        } finally {
+            servers.forEach(BlockSync::close);
+            for (P2PNode server : nodes) {
+                server.close();
+            }
+        }
+    }
+
+    @Test
+    public void reassignsRequestsOfAPeerThatNeverAnswers() throws Exception {
+        int blocks = 100;
+        BlockChain source = minedChain(blocks);
+        BlockChain target = freshChain(source);
+        try (BlockSync serving = new BlockSync(source);
+             BlockSync sync = new BlockSync(target, 8, 16, 64, 200, 1_000);
+             P2PNode good = new P2PNode(0, 1, serving);
+             // Offers headers but never sends a block
+             P2PNode silent = new P2PNode(0, 1, (connection, message) -> {
+                 if (message.type != Message.MessageType.GET_BLOCKS) {
+                     serving.onMessage(connection, message);
+                 }
+             });
+             P2PNode node = new P2PNode(0, 1, sync)) {
+            node.connect(new InetSocketAddress("localhost", silent.getPort()));
+            node.connect(new InetSocketAddress("localhost", good.getPort()));
+            awaitHeight(target, blocks);
+            assertEquals(blocks, target.getHeight());
+            assertTrue(sync.getReassigned() > 0);
+        }
+    }
+
+    @Test
+    public void dropsAPeerServingABlockWithAForgedTransaction() throws Exception {
+        BlockChain source = minedChain(2);
+        Miner miner = new Miner(1, 4);
+        Block forged = source.createBlock();
+        Transaction transaction = transfer(2);
+        transaction.amount = 1_000_000;  // No longer matches its hash and signature
+        forged.addTransaction(transaction);
+        miner.mine(forged);
+        miner.shutdown();
+        source.addBlock(forged);  // The chain itself does not look at transactions
+        BlockChain target = freshChain(source);
+        try (BlockSync serving = new BlockSync(source);
+             BlockSync sync = new BlockSync(target);
+             P2PNode server = new P2PNode(0, 1, serving);
+             P2PNode node = new P2PNode(0, 1, sync)) {
+            node.connect(new InetSocketAddress("localhost", server.getPort()));
+            long deadline = System.currentTimeMillis() + 20_000;
+            while (sync.getInvalidBlocks() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, sync.getInvalidBlocks());
+            assertEquals(2, target.getHeight());
+        }
+    }
+
+    @Test
+    public void switchesToAPeersBranchWithMoreWorkThatLeavesTheChainBelowItsTip() throws Exception {
+        Block genesis = new Block(null);
+        String alice = Transaction.addressOf(ALICE.getPublic());
+        Transaction toCarol = new Transaction(alice, "carol", 5, 0, 1_000, 0);
+        toCarol.sign(ALICE);
+        Miner miner = new Miner(1, 4);
+        BlockChain lighter = new BlockChain(genesis, 4);
+        append(lighter, miner, transfer(0));
+        BlockChain heavier = new BlockChain(genesis, 4);
+        append(heavier, miner, toCarol);
+        append(heavier, miner);
+        append(heavier, miner);
+        miner.shutdown();
+
+        WorldState state = new WorldState(16);
+        state.credit(alice, 100);
+        state.commit();
+        try (BlockChainNode node = new BlockChainNode(new BlockChain(genesis, 4), state, new Miner(1, 4), 0);
+             BlockSync lighterSync = new BlockSync(lighter);
+             BlockSync heavierSync = new BlockSync(heavier);
+             P2PNode lighterPeer = new P2PNode(0, 1, lighterSync);
+             P2PNode heavierPeer = new P2PNode(0, 1, heavierSync)) {
+            lighterPeer.connect(new InetSocketAddress("localhost", node.getPort()));
+            awaitHeight(node.getBlockchain(), 1);
+            assertEquals(lighter.getTip().calculateBlockHash(), node.getBlockchain().getTip().calculateBlockHash());
+
+            // The heavier branch leaves the node's chain at genesis, below its tip
+            heavierPeer.connect(new InetSocketAddress("localhost", node.getPort()));
+            awaitHeight(node.getBlockchain(), 3);
+            assertEquals(heavier.getTip().calculateBlockHash(), node.getBlockchain().getTip().calculateBlockHash());
+            assertEquals(1, node.getTree().getReorganizations());
+            assertEquals(AccountState.EMPTY, state.getAccount("bob"));
+            assertEquals(new AccountState(5, 0), state.getAccount("carol"));
+            long deadline = System.currentTimeMillis() + 20_000;
+            while (!node.getSync().isSynced() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(node.getSync().isSynced());
+            assertEquals(1, lighter.getHeight());  // A chain without a tree cannot switch, and refuses the branch
+        }
+    }
+}
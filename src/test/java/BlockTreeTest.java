@@ -0,0 +1,183 @@
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockTree;
+import org.example.Miner;
+import org.example.State.AccountState;
+import org.example.State.BlockExecutor;
+import org.example.State.WorldState;
+import org.example.Transaction.Transaction;
+import org.example.Util.Ed25519;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.KeyPair;
+
+import static org.junit.Assert.*;
+
+public class BlockTreeTest {
+    private final Miner miner = new Miner(1, 2);
+    private final KeyPair alice = Ed25519.generateKeyPair();
+    private final String aliceAddress = Transaction.addressOf(alice.getPublic());
+    private WorldState state;
+    private Block genesis;
+    private BlockTree tree;
+
+    @Before
+    public void setUp() throws Exception {
+        state = new WorldState(1);
+        state.credit(aliceAddress, 100);
+        state.commit();
+        genesis = new Block(null);
+        tree = new BlockTree(genesis, state, 2);
+    }
+
+    @After
+    public void tearDown() {
+        miner.shutdown();
+    }
+
+    private Block child(Block parent, String recipient, double amount, long nonce) throws Exception {
+        Block block = new Block(parent.calculateBlockHash());
+        if (recipient != null) {
+            Transaction transaction = new Transaction(aliceAddress, recipient, amount, 0, nonce, nonce);
+            transaction.sign(alice);
+            block.addTransaction(transaction);
+        }
+        miner.mine(block);
+        return block;
+    }
+
+    @Test
+    public void switchesToTheBranchWithMoreWorkAndBack() throws Exception {
+        Block a1 = child(genesis, "bob", 10, 0);
+        Block a2 = child(a1, "bob", 10, 1);
+        assertEquals(BlockTree.AddResult.EXTENDED, tree.add(a1));
+        assertEquals(BlockTree.AddResult.EXTENDED, tree.add(a2));
+        assertEquals(80, state.getAccount(aliceAddress).balance(), 0);
+
+        Block b1 = child(genesis, "carol", 5, 0);
+        Block b2 = child(b1, null, 0, 0);
+        Block b3 = child(b2, "carol", 5, 1);
+        assertEquals(BlockTree.AddResult.SIDE_BRANCH, tree.add(b1));
+        assertEquals(BlockTree.AddResult.SIDE_BRANCH, tree.add(b2));
+        assertEquals(BlockTree.AddResult.REORGANIZED, tree.add(b3));
+        assertSame(b3, tree.getHead());
+        assertEquals(AccountState.EMPTY, state.getAccount("bob"));
+        assertEquals(new AccountState(10, 0), state.getAccount("carol"));
+        assertEquals(new AccountState(90, 2), state.getAccount(aliceAddress));
+        assertEquals(2, tree.getDeepestReorganization());
+        assertFalse(tree.isOnMainChain(a2.calculateBlockHash()));
+
+        // The old branch comes back from its stored diffs
+        Block a3 = child(a2, null, 0, 0);
+        Block a4 = child(a3, "bob", 10, 2);
+        assertEquals(BlockTree.AddResult.SIDE_BRANCH, tree.add(a3));
+        assertEquals(BlockTree.AddResult.REORGANIZED, tree.add(a4));
+        assertEquals(new AccountState(30, 0), state.getAccount("bob"));
+        assertEquals(new AccountState(0, 0), state.getAccount("carol"));
+        assertEquals(new AccountState(70, 3), state.getAccount(aliceAddress));
+        assertEquals(5, tree.getMainChain().size());
+        assertEquals(2, tree.getReorganizations());
+    }
+
+    @Test
+    public void keepsTheHeadWhenAHeavierBranchFailsToExecute() throws Exception {
+        Block a1 = child(genesis, "bob", 10, 0);
+        tree.add(a1);
+        Block b1 = child(genesis, "carol", 5, 0);
+        Block b2 = child(b1, "carol", 500, 1);
+        assertEquals(BlockTree.AddResult.SIDE_BRANCH, tree.add(b1));
+        assertEquals(BlockTree.AddResult.INVALID, tree.add(b2));
+        assertSame(a1, tree.getHead());
+        assertEquals(new AccountState(90, 1), state.getAccount(aliceAddress));
+        assertEquals(AccountState.EMPTY, state.getAccount("carol"));
+        assertEquals(BlockTree.AddResult.INVALID, tree.add(child(b2, null, 0, 0)));
+    }
+
+    @Test
+    public void connectsOrphansOnceTheirParentArrives() throws Exception {
+        Block a1 = child(genesis, "bob", 10, 0);
+        Block a2 = child(a1, "bob", 10, 1);
+        Block a3 = child(a2, null, 0, 0);
+        assertEquals(BlockTree.AddResult.ORPHAN, tree.add(a3));
+        assertEquals(BlockTree.AddResult.ORPHAN, tree.add(a2));
+        assertEquals(2, tree.getOrphanCount());
+        assertEquals(BlockTree.AddResult.EXTENDED, tree.add(a1));
+        assertSame(a3, tree.getHead());
+        assertEquals(0, tree.getOrphanCount());
+        assertEquals(BlockTree.AddResult.DUPLICATE, tree.add(a2));
+        assertEquals(new AccountState(80, 2), state.getAccount(aliceAddress));
+    }
+
+    @Test
+    public void executesBlocksThroughAnExecutor() throws Exception {
+        BlockExecutor executor = new BlockExecutor(state, 2);
+        assertThrows(IllegalArgumentException.class, () -> new BlockTree(genesis, new WorldState(1), 2, executor));
+        tree = new BlockTree(genesis, state, 2, executor);
+        Block a1 = child(genesis, "bob", 10, 0);
+        Block b1 = child(genesis, "carol", 5, 0);
+        Block b2 = child(b1, "carol", 5, 1);
+        assertEquals(BlockTree.AddResult.EXTENDED, tree.add(a1));
+        assertEquals(BlockTree.AddResult.SIDE_BRANCH, tree.add(b1));
+        assertEquals(BlockTree.AddResult.REORGANIZED, tree.add(b2));
+        assertEquals(AccountState.EMPTY, state.getAccount("bob"));
+        assertEquals(new AccountState(10, 0), state.getAccount("carol"));
+        assertEquals(new AccountState(90, 2), state.getAccount(aliceAddress));
+
+        assertEquals(BlockTree.AddResult.INVALID, tree.add(child(b2, "carol", 500, 2)));
+        assertSame(b2, tree.getHead());
+        assertEquals(new AccountState(90, 2), state.getAccount(aliceAddress));
+        executor.shutdown();
+    }
+
+    @Test
+    public void forgetsWhatLiesBelowTheFinalBlock() throws Exception {
+        tree = new BlockTree(genesis, state, 2, null, 3);
+        Block[] main = new Block[7];
+        main[0] = genesis;
+        for (int i = 1; i < main.length; i++) {
+            main[i] = child(main[i - 1], null, 0, 0);
+        }
+        Block early = child(genesis, "bob", 1, 0);
+        Block late = child(main[2], "carol", 1, 0);
+        for (int i = 1; i <= 3; i++) {
+            tree.add(main[i]);
+        }
+        assertEquals(BlockTree.AddResult.SIDE_BRANCH, tree.add(early));
+        assertEquals(BlockTree.AddResult.SIDE_BRANCH, tree.add(late));
+        assertEquals(6, tree.size());
+        for (int i = 4; i < main.length; i++) {
+            assertEquals(BlockTree.AddResult.EXTENDED, tree.add(main[i]));
+        }
+
+        // Only the final block three under the head and what is built on it are left
+        assertEquals(3, tree.getRootHeight());
+        assertEquals(4, tree.size());
+        assertSame(main[3], tree.getMainChain().get(0));
+        assertNull(tree.getBlock(main[2].calculateBlockHash()));
+        assertFalse(tree.contains(early.calculateBlockHash()));
+        assertFalse(tree.contains(late.calculateBlockHash()));
+        assertEquals(BlockTree.AddResult.ORPHAN, tree.add(child(main[2], "dave", 1, 0)));
+
+        // A heavier branch forking off above the root still takes over
+        Block fork = main[3];
+        for (int i = 0; i < 4; i++) {
+            fork = i == 0 ? child(fork, "erin", 1, 0) : child(fork, null, 0, 0);
+            tree.add(fork);
+        }
+        assertSame(fork, tree.getHead());
+        assertEquals(7, tree.getHeadHeight());
+        assertEquals(4, tree.getRootHeight());
+        assertEquals(1, tree.getReorganizations());
+    }
+
+    @Test
+    public void rejectsBlocksBelowTheMinimumDifficulty() throws Exception {
+        Miner cheap = new Miner(1, 0);
+        Block block = new Block(genesis.calculateBlockHash());
+        cheap.mine(block);
+        cheap.shutdown();
+        assertEquals(BlockTree.AddResult.INVALID, tree.add(block));
+        assertEquals(0, tree.getHeadHeight());
+    }
+}
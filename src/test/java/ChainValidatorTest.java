@@ -0,0 +1,106 @@
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockChain;
+import org.example.BlockChain.ChainValidator;
+import org.example.Miner;
+import org.example.Storage.BlockStore;
+import org.example.Transaction.Transaction;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class ChainValidatorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void mine(BlockChain chain, Miner miner, int blocks) throws Exception {
+        for (int i = 0; i < blocks; i++) {
+            Block block = chain.createBlock();
+            block.addTransaction(new Transaction("alice", "bob", i + 1, 1_000 + i, (long) i));
+            block.addTransaction(new Transaction("bob", "carol", i + 1, 1_000 + i, (long) i));
+            miner.mine(block);
+            chain.addBlock(block);
+        }
+    }
+
+    @Test
+    public void validatesAnInMemoryChain() throws Exception {
+        Miner miner = new Miner(1, 4);
+        BlockChain chain = new BlockChain(4);
+        mine(chain, miner, 10);
+        miner.shutdown();
+        ChainValidator validator = new ChainValidator(2, 2, 4);
+        ChainValidator.Result result = chain.validateChain(validator);
+        validator.shutdown();
+        assertTrue(result.toString(), result.valid());
+        assertEquals(11, result.validatedBlocks());
+    }
+
+    @Test
+    public void storedChainIsOnlyRevalidatedAboveItsCheckpoint() throws Exception {
+        Miner miner = new Miner(1, 4);
+        ChainValidator validator = new ChainValidator(2, 2, 4);
+        try (BlockStore store = new BlockStore(folder.getRoot().toPath())) {
+            BlockChain chain = new BlockChain(store, 4);
+            mine(chain, miner, 20);
+            assertEquals(21, chain.validateChain(validator).validatedBlocks());
+            assertEquals(20, store.getCheckpoint());
+        }
+        try (BlockStore store = new BlockStore(folder.getRoot().toPath())) {
+            BlockChain chain = new BlockChain(store, 4);
+            ChainValidator.Result unchanged = chain.validateChain(validator);
+            assertTrue(unchanged.valid());
+            assertEquals(0, unchanged.validatedBlocks());
+
+            mine(chain, miner, 3);
+            ChainValidator.Result tail = chain.validateChain(validator);
+            assertTrue(tail.valid());
+            assertEquals(21, tail.startHeight());
+            assertEquals(3, tail.validatedBlocks());
+        }
+        miner.shutdown();
+        validator.shutdown();
+    }
+
+    @Test
+    public void reportsTheFirstInvalidBlock() throws Exception {
+        Miner miner = new Miner(1, 4);
+        ChainValidator validator = new ChainValidator(2, 2, 4);
+        try (BlockStore store = new BlockStore(folder.getRoot().toPath())) {
+            BlockChain chain = new BlockChain(store, 4);
+            mine(chain, miner, 5);
+            // Appended straight to the store, so neither block was checked by the chain
+            Block unmined = new Block(chain.getTip().getBlockHash());
+            unmined.setDifficultyBits(24);
+            store.append(unmined);
+            store.append(new Block("ab".repeat(32)));
+
+            ChainValidator.Result result = validator.validate(store);
+            assertFalse(result.valid());
+            assertEquals(6, result.invalidHeight());
+            assertTrue(result.error(), result.error().contains("difficulty"));
+            assertEquals(5, store.getCheckpoint());
+        }
+        miner.shutdown();
+        validator.shutdown();
+    }
+
+    @Test
+    public void rejectsBlocksBelowTheMinimumDifficulty() throws Exception {
+        Miner cheap = new Miner(1, 0);
+        ChainValidator validator = new ChainValidator(2, 2, 4);
+        try (BlockStore store = new BlockStore(folder.getRoot().toPath())) {
+            BlockChain chain = new BlockChain(store, 4);
+            Block block = chain.createBlock();
+            cheap.mine(block);  // Valid proof of work for the zero bits its header claims
+            store.append(block);
+
+            ChainValidator.Result result = validator.validate(store);
+            assertEquals(1, result.invalidHeight());
+            assertTrue(result.error(), result.error().contains("minimum"));
+        }
+        cheap.shutdown();
+        validator.shutdown();
+    }
+}
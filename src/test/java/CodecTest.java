@@ -0,0 +1,150 @@
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockCodec;
+import org.example.BlockChain.BlockHeader;
+import org.example.Config.Config;
+import org.example.BlockChain.BlockView;
+import org.example.MessageProtocol.CompactBlock;
+import org.example.MessageProtocol.Message;
+import org.example.MessageProtocol.MessageCodec;
+import org.example.Transaction.Transaction;
+import org.example.Transaction.TransactionCodec;
+import org.example.Transaction.TransactionView;
+import org.example.Util.HashUtil;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CodecTest {
+    @Test
+    public void transactionRoundTrip() throws Exception {
+        Transaction transaction = new Transaction("Alice", "Bøb", 12.5, 1700000000000L);
+        byte[] bytes = TransactionCodec.encode(transaction);
+        assertEquals(TransactionCodec.encodedSize(transaction), bytes.length);
+        assertTrue(bytes.length < transaction.toJson().length());
+
+        Transaction decoded = TransactionCodec.decode(ByteBuffer.wrap(bytes));
+        assertEquals(transaction.toString(), decoded.toString());
+        assertEquals(transaction.transactionHash, decoded.computeHash());
+
+        TransactionView view = new TransactionView().wrap(ByteBuffer.wrap(bytes), 0);
+        assertEquals("Bøb", view.recipient());
+        assertEquals(12.5, view.amount(), 0);
+        assertEquals(1700000000000L, view.timestamp());
+        assertEquals(transaction.transactionHash, view.hashHex());
+    }
+
+    @Test
+    public void blockRoundTrip() throws Exception {
+        Block block = new Block(HashUtil.toHex(HashUtil.sha256(new byte[]{1})));
+        for (int i = 0; i < 5; i++) {
+            block.addTransaction(new Transaction("sender" + i, "recipient" + i, i + 1, i));
+        }
+        block.setNonce(99);
+        byte[] bytes = BlockCodec.encode(block);
+
+        Block decoded = BlockCodec.decode(ByteBuffer.wrap(bytes));
+        assertEquals(block.calculateBlockHash(), decoded.getBlockHash());
+        assertEquals(block.getPreviousBlockHash(), decoded.getPreviousBlockHash());
+        assertEquals(5, decoded.getTransactionList().size());
+
+        BlockView view = new BlockView().wrap(ByteBuffer.wrap(bytes), 0);
+        byte[] hash = new byte[HashUtil.SHA256_LENGTH];
+        view.blockHash(hash, 0);
+        assertEquals(block.calculateBlockHash(), HashUtil.toHex(hash));
+        assertEquals(99, view.nonce());
+        List<String> hashes = new ArrayList<>();
+        assertEquals(bytes.length, view.forEachTransaction(tx -> hashes.add(tx.hashHex())));
+        assertEquals(block.getTransactionList().get(4).transactionHash, hashes.get(4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tamperedBlockIsRejected() throws Exception {
+        Block block = new Block(null);
+        block.addTransaction(new Transaction("Alice", "Bob", 1, 1));
+        byte[] bytes = BlockCodec.encode(block);
+        bytes[bytes.length - 1] ^= 1;  // Corrupt the transaction hash
+        BlockCodec.decode(ByteBuffer.wrap(bytes));
+    }
+
+    @Test
+    public void frameLengthsOutsideTheLimitsAreRejected() {
+        ByteBuffer partial = ByteBuffer.allocate(3);
+        assertEquals(-1, MessageCodec.frameSize(partial));
+        for (int length : new int[]{-1, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE - 2, 1,
+                MessageCodec.HEADER_SIZE - MessageCodec.LENGTH_SIZE + Config.maxPeerMessageSize + 1}) {
+            try {
+                MessageCodec.frameSize(ByteBuffer.allocate(MessageCodec.LENGTH_SIZE).putInt(0, length));
+                fail("Accepted frame length " + length);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        assertEquals(MessageCodec.HEADER_SIZE, MessageCodec.frameSize(ByteBuffer.allocate(MessageCodec.LENGTH_SIZE)
+                .putInt(0, MessageCodec.HEADER_SIZE - MessageCodec.LENGTH_SIZE)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void blockWithTooManyTransactionsIsRejectedBeforeDecoding() throws Exception {
+        int count = 20 * Block.MAX_TRANSACTIONS;  // More than the block's tree can hold
+        byte[] empty = BlockCodec.encode(new Block(null));
+        ByteBuffer bytes = ByteBuffer.allocate(empty.length + count * 256).put(empty);
+        bytes.putInt(1 + BlockHeader.SIZE, count);  // The count follows the version and header
+        for (int i = 0; i < count; i++) {
+            TransactionCodec.encode(new Transaction("alice", "bob", i + 1, 1_000 + i, (long) i), bytes);
+        }
+        BlockCodec.decode(bytes.flip());
+    }
+
+    @Test
+    public void framesBatchesAndCompressesLargePayloads() throws Exception {
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            transactions.add(new Transaction("sender" + i, "recipient", i + 1, 1700000000000L + i));
+        }
+        Message batch = Message.transactions(transactions);
+        byte[] batchFrame = MessageCodec.encode(batch);
+        assertEquals(MessageCodec.FLAG_COMPRESSED, batchFrame[MessageCodec.LENGTH_SIZE + 1]);
+        assertTrue(batchFrame.length < batch.payload.length / 2);
+        byte[] textFrame = MessageCodec.encode(new Message(Message.MessageType.GET_BLOCKS, "tip"));
+        assertEquals(0, textFrame[MessageCodec.LENGTH_SIZE + 1]);
+
+        // Two frames back to back, as they arrive from the network
+        ByteBuffer buffer = ByteBuffer.allocate(batchFrame.length + textFrame.length + 3).put(batchFrame).put(textFrame).flip();
+        assertEquals(batchFrame.length, MessageCodec.frameSize(buffer));
+        List<Transaction> decoded = MessageCodec.decode(buffer).getTransactions();
+        assertEquals(transactions.size(), decoded.size());
+        for (int i = 0; i < transactions.size(); i++) {
+            assertEquals(transactions.get(i).transactionHash, decoded.get(i).transactionHash);
+        }
+        Message text = MessageCodec.decode(buffer);
+        assertEquals(Message.MessageType.GET_BLOCKS, text.type);
+        assertEquals("tip", text.getText());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void compactBlockCarriesShortIdsAndRebuildsFromAPool() throws Exception {
+        Block block = new Block(HashUtil.toHex(HashUtil.sha256(new byte[]{2})));
+        List<Transaction> pool = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Transaction transaction = new Transaction("sender" + i, "recipient" + i, i + 1, 1_000 + i, (long) i);
+            block.addTransaction(transaction);
+            pool.add(new Transaction("other" + i, "recipient" + i, i + 1, 1_000 + i, (long) i));  // Unrelated pool traffic
+            if (i != 500) {
+                pool.add(transaction);
+            }
+        }
+        Message message = CompactBlock.of(block, 42).toMessage();
+        assertTrue(message.payload.length * 10 < BlockCodec.encode(block).length);
+
+        CompactBlock decoded = CompactBlock.from(message);
+        assertEquals(block.calculateBlockHash(), decoded.getBlockHash());
+        Transaction[] rebuilt = decoded.reconstruct(pool::forEach);
+        for (int i = 0; i < rebuilt.length; i++) {
+            assertEquals(i == 500 ? null : block.getTransactionList().get(i), rebuilt[i]);
+        }
+    }
+}
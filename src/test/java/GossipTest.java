@@ -0,0 +1,225 @@
+import org.example.BlockChain.Block;
+import org.example.Miner;
+import org.example.P2P.Gossip;
+import org.example.P2P.P2PNode;
+import org.example.Transaction.Transaction;
+import org.example.Util.Ed25519;
+import org.example.Util.HashUtil;
+import org.example.Util.RotatingBloomFilter;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class GossipTest {
+    // Keeps transactions and blocks in maps and counts how often a transaction arrives in full
+    private static class MapInventory implements Gossip.Inventory {
+        final Map<String, Transaction> transactions = new ConcurrentHashMap<>();
+        final Map<String, Block> blocks = new ConcurrentHashMap<>();
+        final AtomicInteger added = new AtomicInteger();
+
+        @Override
+        public boolean addTransaction(Transaction transaction) {
+            added.incrementAndGet();
+            return transactions.putIfAbsent(transaction.transactionHash, transaction) == null;
+        }
+
+        @Override
+        public Transaction getTransaction(String hash) {
+            return transactions.get(hash);
+        }
+
+        @Override
+        public boolean addBlock(Block block) {
+            return blocks.putIfAbsent(block.calculateBlockHash(), block) == null;
+        }
+
+        @Override
+        public Block getBlock(String hash) {
+            return blocks.get(hash);
+        }
+
+        @Override
+        public void forEachTransaction(Consumer<Transaction> action) {
+            transactions.values().forEach(action);
+        }
+    }
+
+    @Test
+    public void fullMeshFetchesEachTransactionOncePerNode() throws Exception {
+        int nodeCount = 4;
+        int transactionCount = 50;
+        List<MapInventory> inventories = new ArrayList<>();
+        List<Gossip> gossips = new ArrayList<>();
+        List<P2PNode> nodes = new ArrayList<>();
+        try {
+            for (int i = 0; i < nodeCount; i++) {
+                MapInventory inventory = new MapInventory();
+                Gossip gossip = new Gossip(inventory, 10_000, 5, 10_000);
+                inventories.add(inventory);
+                gossips.add(gossip);
+                nodes.add(new P2PNode(0, 1, gossip));
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                for (int j = i + 1; j < nodeCount; j++) {
+                    nodes.get(i).connect(new InetSocketAddress("localhost", nodes.get(j).getPort()));
+                }
+            }
+            Thread.sleep(200);  // Let every connection be established before announcing
+
+            KeyPair alice = Ed25519.generateKeyPair();
+            for (int n = 0; n < transactionCount; n++) {
+                Transaction transaction = new Transaction(Transaction.addressOf(alice.getPublic()), "bob", 1, 0, 1, n);
+                transaction.sign(alice);
+                inventories.get(0).addTransaction(transaction);
+                gossips.get(0).announceTransaction(transaction);
+            }
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (inventories.stream().anyMatch(inventory -> inventory.transactions.size() < transactionCount)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            for (int i = 1; i < nodeCount; i++) {
+                assertEquals(transactionCount, inventories.get(i).transactions.size());
+                assertEquals(transactionCount, inventories.get(i).added.get());  // Never delivered twice
+                assertEquals(transactionCount, gossips.get(i).getRequests());
+            }
+            long duplicates = gossips.stream().mapToLong(Gossip::getDuplicates).sum();
+            assertTrue(duplicates > 0);  // Relays back towards the origin were suppressed
+        } finally {
+            for (Gossip gossip : gossips) {
+                gossip.close();
+            }
+            for (P2PNode node : nodes) {
+                node.close();
+            }
+        }
+    }
+
+    private static void mine(Block block) throws InterruptedException {
+        Miner miner = new Miner(1, 4);
+        try {
+            miner.mine(block);
+        } finally {
+            miner.shutdown();
+        }
+    }
+
+    @Test
+    public void compactBlockOnlyFetchesTransactionsMissingFromThePool() throws Exception {
+        MapInventory sender = new MapInventory();
+        MapInventory receiver = new MapInventory();
+        KeyPair alice = Ed25519.generateKeyPair();
+        Block block = new Block("0".repeat(64));
+        for (int i = 0; i < 100; i++) {
+            Transaction transaction = new Transaction(Transaction.addressOf(alice.getPublic()), "bob", i + 1, 0, 1_000 + i, i);
+            transaction.sign(alice);
+            block.addTransaction(transaction);
+            sender.transactions.put(transaction.transactionHash, transaction);
+            if (i % 20 != 0) {
+                receiver.transactions.put(transaction.transactionHash, transaction);
+            }
+        }
+        mine(block);
+        sender.addBlock(block);
+        try (Gossip sending = new Gossip(sender, 1_000, 5, 10_000, 4);
+             Gossip receiving = new Gossip(receiver, 1_000, 5, 10_000, 4);
+             P2PNode from = new P2PNode(0, 1, sending);
+             P2PNode to = new P2PNode(0, 1, receiving)) {
+            from.connect(new InetSocketAddress("localhost", to.getPort()));
+            Thread.sleep(200);
+            sending.announceBlock(block);
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (receiver.blocks.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertNotNull(receiver.getBlock(block.calculateBlockHash()));
+            assertEquals(1, receiving.getCompactBlocks());
+            assertEquals(5, receiving.getMissingTransactions());
+            assertEquals(0, receiving.getReconstructed());
+        }
+    }
+
+    @Test
+    public void blockWithAForgedTransactionIsNotAccepted() throws Exception {
+        MapInventory sender = new MapInventory();
+        MapInventory receiver = new MapInventory();
+        KeyPair alice = Ed25519.generateKeyPair();
+        Transaction transaction = new Transaction(Transaction.addressOf(alice.getPublic()), "bob", 1, 0, 1_000, 0);
+        transaction.sign(alice);
+        transaction.amount = 1_000_000;  // No longer matches its hash and signature
+        Block block = new Block("0".repeat(64));
+        block.addTransaction(transaction);
+        mine(block);
+        sender.addBlock(block);
+        try (Gossip sending = new Gossip(sender, 1_000, 5, 10_000, 4);
+             Gossip receiving = new Gossip(receiver, 1_000, 5, 10_000, 4);
+             P2PNode from = new P2PNode(0, 1, sending);
+             P2PNode to = new P2PNode(0, 1, receiving)) {
+            from.connect(new InetSocketAddress("localhost", to.getPort()));
+            Thread.sleep(200);
+            sending.announceBlock(block);
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (receiving.getInvalidBlocks() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, receiving.getInvalidBlocks());
+            assertTrue(receiver.blocks.isEmpty());
+        }
+    }
+
+    @Test
+    public void compactBlockWithoutProofOfWorkIsDroppedBeforeItIsRebuilt() throws Exception {
+        MapInventory sender = new MapInventory();
+        MapInventory receiver = new MapInventory();
+        KeyPair alice = Ed25519.generateKeyPair();
+        Transaction transaction = new Transaction(Transaction.addressOf(alice.getPublic()), "bob", 1, 0, 1_000, 0);
+        transaction.sign(alice);
+        Block block = new Block("0".repeat(64));  // Never mined
+        block.addTransaction(transaction);
+        sender.addBlock(block);
+        try (Gossip sending = new Gossip(sender, 1_000, 5, 10_000, 4);
+             Gossip receiving = new Gossip(receiver, 1_000, 5, 10_000, 4);
+             P2PNode from = new P2PNode(0, 1, sending);
+             P2PNode to = new P2PNode(0, 1, receiving)) {
+            from.connect(new InetSocketAddress("localhost", to.getPort()));
+            Thread.sleep(200);
+            sending.announceBlock(block);
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (receiving.getInvalidBlocks() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, receiving.getInvalidBlocks());
+            assertEquals(0, receiving.getMissingTransactions());  // No transactions were asked for
+            assertTrue(receiver.blocks.isEmpty());
+        }
+    }
+
+    @Test
+    public void bloomFilterRemembersRecentGenerationsOnly() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(100, 0.001, 2);
+        byte[] first = HashUtil.sha256(new byte[]{0});
+        assertTrue(filter.add(first));
+        assertFalse(filter.add(first));
+        for (int i = 1; i <= 150; i++) {
+            filter.add(HashUtil.sha256(new byte[]{(byte) i, 1}));
+        }
+        assertTrue(filter.mightContain(first));  // One generation back
+        for (int i = 1; i <= 200; i++) {
+            filter.add(HashUtil.sha256(new byte[]{(byte) i, 2}));
+        }
+        assertFalse(filter.mightContain(first));
+    }
+}
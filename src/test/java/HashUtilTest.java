@@ -0,0 +1,65 @@
+import org.example.Util.HashUtil;
+import org.example.Util.SipHash;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class HashUtilTest {
+    private static final String ABC_SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    @Test
+    public void computeSha256MatchesKnownVector() throws NoSuchAlgorithmException {
+        assertEquals(ABC_SHA256, HashUtil.computeSha256("abc"));
+    }
+
+    @Test
+    public void byteAndBufferInputsAgree() {
+        byte[] abc = "abc".getBytes(StandardCharsets.UTF_8);
+        byte[] expected = HashUtil.fromHex(ABC_SHA256);
+        assertArrayEquals(expected, HashUtil.sha256(abc));
+        assertArrayEquals(expected, HashUtil.sha256(ByteBuffer.wrap(abc)));
+        assertArrayEquals(expected, HashUtil.sha256(ByteBuffer.allocateDirect(3).put(abc).flip()));
+
+        byte[] out = new byte[40];
+        HashUtil.sha256(abc, 0, abc.length, out, 8);
+        assertEquals(ABC_SHA256, HashUtil.toHex(out, 8, HashUtil.SHA256_LENGTH));
+
+        MessageDigest digest = HashUtil.sha256();
+        digest.update(abc, 0, 1);
+        digest.update(abc, 1, 2);
+        assertArrayEquals(expected, digest.digest());
+    }
+
+    @Test
+    public void batchMatchesSingleHashes() {
+        byte[][] inputs = new byte[3000][];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = ("input" + i).getBytes(StandardCharsets.UTF_8);
+        }
+        byte[] digests = HashUtil.sha256Batch(inputs);
+        for (int i = 0; i < inputs.length; i++) {
+            assertEquals(HashUtil.toHex(HashUtil.sha256(inputs[i])), HashUtil.toHex(digests, i * HashUtil.SHA256_LENGTH, HashUtil.SHA256_LENGTH));
+        }
+    }
+
+    @Test
+    public void sipHashMatchesReferenceVectors() {
+        // From the SipHash paper's test vectors: key 00..0f, inputs 00, 00 01, ... of each length
+        long k0 = 0x0706050403020100L;
+        long k1 = 0x0f0e0d0c0b0a0908L;
+        byte[] input = new byte[15];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (byte) i;
+        }
+        assertEquals(0x726fdb47dd0e0e31L, SipHash.hash(k0, k1, input, 0, 0));
+        assertEquals(0x74f839c593dc67fdL, SipHash.hash(k0, k1, input, 0, 1));
+        assertEquals(0x93f5f5799a932462L, SipHash.hash(k0, k1, input, 0, 8));
+        assertEquals(0xa129ca6149be45e5L, SipHash.hash(k0, k1, input, 0, 15));
+    }
+}
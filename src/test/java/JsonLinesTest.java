@@ -0,0 +1,135 @@
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockChain;
+import org.example.JsonLines.JsonLinesReader;
+import org.example.JsonLines.JsonLinesWriter;
+import org.example.JsonLines.TransactionImporter;
+import org.example.Mempool.Mempool;
+import org.example.Miner;
+import org.example.Transaction.Transaction;
+import org.example.Util.Ed25519;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JsonLinesTest {
+    // A mined chain whose blocks each hold up to perBlock of the transactions
+    private static BlockChain mineChain(Miner miner, List<Transaction> transactions, int perBlock) throws Exception {
+        BlockChain chain = new BlockChain(miner.getDifficultyBits());
+        for (int i = 0; i < transactions.size(); i += perBlock) {
+            Block block = chain.createBlock();
+            for (Transaction transaction : transactions.subList(i, Math.min(i + perBlock, transactions.size()))) {
+                block.addTransaction(transaction);
+            }
+            miner.mine(block);
+            chain.addBlock(block);
+        }
+        return chain;
+    }
+
+    @Test
+    public void exportAndImportTransactions() throws Exception {
+        KeyPair keys = Ed25519.generateKeyPair();
+        String sender = Transaction.addressOf(keys.getPublic());
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Transaction transaction = new Transaction(sender, "recipient" + i % 11, i + 1, 1, i, i);
+            transaction.sign(keys);
+            transactions.add(transaction);
+        }
+        Miner miner = new Miner(1, 4);
+        BlockChain source = mineChain(miner, transactions, 200);
+        miner.shutdown();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonLinesWriter writer = new JsonLinesWriter(out)) {
+            assertEquals(500, writer.writeTransactions(source));
+        }
+        String lines = out.toString(StandardCharsets.UTF_8)
+                + "not json\n"
+                + "{\"sender\":\"a\",\"recipient\":\"b\",\"amount\":1,\"timestamp\":1,\"transactionHash\":\"" + "0".repeat(64) + "\"}\n"
+                + "{\"sender\":\"a\",\"recipient\":\"b\",\"amount\":-1,\"timestamp\":1}\n";
+
+        Mempool target = new Mempool();
+        TransactionImporter.Result result = new TransactionImporter(target, 3, 128)
+                .importFrom(new ByteArrayInputStream(lines.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(500, result.imported());
+        assertEquals(3, result.rejected());
+        assertEquals(500, target.size());
+
+        // The sender's transactions come out in nonce order, which is the input order
+        List<Transaction> selected = target.select(500);
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i + 1, selected.get(i).amount, 0);
+        }
+
+        // A second import of the same lines adds nothing
+        result = new TransactionImporter(target, 3, 128)
+                .importFrom(new ByteArrayInputStream(lines.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(0, result.imported());
+        assertEquals(503, result.rejected());
+    }
+
+    @Test
+    public void exportedBlocksAreAppendedToAChainWithTheSameGenesis() throws Exception {
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            transactions.add(new Transaction("Alice", "Bob", i + 1, i));
+        }
+        Miner miner = new Miner(1, 4);
+        BlockChain source = mineChain(miner, transactions, 10);
+        miner.shutdown();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonLinesWriter writer = new JsonLinesWriter(out)) {
+            assertEquals(4, writer.writeBlocks(source));
+        }
+        BlockChain target = new BlockChain(source.getBlocks().get(0), 4);
+        try (JsonLinesReader reader = new JsonLinesReader(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(3, reader.appendBlocks(target));
+        }
+        assertEquals(source.getTip().calculateBlockHash(), target.getTip().calculateBlockHash());
+
+        // Appending again skips every block, while a chain on another branch refuses them
+        try (JsonLinesReader reader = new JsonLinesReader(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(0, reader.appendBlocks(target));
+        }
+        BlockChain other = new BlockChain(source.getBlocks().get(0), 4);
+        Block fork = other.createBlock();
+        fork.addTransaction(new Transaction("Carol", "Dave", 1, 1));
+        miner = new Miner(1, 4);
+        miner.mine(fork);
+        miner.shutdown();
+        other.addBlock(fork);
+        try (JsonLinesReader reader = new JsonLinesReader(new ByteArrayInputStream(out.toByteArray()))) {
+            assertThrows(IllegalArgumentException.class, () -> reader.appendBlocks(other));
+        }
+    }
+
+    @Test
+    public void blocksRoundTrip() throws Exception {
+        Block block = new Block(null);
+        block.addTransaction(new Transaction("Alice", "Bob", 3, 1));
+        block.addTransaction(new Transaction("Bob", "Carol", 2, 2));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonLinesWriter writer = new JsonLinesWriter(out)) {
+            writer.write(block);
+            writer.write(block);
+        }
+        try (JsonLinesReader reader = new JsonLinesReader(new ByteArrayInputStream(out.toByteArray()))) {
+            for (int i = 0; i < 2; i++) {
+                Block read = reader.nextBlock();
+                assertEquals(block.calculateBlockHash(), read.getBlockHash());
+                assertEquals(2, read.getTransactionList().size());
+            }
+            assertNull(reader.nextBlock());
+        }
+    }
+}
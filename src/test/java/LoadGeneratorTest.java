@@ -0,0 +1,42 @@
+import org.example.BlockChain.Block;
+import org.example.BlockChain.BlockChain;
+import org.example.BlockChain.BlockChainNode;
+import org.example.BlockChain.SealingPolicy;
+import org.example.Miner;
+import org.example.Simulation.LoadGenerator;
+import org.example.Simulation.LoadProfile;
+import org.example.State.WorldState;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class LoadGeneratorTest {
+    @Test
+    public void burstsMultiplyTheRateForTheirLength() {
+        LoadProfile profile = new LoadProfile(10, 0, 100, Duration.ofSeconds(10), Duration.ofSeconds(2), 5);
+        assertEquals(500, profile.rateAt(Duration.ofSeconds(1).toNanos()), 0);
+        assertEquals(100, profile.rateAt(Duration.ofSeconds(5).toNanos()), 0);
+        assertEquals(500, profile.rateAt(Duration.ofSeconds(11).toNanos()), 0);
+        assertEquals(100, LoadProfile.steady(10, 1, 100).rateAt(0), 0);
+    }
+
+    @Test
+    public void everyAcceptedTransactionIsIncludedAndTimed() throws Exception {
+        SealingPolicy policy = new SealingPolicy(Block.MAX_TRANSACTIONS, 1024 * 1024, Duration.ofMillis(100));
+        try (BlockChainNode node = new BlockChainNode(new BlockChain(4), new WorldState(16), new Miner(1, 4), 0)) {
+            LoadGenerator generator = new LoadGenerator(node, LoadProfile.steady(20, 1.2, 100));
+            node.startProducing(policy);
+            LoadGenerator.Report report = generator.run(Duration.ofSeconds(1), Duration.ofSeconds(20));
+
+            assertTrue(report.submitted() > 0);
+            assertEquals(report.submitted() - report.rejected(), report.included());
+            assertTrue(report.latencyP50Millis() > 0);
+            assertTrue(report.latencyMaxMillis() >= report.latencyP99Millis());
+            assertTrue(report.peakHeapBytes() > 0);
+            assertEquals(report.included(), node.getBlockchain().getBlocks().stream()
+                    .mapToLong(block -> block.getTransactionList().size()).sum());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import org.example.Mempool.Mempool;
+import org.example.Transaction.Transaction;
+import org.example.Transaction.TransactionCodec;
+import org.example.Util.Ed25519;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MempoolTest {
+    private static Transaction signed(KeyPair keys, double fee, long nonce) {
+        Transaction transaction = new Transaction(Transaction.addressOf(keys.getPublic()), "bob", 1, fee, 1, nonce);
+        transaction.sign(keys);
+        return transaction;
+    }
+
+    @Test
+    public void selectsByFeeInNonceOrder() {
+        KeyPair alice = Ed25519.generateKeyPair();
+        KeyPair carol = Ed25519.generateKeyPair();
+        Mempool mempool = new Mempool();
+        Transaction alice0 = signed(alice, 1, 0);
+        Transaction alice1 = signed(alice, 9, 1);  // High fee, but waits for alice0
+        Transaction carol0 = signed(carol, 5, 0);
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(alice1));
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(alice0));
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(carol0));
+        assertEquals(Mempool.AddResult.DUPLICATE, mempool.add(carol0));
+
+        assertEquals(List.of(carol0, alice0, alice1), mempool.select(10));
+        assertEquals(List.of(carol0, alice0), mempool.select(2));
+
+        mempool.removeAll(List.of(carol0, alice0));
+        assertEquals(List.of(alice1), mempool.select(10));
+    }
+
+    @Test
+    public void replacesByFeeAndRejectsInvalid() {
+        KeyPair alice = Ed25519.generateKeyPair();
+        Mempool mempool = new Mempool();
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(signed(alice, 2, 0)));
+        assertEquals(Mempool.AddResult.UNDERPRICED, mempool.add(signed(alice, 1, 0)));
+        Transaction better = signed(alice, 3, 0);
+        assertEquals(Mempool.AddResult.REPLACED, mempool.add(better));
+        assertEquals(List.of(better), mempool.select(10));
+
+        Transaction forged = signed(alice, 4, 1);
+        forged.amount = 1000;
+        assertEquals(Mempool.AddResult.INVALID, mempool.add(forged));
+        assertEquals(1, mempool.size());
+    }
+
+    @Test
+    public void evictsLowestFeeWhenFull() {
+        KeyPair[] senders = new KeyPair[4];
+        Transaction[] transactions = new Transaction[senders.length];
+        for (int i = 0; i < senders.length; i++) {
+            senders[i] = Ed25519.generateKeyPair();
+            transactions[i] = signed(senders[i], i + 1, 0);
+        }
+        int size = TransactionCodec.encodedSize(transactions[0]);
+        Mempool mempool = new Mempool(3L * size);
+        for (int i = 1; i < 4; i++) {
+            assertEquals(Mempool.AddResult.ADDED, mempool.add(transactions[i]));
+        }
+        assertEquals(Mempool.AddResult.UNDERPRICED, mempool.add(transactions[0]));
+        assertEquals(3, mempool.size());
+
+        Transaction rich = signed(Ed25519.generateKeyPair(), 10, 0);
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(rich));
+        assertFalse(mempool.contains(transactions[1].transactionHash));
+        assertEquals(List.of(rich, transactions[3], transactions[2]), mempool.select(10));
+        assertEquals(3L * size, mempool.getBytes());
+    }
+
+    @Test
+    public void doesNotEvictABetterPayingLaterNonce() {
+        KeyPair alice = Ed25519.generateKeyPair();
+        Transaction alice0 = signed(alice, 1, 0);
+        Transaction alice1 = signed(alice, 9, 1);  // Would go with alice0
+        Transaction carol0 = signed(Ed25519.generateKeyPair(), 2, 0);
+        Mempool mempool = new Mempool(3L * TransactionCodec.encodedSize(alice0));
+        mempool.add(alice0);
+        mempool.add(alice1);
+        mempool.add(carol0);
+
+        Transaction dave0 = signed(Ed25519.generateKeyPair(), 5, 0);
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(dave0));
+        assertFalse(mempool.contains(carol0.transactionHash));
+        assertEquals(List.of(dave0, alice0, alice1), mempool.select(10));
+
+        // Nothing left to evict but alice0, whose cascade pays more than the newcomer
+        assertEquals(Mempool.AddResult.UNDERPRICED, mempool.add(signed(Ed25519.generateKeyPair(), 4, 0)));
+        assertEquals(3, mempool.size());
+    }
+}
@@ -0,0 +1,73 @@
+import org.example.Mempool.Mempool;
+import org.example.Metrics.Counter;
+import org.example.Metrics.Histogram;
+import org.example.Metrics.Metrics;
+import org.example.Transaction.Transaction;
+import org.example.Util.Ed25519;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+    @Test
+    public void histogramPercentilesAreWithinABucket() {
+        Histogram histogram = new Histogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000, histogram.getMax());
+        assertEquals(50_000.5, histogram.getMean(), 0.001);
+        long median = histogram.getPercentile(0.5);
+        assertTrue(median >= 50_000 && median <= 50_000 * 1.125);
+        long p99 = histogram.getPercentile(0.99);
+        assertTrue(p99 >= 99_000 && p99 <= 100_000);
+        assertEquals(100_000, histogram.getPercentile(1.0));
+        assertEquals(0, new Histogram().getPercentile(0.5));
+    }
+
+    @Test
+    public void countersAddUpAcrossThreads() throws Exception {
+        Counter counter = new Counter();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    counter.increment();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400_000, counter.get());
+    }
+
+    @Test
+    public void pipelineMetricsAreReadableOverJmx() throws Exception {
+        long added = Metrics.counter("mempool.added").get();
+        long validations = Metrics.histogram("transaction.validationNanos").getCount();
+        KeyPair alice = Ed25519.generateKeyPair();
+        Transaction transaction = new Transaction(Transaction.addressOf(alice.getPublic()), "bob", 1, 1, 1, 0);
+        transaction.sign(alice);
+        new Mempool().add(transaction);
+        assertEquals(added + 1, Metrics.counter("mempool.added").get());
+        assertEquals(validations + 1, Metrics.histogram("transaction.validationNanos").getCount());
+
+        Metrics.gauge("test.answer", () -> 42);
+        Metrics.registerMBean();
+        Metrics.registerMBean();  // Registering again is harmless
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        assertEquals(42.0, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "test.answer"));
+        assertEquals(added + 1, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "mempool.added"));
+        assertTrue(Metrics.format().contains("transaction.validationNanos.p99"));
+    }
+}
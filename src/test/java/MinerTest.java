@@ -0,0 +1,56 @@
+import com.sun.jdi.InvalidTypeException;
+import org.example.BlockChain.Block;
+import org.example.Miner;
+import org.example.Transaction.Transaction;
+import org.example.Util.HashUtil;
+import org.junit.Test;
+
+import java.security.NoSuchAlgorithmException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MinerTest {
+    @Test
+    public void mineFindsValidNonce() throws InvalidTypeException, NoSuchAlgorithmException, InterruptedException {
+        Block block = new Block(null);
+        block.addTransaction(new Transaction("aylon", "daniel", 1, System.currentTimeMillis()));
+        Miner miner = new Miner(2, 12);
+        try {
+            String hash = miner.mine(block);
+            assertEquals(hash, block.calculateBlockHash());
+            assertTrue(Miner.meetsDifficulty(HashUtil.fromHex(hash), 12));
+            assertTrue(miner.getTotalHashes() > 0);
+        } finally {
+            miner.shutdown();
+        }
+    }
+
+    @Test
+    public void cancelStopsMining() throws Exception {
+        Block block = new Block(null);
+        Miner miner = new Miner(2, 256); // Practically impossible
+        try {
+            new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignored) {
+                }
+                miner.cancel();
+            }).start();
+            assertNull(miner.mine(block));
+        } finally {
+            miner.shutdown();
+        }
+    }
+
+    @Test
+    public void meetsDifficultyCountsBits() {
+        byte[] hash = new byte[32];
+        hash[1] = 0x10; // 11 leading zero bits
+        assertTrue(Miner.meetsDifficulty(hash, 11));
+        assertFalse(Miner.meetsDifficulty(hash, 12));
+    }
+}
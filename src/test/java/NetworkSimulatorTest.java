@@ -0,0 +1,35 @@
+import org.example.BlockChain.Block;
+import org.example.BlockChain.SealingPolicy;
+import org.example.Simulation.LinkProfile;
+import org.example.Simulation.NetworkSimulator;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class NetworkSimulatorTest {
+    @Test
+    public void blocksReachEveryNodeNoSoonerThanTheLinkLatency() throws Exception {
+        LinkProfile link = new LinkProfile(Duration.ofMillis(20), 10 * 1024 * 1024, 0);
+        SealingPolicy policy = new SealingPolicy(Block.MAX_TRANSACTIONS, 1024 * 1024, Duration.ofMillis(200));
+        try (NetworkSimulator simulator = new NetworkSimulator(4, 2, link, 20, 4, policy)) {
+            Thread.sleep(500);
+            NetworkSimulator.Report report = simulator.run(Duration.ofSeconds(1), 50, Duration.ofSeconds(20));
+
+            assertEquals(50, report.submitted());
+            assertEquals(50, report.confirmed());
+            assertTrue(report.blocks() > 0);
+            // Gossiped to node 0 and announced back, so at least one hop of latency each way
+            assertTrue(report.propagationP50Millis() >= 20);
+            assertTrue(report.bytesReceivedPerNode() > 0);
+            for (int i = 1; i < 4; i++) {
+                assertEquals(simulator.getNodes().get(0).getBlockchain().getHeight(),
+                        simulator.getNodes().get(i).getBlockchain().getHeight());
+                // Followers execute the blocks they receive, so they reach the producer's state
+                assertEquals(simulator.getNodes().get(0).getWorldState().getAccount("sink"),
+                        simulator.getNodes().get(i).getWorldState().getAccount("sink"));
+            }
+        }
+    }
+}
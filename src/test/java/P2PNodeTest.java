@@ -0,0 +1,161 @@
+import org.example.MessageProtocol.Message;
+import org.example.P2P.Connection;
+import org.example.P2P.ConnectionListener;
+import org.example.P2P.P2PNode;
+import org.example.P2P.PeerConnections;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class P2PNodeTest {
+    private static Message text(String text) {
+        return new Message(Message.MessageType.GET_BLOCKS, text);
+    }
+
+    @Test
+    public void deliversMessagesInOrderAcrossReadsAndReplies() throws Exception {
+        int count = 2_000;
+        byte[] large = new byte[200_000]; // Incompressible and larger than a pooled buffer, so it spans many reads
+        new Random(1).nextBytes(large);
+        List<Message> received = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        CountDownLatch replied = new CountDownLatch(1);
+        try (P2PNode server = new P2PNode(0, 2, (connection, message) -> {
+                 received.add(message);
+                 if (message.getText().equals("last")) {
+                     connection.send(text("bye"));
+                     done.countDown();
+                 }
+             });
+             P2PNode client = new P2PNode(0, 1, (connection, message) -> {
+                 if (message.getText().equals("bye")) {
+                     replied.countDown();
+                 }
+             })) {
+            Connection connection = client.connect(new InetSocketAddress("localhost", server.getPort()));
+            for (int i = 0; i < count; i++) {
+                assertTrue(connection.send(i == count / 2 ? new Message(Message.MessageType.GET_BLOCKS, large) : text("message " + i)));
+            }
+            connection.send(text("last"));
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertTrue(replied.await(10, TimeUnit.SECONDS));
+        }
+        assertEquals(count + 1, received.size());
+        assertEquals("message 0", received.get(0).getText());
+        assertArrayEquals(large, received.get(count / 2).payload);
+        assertEquals("message " + (count - 1), received.get(count - 1).getText());
+    }
+
+    @Test
+    public void servesManyConnectionsWithFewThreads() throws Exception {
+        int peers = 200;
+        CountDownLatch connected = new CountDownLatch(peers);
+        CountDownLatch disconnected = new CountDownLatch(peers);
+        ConnectionListener counting = new ConnectionListener() {
+            @Override
+            public void onConnected(Connection connection) {
+                connected.countDown();
+            }
+
+            @Override
+            public void onMessage(Connection connection, Message message) {
+            }
+
+            @Override
+            public void onDisconnected(Connection connection) {
+                disconnected.countDown();
+            }
+        };
+        int threadsBefore = Thread.activeCount();
+        try (P2PNode server = new P2PNode(0, 2, counting);
+             P2PNode client = new P2PNode(0, 2, (connection, message) -> { })) {
+            List<Connection> connections = new CopyOnWriteArrayList<>();
+            for (int i = 0; i < peers; i++) {
+                connections.add(client.connect(new InetSocketAddress("localhost", server.getPort())));
+            }
+            assertTrue(connected.await(10, TimeUnit.SECONDS));
+            assertTrue(Thread.activeCount() - threadsBefore <= 4);
+            connections.forEach(Connection::close);
+            assertTrue(disconnected.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void coalescesQueuedMessagesIntoFewWrites() throws Exception {
+        int count = 10_000;
+        CountDownLatch received = new CountDownLatch(count);
+        try (P2PNode server = new P2PNode(0, 1, (connection, message) -> received.countDown());
+             P2PNode client = new P2PNode(0, 1, (connection, message) -> { })) {
+            Connection connection = client.connect(new InetSocketAddress("localhost", server.getPort()));
+            for (int i = 0; i < count; i++) {
+                assertTrue(connection.send(text("transaction " + i)));
+            }
+            assertTrue(received.await(10, TimeUnit.SECONDS));
+            assertEquals(count, connection.getMessagesSent());
+            assertTrue(connection.getWrites() < count / 2);
+        }
+    }
+
+    @Test
+    public void closesAConnectionAnnouncingAnImpossibleFrameLength() throws Exception {
+        for (int length : new int[]{-1, Integer.MAX_VALUE}) {
+            CountDownLatch disconnected = new CountDownLatch(1);
+            try (P2PNode node = new P2PNode(0, 1, new ConnectionListener() {
+                @Override
+                public void onMessage(Connection connection, Message message) {
+                }
+
+                @Override
+                public void onDisconnected(Connection connection) {
+                    disconnected.countDown();
+                }
+            }); Socket socket = new Socket("localhost", node.getPort())) {
+                new DataOutputStream(socket.getOutputStream()).writeInt(length);
+                assertTrue(disconnected.await(5, TimeUnit.SECONDS));
+                assertEquals(-1, socket.getInputStream().read());
+            }
+        }
+    }
+
+    @Test
+    public void reconnectsToAPeerThatComesBack() throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        String peer = "localhost:" + port;
+        CountDownLatch received = new CountDownLatch(1);
+        try (P2PNode client = new P2PNode(0, 1, (connection, message) -> { });
+             PeerConnections peers = new PeerConnections(client, 1 << 20, 10, 50)) {
+            peers.send(peer, text("too early"));
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (peers.getReconnectAttempts() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertTrue(peers.getReconnectAttempts() > 0);
+            try (P2PNode server = new P2PNode(port, 1, (connection, message) -> {
+                if (message.getText().equals("hello")) {
+                    received.countDown();
+                }
+            })) {
+                assertEquals(port, server.getPort());
+                while (received.getCount() > 0 && System.currentTimeMillis() < deadline) {
+                    peers.send(peer, text("hello"));
+                    Thread.sleep(20);
+                }
+                assertTrue(received.await(1, TimeUnit.SECONDS));
+                assertTrue(peers.getConnection(peer).isOpen());
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+import org.example.Config.Config;
+import org.example.MessageProtocol.Message;
+import org.example.P2P.Connection;
+import org.example.P2P.ConnectionListener;
+import org.example.P2P.P2PNode;
+import org.example.P2P.PeerConnections;
+import org.example.P2P.PeerManager;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PeerManagerTest {
+    // Does nothing with the messages it is sent
+    private static final ConnectionListener IGNORE = new ConnectionListener() {
+        @Override
+        public void onConnected(Connection connection) {
+        }
+
+        @Override
+        public void onMessage(Connection connection, Message message) {
+        }
+
+        @Override
+        public void onDisconnected(Connection connection) {
+        }
+    };
+
+    @Test
+    public void learnsPeersFromItsBootstrapPeerAndMeasuresThem() throws Exception {
+        List<PeerManager> managers = new ArrayList<>();
+        List<P2PNode> nodes = new ArrayList<>();
+        List<PeerConnections> dialers = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                PeerManager manager = new PeerManager(4, 50);
+                P2PNode node = new P2PNode(0, 1, manager);
+                managers.add(manager);
+                nodes.add(node);
+                dialers.add(new PeerConnections(node));
+            }
+            String b = "localhost:" + nodes.get(1).getPort();
+            String c = "localhost:" + nodes.get(2).getPort();
+            managers.get(0).addPeer(b);  // A only knows B
+            managers.get(1).addPeer(c);  // B knows C
+            for (int i = 0; i < 3; i++) {
+                managers.get(i).start(nodes.get(i), dialers.get(i));
+            }
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            PeerManager a = managers.get(0);
+            while ((a.getPeer(c) == null || !a.getPeer(c).isConnected() || a.getPeer(c).getRttMillis() < 0)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(a.getPeer(b).isConnected());
+            assertTrue(a.getPeer(c).isConnected());
+            assertTrue(a.getPeer(c).getRttMillis() >= 0);
+            assertFalse(a.getBestPeers(2).isEmpty());
+            // A never keeps its own address, even when a peer passes it on
+            assertFalse(a.getPeers().contains("localhost:" + nodes.get(0).getPort()));
+        } finally {
+            for (PeerManager manager : managers) {
+                manager.close();
+            }
+            for (PeerConnections dialer : dialers) {
+                dialer.close();
+            }
+            for (P2PNode node : nodes) {
+                node.close();
+            }
+        }
+    }
+
+    @Test
+    public void bansPeerThatSendsMalformedMessages() throws Exception {
+        try (PeerManager manager = new PeerManager(0, 1_000);
+             P2PNode node = new P2PNode(0, 1, manager);
+             P2PNode attacker = new P2PNode(0, 1, IGNORE)) {
+            manager.start(node, new PeerConnections(node));
+            Connection connection = attacker.connect(new InetSocketAddress("localhost", node.getPort()));
+            connection.send(Message.hello(attacker.getPort(), 1));
+            connection.send(new Message(Message.MessageType.PONG, new byte[3]));  // Too short for a nonce
+
+            String address = "127.0.0.1:" + attacker.getPort();
+            long deadline = System.currentTimeMillis() + 10_000;
+            while ((manager.getPeer(address) == null || !manager.getPeer(address).isBanned())
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(manager.getPeer(address).isBanned());
+
+            // Reconnecting is refused
+            Connection again = attacker.connect(new InetSocketAddress("localhost", node.getPort()));
+            again.send(Message.hello(attacker.getPort(), 1));
+            deadline = System.currentTimeMillis() + 10_000;
+            while (again.isOpen() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertFalse(again.isOpen());
+        }
+    }
+
+    @Test
+    public void banCoversTheWholeHostEvenWithoutAHello() throws Exception {
+        try (PeerManager manager = new PeerManager(0, 1_000);
+             P2PNode node = new P2PNode(0, 1, manager);
+             P2PNode attacker = new P2PNode(0, 1, IGNORE);
+             P2PNode other = new P2PNode(0, 1, IGNORE)) {
+            manager.start(node, new PeerConnections(node));
+            // Misbehaves while still known by its ephemeral address
+            Connection connection = attacker.connect(new InetSocketAddress("localhost", node.getPort()));
+            connection.send(new Message(Message.MessageType.PONG, new byte[3]));
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (connection.isOpen() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertFalse(connection.isOpen());
+
+            // The same host is refused whatever port it comes from or claims to listen on
+            Connection again = other.connect(new InetSocketAddress("localhost", node.getPort()));
+            again.send(Message.hello(other.getPort(), 2));
+            deadline = System.currentTimeMillis() + 10_000;
+            while (again.isOpen() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertFalse(again.isOpen());
+            assertTrue(manager.addPeer("127.0.0.1:" + other.getPort()));
+            assertTrue(manager.getPeer("127.0.0.1:" + other.getPort()).isBanned());
+            assertEquals(Config.malformedMessagePenalty, manager.getPeer("127.0.0.1:" + other.getPort()).getMisbehaviour());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+import org.example.Transaction.Transaction;
+import org.example.Transaction.TransactionCodec;
+import org.example.Transaction.TransactionValidator;
+import org.example.Util.Ed25519;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SignatureTest {
+    private static Transaction signed(KeyPair keys, double amount) throws Exception {
+        Transaction transaction = new Transaction(Transaction.addressOf(keys.getPublic()), "Bob", amount, System.currentTimeMillis());
+        transaction.sign(keys);
+        return transaction;
+    }
+
+    @Test
+    public void signedTransactionValidatesAndSurvivesEncoding() throws Exception {
+        Transaction transaction = signed(Ed25519.generateKeyPair(), 5);
+        assertTrue(TransactionValidator.validateTransaction(transaction));
+
+        Transaction decoded = TransactionCodec.decode(ByteBuffer.wrap(TransactionCodec.encode(transaction)));
+        assertEquals(transaction.signature, decoded.signature);
+        assertTrue(TransactionValidator.validateTransaction(decoded));
+    }
+
+    @Test
+    public void tamperedTransactionsAreRejected() throws Exception {
+        KeyPair keys = Ed25519.generateKeyPair();
+        Transaction unsigned = new Transaction(Transaction.addressOf(keys.getPublic()), "Bob", 5, 1);
+        assertFalse(TransactionValidator.validateTransaction(unsigned));
+
+        Transaction amount = signed(keys, 5);
+        amount.amount = 500;
+        assertFalse(TransactionValidator.validateTransaction(amount));
+
+        // Re-hashing after tampering does not help without the key
+        Transaction rehashed = signed(keys, 6);
+        rehashed.amount = 600;
+        rehashed.transactionHash = rehashed.computeHash();
+        assertFalse(TransactionValidator.validateTransaction(rehashed));
+
+        // Signing with another key than the sender's address
+        Transaction impostor = new Transaction(Transaction.addressOf(keys.getPublic()), "Bob", 5, 2);
+        impostor.sign(Ed25519.generateKeyPair());
+        assertFalse(TransactionValidator.validateTransaction(impostor));
+
+        // A cached transaction with a different signature still has to verify
+        Transaction valid = signed(keys, 7);
+        assertTrue(TransactionValidator.validateTransaction(valid));
+        valid.signature = "00" + valid.signature.substring(2);
+        assertFalse(TransactionValidator.validateTransaction(valid));
+    }
+
+    @Test
+    public void batchValidationMatchesSingleValidation() throws Exception {
+        KeyPair keys = Ed25519.generateKeyPair();
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            Transaction transaction = signed(keys, i + 1);
+            if (i % 5 == 0) {
+                transaction.recipient = "Mallory";
+            }
+            transactions.add(transaction);
+        }
+        boolean[] valid = TransactionValidator.validateBatch(transactions);
+        for (int i = 0; i < valid.length; i++) {
+            assertEquals(i % 5 != 0, valid[i]);
+        }
+        assertTrue(TransactionValidator.verifiedSignatures().contains(transactions.get(1).transactionHash, transactions.get(1).signature));
+    }
+}
@@ -0,0 +1,83 @@
+import org.example.BlockChain.Block;
+import org.example.State.AccountState;
+import org.example.State.WorldState;
+import org.example.Transaction.Transaction;
+import org.example.Transaction.TransactionValidator;
+import org.example.Util.Ed25519;
+import org.junit.Test;
+
+import java.security.KeyPair;
+
+import static org.junit.Assert.*;
+
+public class WorldStateTest {
+    private static Transaction signed(KeyPair keys, String recipient, double amount, long nonce) {
+        Transaction transaction = new Transaction(Transaction.addressOf(keys.getPublic()), recipient, amount, 1, nonce);
+        transaction.sign(keys);
+        return transaction;
+    }
+
+    @Test
+    public void balancesAndNoncesAreTracked() throws Exception {
+        KeyPair alice = Ed25519.generateKeyPair();
+        String aliceAddress = Transaction.addressOf(alice.getPublic());
+        WorldState state = new WorldState(1);
+        state.credit(aliceAddress, 100);
+        state.commit();
+
+        Transaction first = signed(alice, "bob", 60, 0);
+        assertTrue(TransactionValidator.validateTransaction(first, state));
+        assertFalse(TransactionValidator.validateTransaction(signed(alice, "bob", 60, 1), state));   // Nonce from the future
+        assertFalse(TransactionValidator.validateTransaction(signed(alice, "bob", 101, 0), state));  // Overspend
+
+        Block block = new Block(null);
+        block.addTransaction(first);
+        block.addTransaction(signed(alice, "carol", 30, 1));
+        assertTrue(state.applyBlock(block));
+        assertEquals(new AccountState(10, 2), state.getAccount(aliceAddress));
+        assertEquals(new AccountState(60, 0), state.getAccount("bob"));
+        assertEquals(new AccountState(30, 0), state.getAccount("carol"));
+
+        // Replaying the block fails as a whole and changes nothing
+        assertFalse(state.applyBlock(block));
+        assertEquals(0, state.pendingWrites());
+        assertEquals(new AccountState(10, 2), state.getAccount(aliceAddress));
+    }
+
+    @Test
+    public void manyAccountsSurviveTheCache() throws Exception {
+        WorldState state = new WorldState(4, 16);
+        for (int i = 0; i < 2000; i++) {
+            state.credit("account" + i, i);
+        }
+        state.commit();
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(new AccountState(i, 0), state.getAccount("account" + i));
+        }
+        assertEquals(AccountState.EMPTY, state.getAccount("nobody"));
+    }
+
+    @Test
+    public void recipientsThatCannotBeStoredAreRejectedAndCommitsAreAllOrNothing() throws Exception {
+        KeyPair alice = Ed25519.generateKeyPair();
+        String aliceAddress = Transaction.addressOf(alice.getPublic());
+        WorldState state = new WorldState(1);
+        state.credit(aliceAddress, 100);
+        state.commit();
+
+        Transaction oversized = signed(alice, "b".repeat(WorldState.ADDRESS_SIZE + 1), 10, 0);
+        assertFalse(TransactionValidator.validateTransaction(oversized));
+        assertFalse(state.canApply(oversized));
+        assertFalse(state.apply(oversized));
+        assertFalse(state.canApply(signed(alice, "bob:1", 10, 0)));
+
+        state.credit(aliceAddress, 5);
+        state.credit("c".repeat(WorldState.ADDRESS_SIZE + 1), 5);
+        assertThrows(IllegalArgumentException.class, state::commit);
+        assertEquals(0, state.pendingWrites());
+        assertEquals(new AccountState(100, 0), state.getAccount(aliceAddress));
+        state.credit(aliceAddress, 5);
+        state.commit();
+        assertEquals(new AccountState(105, 0), state.getAccount(aliceAddress));
+    }
+}